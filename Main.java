@@ -2,12 +2,18 @@ import filesys.IFileSystem;
 
 import java.util.Scanner;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import exception.PermissaoException;
 import exception.CaminhoJaExistenteException;
 import exception.CaminhoNaoEncontradoException;
 
+import filesys.EscritorTrace;
 import filesys.FileSystem;
+import filesys.GravadorTrace;
+import filesys.MotorPermissoes;
 
 // MENU INTERATIVO PARA O SISTEMA DE ARQUIVOS
 // SINTA-SE LIVRE PARA ALTERAR A CLASSE MAIN
@@ -29,8 +35,18 @@ public class Main {
     // Usuário que está executando o programa
     private static String user;
 
+    // Sistema de arquivos com imagem em disco, quando executado com "-i imagem"; null caso contrário
+    private static FileSystem fileSystemPersistente;
+
+    // Gravador das chamadas, quando executado com "-g trace"; null caso contrário
+    private static GravadorTrace gravador;
+
     // O sistema de arquivos é inteiramente virtual, ou seja, será reiniciado a cada execução do programa.
     // Logo, não é necessário salvar os arquivos em disco. O sistema será uma simulação em memória.
+    // Com "-i imagem" depois do usuário, o estado é carregado da imagem e gravado nela ao sair.
+    // Com "-g trace", todas as chamadas ao sistema de arquivos são gravadas no trace (ver
+    // GravadorTrace), que pode ser reproduzido com benchmarks.TraceBenchmark.
+    // Com "-c", os comandos são lidos um por linha da entrada padrão, sem o menu (ver lote()).
     public static void main(String[] args) {
         // Usuário que está executando o programa.
         // Para quaisquer operações que serão feitas por esse usuário em um caminho /path/**,
@@ -51,6 +67,7 @@ public class Main {
         // A partir do momento que um usuário cria outro diretório ou arquivo, 
         // a permissão desse usuário é de leitura, escrita e execução nesse novo diretório/arquivo,
         // e sempre será rwx para o usuário root.
+        MotorPermissoes motor = new MotorPermissoes();
         try {
             Scanner userScanner = new Scanner(new java.io.File("users/users"));
             while (userScanner.hasNextLine()) {
@@ -62,12 +79,12 @@ public class Main {
                         String dir = parts[1];
                         String dirPermission = parts[2];
                         
-                        /* A FAZER:
-                         * Processar a permissão de todos os usuários existentes por diretório.
-                         * Por enquanto esse código somente imprime as permissões contidas no arquivo users.
-                        */
-                        System.out.println(userListed + " " + dir + " " + dirPermission); // Somente imprime o usuário, diretório e permissão
-
+                        // As regras são compiladas no motor de permissões usado pelo FileSystem
+                        try {
+                            motor.adicionarRegra(userListed, dir, dirPermission);
+                        } catch (IllegalArgumentException e) {
+                            System.out.println("Regra inválida no arquivo de usuários. Linha: " + line);
+                        }
 
                     } else {
                         System.out.println("Formato ruim no arquivo de usuários. Linha: " + line);
@@ -81,10 +98,46 @@ public class Main {
             return;
         }
         
+        // Opções depois do usuário
+        String imagem = null;
+        String trace = null;
+        boolean emLote = false;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("-i") && i + 1 < args.length) {
+                imagem = args[++i];
+            } else if (args[i].equals("-g") && i + 1 < args.length) {
+                trace = args[++i];
+            } else if (args[i].equals("-c")) {
+                emLote = true;
+            } else {
+                System.out.println("Opção inválida: " + args[i]);
+                return;
+            }
+        }
+
         // Finalmente cria o Sistema de Arquivos
         // Lista de usuários é imutável durante a execução do programa
-        // Obs: Como passar a lista de usuários para o FileSystem?
-        fileSystem = new FileSystem(/*usuários?*/);
+        if (imagem != null) {
+            try {
+                fileSystemPersistente = new FileSystem(motor, Path.of(imagem));
+            } catch (IOException e) {
+                System.out.println("Não foi possível abrir a imagem " + imagem + ": " + e.getMessage());
+                return;
+            }
+            fileSystem = fileSystemPersistente;
+        } else {
+            fileSystem = new FileSystem(motor);
+        }
+        if (trace != null) {
+            try {
+                gravador = new GravadorTrace(fileSystem, new EscritorTrace(Files.newOutputStream(Path.of(trace))), true);
+            } catch (IOException e) {
+                System.out.println("Não foi possível criar o trace " + trace + ": " + e.getMessage());
+                fechar();
+                return;
+            }
+            fileSystem = gravador;
+        }
 
         // // DESCOMENTE O BLOCO ABAIXO PARA CRIAR O DIRETÓRIO RAIZ ANTES DE RODAR O MENU
         // // Cria o diretório raiz do sistema. Root sempre tem permissão total "rwx"
@@ -94,8 +147,12 @@ public class Main {
         //     System.out.println(e.getMessage());
         // }
 
-        // Menu interativo.
-        menu();
+        // Menu interativo, ou os comandos da entrada padrão com "-c"
+        if (emLote) {
+            lote();
+        } else {
+            menu();
+        }
     }
 
     // Menu interativo para fins de teste.
@@ -148,12 +205,14 @@ public class Main {
                         break;
                     case "0":
                         System.out.println("Encerrando...");
+                        fechar();
 
                         return;
                     default:
                         System.out.println("Comando inválido!");
                 } 
-            } catch (CaminhoNaoEncontradoException | CaminhoJaExistenteException | PermissaoException e) {
+            } catch (CaminhoNaoEncontradoException | CaminhoJaExistenteException | PermissaoException
+                    | IllegalArgumentException e) {
                 System.out.println("Erro: " + e.getMessage());
             }
 
@@ -164,6 +223,93 @@ public class Main {
         }
     }
 
+    // Comandos da entrada padrão, um por linha, até o fim da entrada ou "exit":
+    //      chmod caminho usuarioAlvo permissao     mkdir caminho       touch caminho
+    //      rm caminho recursivo                    mv antigo novo      read caminho
+    //      write caminho anexar conteúdo...        ls caminho recursivo
+    //      cp origem destino recursivo
+    // Linhas vazias e começadas por # são ignoradas. Usado para gravar traces de sessões
+    // repetíveis (com "-g") e em scripts.
+    public static void lote() {
+        while (scanner.hasNextLine()) {
+            String linha = scanner.nextLine().trim();
+            if (linha.isEmpty() || linha.startsWith("#")) {
+                continue;
+            }
+            String[] partes = linha.split("\\s+", 4);
+            try {
+                switch (partes[0]) {
+                    case "chmod":
+                        fileSystem.chmod(argumento(partes, 1), user, argumento(partes, 2), argumento(partes, 3));
+                        break;
+                    case "mkdir":
+                        fileSystem.mkdir(argumento(partes, 1), user);
+                        break;
+                    case "rm":
+                        fileSystem.rm(argumento(partes, 1), user, Boolean.parseBoolean(argumento(partes, 2)));
+                        break;
+                    case "touch":
+                        fileSystem.touch(argumento(partes, 1), user);
+                        break;
+                    case "write":
+                        // o conteúdo é o restante da linha e pode ter espaços
+                        String conteudo = partes.length > 3 ? partes[3] : "";
+                        fileSystem.write(argumento(partes, 1), user, Boolean.parseBoolean(argumento(partes, 2)),
+                                conteudo.getBytes());
+                        break;
+                    case "read":
+                        imprimirArquivo(argumento(partes, 1));
+                        break;
+                    case "mv":
+                        fileSystem.mv(argumento(partes, 1), argumento(partes, 2), user);
+                        break;
+                    case "ls":
+                        fileSystem.ls(argumento(partes, 1), user, Boolean.parseBoolean(argumento(partes, 2)));
+                        break;
+                    case "cp":
+                        fileSystem.cp(argumento(partes, 1), argumento(partes, 2), user,
+                                Boolean.parseBoolean(argumento(partes, 3)));
+                        break;
+                    case "exit":
+                        fechar();
+                        return;
+                    default:
+                        System.out.println("Comando inválido: " + partes[0]);
+                }
+            } catch (CaminhoNaoEncontradoException | CaminhoJaExistenteException | PermissaoException
+                    | IllegalArgumentException e) {
+                System.out.println("Erro: " + e.getMessage());
+            }
+        }
+        fechar();
+    }
+
+    private static String argumento(String[] partes, int indice) {
+        if (indice >= partes.length) {
+            throw new IllegalArgumentException("Argumentos insuficientes para " + partes[0]);
+        }
+        return partes[indice];
+    }
+
+    // Grava o trace e o sistema de arquivos na imagem, se houver
+    private static void fechar() {
+        if (gravador != null) {
+            try {
+                gravador.close();
+            } catch (IOException e) {
+                System.out.println("Erro ao gravar o trace: " + e.getMessage());
+            }
+        }
+        if (fileSystemPersistente == null) {
+            return;
+        }
+        try {
+            fileSystemPersistente.close();
+        } catch (IOException e) {
+            System.out.println("Erro ao gravar a imagem: " + e.getMessage());
+        }
+    }
+
     public static void chmod() throws CaminhoNaoEncontradoException, PermissaoException {
         System.out.println("Insira o caminho do arquivo ou diretório:");
         String caminho = scanner.nextLine();
@@ -191,7 +337,7 @@ public class Main {
         fileSystem.rm(caminho, user, recursivo);
     }
 
-    public static void touch() throws CaminhoJaExistenteException, PermissaoException {
+    public static void touch() throws CaminhoJaExistenteException, CaminhoNaoEncontradoException, PermissaoException {
         System.out.println("Insira o caminho do arquivo a ser criado:");
         String caminho = scanner.nextLine();
         
@@ -212,10 +358,20 @@ public class Main {
 
     public static void read() throws CaminhoNaoEncontradoException, PermissaoException {
         System.out.println("Insira o caminho do arquivo a ser lido:");
-        String caminho = scanner.nextLine();
-        byte[] buffer = new byte[READ_BUFFER_SIZE]; // Exemplo de tamanho de buffer por load/leitura . O que acontece se o Buffer for menor que o conteúdo a ser lido?     
-        
-        fileSystem.read(caminho, user, buffer); // Lógica para ler arquivos maiores que o buffer deve ser implementada. 
+        imprimirArquivo(scanner.nextLine());
+    }
+
+    private static void imprimirArquivo(String caminho) throws CaminhoNaoEncontradoException, PermissaoException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE]; // Exemplo de tamanho de buffer por load/leitura
+
+        // Arquivos maiores que o buffer são lidos em pedaços de READ_BUFFER_SIZE bytes
+        long offset = 0;
+        int lidos;
+        while ((lidos = fileSystem.read(caminho, user, offset, buffer, 0, buffer.length)) > 0) {
+            System.out.write(buffer, 0, lidos);
+            offset += lidos;
+        }
+        System.out.println();
     }
 
     public static void mv() throws CaminhoNaoEncontradoException, PermissaoException {
@@ -0,0 +1,160 @@
+package benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import filesys.FileSystem;
+import filesys.FileSystemAssincrono;
+import filesys.FileSystemImpl;
+import filesys.IFileSystem;
+import filesys.MotorPermissoes;
+
+// Vazão com muitos clientes simultâneos, cada um com uma operação em andamento por vez
+// (write de 64 bytes no próprio arquivo), comparando a API bloqueante, com uma thread de
+// plataforma por cliente, com a fachada FileSystemAssincrono, em que uma única thread agenda
+// as operações e um Semaphore limita as em andamento ao número de clientes.
+//   memoria: proxy FileSystem, operações só em memória
+//   diario:  FileSystemImpl com diário (group commit sem latência), cada operação espera o disco
+//
+// Uso: make bench BENCH=AssincronoBenchmark [ARGS="..."]
+//   -p clientes=100,10000  números de clientes simultâneos
+//   -wi N / -i N / -r ms   iterações de aquecimento / medição e duração de cada uma
+//   -d diretorio           onde criar a imagem e o diário (padrão: diretório temporário do sistema)
+//   -o arquivo.json        grava os resultados no formato JSON do JMH
+public class AssincronoBenchmark {
+    private static final String ROOT_USER = "root";
+
+    public static void main(String[] args) throws Exception {
+        int[] clientes = { 100, 10_000 };
+        int aquecimento = 2;
+        int medicao = 3;
+        long duracaoMs = 1000;
+        Path base = Path.of(System.getProperty("java.io.tmpdir"));
+        Path saida = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    clientes = Arrays.stream(args[++i].split("=", 2)[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "-wi":
+                    aquecimento = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    medicao = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    duracaoMs = Long.parseLong(args[++i]);
+                    break;
+                case "-d":
+                    base = Path.of(args[++i]);
+                    break;
+                case "-o":
+                    saida = Path.of(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconhecido: " + args[i]);
+            }
+        }
+
+        Bancada bancada = new Bancada(aquecimento, medicao, duracaoMs);
+        Path diretorio = Files.createTempDirectory(base, "assincrono-benchmark");
+        try {
+            for (String persistencia : new String[] { "memoria", "diario" }) {
+                for (int c : clientes) {
+                    Map<String, String> parametros = new LinkedHashMap<>();
+                    parametros.put("persistencia", persistencia);
+                    parametros.put("clientes", String.valueOf(c));
+                    Escrita cenario = new Escrita(diretorio, persistencia.equals("diario"), c);
+                    try {
+                        parametros.put("modo", "bloqueante");
+                        bancada.medir("assincrono_write", new LinkedHashMap<>(parametros), c, cenario);
+                        parametros.put("modo", "assincrono");
+                        cenario.assincrono = true;
+                        bancada.medir("assincrono_write", parametros, 1, cenario);
+                    } finally {
+                        cenario.fechar();
+                    }
+                }
+            }
+        } finally {
+            try (Stream<Path> arquivos = Files.walk(diretorio)) {
+                arquivos.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        if (saida != null) {
+            bancada.gravarJson(saida);
+            System.out.println("Resultados gravados em " + saida);
+        }
+    }
+
+    // Cada cliente escreve no próprio arquivo, em um sistema de arquivos novo a cada iteração
+    private static final class Escrita extends Bancada.Cenario {
+        private final Path diretorio;
+        private final boolean diario;
+        private final int clientes;
+        private final byte[] dados = new byte[64];
+        private final String[] caminhos;
+        boolean assincrono;
+        private IFileSystem fileSystem;
+        private FileSystemAssincrono fachada;
+        private Semaphore emAndamento;
+
+        Escrita(Path diretorio, boolean diario, int clientes) {
+            this.diretorio = diretorio;
+            this.diario = diario;
+            this.clientes = clientes;
+            this.caminhos = new String[clientes];
+            for (int c = 0; c < clientes; c++) {
+                caminhos[c] = "/c" + c;
+            }
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fechar();
+            if (diario) {
+                Path imagem = Files.createTempDirectory(diretorio, "iteracao").resolve("fs.img");
+                fileSystem = new FileSystemImpl(new MotorPermissoes(), 4096, 4096, true, imagem, Duration.ZERO);
+            } else {
+                fileSystem = new FileSystem(new MotorPermissoes(), true);
+            }
+            if (assincrono) {
+                fachada = new FileSystemAssincrono(fileSystem);
+                emAndamento = new Semaphore(clientes);
+            }
+        }
+
+        @Override
+        void executar(int thread, long i) throws Exception {
+            if (assincrono) {
+                emAndamento.acquire();
+                fachada.write(caminhos[(int) (i % clientes)], ROOT_USER, false, dados)
+                        .whenComplete((r, e) -> emAndamento.release());
+            } else {
+                fileSystem.write(caminhos[thread], ROOT_USER, false, dados);
+            }
+        }
+
+        void fechar() throws IOException {
+            if (fachada != null) {
+                // espera as operações ainda em andamento antes de fechar o sistema de arquivos
+                emAndamento.acquireUninterruptibly(clientes);
+                fachada.close();
+                fachada = null;
+            }
+            if (fileSystem instanceof Closeable) {
+                ((Closeable) fileSystem).close();
+            }
+            fileSystem = null;
+        }
+    }
+}
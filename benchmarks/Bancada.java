@@ -0,0 +1,214 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Harness de benchmark no estilo do JMH (iterações de aquecimento e de medição com duração
+// fixa, parâmetros, várias threads e resultado em JSON no formato do JMH), sem dependências
+// além do JDK, já que o projeto é compilado apenas com javac.
+final class Bancada {
+    private final int iteracoesAquecimento;
+    private final int iteracoesMedicao;
+    private final long duracaoIteracaoNs;
+    private final List<Resultado> resultados = new ArrayList<>();
+
+    // Um cenário é preparado do zero a cada iteração e executado repetidamente por cada thread.
+    abstract static class Cenario {
+        // Chamado antes de cada iteração, fora da medição.
+        void preparar() throws Exception {
+        }
+
+        // Chamado antes de cada invocação, fora da medição; só é usado se porInvocacao() for true.
+        void antes(int thread, long invocacao) throws Exception {
+        }
+
+        // Mede cada invocação individualmente, para descontar o trabalho de antes().
+        boolean porInvocacao() {
+            return false;
+        }
+
+        abstract void executar(int thread, long invocacao) throws Exception;
+    }
+
+    static final class Resultado {
+        final String benchmark;
+        final Map<String, String> parametros;
+        final int threads;
+        final double nsPorOperacao;
+        final double erro;
+        final double operacoesPorSegundo;
+
+        Resultado(String benchmark, Map<String, String> parametros, int threads,
+                double nsPorOperacao, double erro, double operacoesPorSegundo) {
+            this.benchmark = benchmark;
+            this.parametros = parametros;
+            this.threads = threads;
+            this.nsPorOperacao = nsPorOperacao;
+            this.erro = erro;
+            this.operacoesPorSegundo = operacoesPorSegundo;
+        }
+    }
+
+    Bancada(int iteracoesAquecimento, int iteracoesMedicao, long duracaoIteracaoMs) {
+        this.iteracoesAquecimento = iteracoesAquecimento;
+        this.iteracoesMedicao = iteracoesMedicao;
+        this.duracaoIteracaoNs = duracaoIteracaoMs * 1_000_000L;
+    }
+
+    Resultado medir(String benchmark, Map<String, String> parametros, int threads, Cenario cenario)
+            throws Exception {
+        double[] nsPorOperacao = new double[iteracoesMedicao];
+        double somaOpsPorSegundo = 0;
+        for (int i = 0; i < iteracoesAquecimento + iteracoesMedicao; i++) {
+            cenario.preparar();
+            double[] iteracao = iteracao(cenario, threads);
+            if (i >= iteracoesAquecimento) {
+                nsPorOperacao[i - iteracoesAquecimento] = iteracao[0];
+                somaOpsPorSegundo += iteracao[1];
+            }
+        }
+        double media = 0;
+        for (double v : nsPorOperacao) {
+            media += v;
+        }
+        media /= nsPorOperacao.length;
+        double variancia = 0;
+        for (double v : nsPorOperacao) {
+            variancia += (v - media) * (v - media);
+        }
+        // Intervalo de confiança de ~99,9% (aproximação normal), como o scoreError do JMH
+        double erro = nsPorOperacao.length > 1
+                ? 3.29 * Math.sqrt(variancia / (nsPorOperacao.length - 1)) / Math.sqrt(nsPorOperacao.length)
+                : Double.NaN;
+        Resultado resultado = new Resultado(benchmark, parametros, threads, media, erro,
+                somaOpsPorSegundo / iteracoesMedicao);
+        resultados.add(resultado);
+        System.err.printf(Locale.ROOT, "%-22s %-60s threads=%-2d %14.1f ± %10.1f ns/op %14.1f ops/s%n",
+                benchmark, parametros, threads, media, erro, resultado.operacoesPorSegundo);
+        return resultado;
+    }
+
+    // Retorna { ns por operação, operações por segundo } da iteração.
+    private double[] iteracao(Cenario cenario, int threads) throws Exception {
+        long[] operacoes = new long[threads];
+        long[] tempoMedido = new long[threads];
+        AtomicReference<Throwable> falha = new AtomicReference<>();
+        CountDownLatch largada = new CountDownLatch(1);
+        // Prazo comum a todas as threads: com muito mais threads que processadores, um prazo
+        // contado a partir do início de cada uma estenderia a iteração até a última ser escalonada
+        long[] fim = new long[1];
+        List<Thread> lista = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread th = new Thread(() -> {
+                try {
+                    largada.await();
+                    executar(cenario, thread, fim[0], operacoes, tempoMedido);
+                } catch (Throwable e) {
+                    falha.compareAndSet(null, e);
+                }
+            });
+            lista.add(th);
+            th.start();
+        }
+        long inicio = System.nanoTime();
+        fim[0] = inicio + duracaoIteracaoNs;
+        largada.countDown();
+        for (Thread th : lista) {
+            th.join();
+        }
+        long decorrido = System.nanoTime() - inicio;
+        if (falha.get() != null) {
+            throw new IllegalStateException("Falha no benchmark", falha.get());
+        }
+        long totalOperacoes = 0;
+        long totalTempo = 0;
+        for (int t = 0; t < threads; t++) {
+            totalOperacoes += operacoes[t];
+            totalTempo += tempoMedido[t];
+        }
+        double nsPorOperacao = (double) totalTempo / totalOperacoes;
+        double operacoesPorSegundo = cenario.porInvocacao()
+                ? threads * 1e9 / nsPorOperacao
+                : totalOperacoes * 1e9 / decorrido;
+        return new double[] { nsPorOperacao, operacoesPorSegundo };
+    }
+
+    private void executar(Cenario cenario, int thread, long fim, long[] operacoes, long[] tempoMedido) throws Exception {
+        long n = 0;
+        if (cenario.porInvocacao()) {
+            long medido = 0;
+            while (System.nanoTime() < fim) {
+                cenario.antes(thread, n);
+                long t0 = System.nanoTime();
+                cenario.executar(thread, n);
+                medido += System.nanoTime() - t0;
+                n++;
+            }
+            tempoMedido[thread] = medido;
+        } else {
+            long inicio = System.nanoTime();
+            long agora = inicio;
+            // O relógio é consultado a cada 64 invocações para não pesar em operações rápidas
+            while (agora < fim) {
+                for (int i = 0; i < 64; i++) {
+                    cenario.executar(thread, n++);
+                }
+                agora = System.nanoTime();
+            }
+            tempoMedido[thread] = agora - inicio;
+        }
+        operacoes[thread] = n;
+    }
+
+    // Grava os resultados no formato de saída JSON do JMH (-rf json).
+    void gravarJson(Path arquivo) throws IOException {
+        try (Writer w = Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8)) {
+            w.write("[\n");
+            for (int i = 0; i < resultados.size(); i++) {
+                Resultado r = resultados.get(i);
+                Map<String, String> params = new LinkedHashMap<>(r.parametros);
+                StringBuilder sb = new StringBuilder();
+                sb.append("  {\n");
+                sb.append("    \"benchmark\" : \"").append(r.benchmark).append("\",\n");
+                sb.append("    \"mode\" : \"avgt\",\n");
+                sb.append("    \"threads\" : ").append(r.threads).append(",\n");
+                sb.append("    \"warmupIterations\" : ").append(iteracoesAquecimento).append(",\n");
+                sb.append("    \"measurementIterations\" : ").append(iteracoesMedicao).append(",\n");
+                sb.append("    \"params\" : {");
+                int j = 0;
+                for (Map.Entry<String, String> e : params.entrySet()) {
+                    sb.append(j++ == 0 ? "\n" : ",\n");
+                    sb.append("      \"").append(e.getKey()).append("\" : \"").append(e.getValue()).append('"');
+                }
+                sb.append(params.isEmpty() ? "},\n" : "\n    },\n");
+                sb.append("    \"primaryMetric\" : {\n");
+                sb.append("      \"score\" : ").append(numero(r.nsPorOperacao)).append(",\n");
+                sb.append("      \"scoreError\" : ").append(numero(r.erro)).append(",\n");
+                sb.append("      \"scoreUnit\" : \"ns/op\"\n");
+                sb.append("    },\n");
+                sb.append("    \"secondaryMetrics\" : {\n");
+                sb.append("      \"throughput\" : { \"score\" : ").append(numero(r.operacoesPorSegundo))
+                        .append(", \"scoreUnit\" : \"ops/s\" }\n");
+                sb.append("    }\n");
+                sb.append(i == resultados.size() - 1 ? "  }\n" : "  },\n");
+                w.write(sb.toString());
+            }
+            w.write("]\n");
+        }
+    }
+
+    private static String numero(double valor) {
+        return Double.isNaN(valor) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", valor);
+    }
+}
@@ -0,0 +1,121 @@
+package benchmarks;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+
+// Custo da deduplicação no write e memória economizada. Cada invocação sobrescreve um de
+// ARQUIVOS arquivos com um conteúdo repetido (o mesmo modelo para todos) ou único (bytes
+// aleatórios diferentes para cada arquivo da thread; as threads escrevem o mesmo conjunto).
+// Ao fim de cada medição, as estatísticas de ocupação (bytes lógicos e físicos) são mostradas.
+//
+// Uso: make bench BENCH=DeduplicacaoBenchmark [ARGS="..."]
+//   -p tamanho=4096,65536   tamanhos dos arquivos, em bytes
+//   -p threads=1,4          números de threads (cada uma com os seus arquivos)
+//   -wi N / -i N / -r ms    iterações de aquecimento / medição e duração de cada uma
+//   -o arquivo.json         grava os resultados no formato JSON do JMH
+public class DeduplicacaoBenchmark {
+    private static final String ROOT_USER = "root";
+    private static final int ARQUIVOS = 256;
+    private static final int TAMANHO_BLOCO = 4096;
+
+    public static void main(String[] args) throws Exception {
+        int[] tamanhos = { 4096, 65536 };
+        int[] threads = { 1, 4 };
+        int aquecimento = 2;
+        int medicao = 3;
+        long duracaoMs = 500;
+        Path saida = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    String[] par = args[++i].split("=", 2);
+                    int[] valores = Arrays.stream(par[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    if (par[0].equals("tamanho")) {
+                        tamanhos = valores;
+                    } else {
+                        threads = valores;
+                    }
+                    break;
+                case "-wi":
+                    aquecimento = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    medicao = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    duracaoMs = Long.parseLong(args[++i]);
+                    break;
+                case "-o":
+                    saida = Path.of(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconhecido: " + args[i]);
+            }
+        }
+
+        Bancada bancada = new Bancada(aquecimento, medicao, duracaoMs);
+        for (int t : threads) {
+            for (int tamanho : tamanhos) {
+                for (boolean repetido : new boolean[] { true, false }) {
+                    for (boolean deduplicar : new boolean[] { false, true }) {
+                        Map<String, String> parametros = new LinkedHashMap<>();
+                        parametros.put("deduplicar", String.valueOf(deduplicar));
+                        parametros.put("conteudo", repetido ? "repetido" : "unico");
+                        parametros.put("tamanho", String.valueOf(tamanho));
+                        Write cenario = new Write(deduplicar, repetido, tamanho, t);
+                        bancada.medir("deduplicacao_write", parametros, t, cenario);
+                        System.err.println("    " + cenario.fileSystem.estatisticasDados());
+                    }
+                }
+            }
+        }
+        if (saida != null) {
+            bancada.gravarJson(saida);
+            System.out.println("Resultados gravados em " + saida);
+        }
+    }
+
+    private static final class Write extends Bancada.Cenario {
+        private final boolean deduplicar;
+        private final int threads;
+        // conteúdo de cada arquivo de uma thread; com conteúdo repetido, todos são o mesmo array
+        private final byte[][] conteudos = new byte[ARQUIVOS][];
+        private FileSystemImpl fileSystem;
+
+        Write(boolean deduplicar, boolean repetido, int tamanho, int threads) {
+            this.deduplicar = deduplicar;
+            this.threads = threads;
+            Random random = new Random(42);
+            byte[] modelo = new byte[tamanho];
+            random.nextBytes(modelo);
+            for (int i = 0; i < ARQUIVOS; i++) {
+                if (repetido) {
+                    conteudos[i] = modelo;
+                } else {
+                    conteudos[i] = new byte[tamanho];
+                    random.nextBytes(conteudos[i]);
+                }
+            }
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fileSystem = new FileSystemImpl(new MotorPermissoes(), 4096, TAMANHO_BLOCO, threads > 1, deduplicar);
+            for (int t = 0; t < threads; t++) {
+                fileSystem.mkdir("/t" + t, ROOT_USER);
+            }
+        }
+
+        @Override
+        void executar(int thread, long i) throws Exception {
+            int arquivo = (int) (i % ARQUIVOS);
+            fileSystem.write("/t" + thread + "/" + arquivo, ROOT_USER, false, conteudos[arquivo]);
+        }
+    }
+}
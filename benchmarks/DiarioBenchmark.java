@@ -0,0 +1,152 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+
+// Operações por segundo de touch com diário, comparando o group commit com um force() por
+// operação. A referência (fsync_por_operacao) serializa cada operação até a confirmação em
+// disco, como faria uma implementação que grava e força o diário dentro da própria operação.
+//
+// Uso: make bench BENCH=DiarioBenchmark [ARGS="..."]
+//   -p threads=1,4,16   números de threads
+//   -p latencia=0,200   latências do group commit, em microssegundos
+//   -wi N / -i N / -r ms   iterações de aquecimento / medição e duração de cada uma
+//   -d diretorio        onde criar a imagem e o diário (padrão: diretório temporário do sistema)
+//   -o arquivo.json     grava os resultados no formato JSON do JMH
+public class DiarioBenchmark {
+    private static final String ROOT_USER = "root";
+
+    public static void main(String[] args) throws Exception {
+        int[] threads = { 1, 4, 16 };
+        int[] latencias = { 0, 200 };
+        int aquecimento = 2;
+        int medicao = 3;
+        long duracaoMs = 500;
+        Path base = Path.of(System.getProperty("java.io.tmpdir"));
+        Path saida = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    String[] par = args[++i].split("=", 2);
+                    int[] valores = Arrays.stream(par[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    if (par[0].equals("threads")) {
+                        threads = valores;
+                    } else {
+                        latencias = valores;
+                    }
+                    break;
+                case "-wi":
+                    aquecimento = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    medicao = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    duracaoMs = Long.parseLong(args[++i]);
+                    break;
+                case "-d":
+                    base = Path.of(args[++i]);
+                    break;
+                case "-o":
+                    saida = Path.of(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconhecido: " + args[i]);
+            }
+        }
+
+        Bancada bancada = new Bancada(aquecimento, medicao, duracaoMs);
+        Path diretorio = Files.createTempDirectory(base, "diario-benchmark");
+        try {
+            for (int t : threads) {
+                medir(bancada, diretorio, "fsync_por_operacao", 0, t);
+                for (int latencia : latencias) {
+                    medir(bancada, diretorio, "group_commit", latencia, t);
+                }
+            }
+        } finally {
+            try (Stream<Path> arquivos = Files.walk(diretorio)) {
+                arquivos.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        if (saida != null) {
+            bancada.gravarJson(saida);
+            System.out.println("Resultados gravados em " + saida);
+        }
+    }
+
+    private static void medir(Bancada bancada, Path diretorio, String modo, int latenciaUs, int threads)
+            throws Exception {
+        Map<String, String> parametros = new LinkedHashMap<>();
+        parametros.put("modo", modo);
+        parametros.put("latencia", latenciaUs + "us");
+        Touch cenario = new Touch(diretorio, modo.equals("fsync_por_operacao"), latenciaUs, threads);
+        try {
+            bancada.medir("diario_touch", parametros, threads, cenario);
+        } finally {
+            cenario.fechar();
+        }
+    }
+
+    // touch de nomes novos, um diretório por thread, em um sistema de arquivos novo a cada iteração
+    private static final class Touch extends Bancada.Cenario {
+        private final Path diretorio;
+        private final boolean serializar;
+        private final int latenciaUs;
+        private final int threads;
+        private final Object trava = new Object();
+        private FileSystemImpl fileSystem;
+
+        Touch(Path diretorio, boolean serializar, int latenciaUs, int threads) {
+            this.diretorio = diretorio;
+            this.serializar = serializar;
+            this.latenciaUs = latenciaUs;
+            this.threads = threads;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fechar();
+            Path imagem = Files.createTempDirectory(diretorio, "iteracao").resolve("fs.img");
+            fileSystem = new FileSystemImpl(new MotorPermissoes(), 4096, 4096, true, imagem,
+                    Duration.ofNanos(latenciaUs * 1000L));
+            for (int t = 0; t < threads; t++) {
+                fileSystem.mkdir("/t" + t, ROOT_USER);
+            }
+        }
+
+        // O relógio é consultado a cada invocação, já que cada uma espera pelo disco
+        @Override
+        boolean porInvocacao() {
+            return true;
+        }
+
+        @Override
+        void executar(int thread, long i) throws Exception {
+            if (serializar) {
+                synchronized (trava) {
+                    fileSystem.touch("/t" + thread + "/" + i, ROOT_USER);
+                }
+            } else {
+                fileSystem.touch("/t" + thread + "/" + i, ROOT_USER);
+            }
+        }
+
+        void fechar() throws IOException {
+            if (fileSystem != null) {
+                fileSystem.close();
+                fileSystem = null;
+            }
+        }
+    }
+}
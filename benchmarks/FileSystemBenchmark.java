@@ -0,0 +1,414 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import filesys.FileSystemImpl;
+import filesys.IFileSystem;
+import filesys.MotorPermissoes;
+
+// Benchmarks de todas as operações de IFileSystem, parametrizados por profundidade e
+// ramificação da árvore, tamanho de arquivo, tamanho de buffer e número de threads.
+//
+// Uso: make benchmark [ARGS="..."]
+//   [filtro]          expressão regular aplicada ao nome do benchmark (ex.: "cp|rm")
+//   -p nome=v1,v2     substitui os valores de um parâmetro (profundidade, ramificacao,
+//                     tamanhoArquivo, tamanhoBuffer, threads)
+//   -wi N / -i N      iterações de aquecimento / medição
+//   -r ms             duração de cada iteração
+//   -o arquivo.json   arquivo de resultados (formato JSON do JMH)
+public class FileSystemBenchmark {
+    private static final String ROOT_USER = "root";
+    private static final String ARVORE = "/arvore";
+    private static final int TAMANHO_ARQUIVO_ARVORE = 1024;
+
+    private final Map<String, int[]> parametros = new LinkedHashMap<>();
+
+    private FileSystemBenchmark() {
+        parametros.put("profundidade", new int[] { 2, 4 });
+        parametros.put("ramificacao", new int[] { 4, 8 });
+        parametros.put("tamanhoArquivo", new int[] { 4096, 1 << 20 });
+        parametros.put("tamanhoBuffer", new int[] { 256, 64 * 1024 });
+        parametros.put("threads", new int[] { 1, 4 });
+    }
+
+    public static void main(String[] args) throws Exception {
+        FileSystemBenchmark benchmark = new FileSystemBenchmark();
+        Pattern filtro = Pattern.compile(".*");
+        int aquecimento = 2;
+        int medicao = 3;
+        long duracaoMs = 500;
+        Path saida = Path.of("bench_output.json");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    String[] par = args[++i].split("=", 2);
+                    benchmark.parametros.put(par[0], Arrays.stream(par[1].split(",")).mapToInt(Integer::parseInt).toArray());
+                    break;
+                case "-wi":
+                    aquecimento = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    medicao = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    duracaoMs = Long.parseLong(args[++i]);
+                    break;
+                case "-o":
+                    saida = Path.of(args[++i]);
+                    break;
+                default:
+                    filtro = Pattern.compile(args[i]);
+            }
+        }
+
+        // ls imprime a listagem; durante os benchmarks a saída padrão é descartada
+        PrintStream saidaPadrao = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Bancada bancada = new Bancada(aquecimento, medicao, duracaoMs);
+        try {
+            benchmark.executar(bancada, filtro);
+        } finally {
+            System.setOut(saidaPadrao);
+        }
+        bancada.gravarJson(saida);
+        System.out.println("Resultados gravados em " + saida);
+    }
+
+    private void executar(Bancada bancada, Pattern filtro) throws Exception {
+        for (String nome : List.of("mkdir", "touch", "write_anexar", "write_sobrescrever", "read",
+                "ls_recursivo", "cp_recursivo", "mv", "rm_recursivo", "chmod")) {
+            if (!filtro.matcher(nome).find()) {
+                continue;
+            }
+            for (Map<String, Integer> p : combinacoes(usados(nome))) {
+                Map<String, String> rotulo = new LinkedHashMap<>();
+                p.forEach((k, v) -> {
+                    if (!k.equals("threads")) {
+                        rotulo.put(k, String.valueOf(v));
+                    }
+                });
+                int threads = p.getOrDefault("threads", 1);
+                bancada.medir(nome, rotulo, threads, cenario(nome, p, threads));
+            }
+        }
+    }
+
+    // Parâmetros que fazem sentido para cada operação
+    private static List<String> usados(String benchmark) {
+        switch (benchmark) {
+            case "mkdir":
+            case "touch":
+            case "mv":
+            case "chmod":
+                return List.of("profundidade", "threads");
+            case "write_anexar":
+                return List.of("tamanhoBuffer", "threads");
+            case "write_sobrescrever":
+                return List.of("tamanhoArquivo", "threads");
+            case "read":
+                return List.of("tamanhoArquivo", "tamanhoBuffer", "threads");
+            default:
+                return List.of("profundidade", "ramificacao");
+        }
+    }
+
+    private List<Map<String, Integer>> combinacoes(List<String> nomes) {
+        List<Map<String, Integer>> resultado = new ArrayList<>();
+        resultado.add(new LinkedHashMap<>());
+        for (String nome : nomes) {
+            List<Map<String, Integer>> proximo = new ArrayList<>();
+            for (Map<String, Integer> parcial : resultado) {
+                for (int valor : parametros.get(nome)) {
+                    Map<String, Integer> m = new LinkedHashMap<>(parcial);
+                    m.put(nome, valor);
+                    proximo.add(m);
+                }
+            }
+            resultado = proximo;
+        }
+        return resultado;
+    }
+
+    // Sistema de arquivos sob teste; em modo concorrente quando há mais de uma thread
+    private static IFileSystem novoFileSystem(int threads) {
+        return new FileSystemImpl(new MotorPermissoes(), 4096, 4096, threads > 1);
+    }
+
+    private static Bancada.Cenario cenario(String nome, Map<String, Integer> p, int threads) {
+        switch (nome) {
+            case "mkdir":
+            case "touch":
+                return new Criacao(nome.equals("mkdir"), p.get("profundidade"), threads);
+            case "write_anexar":
+                return new Escrita(true, p.get("tamanhoBuffer"), 64L << 20, threads);
+            case "write_sobrescrever":
+                return new Escrita(false, p.get("tamanhoArquivo"), 0, threads);
+            case "read":
+                return new Leitura(p.get("tamanhoArquivo"), p.get("tamanhoBuffer"), threads);
+            case "ls_recursivo":
+                return new Arvore(p.get("profundidade"), p.get("ramificacao"), false) {
+                    @Override
+                    void executar(int thread, long i) throws Exception {
+                        fileSystem.ls(ARVORE, ROOT_USER, true);
+                    }
+                };
+            case "cp_recursivo":
+                // A cópia anterior é removida fora da medição
+                return new Arvore(p.get("profundidade"), p.get("ramificacao"), true) {
+                    @Override
+                    void antes(int thread, long i) throws Exception {
+                        if (i > 0) {
+                            fileSystem.rm("/copia", ROOT_USER, true);
+                        }
+                    }
+
+                    @Override
+                    void executar(int thread, long i) throws Exception {
+                        fileSystem.cp(ARVORE, "/copia", ROOT_USER, true);
+                    }
+                };
+            case "rm_recursivo":
+                // A subárvore removida é criada fora da medição
+                return new Arvore(p.get("profundidade"), p.get("ramificacao"), true) {
+                    @Override
+                    void antes(int thread, long i) throws Exception {
+                        fileSystem.cp(ARVORE, "/alvo", ROOT_USER, true);
+                    }
+
+                    @Override
+                    void executar(int thread, long i) throws Exception {
+                        fileSystem.rm("/alvo", ROOT_USER, true);
+                    }
+                };
+            case "mv":
+                return new Movimento(p.get("profundidade"), threads);
+            case "chmod":
+                return new Permissao(p.get("profundidade"), threads);
+            default:
+                throw new IllegalArgumentException("Benchmark desconhecido: " + nome);
+        }
+    }
+
+    // Cria uma árvore com 'ramificacao' subdiretórios por nível e um arquivo por diretório
+    static void construirArvore(IFileSystem fileSystem, String raiz, int profundidade, int ramificacao,
+            int tamanhoArquivo) throws Exception {
+        fileSystem.mkdir(raiz, ROOT_USER);
+        if (tamanhoArquivo > 0) {
+            fileSystem.write(raiz + "/arquivo", ROOT_USER, false, new byte[tamanhoArquivo]);
+        }
+        if (profundidade > 0) {
+            for (int i = 0; i < ramificacao; i++) {
+                construirArvore(fileSystem, raiz + "/d" + i, profundidade - 1, ramificacao, tamanhoArquivo);
+            }
+        }
+    }
+
+    // Caminho de um diretório na profundidade pedida, criado com mkdir -p
+    static String cadeia(IFileSystem fileSystem, String raiz, int profundidade) throws Exception {
+        StringBuilder caminho = new StringBuilder(raiz);
+        for (int i = 0; i < profundidade; i++) {
+            caminho.append("/n").append(i);
+        }
+        fileSystem.mkdir(caminho.toString(), ROOT_USER);
+        return caminho.toString();
+    }
+
+    private abstract static class Arvore extends Bancada.Cenario {
+        private final int profundidade;
+        private final int ramificacao;
+        private final boolean porInvocacao;
+        IFileSystem fileSystem;
+
+        Arvore(int profundidade, int ramificacao, boolean porInvocacao) {
+            this.profundidade = profundidade;
+            this.ramificacao = ramificacao;
+            this.porInvocacao = porInvocacao;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fileSystem = novoFileSystem(1);
+            construirArvore(fileSystem, ARVORE, profundidade, ramificacao, TAMANHO_ARQUIVO_ARVORE);
+        }
+
+        @Override
+        boolean porInvocacao() {
+            return porInvocacao;
+        }
+    }
+
+    // mkdir ou touch de nomes novos em um diretório na profundidade pedida
+    private static final class Criacao extends Bancada.Cenario {
+        private final boolean diretorio;
+        private final int profundidade;
+        private final int threads;
+        private IFileSystem fileSystem;
+        private String[] bases;
+
+        Criacao(boolean diretorio, int profundidade, int threads) {
+            this.diretorio = diretorio;
+            this.profundidade = profundidade;
+            this.threads = threads;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fileSystem = novoFileSystem(threads);
+            bases = new String[threads];
+            for (int t = 0; t < threads; t++) {
+                bases[t] = cadeia(fileSystem, "/t" + t, profundidade) + "/";
+            }
+        }
+
+        @Override
+        void executar(int thread, long i) throws Exception {
+            if (diretorio) {
+                fileSystem.mkdir(bases[thread] + i, ROOT_USER);
+            } else {
+                fileSystem.touch(bases[thread] + i, ROOT_USER);
+            }
+        }
+    }
+
+    // Escrita de 'tamanho' bytes em um arquivo por thread. Na escrita anexando, o arquivo
+    // é esvaziado fora da medição ao atingir 'limite' bytes, para limitar a memória usada.
+    private static final class Escrita extends Bancada.Cenario {
+        private final boolean anexar;
+        private final byte[] buffer;
+        private final long limite;
+        private final int threads;
+        private IFileSystem fileSystem;
+        private long[] escritos;
+
+        Escrita(boolean anexar, int tamanho, long limite, int threads) {
+            this.anexar = anexar;
+            this.buffer = new byte[tamanho];
+            this.limite = limite;
+            this.threads = threads;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fileSystem = novoFileSystem(threads);
+            escritos = new long[threads];
+            for (int t = 0; t < threads; t++) {
+                fileSystem.touch("/f" + t, ROOT_USER);
+            }
+        }
+
+        @Override
+        boolean porInvocacao() {
+            return anexar;
+        }
+
+        @Override
+        void antes(int thread, long i) throws Exception {
+            if (escritos[thread] >= limite) {
+                fileSystem.write("/f" + thread, ROOT_USER, false, new byte[0]);
+                escritos[thread] = 0;
+            }
+        }
+
+        @Override
+        void executar(int thread, long i) throws Exception {
+            fileSystem.write("/f" + thread, ROOT_USER, anexar, buffer);
+            escritos[thread] += buffer.length;
+        }
+    }
+
+    // Leitura do arquivo inteiro em pedaços de 'tamanhoBuffer'; todas as threads leem o mesmo arquivo
+    private static final class Leitura extends Bancada.Cenario {
+        private final int tamanhoArquivo;
+        private final int tamanhoBuffer;
+        private final int threads;
+        private IFileSystem fileSystem;
+        private byte[][] buffers;
+
+        Leitura(int tamanhoArquivo, int tamanhoBuffer, int threads) {
+            this.tamanhoArquivo = tamanhoArquivo;
+            this.tamanhoBuffer = tamanhoBuffer;
+            this.threads = threads;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fileSystem = novoFileSystem(threads);
+            fileSystem.write("/dados", ROOT_USER, false, new byte[tamanhoArquivo]);
+            buffers = new byte[threads][tamanhoBuffer];
+        }
+
+        @Override
+        void executar(int thread, long i) throws Exception {
+            byte[] buffer = buffers[thread];
+            long offset = 0;
+            int lidos;
+            while ((lidos = fileSystem.read("/dados", ROOT_USER, offset, buffer, 0, buffer.length)) > 0) {
+                offset += lidos;
+            }
+        }
+    }
+
+    // Renomeia, ida e volta, um diretório com uma cadeia de subdiretórios de 'profundidade' níveis
+    private static final class Movimento extends Bancada.Cenario {
+        private final int profundidade;
+        private final int threads;
+        private IFileSystem fileSystem;
+
+        Movimento(int profundidade, int threads) {
+            this.profundidade = profundidade;
+            this.threads = threads;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fileSystem = novoFileSystem(threads);
+            for (int t = 0; t < threads; t++) {
+                cadeia(fileSystem, "/m" + t + "/a", profundidade);
+            }
+        }
+
+        @Override
+        void executar(int thread, long i) throws Exception {
+            String base = "/m" + thread;
+            if ((i & 1) == 0) {
+                fileSystem.mv(base + "/a", base + "/b", ROOT_USER);
+            } else {
+                fileSystem.mv(base + "/b", base + "/a", ROOT_USER);
+            }
+        }
+    }
+
+    private static final class Permissao extends Bancada.Cenario {
+        private final int profundidade;
+        private final int threads;
+        private IFileSystem fileSystem;
+        private String[] alvos;
+
+        Permissao(int profundidade, int threads) {
+            this.profundidade = profundidade;
+            this.threads = threads;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fileSystem = novoFileSystem(threads);
+            alvos = new String[threads];
+            for (int t = 0; t < threads; t++) {
+                alvos[t] = cadeia(fileSystem, "/p" + t, profundidade);
+            }
+        }
+
+        @Override
+        void executar(int thread, long i) throws Exception {
+            fileSystem.chmod(alvos[thread], ROOT_USER, "maria", (i & 1) == 0 ? "rw-" : "r--");
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+import filesys.Operacao;
+import filesys.ResultadoOperacao;
+
+// Lote de writes que criam arquivos novos, intercalados entre alguns diretórios, executado com
+// submeter() (modo lote) ou com uma chamada de write() por operação (modo individual). Cada
+// invocação executa o lote inteiro: o tempo por operação é ns/op dividido pelo tamanho.
+// Com persistencia=diario, cada operação individual espera o seu registro chegar ao disco,
+// enquanto o lote espera uma única vez.
+//
+// Uso: make bench BENCH=LoteBenchmark [ARGS="..."]
+//   -p tamanho=10,100,1000   operações por lote
+//   -p diretorios=1,16       diretórios entre os quais as operações são intercaladas
+//   -p threads=1,4           números de threads (cada uma com os seus diretórios)
+//   -s memoria,diario        persistências medidas
+//   -wi N / -i N / -r ms     iterações de aquecimento / medição e duração de cada uma
+//   -d diretorio             onde criar a imagem e o diário (padrão: diretório temporário do sistema)
+//   -o arquivo.json          grava os resultados no formato JSON do JMH
+public class LoteBenchmark {
+    private static final String ROOT_USER = "root";
+    // Blocos do tamanho dos dados, para que a alocação de blocos não domine a resolução e as travas
+    private static final int TAMANHO_BLOCO = 64;
+    private static final byte[] DADOS = new byte[TAMANHO_BLOCO];
+
+    public static void main(String[] args) throws Exception {
+        int[] tamanhos = { 10, 100, 1000 };
+        int[] diretorios = { 1, 16 };
+        int[] threads = { 1 };
+        String[] persistencias = { "memoria", "diario" };
+        int aquecimento = 2;
+        int medicao = 3;
+        long duracaoMs = 500;
+        Path base = Path.of(System.getProperty("java.io.tmpdir"));
+        Path saida = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    String[] par = args[++i].split("=", 2);
+                    int[] valores = Arrays.stream(par[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    if (par[0].equals("tamanho")) {
+                        tamanhos = valores;
+                    } else if (par[0].equals("diretorios")) {
+                        diretorios = valores;
+                    } else {
+                        threads = valores;
+                    }
+                    break;
+                case "-s":
+                    persistencias = args[++i].split(",");
+                    break;
+                case "-wi":
+                    aquecimento = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    medicao = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    duracaoMs = Long.parseLong(args[++i]);
+                    break;
+                case "-d":
+                    base = Path.of(args[++i]);
+                    break;
+                case "-o":
+                    saida = Path.of(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconhecido: " + args[i]);
+            }
+        }
+
+        Bancada bancada = new Bancada(aquecimento, medicao, duracaoMs);
+        Path diretorio = Files.createTempDirectory(base, "lote-benchmark");
+        try {
+            for (String persistencia : persistencias) {
+                for (int t : threads) {
+                    for (int tamanho : tamanhos) {
+                        for (int d : diretorios) {
+                            for (boolean lote : new boolean[] { false, true }) {
+                                medir(bancada, diretorio, persistencia, lote, tamanho, d, t);
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            try (Stream<Path> arquivos = Files.walk(diretorio)) {
+                arquivos.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        if (saida != null) {
+            bancada.gravarJson(saida);
+            System.out.println("Resultados gravados em " + saida);
+        }
+    }
+
+    private static void medir(Bancada bancada, Path diretorio, String persistencia, boolean lote, int tamanho,
+            int diretorios, int threads) throws Exception {
+        Map<String, String> parametros = new LinkedHashMap<>();
+        parametros.put("modo", lote ? "lote" : "individual");
+        parametros.put("persistencia", persistencia);
+        parametros.put("tamanho", String.valueOf(tamanho));
+        parametros.put("diretorios", String.valueOf(diretorios));
+        Write cenario = new Write(persistencia.equals("diario") ? diretorio : null, lote, tamanho, diretorios, threads);
+        try {
+            bancada.medir("lote_write", parametros, threads, cenario);
+        } finally {
+            cenario.fechar();
+        }
+    }
+
+    // Cada invocação cria 'tamanho' arquivos novos, distribuídos em rodízio pelos diretórios da thread
+    private static final class Write extends Bancada.Cenario {
+        private final Path diretorio;
+        private final boolean lote;
+        private final int tamanho;
+        private final int diretorios;
+        private final int threads;
+        private FileSystemImpl fileSystem;
+
+        // diretorio: onde criar a imagem e o diário, ou null para um sistema de arquivos em memória
+        Write(Path diretorio, boolean lote, int tamanho, int diretorios, int threads) {
+            this.diretorio = diretorio;
+            this.lote = lote;
+            this.tamanho = tamanho;
+            this.diretorios = diretorios;
+            this.threads = threads;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fechar();
+            if (diretorio == null) {
+                fileSystem = new FileSystemImpl(new MotorPermissoes(), 4096, TAMANHO_BLOCO, true);
+            } else {
+                Path imagem = Files.createTempDirectory(diretorio, "iteracao").resolve("fs.img");
+                fileSystem = new FileSystemImpl(new MotorPermissoes(), 4096, TAMANHO_BLOCO, true, imagem,
+                        Duration.ZERO);
+            }
+            for (int t = 0; t < threads; t++) {
+                for (int d = 0; d < diretorios; d++) {
+                    fileSystem.mkdir(caminhoDiretorio(t, d), ROOT_USER);
+                }
+            }
+        }
+
+        private static String caminhoDiretorio(int thread, int diretorio) {
+            return "/t" + thread + "/d" + diretorio;
+        }
+
+        @Override
+        void executar(int thread, long invocacao) throws Exception {
+            if (!lote) {
+                for (int i = 0; i < tamanho; i++) {
+                    fileSystem.write(caminho(thread, invocacao, i), ROOT_USER, false, DADOS);
+                }
+                return;
+            }
+            List<Operacao> operacoes = new ArrayList<>(tamanho);
+            for (int i = 0; i < tamanho; i++) {
+                operacoes.add(Operacao.write(caminho(thread, invocacao, i), ROOT_USER, false, DADOS));
+            }
+            for (ResultadoOperacao resultado : fileSystem.submeter(operacoes)) {
+                resultado.verificar();
+            }
+        }
+
+        private String caminho(int thread, long invocacao, int i) {
+            return caminhoDiretorio(thread, i % diretorios) + "/" + invocacao + "_" + i;
+        }
+
+        void fechar() throws IOException {
+            if (fileSystem != null) {
+                fileSystem.close();
+                fileSystem = null;
+            }
+        }
+    }
+}
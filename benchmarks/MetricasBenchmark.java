@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import filesys.FileSystem;
+import filesys.MotorPermissoes;
+
+// Custo das métricas do proxy FileSystem em uma operação barata (read posicional de 64 bytes),
+// com e sem métricas, e bytes alocados por chamada em cada caso (medidos com o
+// com.sun.management.ThreadMXBean), para conferir que o registro não aloca.
+//
+// Uso: make bench BENCH=MetricasBenchmark [ARGS="..."]
+//   -p threads=1,4,8      números de threads
+//   -wi N / -i N / -r ms  iterações de aquecimento / medição e duração de cada uma
+//   -o arquivo.json       grava os resultados no formato JSON do JMH
+public class MetricasBenchmark {
+    private static final String ROOT_USER = "root";
+    private static final int ALOCACAO_CHAMADAS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int[] threads = { 1, 4, 8 };
+        int aquecimento = 2;
+        int medicao = 3;
+        long duracaoMs = 500;
+        Path saida = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    threads = Arrays.stream(args[++i].split("=", 2)[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "-wi":
+                    aquecimento = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    medicao = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    duracaoMs = Long.parseLong(args[++i]);
+                    break;
+                case "-o":
+                    saida = Path.of(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconhecido: " + args[i]);
+            }
+        }
+
+        Bancada bancada = new Bancada(aquecimento, medicao, duracaoMs);
+        for (int t : threads) {
+            for (boolean comMetricas : new boolean[] { false, true }) {
+                Map<String, String> parametros = new LinkedHashMap<>();
+                parametros.put("metricas", String.valueOf(comMetricas));
+                bancada.medir("metricas_read", parametros, t, new Read(comMetricas));
+            }
+        }
+        for (boolean comMetricas : new boolean[] { false, true }) {
+            System.err.printf("alocação por read com metricas=%s: %.1f bytes%n", comMetricas, alocacaoPorChamada(comMetricas));
+        }
+        if (saida != null) {
+            bancada.gravarJson(saida);
+            System.out.println("Resultados gravados em " + saida);
+        }
+    }
+
+    private static FileSystem novoFileSystem(boolean comMetricas) throws Exception {
+        FileSystem fileSystem = new FileSystem(new MotorPermissoes(), true);
+        fileSystem.write("/f", ROOT_USER, false, new byte[4096]);
+        if (comMetricas) {
+            fileSystem.habilitarMetricas();
+        }
+        return fileSystem;
+    }
+
+    private static double alocacaoPorChamada(boolean comMetricas) throws Exception {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        FileSystem fileSystem = novoFileSystem(comMetricas);
+        byte[] buffer = new byte[64];
+        // aquecimento, para medir o código já compilado
+        for (int i = 0; i < ALOCACAO_CHAMADAS; i++) {
+            fileSystem.read("/f", ROOT_USER, i & 63, buffer, 0, buffer.length);
+        }
+        long antes = mx.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < ALOCACAO_CHAMADAS; i++) {
+            fileSystem.read("/f", ROOT_USER, i & 63, buffer, 0, buffer.length);
+        }
+        return (double) (mx.getCurrentThreadAllocatedBytes() - antes) / ALOCACAO_CHAMADAS;
+    }
+
+    private static final class Read extends Bancada.Cenario {
+        private final boolean comMetricas;
+        private FileSystem fileSystem;
+        private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[64]);
+
+        Read(boolean comMetricas) {
+            this.comMetricas = comMetricas;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fileSystem = novoFileSystem(comMetricas);
+        }
+
+        @Override
+        void executar(int thread, long i) throws Exception {
+            byte[] buffer = buffers.get();
+            fileSystem.read("/f", ROOT_USER, i & 63, buffer, 0, buffer.length);
+        }
+    }
+}
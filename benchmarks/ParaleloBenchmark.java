@@ -0,0 +1,184 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+
+// rm -r, cp -r e ls -R de uma árvore larga (diretorios x arquivos arquivos de 64 bytes), feitos
+// por um usuário comum para que toda a subárvore tenha as permissões verificadas, comparando o
+// percurso sequencial (limiar 0) com o paralelo em ForkJoinPools de vários tamanhos.
+//   rm: verificação de escrita e liberação da subárvore, que devolve os blocos ao pool
+//   cp: verificação de leitura; a cópia em si custa O(filhos do topo) (cópia sob escrita)
+//   ls: montagem dos blocos do ls -R, impressos em um PrintStream descartado
+//
+// Uso: make bench BENCH=ParaleloBenchmark [ARGS="..."]
+//   -p paralelismo=1,2,4,8  tamanhos do ForkJoinPool
+//   -p limiar=128           limiares de paralelismo (0 = sequencial, medido uma vez)
+//   -p diretorios=256 / -p arquivos=256  forma da árvore
+//   -wi N / -i N / -r ms    iterações de aquecimento / medição e duração de cada uma
+//   -o arquivo.json         grava os resultados no formato JSON do JMH
+public class ParaleloBenchmark {
+    private static final String ROOT_USER = "root";
+    private static final String USUARIO = "maria";
+
+    public static void main(String[] args) throws Exception {
+        int[] paralelismos = { 1, 2, 4, 8 };
+        int[] limiares = { 128 };
+        int diretorios = 256;
+        int arquivos = 256;
+        int aquecimento = 2;
+        int medicao = 3;
+        long duracaoMs = 2000;
+        Path saida = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    String[] par = args[++i].split("=", 2);
+                    int[] valores = Arrays.stream(par[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    switch (par[0]) {
+                        case "paralelismo":
+                            paralelismos = valores;
+                            break;
+                        case "limiar":
+                            limiares = valores;
+                            break;
+                        case "diretorios":
+                            diretorios = valores[0];
+                            break;
+                        case "arquivos":
+                            arquivos = valores[0];
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Parâmetro desconhecido: " + par[0]);
+                    }
+                    break;
+                case "-wi":
+                    aquecimento = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    medicao = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    duracaoMs = Long.parseLong(args[++i]);
+                    break;
+                case "-o":
+                    saida = Path.of(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconhecido: " + args[i]);
+            }
+        }
+
+        System.err.println("Processadores disponíveis: " + Runtime.getRuntime().availableProcessors());
+        Bancada bancada = new Bancada(aquecimento, medicao, duracaoMs);
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (String operacao : new String[] { "rm", "cp", "ls" }) {
+                medir(bancada, operacao, 1, 0, diretorios, arquivos);
+                for (int limiar : limiares) {
+                    for (int p : paralelismos) {
+                        medir(bancada, operacao, p, limiar, diretorios, arquivos);
+                    }
+                }
+            }
+        } finally {
+            System.setOut(original);
+        }
+        if (saida != null) {
+            bancada.gravarJson(saida);
+            System.out.println("Resultados gravados em " + saida);
+        }
+    }
+
+    private static void medir(Bancada bancada, String operacao, int paralelismo, int limiar, int diretorios,
+            int arquivos) throws Exception {
+        Map<String, String> parametros = new LinkedHashMap<>();
+        parametros.put("operacao", operacao);
+        parametros.put("paralelismo", limiar > 0 ? String.valueOf(paralelismo) : "sequencial");
+        parametros.put("limiar", String.valueOf(limiar));
+        parametros.put("arvore", diretorios + "x" + arquivos);
+        ForkJoinPool pool = new ForkJoinPool(paralelismo);
+        try {
+            bancada.medir("paralelo_" + operacao, parametros, 1,
+                    new Percurso(operacao, pool, limiar, diretorios, arquivos));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static final class Percurso extends Bancada.Cenario {
+        private final String operacao;
+        private final ForkJoinPool pool;
+        private final int limiar;
+        private final int diretorios;
+        private final int arquivos;
+        private final byte[] dados = new byte[64];
+        private FileSystemImpl fileSystem;
+
+        Percurso(String operacao, ForkJoinPool pool, int limiar, int diretorios, int arquivos) {
+            this.operacao = operacao;
+            this.pool = pool;
+            this.limiar = limiar;
+            this.diretorios = diretorios;
+            this.arquivos = arquivos;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            fileSystem = new FileSystemImpl(new MotorPermissoes(), 4096, 64, true);
+            fileSystem.configurarParalelismo(pool, limiar);
+            fileSystem.chmod("/", ROOT_USER, USUARIO, "rwx");
+            criarArvore();
+        }
+
+        private void criarArvore() throws Exception {
+            for (int d = 0; d < diretorios; d++) {
+                String diretorio = "/arvore/d" + d;
+                fileSystem.mkdir(diretorio, ROOT_USER);
+                for (int a = 0; a < arquivos; a++) {
+                    fileSystem.write(diretorio + "/a" + a, ROOT_USER, false, dados);
+                }
+            }
+        }
+
+        // Cada invocação depende de antes(), que recria a árvore removida ou a cópia anterior
+        @Override
+        boolean porInvocacao() {
+            return true;
+        }
+
+        @Override
+        void antes(int thread, long invocacao) throws Exception {
+            if (invocacao == 0) {
+                return;
+            }
+            if (operacao.equals("rm")) {
+                criarArvore();
+            } else if (operacao.equals("cp")) {
+                fileSystem.rm("/copia", ROOT_USER, true);
+            }
+        }
+
+        @Override
+        void executar(int thread, long invocacao) throws Exception {
+            switch (operacao) {
+                case "rm":
+                    fileSystem.rm("/arvore", USUARIO, true);
+                    break;
+                case "cp":
+                    fileSystem.cp("/arvore", "/copia", USUARIO, true);
+                    break;
+                default:
+                    fileSystem.ls("/arvore", USUARIO, true);
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import exception.CaminhoJaExistenteException;
+import exception.PermissaoException;
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+
+// Compara as formas de avaliar as regras do arquivo users: a consulta que o FileSystemImpl faz
+// a cada operação, na tabela de permissões do nó (montada com as regras quando o nó é criado),
+// a descida na trie do MotorPermissoes.mascara() e uma varredura linear da lista de regras, que
+// interpreta "rwx" a cada consulta. Os padrões das regras incluem "*".
+//
+// A consulta à tabela do nó é medida por um read() de 0 bytes do dono do caminho, que também
+// resolve o caminho; o mesmo read() feito pelo root, que não consulta a tabela, dá o custo de
+// resolução a descontar.
+//
+// Uso: make bench BENCH=PermissoesBenchmark [ARGS="usuarios regras"]
+public class PermissoesBenchmark {
+    private static final int USUARIOS_PADRAO = 10_000;
+    private static final int REGRAS_PADRAO = 100_000;
+    private static final String ROOT_USER = "root";
+    private static final String[] PERMISSOES = { "r--", "rw-", "rwx", "--x", "---" };
+
+    // Regra na forma em que aparece no arquivo users
+    private static final class Regra {
+        final String usuario;
+        final String[] segmentos;
+        final String permissao;
+
+        Regra(String usuario, String padrao, String permissao) {
+            this.usuario = usuario;
+            this.segmentos = padrao.substring(1).split("/");
+            this.permissao = permissao;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : USUARIOS_PADRAO;
+        int regras = args.length > 1 ? Integer.parseInt(args[1]) : REGRAS_PADRAO;
+        Random random = new Random(42);
+
+        MotorPermissoes motor = new MotorPermissoes();
+        List<Regra> lista = new ArrayList<>(regras);
+        for (int i = 0; i < regras; i++) {
+            String usuario = "u" + random.nextInt(usuarios);
+            String padrao = caminhoAleatorio(random, true) + "/**";
+            String permissao = PERMISSOES[random.nextInt(PERMISSOES.length)];
+            motor.adicionarRegra(usuario, padrao, permissao);
+            lista.add(new Regra(usuario, padrao, permissao));
+        }
+
+        int consultas = 1 << 12;
+        String[] caminhos = new String[consultas];
+        String[] donos = new String[consultas];
+        for (int i = 0; i < consultas; i++) {
+            caminhos[i] = caminhoAleatorio(random, false) + "/arquivo";
+            donos[i] = "u" + random.nextInt(usuarios);
+        }
+
+        // Cada nó ganha a sua tabela de permissões ao ser criado, como em qualquer uso do sistema
+        FileSystemImpl fileSystem = new FileSystemImpl(motor);
+        for (String caminho : caminhos) {
+            try {
+                fileSystem.mkdir(caminho.substring(0, caminho.lastIndexOf('/')), ROOT_USER);
+            } catch (CaminhoJaExistenteException e) {
+                // diretório de uma consulta anterior
+            }
+            try {
+                fileSystem.touch(caminho, ROOT_USER);
+            } catch (CaminhoJaExistenteException e) {
+                // consulta repetida
+            }
+        }
+
+        // Confere que as três avaliações concordam antes de medir; o sistema de arquivos só
+        // verifica leitura e escrita
+        byte[] vazio = new byte[0];
+        List<Integer> legiveis = new ArrayList<>();
+        for (int i = 0; i < consultas; i++) {
+            String caminho = caminhos[i];
+            String dono = donos[i];
+            int esperada = varreduraLinear(lista, caminho, dono);
+            int doNo = (permite(() -> fileSystem.read(caminho, dono, 0, vazio, 0, 0)) ? MotorPermissoes.LEITURA : 0)
+                    | (permite(() -> fileSystem.write(caminho, dono, true, vazio)) ? MotorPermissoes.ESCRITA : 0);
+            if (motor.mascara(caminho, dono) != esperada
+                    || doNo != (esperada & (MotorPermissoes.LEITURA | MotorPermissoes.ESCRITA))) {
+                throw new IllegalStateException("Resultados divergentes para " + dono + " em " + caminho);
+            }
+            if ((doNo & MotorPermissoes.LEITURA) != 0) {
+                legiveis.add(i);
+            }
+        }
+        int[] comLeitura = legiveis.stream().mapToInt(Integer::intValue).toArray();
+        if (comLeitura.length == 0) {
+            throw new IllegalStateException("Nenhuma consulta com permissão de leitura");
+        }
+
+        System.out.printf("usuarios=%d regras=%d%n", usuarios, regras);
+        medir("tabela do nó (read)", 2_000_000, i -> {
+            int c = comLeitura[i % comLeitura.length];
+            return fileSystem.read(caminhos[c], donos[c], 0, vazio, 0, 0);
+        });
+        medir("read como root", 2_000_000, i -> {
+            int c = comLeitura[i % comLeitura.length];
+            return fileSystem.read(caminhos[c], ROOT_USER, 0, vazio, 0, 0);
+        });
+        medir("trie", 2_000_000, i -> motor.mascara(caminhos[i & (consultas - 1)], donos[i & (consultas - 1)]));
+        medir("varredura linear", 2_000, i -> varreduraLinear(lista, caminhos[i & (consultas - 1)], donos[i & (consultas - 1)]));
+    }
+
+    // Caminho de 1 a 4 segmentos; nos padrões de regras, um segmento em cada cinco é "*"
+    private static String caminhoAleatorio(Random random, boolean curingas) {
+        StringBuilder sb = new StringBuilder();
+        int profundidade = 1 + random.nextInt(4);
+        for (int d = 0; d < profundidade; d++) {
+            if (curingas && random.nextInt(5) == 0) {
+                sb.append("/*");
+            } else {
+                sb.append("/d").append(random.nextInt(20));
+            }
+        }
+        return sb.toString();
+    }
+
+    // A regra ancorada mais fundo prevalece; na mesma profundidade, a que tem um segmento literal
+    // onde a outra tem "*", no primeiro segmento em que diferem; padrões iguais ficam com a última.
+    private static int varreduraLinear(List<Regra> regras, String caminho, String usuario) {
+        String[] segmentos = caminho.substring(1).split("/");
+        Regra melhor = null;
+        for (Regra regra : regras) {
+            if (!regra.usuario.equals(usuario) || regra.segmentos.length - 1 > segmentos.length) {
+                continue;
+            }
+            int profundidade = regra.segmentos.length - 1;
+            boolean casa = true;
+            for (int i = 0; i < profundidade && casa; i++) {
+                casa = regra.segmentos[i].equals("*") || regra.segmentos[i].equals(segmentos[i]);
+            }
+            if (casa && (melhor == null || prevalece(regra, melhor))) {
+                melhor = regra;
+            }
+        }
+        return melhor == null ? 0 : MotorPermissoes.compilar(melhor.permissao);
+    }
+
+    private static boolean prevalece(Regra nova, Regra atual) {
+        if (nova.segmentos.length != atual.segmentos.length) {
+            return nova.segmentos.length > atual.segmentos.length;
+        }
+        for (int i = 0; i < nova.segmentos.length; i++) {
+            if (!nova.segmentos[i].equals(atual.segmentos[i])) {
+                return atual.segmentos[i].equals("*");
+            }
+        }
+        return true;
+    }
+
+    private interface Chamada {
+        void executar() throws Exception;
+    }
+
+    private static boolean permite(Chamada chamada) throws Exception {
+        try {
+            chamada.executar();
+            return true;
+        } catch (PermissaoException e) {
+            return false;
+        }
+    }
+
+    private interface Operacao {
+        int executar(int i) throws Exception;
+    }
+
+    private static void medir(String nome, int iteracoes, Operacao operacao) throws Exception {
+        int sorvedouro = 0;
+        for (int i = 0; i < iteracoes / 10; i++) {
+            sorvedouro += operacao.executar(i);
+        }
+        long inicio = System.nanoTime();
+        for (int i = 0; i < iteracoes; i++) {
+            sorvedouro += operacao.executar(i);
+        }
+        long decorrido = System.nanoTime() - inicio;
+        System.out.printf("%-20s %12.1f ns/consulta  (%d)%n", nome, (double) decorrido / iteracoes, sorvedouro & 1);
+    }
+}
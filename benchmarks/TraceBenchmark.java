@@ -0,0 +1,139 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import filesys.ChamadaTrace;
+import filesys.EscritorTrace;
+import filesys.FileSystem;
+import filesys.GeradorTrace;
+import filesys.LeitorTrace;
+import filesys.RelatorioReproducao;
+import filesys.ReprodutorTrace;
+
+// Reproduz um trace de chamadas de IFileSystem, gravado com "make run ... TRACE=arquivo" ou
+// gerado aqui mesmo por GeradorTrace, contra um FileSystem novo (concorrente com mais de uma
+// thread) para cada combinação de threads e velocidade, e mostra vazão, percentis de latência,
+// divergências em relação aos resultados gravados e as métricas por método.
+//
+// Sem -t, é gerado um trace sintético com as regras e usuários do arquivo de usuários; -g grava
+// esse trace para reproduções posteriores. A saída de ls é descartada durante a reprodução.
+//
+// Uso: make bench BENCH=TraceBenchmark [ARGS="..."]
+//   -t trace                trace a reproduzir
+//   -g trace                grava o trace gerado
+//   -u users/users          arquivo de usuários (regras de permissão e usuários sorteados)
+//   -p threads=1,4          threads da reprodução
+//   -m maxima,original      velocidade: maxima, original ou um fator (2 = o dobro do ritmo gravado)
+//   -p chamadas=100000      chamadas geradas, além das que criam a árvore inicial
+//   -p usuarios=0           usuários sorteados, os primeiros do arquivo (0 para todos)
+//   -p largura=8 -p profundidade=2 -p arquivos=16   forma da árvore inicial
+//   -p tamanho=4096         bytes de cada write e read gerados
+//   -p taxa=10000           chamadas por segundo geradas, em média
+//   -p semente=42
+//   -mix read=40,write=15,listar=10,...   pesos dos métodos gerados
+public class TraceBenchmark {
+    public static void main(String[] args) throws Exception {
+        Path trace = null;
+        Path gravar = null;
+        Path arquivoUsuarios = Path.of("users/users");
+        int[] threads = { 1, 4 };
+        String[] velocidades = { "maxima", "original" };
+        Map<String, Long> parametros = new LinkedHashMap<>();
+        parametros.put("chamadas", 100_000L);
+        parametros.put("usuarios", 0L);
+        parametros.put("largura", 8L);
+        parametros.put("profundidade", 2L);
+        parametros.put("arquivos", 16L);
+        parametros.put("tamanho", 4096L);
+        parametros.put("taxa", 10_000L);
+        parametros.put("semente", 42L);
+        Map<ChamadaTrace.Tipo, Integer> mistura = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-t":
+                    trace = Path.of(args[++i]);
+                    break;
+                case "-g":
+                    gravar = Path.of(args[++i]);
+                    break;
+                case "-u":
+                    arquivoUsuarios = Path.of(args[++i]);
+                    break;
+                case "-m":
+                    velocidades = args[++i].split(",");
+                    break;
+                case "-p":
+                    String[] par = args[++i].split("=", 2);
+                    if (par[0].equals("threads")) {
+                        threads = Arrays.stream(par[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    } else if (parametros.containsKey(par[0])) {
+                        parametros.put(par[0], Long.parseLong(par[1]));
+                    } else {
+                        throw new IllegalArgumentException("Parâmetro desconhecido: " + par[0]);
+                    }
+                    break;
+                case "-mix":
+                    mistura = new LinkedHashMap<>();
+                    for (String peso : args[++i].split(",")) {
+                        String[] nomeValor = peso.split("=", 2);
+                        mistura.put(ChamadaTrace.Tipo.porNome(nomeValor[0]), Integer.parseInt(nomeValor[1]));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconhecido: " + args[i]);
+            }
+        }
+
+        GeradorTrace gerador = GeradorTrace.deArquivoUsuarios(arquivoUsuarios,
+                parametros.get("usuarios").intValue(), parametros.get("semente"));
+        List<ChamadaTrace> chamadas;
+        if (trace != null) {
+            chamadas = LeitorTrace.ler(trace);
+            System.err.println("Trace " + trace + ": " + chamadas.size() + " chamadas");
+        } else {
+            gerador.configurarArvore(parametros.get("largura").intValue(), parametros.get("profundidade").intValue(),
+                    parametros.get("arquivos").intValue());
+            gerador.configurarTamanho(parametros.get("tamanho").intValue());
+            gerador.configurarTaxa(parametros.get("taxa"));
+            if (mistura != null) {
+                gerador.configurarMistura(mistura);
+            }
+            chamadas = gerador.gerar(parametros.get("chamadas").intValue());
+            System.err.println("Trace gerado: " + chamadas.size() + " chamadas, " + parametros);
+            if (gravar != null) {
+                try (EscritorTrace escritor = new EscritorTrace(Files.newOutputStream(gravar))) {
+                    for (ChamadaTrace chamada : chamadas) {
+                        escritor.escrever(chamada);
+                    }
+                }
+                System.err.println("Trace gravado em " + gravar + " (" + Files.size(gravar) + " bytes)");
+            }
+        }
+
+        PrintStream saida = System.out;
+        for (String velocidade : velocidades) {
+            double fator = velocidade.equals("maxima") ? 0 : velocidade.equals("original") ? 1 : Double.parseDouble(velocidade);
+            for (int n : threads) {
+                FileSystem alvo = new FileSystem(gerador.motor(), n > 1);
+                // ls imprime cada listagem
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                RelatorioReproducao relatorio;
+                try {
+                    relatorio = ReprodutorTrace.reproduzir(chamadas, alvo, n, fator);
+                } finally {
+                    System.setOut(saida);
+                }
+                saida.println("velocidade=" + velocidade + " threads=" + n);
+                saida.println(relatorio);
+                saida.println();
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+
+// Cópia de um arquivo grande entre o sistema de arquivos e um arquivo real, comparando
+// transferTo/transferFrom com a ida e volta por um byte[] (read/write em pedaços de PEDACO bytes,
+// como faria quem chama sem os métodos de canal).
+//   saida:   arquivo do sistema de arquivos -> FileChannel de um arquivo real, ou de /dev/null
+//            (destino=nulo), que isola o custo das cópias e chamadas de sistema do custo do disco
+//   entrada: FileChannel de um arquivo real -> arquivo novo do sistema de arquivos (o anterior é
+//            removido antes de cada invocação, fora da medição)
+// Cada invocação copia o arquivo inteiro; além de ns/op é mostrada a vazão em MiB/s.
+//
+// O conteúdo fica no heap: arquivos de vários GB pedem um heap maior que o tamanho, por exemplo
+// make bench BENCH=TransferenciaBenchmark JAVA="java -Xmx6g" ARGS="-p tamanho=4096".
+//
+// Uso: make bench BENCH=TransferenciaBenchmark [ARGS="..."]
+//   -p tamanho=64,256      tamanhos do arquivo, em MiB
+//   -p bloco=4096,65536    tamanhos de bloco do sistema de arquivos
+//   -p destino=arquivo,nulo  destinos da saida
+//   -wi N / -i N / -r ms   iterações de aquecimento / medição e duração de cada uma
+//   -d diretorio           onde criar os arquivos reais (padrão: diretório temporário do sistema)
+//   -o arquivo.json        grava os resultados no formato JSON do JMH
+public class TransferenciaBenchmark {
+    private static final String ROOT_USER = "root";
+    private static final int MIB = 1 << 20;
+    private static final int PEDACO = MIB;
+
+    public static void main(String[] args) throws Exception {
+        int[] tamanhos = { 64, 256 };
+        int[] blocos = { 4096, 65536 };
+        String[] destinos = { "arquivo", "nulo" };
+        int aquecimento = 1;
+        int medicao = 3;
+        long duracaoMs = 2000;
+        Path base = Path.of(System.getProperty("java.io.tmpdir"));
+        Path saida = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    String[] par = args[++i].split("=", 2);
+                    if (par[0].equals("destino")) {
+                        destinos = par[1].split(",");
+                        break;
+                    }
+                    int[] valores = Arrays.stream(par[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    switch (par[0]) {
+                        case "tamanho":
+                            tamanhos = valores;
+                            break;
+                        case "bloco":
+                            blocos = valores;
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Parâmetro desconhecido: " + par[0]);
+                    }
+                    break;
+                case "-wi":
+                    aquecimento = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    medicao = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    duracaoMs = Long.parseLong(args[++i]);
+                    break;
+                case "-d":
+                    base = Path.of(args[++i]);
+                    break;
+                case "-o":
+                    saida = Path.of(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento desconhecido: " + args[i]);
+            }
+        }
+
+        Bancada bancada = new Bancada(aquecimento, medicao, duracaoMs);
+        Path diretorio = Files.createTempDirectory(base, "transferencia-benchmark");
+        try {
+            for (int tamanho : tamanhos) {
+                Path real = diretorio.resolve("origem");
+                gerar(real, (long) tamanho * MIB);
+                for (int bloco : blocos) {
+                    for (String destino : destinos) {
+                        Path caminhoDestino = destino.equals("nulo") ? Path.of("/dev/null") : diretorio.resolve("destino");
+                        for (boolean canal : new boolean[] { false, true }) {
+                            medir(bancada, real, caminhoDestino, "saida", destino, canal, tamanho, bloco);
+                        }
+                    }
+                    for (boolean canal : new boolean[] { false, true }) {
+                        medir(bancada, real, null, "entrada", null, canal, tamanho, bloco);
+                    }
+                }
+                Files.delete(real);
+            }
+        } finally {
+            try (Stream<Path> arquivos = Files.walk(diretorio)) {
+                arquivos.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        if (saida != null) {
+            bancada.gravarJson(saida);
+            System.out.println("Resultados gravados em " + saida);
+        }
+    }
+
+    private static void gerar(Path real, long tamanho) throws IOException {
+        byte[] pedaco = new byte[PEDACO];
+        Random random = new Random(42);
+        try (FileChannel canal = FileChannel.open(real, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long pos = 0; pos < tamanho; pos += pedaco.length) {
+                random.nextBytes(pedaco);
+                ByteBuffer buffer = ByteBuffer.wrap(pedaco, 0, (int) Math.min(pedaco.length, tamanho - pos));
+                while (buffer.hasRemaining()) {
+                    canal.write(buffer);
+                }
+            }
+        }
+    }
+
+    private static void medir(Bancada bancada, Path real, Path caminhoDestino, String sentido, String destino,
+            boolean canal, int tamanho, int bloco) throws Exception {
+        Map<String, String> parametros = new LinkedHashMap<>();
+        parametros.put("sentido", sentido);
+        if (destino != null) {
+            parametros.put("destino", destino);
+        }
+        parametros.put("modo", canal ? (sentido.equals("saida") ? "transferTo" : "transferFrom") : "read_write");
+        parametros.put("tamanho", tamanho + "MiB");
+        parametros.put("bloco", String.valueOf(bloco));
+        Copia cenario = new Copia(caminhoDestino, real, sentido.equals("saida"), canal, bloco);
+        try {
+            Bancada.Resultado resultado = bancada.medir("transferencia_" + sentido, parametros, 1, cenario);
+            System.err.printf("    %.1f MiB/s%n", resultado.operacoesPorSegundo * tamanho);
+        } finally {
+            // libera o heap para o próximo cenário
+            cenario.fileSystem = null;
+        }
+    }
+
+    private static final class Copia extends Bancada.Cenario {
+        private final Path destino;
+        private final Path real;
+        private final boolean saida;
+        private final boolean canal;
+        private final int bloco;
+        private final byte[] pedaco = new byte[PEDACO];
+        private FileSystemImpl fileSystem;
+
+        Copia(Path destino, Path real, boolean saida, boolean canal, int bloco) {
+            this.destino = destino;
+            this.real = real;
+            this.saida = saida;
+            this.canal = canal;
+            this.bloco = bloco;
+        }
+
+        @Override
+        void preparar() throws Exception {
+            // o anterior é descartado antes de carregar o novo, para caber no heap
+            fileSystem = null;
+            fileSystem = new FileSystemImpl(new MotorPermissoes(), 4096, bloco);
+            try (FileChannel origem = FileChannel.open(real, StandardOpenOption.READ)) {
+                fileSystem.transferFrom(origem, "/arquivo", ROOT_USER);
+            }
+        }
+
+        // Cada invocação copia o arquivo inteiro
+        @Override
+        boolean porInvocacao() {
+            return true;
+        }
+
+        @Override
+        void antes(int thread, long invocacao) throws Exception {
+            if (!saida) {
+                fileSystem.rm("/arquivo", ROOT_USER, false);
+            }
+        }
+
+        @Override
+        void executar(int thread, long invocacao) throws Exception {
+            if (saida) {
+                try (FileChannel destinoCanal = FileChannel.open(destino, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    if (canal) {
+                        fileSystem.transferTo("/arquivo", ROOT_USER, destinoCanal);
+                    } else {
+                        lerEscrever(destinoCanal);
+                    }
+                }
+                return;
+            }
+            try (FileChannel origem = FileChannel.open(real, StandardOpenOption.READ)) {
+                if (canal) {
+                    fileSystem.transferFrom(origem, "/arquivo", ROOT_USER);
+                } else {
+                    escreverLido(origem);
+                }
+            }
+        }
+
+        private void lerEscrever(FileChannel destinoCanal) throws Exception {
+            long posicao = 0;
+            int n;
+            while ((n = fileSystem.read("/arquivo", ROOT_USER, posicao, pedaco, 0, pedaco.length)) > 0) {
+                ByteBuffer buffer = ByteBuffer.wrap(pedaco, 0, n);
+                while (buffer.hasRemaining()) {
+                    destinoCanal.write(buffer);
+                }
+                posicao += n;
+            }
+        }
+
+        private void escreverLido(FileChannel origem) throws Exception {
+            boolean anexar = false;
+            while (true) {
+                int lidos = 0;
+                int n = 0;
+                while (lidos < pedaco.length && (n = origem.read(ByteBuffer.wrap(pedaco, lidos, pedaco.length - lidos))) >= 0) {
+                    lidos += n;
+                }
+                if (lidos > 0 || !anexar) {
+                    fileSystem.write("/arquivo", ROOT_USER, anexar, Arrays.copyOf(pedaco, lidos));
+                    anexar = true;
+                }
+                if (n < 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
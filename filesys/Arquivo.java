@@ -0,0 +1,317 @@
+package filesys;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Set;
+
+// O conteúdo do arquivo é uma lista de blocos de tamanho fixo obtidos do PoolBlocos.
+// Anexar custa O(tamanho do buffer) e uma cópia (cp) compartilha os blocos da origem;
+// um bloco compartilhado (por cópias ou pela deduplicação) só é copiado quando uma das
+// partes precisa alterá-lo.
+// Um arquivo lido da imagem em disco (ver ImagemDisco) começa sem blocos: o conteúdo é lido
+// direto do trecho mapeado até a primeira alteração, quando é copiado para blocos.
+// No modo concorrente, quem chama estes métodos deve segurar a trava do arquivo.
+final class Arquivo extends No {
+    // Tamanho do buffer direto que anexar(ReadableByteChannel) aloca a cada chamada. Um canal de
+    // arquivo ou socket só lê em memória fora do heap: lendo direto para os blocos, o JDK usaria
+    // um buffer temporário e faria uma chamada de sistema por bloco; aqui é uma por pedaço de
+    // TAMANHO_TRANSITO.
+    private static final int TAMANHO_TRANSITO = 256 * 1024;
+    // Quantos blocos gravar() entrega ao canal em cada escrita agrupada
+    private static final int BLOCOS_POR_ESCRITA = 64;
+
+    private final PoolBlocos pool;
+    private final ArrayList<Bloco> blocos = new ArrayList<>();
+    private long tamanho;
+    // Conteúdo mapeado da imagem (somente leitura), ou null se o conteúdo está nos blocos
+    private ByteBuffer mapeado;
+    // Referência a um trecho da imagem igual ao conteúdo atual (offset e geração do arquivo da
+    // imagem, ver ImagemDisco), ou -1; evita regravar o conteúdo de arquivos não alterados a cada checkpoint
+    private long dadosImagem = -1;
+    // Incrementada a cada alteração do conteúdo
+    private long versao;
+
+    Arquivo(TabelaPermissoes permissoes, PoolBlocos pool, boolean concorrente) {
+        super(permissoes, concorrente);
+        this.pool = pool;
+    }
+
+    Arquivo(TabelaPermissoes permissoes, PoolBlocos pool, boolean concorrente, ByteBuffer mapeado, long dadosImagem) {
+        this(permissoes, pool, concorrente);
+        this.mapeado = mapeado;
+        this.tamanho = mapeado.capacity();
+        this.dadosImagem = dadosImagem;
+    }
+
+    @Override
+    boolean isDiretorio() {
+        return false;
+    }
+
+    long tamanho() {
+        return tamanho;
+    }
+
+    long dadosImagem() {
+        return dadosImagem;
+    }
+
+    long versao() {
+        return versao;
+    }
+
+    // Registra que o conteúdo da 'versao' foi gravado na imagem no trecho 'referencia'.
+    void gravadoEm(long referencia, long versao) {
+        if (this.versao == versao) {
+            dadosImagem = referencia;
+        }
+    }
+
+    void anexar(byte[] dados, int offset, int tamanhoDados) {
+        if (mapeado != null) {
+            desmapear();
+        }
+        versao++;
+        dadosImagem = -1;
+        boolean vazio = tamanho == 0;
+        int tamanhoBloco = pool.tamanhoBloco();
+        while (tamanhoDados > 0) {
+            int usados = (int) (tamanho % tamanhoBloco);
+            Bloco ultimo;
+            if (usados == 0) {
+                ultimo = pool.alocar();
+                blocos.add(ultimo);
+            } else {
+                ultimo = pool.exclusivo(blocos.get(blocos.size() - 1), usados);
+                blocos.set(blocos.size() - 1, ultimo);
+            }
+            int n = Math.min(tamanhoDados, tamanhoBloco - usados);
+            System.arraycopy(dados, offset, ultimo.dados, usados, n);
+            offset += n;
+            tamanhoDados -= n;
+            tamanho += n;
+            if (usados + n == tamanhoBloco) {
+                // um bloco cheio não é mais alterado
+                blocos.set(blocos.size() - 1, pool.internar(ultimo, tamanhoBloco));
+            }
+        }
+        // O último bloco incompleto só é deduplicado quando o conteúdo inteiro foi escrito de uma
+        // vez, para que uma sequência de anexos não calcule o hash do mesmo bloco a cada chamada
+        int resto = (int) (tamanho % tamanhoBloco);
+        if (vazio && resto != 0) {
+            blocos.set(blocos.size() - 1, pool.internar(blocos.get(blocos.size() - 1), resto));
+        }
+    }
+
+    // Anexa tudo o que 'origem' tiver até o fim e retorna quantos bytes foram lidos. O canal é
+    // lido em pedaços de TAMANHO_TRANSITO para um buffer direto desta chamada, copiados para os
+    // blocos. Com um canal não bloqueante, espera ativamente enquanto não há dados.
+    long anexar(ReadableByteChannel origem) throws IOException {
+        if (mapeado != null) {
+            desmapear();
+        }
+        versao++;
+        dadosImagem = -1;
+        boolean vazio = tamanho == 0;
+        int tamanhoBloco = pool.tamanhoBloco();
+        ByteBuffer transito = ByteBuffer.allocateDirect(TAMANHO_TRANSITO);
+        long total = 0;
+        int n;
+        while (true) {
+            transito.clear();
+            if ((n = origem.read(transito)) < 0) {
+                break;
+            }
+            transito.flip();
+            total += n;
+            while (transito.hasRemaining()) {
+                int usados = (int) (tamanho % tamanhoBloco);
+                Bloco ultimo;
+                if (usados == 0) {
+                    ultimo = pool.alocar();
+                    blocos.add(ultimo);
+                } else {
+                    ultimo = pool.exclusivo(blocos.get(blocos.size() - 1), usados);
+                    blocos.set(blocos.size() - 1, ultimo);
+                }
+                int k = Math.min(transito.remaining(), tamanhoBloco - usados);
+                transito.get(ultimo.dados, usados, k);
+                tamanho += k;
+                if (usados + k == tamanhoBloco) {
+                    blocos.set(blocos.size() - 1, pool.internar(ultimo, tamanhoBloco));
+                }
+            }
+        }
+        // como em anexar(byte[]), o último bloco incompleto só é deduplicado em um arquivo escrito de uma vez
+        int resto = (int) (tamanho % tamanhoBloco);
+        if (vazio && resto != 0) {
+            blocos.set(blocos.size() - 1, pool.internar(blocos.get(blocos.size() - 1), resto));
+        }
+        return total;
+    }
+
+    // Grava o conteúdo inteiro em 'destino' e retorna quantos bytes foram gravados. O trecho
+    // mapeado da imagem vai direto para o canal; os blocos são envolvidos em ByteBuffers e
+    // entregues em grupos de BLOCOS_POR_ESCRITA, em uma escrita agrupada quando o canal é um
+    // GatheringByteChannel. Não há cópia aqui, mas os blocos estão no heap: um canal de arquivo
+    // ou socket ainda os copia para um buffer direto temporário do JDK antes da chamada de
+    // sistema. Com um canal não bloqueante, espera ativamente enquanto ele está cheio.
+    long gravar(WritableByteChannel destino) throws IOException {
+        if (mapeado != null) {
+            ByteBuffer origem = mapeado.slice(0, (int) tamanho);
+            while (origem.hasRemaining()) {
+                destino.write(origem);
+            }
+            return tamanho;
+        }
+        int tamanhoBloco = pool.tamanhoBloco();
+        ByteBuffer[] grupo = new ByteBuffer[Math.min(BLOCOS_POR_ESCRITA, blocos.size())];
+        for (int i = 0; i < blocos.size(); i += grupo.length) {
+            int quantos = Math.min(grupo.length, blocos.size() - i);
+            for (int j = 0; j < quantos; j++) {
+                int n = (int) Math.min(tamanhoBloco, tamanho - (long) (i + j) * tamanhoBloco);
+                grupo[j] = ByteBuffer.wrap(blocos.get(i + j).dados, 0, n);
+            }
+            esvaziar(grupo, quantos, destino);
+        }
+        return tamanho;
+    }
+
+    private static void esvaziar(ByteBuffer[] grupo, int quantos, WritableByteChannel destino)
+            throws IOException {
+        if (destino instanceof GatheringByteChannel) {
+            GatheringByteChannel agrupado = (GatheringByteChannel) destino;
+            int inicio = 0;
+            while (inicio < quantos) {
+                if (!grupo[inicio].hasRemaining()) {
+                    inicio++;
+                } else {
+                    agrupado.write(grupo, inicio, quantos - inicio);
+                }
+            }
+            return;
+        }
+        for (int j = 0; j < quantos; j++) {
+            while (grupo[j].hasRemaining()) {
+                destino.write(grupo[j]);
+            }
+        }
+    }
+
+    // Copia até 'tamanhoDestino' bytes a partir de 'posicao' e retorna quantos foram lidos.
+    int ler(long posicao, byte[] destino, int offset, int tamanhoDestino) {
+        if (posicao >= tamanho) {
+            return 0;
+        }
+        int total = (int) Math.min(tamanhoDestino, tamanho - posicao);
+        if (mapeado != null) {
+            mapeado.get((int) posicao, destino, offset, total);
+            return total;
+        }
+        int tamanhoBloco = pool.tamanhoBloco();
+        int lidos = 0;
+        while (lidos < total) {
+            Bloco bloco = blocos.get((int) (posicao / tamanhoBloco));
+            int inicio = (int) (posicao % tamanhoBloco);
+            int n = Math.min(total - lidos, tamanhoBloco - inicio);
+            System.arraycopy(bloco.dados, inicio, destino, offset + lidos, n);
+            lidos += n;
+            posicao += n;
+        }
+        return lidos;
+    }
+
+    // Copia para 'destino' a partir de 'posicao', até o espaço restante no buffer.
+    int ler(long posicao, ByteBuffer destino) {
+        if (posicao >= tamanho) {
+            return 0;
+        }
+        int total = (int) Math.min(destino.remaining(), tamanho - posicao);
+        if (mapeado != null) {
+            destino.put(destino.position(), mapeado, (int) posicao, total);
+            destino.position(destino.position() + total);
+            return total;
+        }
+        int tamanhoBloco = pool.tamanhoBloco();
+        int lidos = 0;
+        while (lidos < total) {
+            Bloco bloco = blocos.get((int) (posicao / tamanhoBloco));
+            int inicio = (int) (posicao % tamanhoBloco);
+            int n = Math.min(total - lidos, tamanhoBloco - inicio);
+            destino.put(bloco.dados, inicio, n);
+            lidos += n;
+            posicao += n;
+        }
+        return lidos;
+    }
+
+    // Devolve os blocos ao pool e deixa o arquivo vazio.
+    void truncar() {
+        for (Bloco bloco : blocos) {
+            pool.liberar(bloco);
+        }
+        blocos.clear();
+        tamanho = 0;
+        mapeado = null;
+        versao++;
+        dadosImagem = -1;
+    }
+
+    // Copia o conteúdo mapeado para blocos, antes da primeira alteração.
+    private void desmapear() {
+        ByteBuffer origem = mapeado;
+        long total = tamanho;
+        mapeado = null;
+        tamanho = 0;
+        byte[] pedaco = new byte[pool.tamanhoBloco()];
+        for (long pos = 0; pos < total; pos += pedaco.length) {
+            int n = (int) Math.min(pedaco.length, total - pos);
+            origem.get((int) pos, pedaco, 0, n);
+            anexar(pedaco, 0, n);
+        }
+    }
+
+    // Bytes do conteúdo guardados em blocos ou trechos mapeados ainda não presentes em 'vistos',
+    // que passa a incluí-los; blocos compartilhados entre arquivos são contados uma única vez.
+    long contarFisicos(Set<Object> vistos) {
+        if (mapeado != null) {
+            return vistos.add(mapeado) ? tamanho : 0;
+        }
+        int tamanhoBloco = pool.tamanhoBloco();
+        long total = 0;
+        for (int i = 0; i < blocos.size(); i++) {
+            if (vistos.add(blocos.get(i))) {
+                total += Math.min(tamanhoBloco, tamanho - (long) i * tamanhoBloco);
+            }
+        }
+        return total;
+    }
+
+    // Passa a ter o conteúdo de 'origem', compartilhando os blocos; o conteúdo anterior é descartado.
+    void substituirPor(Arquivo origem) {
+        truncar();
+        for (Bloco bloco : origem.blocos) {
+            pool.reter(bloco);
+            blocos.add(bloco);
+        }
+        tamanho = origem.tamanho;
+        mapeado = origem.mapeado;
+    }
+
+    // Cópia que compartilha os blocos com este arquivo.
+    Arquivo compartilhar(TabelaPermissoes permissoes) {
+        Arquivo copia = new Arquivo(permissoes, pool, concorrente());
+        for (Bloco bloco : blocos) {
+            pool.reter(bloco);
+            copia.blocos.add(bloco);
+        }
+        copia.tamanho = tamanho;
+        copia.mapeado = mapeado;
+        copia.dadosImagem = dadosImagem;
+        return copia;
+    }
+}
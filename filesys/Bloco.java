@@ -0,0 +1,36 @@
+package filesys;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Bloco de tamanho fixo com o conteúdo de um arquivo.
+// Um mesmo bloco pode ser compartilhado por várias cópias de um arquivo (cp) e, com a
+// deduplicação ligada, por arquivos diferentes com o mesmo conteúdo (ver DeduplicadorBlocos);
+// referencias conta quantos arquivos apontam para ele.
+final class Bloco {
+    final byte[] dados;
+    // Atômico porque cópias do mesmo bloco podem pertencer a arquivos travados por threads diferentes
+    final AtomicInteger referencias = new AtomicInteger(1);
+    // Chave no DeduplicadorBlocos enquanto o bloco está nele (e não pode ser alterado), ou null
+    volatile DeduplicadorBlocos.Chave chave;
+
+    Bloco(byte[] dados) {
+        this.dados = dados;
+    }
+
+    boolean compartilhado() {
+        return referencias.get() > 1;
+    }
+
+    // Incrementa as referências, a não ser que o bloco já tenha sido liberado.
+    boolean reterSeVivo() {
+        while (true) {
+            int atual = referencias.get();
+            if (atual == 0) {
+                return false;
+            }
+            if (referencias.compareAndSet(atual, atual + 1)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package filesys;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Cache de resolução caminho -> nó, com tamanho limitado e descarte aproximadamente LRU.
+// Evita percorrer a árvore a partir da raiz a cada operação: resolver
+// "/a/b/c/d/e" custa uma consulta de hash quando o caminho já está no cache.
+//
+// O cache é dividido em segmentos. A consulta não trava: cada segmento guarda as entradas em um
+// ConcurrentHashMap, e uma entrada consultada só é marcada como usada. Guardar trava o segmento,
+// que tem a sua fila de descarte: a entrada mais antiga sai, a não ser que tenha sido usada desde
+// a última vez que chegou ao início da fila, quando volta para o fim (algoritmo do relógio).
+//
+// Invalidar uma subárvore não percorre as entradas. Cada entrada guarda a época em que a
+// resolução começou, e invalidar(caminho) carimba o caminho com uma época nova (ver carimbos):
+// uma entrada vale enquanto nenhum prefixo do seu caminho tiver um carimbo posterior a ela. A
+// consulta confere os prefixos, O(profundidade), e descarta a entrada vencida.
+final class CacheCaminhos {
+    private final Segmento[] segmentos;
+    private final int capacidade;
+
+    // Incrementada a cada invalidação, antes dos carimbos. Uma entrada da época atual ainda não
+    // passou por nenhuma invalidação e vale sem conferir os carimbos.
+    private final AtomicLong epoca = new AtomicLong();
+    // Época da última invalidação de "/" (todas as entradas) e de cada caminho, indexada pelo hash
+    // do caminho. Caminhos com o mesmo índice dividem o carimbo: uma colisão só faz uma entrada
+    // válida ser resolvida de novo.
+    private final AtomicLong piso = new AtomicLong();
+    private final AtomicLongArray carimbos;
+    // O mesmo, para as entradas guardadas por guardarExclusivo (ver revogarExclusivos)
+    private final AtomicLong pisoExclusivo = new AtomicLong();
+    private final AtomicLongArray carimbosExclusivos;
+
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+
+    private static final class Entrada {
+        final String caminho;
+        final No no;
+        final long epoca;
+        final boolean exclusiva;
+        volatile boolean usada;
+
+        Entrada(String caminho, No no, long epoca, boolean exclusiva) {
+            this.caminho = caminho;
+            this.no = no;
+            this.epoca = epoca;
+            this.exclusiva = exclusiva;
+        }
+    }
+
+    private static final class Segmento {
+        final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+        // Ordem de chegada; pode ter entradas já substituídas ou removidas do mapa, descartadas
+        // quando chegam ao início. Alterada apenas com a trava do segmento.
+        final ArrayDeque<Entrada> fila = new ArrayDeque<>();
+        final int capacidade;
+
+        Segmento(int capacidade) {
+            this.capacidade = capacidade;
+        }
+    }
+
+    CacheCaminhos(int capacidade) {
+        this(capacidade, 1);
+    }
+
+    CacheCaminhos(int capacidade, int quantidadeSegmentos) {
+        if (capacidade <= 0) {
+            throw new IllegalArgumentException("Capacidade do cache deve ser positiva: " + capacidade);
+        }
+        this.capacidade = capacidade;
+        quantidadeSegmentos = Math.max(1, Math.min(quantidadeSegmentos, capacidade));
+        this.segmentos = new Segmento[quantidadeSegmentos];
+        for (int i = 0; i < quantidadeSegmentos; i++) {
+            segmentos[i] = new Segmento(Math.max(1, capacidade / quantidadeSegmentos));
+        }
+        // quatro carimbos por entrada, em potência de 2, entre 256 e 2^20
+        int tamanho = Integer.highestOneBit(Math.min(Math.max(capacidade, 64), 1 << 18) * 4 - 1) << 1;
+        this.carimbos = new AtomicLongArray(tamanho);
+        this.carimbosExclusivos = new AtomicLongArray(tamanho);
+    }
+
+    private Segmento segmento(String caminho) {
+        return segmentos[(caminho.hashCode() & 0x7fffffff) % segmentos.length];
+    }
+
+    private int indice(int hash) {
+        return (hash ^ (hash >>> 16)) & (carimbos.length() - 1);
+    }
+
+    No obter(String caminho) {
+        return obter(caminho, false);
+    }
+
+    // Como obter, mas só retorna nós guardados por guardarExclusivo e não revogados desde então.
+    No obterExclusivo(String caminho) {
+        return obter(caminho, true);
+    }
+
+    private No obter(String caminho, boolean exclusiva) {
+        Segmento segmento = segmento(caminho);
+        Entrada entrada = segmento.entradas.get(caminho);
+        if (entrada != null && !valida(entrada)) {
+            segmento.entradas.remove(caminho, entrada);
+            entrada = null;
+        }
+        if (entrada == null || (exclusiva && !exclusivaValida(entrada))) {
+            falhas.increment();
+            return null;
+        }
+        if (!entrada.usada) {
+            entrada.usada = true;
+        }
+        acertos.increment();
+        return entrada.no;
+    }
+
+    // Se nenhum prefixo do caminho da entrada foi invalidado depois da época dela
+    private boolean valida(Entrada entrada) {
+        if (entrada.epoca == epoca.get()) {
+            return true;
+        }
+        return entrada.epoca >= piso.get() && semCarimbo(entrada.caminho, carimbos, entrada.epoca);
+    }
+
+    private boolean exclusivaValida(Entrada entrada) {
+        if (!entrada.exclusiva) {
+            return false;
+        }
+        if (entrada.epoca == epoca.get()) {
+            return true;
+        }
+        return entrada.epoca >= pisoExclusivo.get() && semCarimbo(entrada.caminho, carimbosExclusivos, entrada.epoca);
+    }
+
+    // Confere os prefixos "/a", "/a/b", ... de 'caminho', com o hash de cada um calculado
+    // incrementalmente, como String.hashCode.
+    private boolean semCarimbo(String caminho, AtomicLongArray carimbos, long inicio) {
+        int hash = 0;
+        int tamanho = caminho.length();
+        for (int i = 0; i < tamanho; i++) {
+            char c = caminho.charAt(i);
+            if (c == '/' && i > 0 && carimbos.get(indice(hash)) > inicio) {
+                return false;
+            }
+            hash = 31 * hash + c;
+        }
+        return carimbos.get(indice(hash)) <= inicio;
+    }
+
+    int capacidade() {
+        return capacidade;
+    }
+
+    long epoca() {
+        return epoca.get();
+    }
+
+    // Guarda a entrada se não houve invalidação do caminho desde 'epocaInicial' (ver epoca()).
+    void guardar(String caminho, No no, long epocaInicial) {
+        guardar(caminho, no, epocaInicial, false);
+    }
+
+    // Guarda um nó resolvido para ser alterado: nenhum nó do caminho era compartilhado. A entrada
+    // deixa de servir para obterExclusivo quando revogarExclusivos alcança o caminho.
+    void guardarExclusivo(String caminho, No no, long epocaInicial) {
+        guardar(caminho, no, epocaInicial, true);
+    }
+
+    private void guardar(String caminho, No no, long epocaInicial, boolean exclusiva) {
+        Entrada nova = new Entrada(caminho, no, epocaInicial, exclusiva);
+        if (!valida(nova) || (exclusiva && !exclusivaValida(nova))) {
+            return;
+        }
+        Segmento segmento = segmento(caminho);
+        synchronized (segmento) {
+            segmento.entradas.put(caminho, nova);
+            segmento.fila.addLast(nova);
+            while (segmento.fila.size() > segmento.capacidade) {
+                Entrada antiga = segmento.fila.pollFirst();
+                if (segmento.entradas.get(antiga.caminho) != antiga) {
+                    continue;
+                }
+                if (antiga.usada) {
+                    antiga.usada = false;
+                    segmento.fila.addLast(antiga);
+                } else {
+                    segmento.entradas.remove(antiga.caminho, antiga);
+                }
+            }
+        }
+    }
+
+    // Invalida o caminho e toda a subárvore abaixo dele, em O(1).
+    // Deve ser chamado sempre que um nó deixa de estar naquele caminho (rm, mv)
+    // ou é substituído por outro (cp e mv sobrescrevendo o destino), depois da alteração.
+    void invalidar(String caminho) {
+        carimbar(caminho, piso, carimbos);
+    }
+
+    // Faz as entradas exclusivas do caminho e da subárvore abaixo dele deixarem de valer para
+    // obterExclusivo, sem invalidá-las para obter. Deve ser chamado depois de um nó passar a ser
+    // compartilhado (cp, snapshot).
+    void revogarExclusivos(String caminho) {
+        carimbar(caminho, pisoExclusivo, carimbosExclusivos);
+    }
+
+    private void carimbar(String caminho, AtomicLong piso, AtomicLongArray carimbos) {
+        long nova = epoca.incrementAndGet();
+        if (caminho.equals("/")) {
+            piso.accumulateAndGet(nova, Math::max);
+        } else {
+            carimbos.accumulateAndGet(indice(caminho.hashCode()), nova, Math::max);
+        }
+    }
+
+    void limpar() {
+        invalidar("/");
+        for (Segmento segmento : segmentos) {
+            synchronized (segmento) {
+                segmento.entradas.clear();
+                segmento.fila.clear();
+            }
+        }
+    }
+
+    int tamanho() {
+        int total = 0;
+        for (Segmento segmento : segmentos) {
+            total += segmento.entradas.size();
+        }
+        return total;
+    }
+
+    long getAcertos() {
+        return acertos.sum();
+    }
+
+    long getFalhas() {
+        return falhas.sum();
+    }
+}
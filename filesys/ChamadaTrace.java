@@ -0,0 +1,239 @@
+package filesys;
+
+import java.util.Iterator;
+
+import exception.CaminhoJaExistenteException;
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+
+// Uma chamada de IFileSystem gravada em um trace (ver GravadorTrace, EscritorTrace e LeitorTrace):
+// método, argumentos, instante de início em ns desde o início da gravação, duração e resultado.
+//
+// Os argumentos de cada método ficam nos mesmos campos:
+//   chmod:        caminho, argumento = usuarioAlvo, permissao
+//   mkdir, touch, abrirLeitura: caminho
+//   rm, ls, cp:   opcao = recursivo (cp: argumento = destino)
+//   write:        opcao = anexar, tamanho = bytes escritos, dados = conteúdo (ou null, se a gravação
+//                 não guardou o conteúdo: a reprodução escreve zeros)
+//   read:         offset e tamanho = len; opcao = true para read(caminho, usuario, buffer) com um
+//                 buffer de tamanho bytes
+//   mv:           caminho = caminhoAntigo, argumento = caminhoNovo
+//   listar:       opcao = recursivo, tamanho = tamanhoPagina e argumento = continuacao; tamanho 0
+//                 para a versão com Iterator, que a reprodução percorre até o fim
+public final class ChamadaTrace {
+    // Na ordem das constantes de MetricasFileSystem
+    public enum Tipo {
+        CHMOD("chmod"), MKDIR("mkdir"), RM("rm"), TOUCH("touch"), WRITE("write"), READ("read"),
+        ABRIR_LEITURA("abrirLeitura"), MV("mv"), LS("ls"), LISTAR("listar"), CP("cp");
+
+        private static final Tipo[] TODOS = values();
+
+        private final String nome;
+
+        Tipo(String nome) {
+            this.nome = nome;
+        }
+
+        // Nome do método em IFileSystem
+        public String getNome() {
+            return nome;
+        }
+
+        public static Tipo porNome(String nome) {
+            for (Tipo tipo : TODOS) {
+                if (tipo.nome.equals(nome)) {
+                    return tipo;
+                }
+            }
+            throw new IllegalArgumentException("Método desconhecido: " + nome);
+        }
+
+        static Tipo deCodigo(int codigo) {
+            if (codigo < 0 || codigo >= TODOS.length) {
+                throw new IllegalArgumentException("Método inválido no trace: " + codigo);
+            }
+            return TODOS[codigo];
+        }
+    }
+
+    public enum Resultado {
+        SUCESSO, CAMINHO_NAO_ENCONTRADO, CAMINHO_JA_EXISTENTE, PERMISSAO, OUTRO_ERRO;
+
+        private static final Resultado[] TODOS = values();
+
+        public static Resultado de(Exception e) {
+            if (e == null) {
+                return SUCESSO;
+            }
+            if (e instanceof CaminhoNaoEncontradoException) {
+                return CAMINHO_NAO_ENCONTRADO;
+            }
+            if (e instanceof CaminhoJaExistenteException) {
+                return CAMINHO_JA_EXISTENTE;
+            }
+            if (e instanceof PermissaoException) {
+                return PERMISSAO;
+            }
+            return OUTRO_ERRO;
+        }
+
+        static Resultado deCodigo(int codigo) {
+            if (codigo < 0 || codigo >= TODOS.length) {
+                throw new IllegalArgumentException("Resultado inválido no trace: " + codigo);
+            }
+            return TODOS[codigo];
+        }
+    }
+
+    private final Tipo tipo;
+    private final long instante;
+    private final long duracao;
+    private final String usuario;
+    private final String caminho;
+    private final String argumento;
+    private final String permissao;
+    private final boolean opcao;
+    private final long offset;
+    private final int tamanho;
+    private final byte[] dados;
+    private final Resultado resultado;
+
+    ChamadaTrace(Tipo tipo, long instante, long duracao, String usuario, String caminho, String argumento,
+            String permissao, boolean opcao, long offset, int tamanho, byte[] dados, Resultado resultado) {
+        this.tipo = tipo;
+        this.instante = instante;
+        this.duracao = duracao;
+        this.usuario = usuario;
+        this.caminho = caminho;
+        this.argumento = argumento;
+        this.permissao = permissao;
+        this.opcao = opcao;
+        this.offset = offset;
+        this.tamanho = tamanho;
+        this.dados = dados;
+        this.resultado = resultado;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    // Em ns desde o início da gravação
+    public long getInstante() {
+        return instante;
+    }
+
+    public long getDuracao() {
+        return duracao;
+    }
+
+    public String getUsuario() {
+        return usuario;
+    }
+
+    public String getCaminho() {
+        return caminho;
+    }
+
+    public String getArgumento() {
+        return argumento;
+    }
+
+    public String getPermissao() {
+        return permissao;
+    }
+
+    public boolean getOpcao() {
+        return opcao;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getTamanho() {
+        return tamanho;
+    }
+
+    // Conteúdo escrito por write, ou null se não foi gravado
+    public byte[] getDados() {
+        return dados;
+    }
+
+    public Resultado getResultado() {
+        return resultado;
+    }
+
+    // Repete a chamada em fileSystem. 'area' é usada pelas leituras posicionais e deve ter ao
+    // menos tamanho bytes. Devolve os bytes lidos ou escritos.
+    long executar(IFileSystem fileSystem, byte[] area)
+            throws CaminhoNaoEncontradoException, CaminhoJaExistenteException, PermissaoException {
+        switch (tipo) {
+            case CHMOD:
+                fileSystem.chmod(caminho, usuario, argumento, permissao);
+                return 0;
+            case MKDIR:
+                fileSystem.mkdir(caminho, usuario);
+                return 0;
+            case RM:
+                fileSystem.rm(caminho, usuario, opcao);
+                return 0;
+            case TOUCH:
+                fileSystem.touch(caminho, usuario);
+                return 0;
+            case WRITE:
+                fileSystem.write(caminho, usuario, opcao, dados != null ? dados : new byte[tamanho]);
+                return tamanho;
+            case READ:
+                if (opcao) {
+                    fileSystem.read(caminho, usuario, new byte[tamanho]);
+                    return tamanho;
+                }
+                return Math.max(0, fileSystem.read(caminho, usuario, offset, area, 0, tamanho));
+            case ABRIR_LEITURA:
+                fileSystem.abrirLeitura(caminho, usuario).close();
+                return 0;
+            case MV:
+                fileSystem.mv(caminho, argumento, usuario);
+                return 0;
+            case LS:
+                fileSystem.ls(caminho, usuario, opcao);
+                return 0;
+            case LISTAR:
+                if (tamanho > 0) {
+                    fileSystem.listar(caminho, usuario, opcao, tamanho, argumento);
+                    return 0;
+                }
+                Iterator<EntradaListagem> it = fileSystem.listar(caminho, usuario, opcao);
+                while (it.hasNext()) {
+                    it.next();
+                }
+                return 0;
+            case CP:
+                fileSystem.cp(caminho, argumento, usuario, opcao);
+                return 0;
+            default:
+                throw new IllegalStateException("Método sem reprodução: " + tipo);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(instante).append(' ').append(tipo.nome).append(' ').append(usuario).append(' ').append(caminho);
+        if (argumento != null) {
+            sb.append(' ').append(argumento);
+        }
+        if (permissao != null) {
+            sb.append(' ').append(permissao);
+        }
+        sb.append(" opcao=").append(opcao);
+        if (offset != 0) {
+            sb.append(" offset=").append(offset);
+        }
+        if (tamanho != 0) {
+            sb.append(" tamanho=").append(tamanho);
+        }
+        return sb.append(" -> ").append(resultado).toString();
+    }
+}
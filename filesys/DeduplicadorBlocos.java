@@ -0,0 +1,104 @@
+package filesys;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+// Tabela de blocos por conteúdo usada pelo PoolBlocos quando a deduplicação está ligada:
+// um bloco com o mesmo conteúdo (e a mesma quantidade de bytes usados) de um bloco da tabela
+// é trocado por uma referência a ele. Um bloco na tabela não é alterado no lugar; o arquivo
+// que precisar anexar ao seu último bloco o retira da tabela (se for o único a usá-lo) ou o copia.
+//
+// A tabela não tem trava própria: buscar, retirar e soltar um bloco são feitos com operações
+// atômicas do ConcurrentHashMap sobre a chave, e um bloco cujas referências chegaram a zero
+// não é mais retido (Bloco.reterSeVivo), mesmo que ainda esteja na tabela por um instante.
+final class DeduplicadorBlocos {
+    // Conteúdo de um bloco: o hash é CRC32C dos bytes usados, e a igualdade compara os bytes
+    static final class Chave {
+        private final byte[] dados;
+        private final int usados;
+        private final int hash;
+
+        Chave(byte[] dados, int usados) {
+            this.dados = dados;
+            this.usados = usados;
+            CRC32C crc = new CRC32C();
+            crc.update(dados, 0, usados);
+            this.hash = (int) crc.getValue() ^ usados;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Chave)) {
+                return false;
+            }
+            Chave outra = (Chave) o;
+            return hash == outra.hash && usados == outra.usados
+                    && Arrays.equals(dados, 0, usados, outra.dados, 0, usados);
+        }
+    }
+
+    private final Map<Chave, Bloco> blocos = new ConcurrentHashMap<>();
+
+    // Retorna o bloco da tabela com o mesmo conteúdo, já retido, ou o próprio bloco, que passa
+    // a estar na tabela. O bloco deve ser novo, usado apenas por quem chama.
+    Bloco internar(Bloco bloco, int usados) {
+        Chave chave = new Chave(bloco.dados, usados);
+        Bloco[] resultado = new Bloco[1];
+        while (resultado[0] == null) {
+            // reter dentro do compute o torna atômico com retirarExclusivo()
+            blocos.compute(chave, (k, existente) -> {
+                if (existente == null) {
+                    bloco.chave = k;
+                    resultado[0] = bloco;
+                    return bloco;
+                }
+                if (existente.reterSeVivo()) {
+                    resultado[0] = existente;
+                    return existente;
+                }
+                // liberado, mas ainda não removido: a chave na tabela aponta para dados que vão
+                // voltar ao pool, então a entrada é retirada em vez de reaproveitada
+                return null;
+            });
+        }
+        return resultado[0];
+    }
+
+    // Retira o bloco da tabela se quem chama é o único a usá-lo; retorna false se ele é compartilhado.
+    boolean retirarExclusivo(Bloco bloco) {
+        Chave chave = bloco.chave;
+        boolean[] retirado = new boolean[1];
+        blocos.computeIfPresent(chave, (k, existente) -> {
+            if (existente == bloco && bloco.referencias.get() == 1) {
+                retirado[0] = true;
+                return null;
+            }
+            return existente;
+        });
+        if (retirado[0]) {
+            bloco.chave = null;
+        }
+        return retirado[0];
+    }
+
+    // Chamado quando as referências de um bloco da tabela chegam a zero
+    void remover(Bloco bloco) {
+        Chave chave = bloco.chave;
+        if (chave != null) {
+            // se outro bloco já ocupou a chave, ele fica
+            blocos.remove(chave, bloco);
+            bloco.chave = null;
+        }
+    }
+
+    int tamanho() {
+        return blocos.size();
+    }
+}
@@ -0,0 +1,518 @@
+package filesys;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// Diário (write-ahead log) das operações que alteram a árvore, usado pelo FileSystemImpl
+// junto com a ImagemDisco: cada operação confirmada está no diário ou no último checkpoint.
+//
+// registrar() apenas acrescenta o registro ao lote em memória; uma thread escritora grava o
+// lote e faz um único force() para todos os registros acumulados enquanto o force() anterior
+// estava em andamento (group commit). Com latência maior que zero, a escritora ainda espera
+// até esse tempo por mais registros antes de gravar, trocando latência por menos force().
+// aguardar() bloqueia quem registrou até o seu registro estar em disco.
+//
+// Formato: int MAGICO, int VERSAO e registros {int tamanho, long lsn, int crc, dados}, com
+//   dados: byte tipo, byte n, n x (int tamanho, texto em UTF-8), byte opcao, int tamanho, bytes
+// lsn cresce de um em um e não recomeça depois de um checkpoint.
+//
+// Segmentos: o diário em uso é sempre o arquivo passado a abrir(). No checkpoint, rotacionar()
+// o renomeia para "<diario>.<lsn>", com lsn o último registro dele, e cria um diário vazio no
+// lugar; os registros seguintes vão para o novo arquivo enquanto a imagem é gravada, e
+// descartarAte() apaga os segmentos incluídos no checkpoint. Ao abrir, os segmentos que
+// restaram de uma queda são lidos em ordem, antes do diário em uso. A leitura para no primeiro
+// registro incompleto, com crc inválido ou fora de sequência (gravação interrompida por uma
+// queda), e o restante, inclusive dos arquivos seguintes, é descartado.
+final class Diario implements Closeable {
+    static final byte MKDIR = 1;
+    static final byte TOUCH = 2;
+    static final byte WRITE = 3;
+    static final byte RM = 4;
+    static final byte MV = 5;
+    static final byte CP = 6;
+    static final byte CHMOD = 7;
+
+    private static final int MAGICO = 0x46534a31; // "FSJ1"
+    // 2: tamanho dos textos em int, e não em short
+    private static final int VERSAO = 2;
+    private static final int CABECALHO = 8;
+    private static final int CABECALHO_REGISTRO = 16;
+    // Lote a partir do qual a escritora grava sem esperar o fim da latência
+    private static final int LOTE_MAXIMO = 1 << 20;
+
+    // Registro lido do diário, reaplicado pelo FileSystemImpl ao abrir
+    static final class Registro {
+        final byte tipo;
+        final String[] textos;
+        final boolean opcao;
+        final byte[] dados;
+
+        Registro(byte tipo, String[] textos, boolean opcao, byte[] dados) {
+            this.tipo = tipo;
+            this.textos = textos;
+            this.opcao = opcao;
+            this.dados = dados;
+        }
+    }
+
+    @FunctionalInterface
+    interface Aplicador {
+        void aplicar(Registro registro);
+    }
+
+    private final Path caminho;
+    // Usado apenas pela escritora, que também o troca ao passar para o novo segmento
+    private FileChannel canal;
+    private final long latenciaNanos;
+    private final ReentrantLock trava = new ReentrantLock();
+    // sinalizada quando há registros para gravar ou o diário é fechado
+    private final Condition pendentes = trava.newCondition();
+    // sinalizada quando um lote chega ao disco
+    private final Condition gravados = trava.newCondition();
+    private final Thread escritora;
+
+    // Protegidos por trava
+    private ByteBuffer lote = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer reserva = ByteBuffer.allocate(64 * 1024);
+    private long ultimoLsn;
+    private long lsnEmGravacao;
+    private long lsnDuravel;
+    private long posicao;
+    private long forcados;
+    private IOException falha;
+    private boolean fechado;
+    // Diário vazio criado por rotacionar(), até a escritora passar para ele; os primeiros
+    // 'corte' bytes do lote ainda vão para o segmento anterior
+    private FileChannel canalNovo;
+    private int corte;
+    // Segmento anterior, fechado por descartarAte()
+    private FileChannel canalAntigo;
+    // Último lsn antes do primeiro registro do diário em uso
+    private long inicioSegmento;
+
+    private Diario(Path caminho, FileChannel canal, long latenciaNanos, long lsn, long inicioSegmento, long posicao) {
+        this.caminho = caminho;
+        this.canal = canal;
+        this.inicioSegmento = inicioSegmento;
+        this.latenciaNanos = latenciaNanos;
+        this.ultimoLsn = lsn;
+        this.lsnEmGravacao = lsn;
+        this.lsnDuravel = lsn;
+        this.posicao = posicao;
+        this.escritora = new Thread(this::escrever, "diario");
+        this.escritora.setDaemon(true);
+        this.escritora.start();
+    }
+
+    // Abre (ou cria) o diário e reaplica, em ordem, os registros posteriores a 'lsnCheckpoint',
+    // dos segmentos deixados por uma queda e depois do diário em uso.
+    static Diario abrir(Path caminho, long latenciaNanos, long lsnCheckpoint, Aplicador aplicador) throws IOException {
+        Files.deleteIfExists(caminho.resolveSibling(caminho.getFileName() + ".novo"));
+        // lsn do registro anterior, carregado de um arquivo para o seguinte; -1 antes do primeiro
+        long[] lsnAnterior = { -1 };
+        boolean interrompido = false;
+        for (Map.Entry<Long, Path> segmento : segmentos(caminho).entrySet()) {
+            Path arquivo = segmento.getValue();
+            if (interrompido) {
+                Files.delete(arquivo);
+                continue;
+            }
+            long ultimo;
+            try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                verificarCabecalho(canal, arquivo);
+                long fim = reaplicar(canal, lsnCheckpoint, aplicador, lsnAnterior);
+                interrompido = fim < canal.size();
+                if (interrompido) {
+                    canal.truncate(fim);
+                    canal.force(true);
+                }
+                ultimo = fim > CABECALHO ? lsnAnterior[0] : -1;
+            }
+            if (ultimo <= lsnCheckpoint) {
+                Files.delete(arquivo);
+            } else if (ultimo != segmento.getKey()) {
+                // truncado: o nome volta a ser o lsn do último registro
+                Files.move(arquivo, caminho.resolveSibling(caminho.getFileName() + "." + ultimo),
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        long inicioSegmento = Math.max(lsnCheckpoint, lsnAnterior[0]);
+
+        FileChannel canal = FileChannel.open(caminho, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (canal.size() < CABECALHO) {
+                iniciar(canal);
+            } else {
+                verificarCabecalho(canal, caminho);
+            }
+            long fim = interrompido ? CABECALHO : reaplicar(canal, lsnCheckpoint, aplicador, lsnAnterior);
+            if (fim < canal.size()) {
+                canal.truncate(fim);
+                canal.force(true);
+            }
+            return new Diario(caminho, canal, latenciaNanos, Math.max(lsnCheckpoint, lsnAnterior[0]), inicioSegmento,
+                    fim);
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    // Segmentos "<caminho>.<lsn>" existentes, por lsn
+    private static TreeMap<Long, Path> segmentos(Path caminho) throws IOException {
+        TreeMap<Long, Path> segmentos = new TreeMap<>();
+        String prefixo = caminho.getFileName() + ".";
+        Path diretorio = caminho.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(diretorio, prefixo + "*")) {
+            for (Path arquivo : arquivos) {
+                String sufixo = arquivo.getFileName().toString().substring(prefixo.length());
+                if (!sufixo.isEmpty() && sufixo.chars().allMatch(Character::isDigit)) {
+                    segmentos.put(Long.parseLong(sufixo), arquivo);
+                }
+            }
+        }
+        return segmentos;
+    }
+
+    private static void iniciar(FileChannel canal) throws IOException {
+        canal.truncate(0);
+        canal.write(ByteBuffer.allocate(CABECALHO).putInt(MAGICO).putInt(VERSAO).flip(), 0);
+        canal.force(true);
+    }
+
+    private static void verificarCabecalho(FileChannel canal, Path arquivo) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO);
+        if (canal.size() < CABECALHO) {
+            throw new IOException("Diário truncado: " + arquivo);
+        }
+        lerTudo(canal, cabecalho, 0);
+        if (cabecalho.getInt(0) != MAGICO || cabecalho.getInt(4) != VERSAO) {
+            throw new IOException("Não é um diário de sistema de arquivos: " + arquivo);
+        }
+    }
+
+    // Retorna a posição depois do último registro válido; lsnAnterior[0] passa a ser o lsn dele.
+    private static long reaplicar(FileChannel canal, long lsnCheckpoint, Aplicador aplicador, long[] lsnAnterior)
+            throws IOException {
+        long pos = CABECALHO;
+        long tamanhoArquivo = canal.size();
+        ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO_REGISTRO);
+        while (pos + CABECALHO_REGISTRO <= tamanhoArquivo) {
+            cabecalho.clear();
+            lerTudo(canal, cabecalho, pos);
+            int tamanho = cabecalho.getInt(0);
+            long lsn = cabecalho.getLong(4);
+            int crc = cabecalho.getInt(12);
+            if (tamanho < 0 || pos + CABECALHO_REGISTRO + tamanho > tamanhoArquivo
+                    || (lsnAnterior[0] >= 0 && lsn != lsnAnterior[0] + 1)) {
+                break;
+            }
+            ByteBuffer dados = ByteBuffer.allocate(tamanho);
+            lerTudo(canal, dados, pos + CABECALHO_REGISTRO);
+            if (crc(dados.array()) != crc) {
+                break;
+            }
+            if (lsn > lsnCheckpoint) {
+                aplicador.aplicar(decodificar(dados.rewind()));
+            }
+            lsnAnterior[0] = lsn;
+            pos += CABECALHO_REGISTRO + tamanho;
+        }
+        return pos;
+    }
+
+    private static void lerTudo(FileChannel canal, ByteBuffer destino, long pos) throws IOException {
+        while (destino.hasRemaining()) {
+            int n = canal.read(destino, pos);
+            if (n < 0) {
+                throw new IOException("Fim inesperado do diário");
+            }
+            pos += n;
+        }
+    }
+
+    private static Registro decodificar(ByteBuffer dados) {
+        byte tipo = dados.get();
+        String[] textos = new String[dados.get()];
+        for (int i = 0; i < textos.length; i++) {
+            byte[] bytes = new byte[dados.getInt()];
+            dados.get(bytes);
+            textos[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        boolean opcao = dados.get() != 0;
+        byte[] conteudo = new byte[dados.getInt()];
+        dados.get(conteudo);
+        return new Registro(tipo, textos, opcao, conteudo);
+    }
+
+    private static int crc(byte[] dados) {
+        CRC32 crc = new CRC32();
+        crc.update(dados);
+        return (int) crc.getValue();
+    }
+
+    // Acrescenta o registro ao próximo lote e retorna o seu lsn, a ser passado para aguardar().
+    // Quem chama deve registrar na mesma ordem em que as operações foram aplicadas à árvore.
+    long registrar(byte tipo, boolean opcao, byte[] conteudo, String... textos) {
+        byte[][] codificados = new byte[textos.length][];
+        int tamanho = 1 + 1 + 1 + 4 + conteudo.length;
+        for (int i = 0; i < textos.length; i++) {
+            codificados[i] = textos[i].getBytes(StandardCharsets.UTF_8);
+            tamanho += 4 + codificados[i].length;
+        }
+        ByteBuffer dados = ByteBuffer.allocate(tamanho);
+        dados.put(tipo).put((byte) textos.length);
+        for (byte[] texto : codificados) {
+            dados.putInt(texto.length).put(texto);
+        }
+        dados.put((byte) (opcao ? 1 : 0)).putInt(conteudo.length).put(conteudo);
+        int crc = crc(dados.array());
+
+        trava.lock();
+        try {
+            if (falha != null) {
+                throw new UncheckedIOException("Falha ao gravar o diário", falha);
+            }
+            if (fechado) {
+                throw new IllegalStateException("Diário fechado");
+            }
+            if (lote.remaining() < CABECALHO_REGISTRO + tamanho) {
+                ByteBuffer maior = ByteBuffer.allocate(Math.max(lote.capacity() * 2, lote.position() + CABECALHO_REGISTRO + tamanho));
+                lote = maior.put(lote.flip());
+            }
+            long lsn = ++ultimoLsn;
+            lote.putInt(tamanho).putLong(lsn).putInt(crc).put(dados.array());
+            pendentes.signal();
+            return lsn;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Bloqueia até o registro 'lsn' estar em disco.
+    void aguardar(long lsn) {
+        trava.lock();
+        try {
+            while (lsnDuravel < lsn && falha == null) {
+                gravados.awaitUninterruptibly();
+            }
+            if (lsnDuravel < lsn) {
+                throw new UncheckedIOException("Falha ao gravar o diário", falha);
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    long ultimoLsn() {
+        trava.lock();
+        try {
+            return ultimoLsn;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Quantidade de force() feitos pela escritora
+    long forcados() {
+        trava.lock();
+        try {
+            return forcados;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Passa os registros seguintes para um novo diário e retorna o último lsn do anterior, que
+    // fica em "<diario>.<lsn>" até descartarAte(). Quem chama garante que os registros até esse
+    // lsn estão no checkpoint que vai gravar. Sem registros desde a última rotação, apenas
+    // retorna o último lsn. Uma rotação por vez (ver FileSystemImpl.sincronizar).
+    long rotacionar() throws IOException {
+        Path novo = caminho.resolveSibling(caminho.getFileName() + ".novo");
+        FileChannel canalCriado = FileChannel.open(novo, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            iniciar(canalCriado);
+            trava.lock();
+            try {
+                if (falha != null) {
+                    throw new IOException("Falha ao gravar o diário", falha);
+                }
+                if (ultimoLsn == inicioSegmento) {
+                    canalCriado.close();
+                    Files.delete(novo);
+                    return ultimoLsn;
+                }
+                // a escritora continua gravando no arquivo renomeado até passar para o novo
+                Files.move(caminho, caminho.resolveSibling(caminho.getFileName() + "." + ultimoLsn),
+                        StandardCopyOption.ATOMIC_MOVE);
+                Files.move(novo, caminho, StandardCopyOption.ATOMIC_MOVE);
+                canalNovo = canalCriado;
+                corte = lote.position();
+                inicioSegmento = ultimoLsn;
+                pendentes.signal();
+                return ultimoLsn;
+            } finally {
+                trava.unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (canalNovo != canalCriado) {
+                canalCriado.close();
+                Files.deleteIfExists(novo);
+            }
+            throw e;
+        }
+    }
+
+    // Apaga os segmentos com registros até 'lsn', já incluídos em um checkpoint.
+    void descartarAte(long lsn) throws IOException {
+        trava.lock();
+        try {
+            while (canalNovo != null && falha == null) {
+                gravados.awaitUninterruptibly();
+            }
+            if (canalAntigo != null) {
+                canalAntigo.close();
+                canalAntigo = null;
+            }
+        } finally {
+            trava.unlock();
+        }
+        for (Path segmento : segmentos(caminho).headMap(lsn, true).values()) {
+            Files.delete(segmento);
+        }
+    }
+
+    private void escrever() {
+        while (true) {
+            ByteBuffer paraGravar;
+            long ate;
+            long inicio;
+            FileChannel novo;
+            int ateCorte;
+            trava.lock();
+            try {
+                while (ultimoLsn == lsnEmGravacao && canalNovo == null && !fechado) {
+                    pendentes.awaitUninterruptibly();
+                }
+                if (ultimoLsn == lsnEmGravacao && canalNovo == null) {
+                    return;
+                }
+                long restante = latenciaNanos;
+                while (restante > 0 && !fechado && canalNovo == null && lote.position() < LOTE_MAXIMO) {
+                    try {
+                        restante = pendentes.awaitNanos(restante);
+                    } catch (InterruptedException e) {
+                        restante = 0;
+                    }
+                }
+                paraGravar = lote;
+                lote = reserva;
+                ate = ultimoLsn;
+                lsnEmGravacao = ate;
+                inicio = posicao;
+                novo = canalNovo;
+                ateCorte = corte;
+            } finally {
+                trava.unlock();
+            }
+
+            IOException erro = null;
+            long gravado = inicio;
+            try {
+                paraGravar.flip();
+                if (novo != null) {
+                    // o fim do segmento anterior vai para o disco antes do começo do novo
+                    gravado = gravar(canal, paraGravar.slice(0, ateCorte), inicio);
+                    paraGravar.position(ateCorte);
+                    canal.force(false);
+                    gravado = CABECALHO;
+                }
+                gravado = gravar(novo != null ? novo : canal, paraGravar, gravado);
+                (novo != null ? novo : canal).force(false);
+            } catch (IOException e) {
+                erro = e;
+            }
+
+            trava.lock();
+            try {
+                reserva = paraGravar.clear();
+                if (erro != null) {
+                    falha = erro;
+                } else {
+                    if (novo != null) {
+                        canalAntigo = canal;
+                        canal = novo;
+                        canalNovo = null;
+                    }
+                    posicao = gravado;
+                    lsnDuravel = ate;
+                    forcados++;
+                }
+                gravados.signalAll();
+                if (erro != null) {
+                    return;
+                }
+            } finally {
+                trava.unlock();
+            }
+        }
+    }
+
+    private static void fecharTodos(FileChannel... canais) throws IOException {
+        for (FileChannel c : canais) {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    private static long gravar(FileChannel canal, ByteBuffer dados, long pos) throws IOException {
+        while (dados.hasRemaining()) {
+            pos += canal.write(dados, pos);
+        }
+        return pos;
+    }
+
+    // Grava os registros pendentes e fecha o arquivo.
+    @Override
+    public void close() throws IOException {
+        trava.lock();
+        try {
+            fechado = true;
+            pendentes.signalAll();
+        } finally {
+            trava.unlock();
+        }
+        try {
+            escritora.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        trava.lock();
+        try {
+            fecharTodos(canal, canalNovo, canalAntigo);
+        } finally {
+            trava.unlock();
+        }
+        if (falha != null) {
+            throw falha;
+        }
+    }
+}
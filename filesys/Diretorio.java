@@ -0,0 +1,133 @@
+package filesys;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Um diretório lido da imagem em disco (ver ImagemDisco) só tem as suas entradas
+// carregadas no primeiro acesso a filhos().
+final class Diretorio extends No {
+    // Ordenados por nome, para que as listagens percorram os filhos sem copiá-los nem ordená-los e
+    // retomem uma página com tailMap(); concorrente, porque a resolução de caminhos e as listagens
+    // leem os filhos sem travar o diretório
+    private final NavigableMap<String, No> filhos = new ConcurrentSkipListMap<>();
+    // Mapeamento da imagem e offset da tabela de entradas ainda não carregada; imagem é null
+    // depois de carregar. Trocados juntos por realocar(), com a trava do objeto.
+    private volatile ImagemDisco.Mapeamento imagem;
+    private long tabela;
+    // Filhos que um cp (ou a clonagem de um diretório que os tinha) compartilhou sem aplicar as
+    // permissões dadas a quem copiou: nome -> permissões a somar às do filho quando ele for clonado
+    // ou alterado por este diretório (ver FileSystemImpl.descompartilhar). null se não houver.
+    // Alterado com a trava de escrita do diretório.
+    private volatile Map<String, TabelaPermissoes> pendentes;
+
+    Diretorio(TabelaPermissoes permissoes, boolean concorrente) {
+        this(permissoes, concorrente, null, -1);
+    }
+
+    Diretorio(TabelaPermissoes permissoes, boolean concorrente, ImagemDisco.Mapeamento imagem, long tabela) {
+        super(permissoes, concorrente);
+        this.imagem = imagem;
+        this.tabela = tabela;
+    }
+
+    NavigableMap<String, No> filhos() {
+        if (imagem != null) {
+            carregar();
+        }
+        return filhos;
+    }
+
+    No filho(String nome) {
+        return filhos().get(nome);
+    }
+
+    // Permissões ainda não aplicadas ao filho 'nome' (ver pendentes), ou null
+    TabelaPermissoes concessao(String nome) {
+        Map<String, TabelaPermissoes> atuais = pendentes;
+        return atuais != null ? atuais.get(nome) : null;
+    }
+
+    boolean temPendentes() {
+        return pendentes != null;
+    }
+
+    // Soma 'concessao' às permissões pendentes de todos os filhos atuais. Deve ser chamado com a
+    // trava de escrita; retorna true se o diretório não tinha pendentes.
+    boolean conceder(TabelaPermissoes concessao) {
+        boolean primeira = pendentes == null;
+        Map<String, TabelaPermissoes> novos = primeira ? new ConcurrentHashMap<>() : pendentes;
+        for (String nome : filhos().keySet()) {
+            novos.merge(nome, concessao, TabelaPermissoes::somar);
+        }
+        pendentes = novos;
+        return primeira;
+    }
+
+    // Copia os pendentes de 'original', cujos filhos este diretório (um clone) compartilha.
+    // Retorna true se havia algum.
+    boolean herdarPendentes(Diretorio original) {
+        Map<String, TabelaPermissoes> atuais = original.pendentes;
+        if (atuais == null) {
+            return false;
+        }
+        pendentes = new ConcurrentHashMap<>(atuais);
+        return true;
+    }
+
+    // Tira 'nome' dos pendentes, porque o filho recebeu as permissões ou deixou o diretório.
+    // Deve ser chamado com a trava de escrita; retorna true se não restou nenhum pendente.
+    boolean esquecer(String nome) {
+        Map<String, TabelaPermissoes> atuais = pendentes;
+        if (atuais == null || atuais.remove(nome) == null || !atuais.isEmpty()) {
+            return false;
+        }
+        pendentes = null;
+        return true;
+    }
+
+    // Descarta os pendentes de um diretório liberado; retorna true se havia algum.
+    boolean descartarPendentes() {
+        boolean havia = pendentes != null;
+        pendentes = null;
+        return havia;
+    }
+
+    // true enquanto a tabela de entradas não foi carregada da imagem
+    boolean pendente() {
+        return imagem != null;
+    }
+
+    // Mapeamento de onde as entradas ainda serão carregadas, ou null
+    ImagemDisco.Mapeamento mapeamentoPendente() {
+        return imagem;
+    }
+
+    // Offset da tabela de entradas em 'mapeamento' enquanto ela não foi carregada dele, ou -1.
+    synchronized long tabelaEm(ImagemDisco.Mapeamento mapeamento) {
+        return imagem != null && imagem == mapeamento ? tabela : -1;
+    }
+
+    // Passa a carregar as entradas de uma cópia da tabela em outro mapeamento (ver
+    // ImagemDisco.compactar); sem efeito se já foram carregadas.
+    synchronized void realocar(ImagemDisco.Mapeamento mapeamento, long tabela) {
+        if (imagem != null) {
+            this.tabela = tabela;
+            imagem = mapeamento;
+        }
+    }
+
+    private synchronized void carregar() {
+        ImagemDisco.Mapeamento pendente = imagem;
+        if (pendente != null) {
+            pendente.carregarEntradas(tabela, filhos);
+            imagem = null;
+        }
+    }
+
+    @Override
+    boolean isDiretorio() {
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+package filesys;
+
+// Uma entrada devolvida por IFileSystem.listar.
+// O tamanho é o número de bytes do arquivo (0 para diretórios) e as permissões são as
+// do usuário que fez a listagem, no formato "rwx".
+public final class EntradaListagem {
+    private final String caminho;
+    private final String nome;
+    private final boolean diretorio;
+    private final long tamanho;
+    private final String permissoes;
+
+    EntradaListagem(String caminho, String nome, boolean diretorio, long tamanho, String permissoes) {
+        this.caminho = caminho;
+        this.nome = nome;
+        this.diretorio = diretorio;
+        this.tamanho = tamanho;
+        this.permissoes = permissoes;
+    }
+
+    public String getCaminho() {
+        return caminho;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public boolean isDiretorio() {
+        return diretorio;
+    }
+
+    public long getTamanho() {
+        return tamanho;
+    }
+
+    public String getPermissoes() {
+        return permissoes;
+    }
+
+    @Override
+    public String toString() {
+        return permissoes + " " + tamanho + " " + caminho + (diretorio ? "/" : "");
+    }
+}
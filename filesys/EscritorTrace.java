@@ -0,0 +1,103 @@
+package filesys;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Grava chamadas de IFileSystem (ChamadaTrace) em um trace binário compacto, lido por LeitorTrace.
+//
+// Formato: int MAGICO, byte VERSAO e registros
+//   byte tipo, byte flags (bit 0 opcao, bit 1 dados presentes, bits 2-4 resultado),
+//   varlong instante (zigzag da diferença para o registro anterior), varlong duracao,
+//   4 x texto (usuario, caminho, argumento, permissao), varlong offset, varint tamanho,
+//   tamanho bytes de dados, se presentes
+// Os textos são números: 0 para null, 1 seguido de varint tamanho e UTF-8 para um texto novo, que
+// recebe o próximo índice do dicionário, e índice + 2 para um texto já gravado. Usuários e
+// caminhos se repetem muito em um trace, e a maioria dos registros ocupa poucos bytes.
+//
+// escrever() é sincronizado: o trace pode receber chamadas de várias threads, na ordem em que
+// elas terminaram (os instantes não são necessariamente crescentes).
+public final class EscritorTrace implements Closeable {
+    static final int MAGICO = 0x46535431; // "FST1"
+    static final int VERSAO = 1;
+
+    static final int OPCAO = 1;
+    static final int COM_DADOS = 2;
+    static final int DESLOCAMENTO_RESULTADO = 2;
+
+    private final DataOutputStream saida;
+    private final Map<String, Integer> dicionario = new HashMap<>();
+    private long ultimoInstante;
+    private long registros;
+
+    public EscritorTrace(OutputStream saida) throws IOException {
+        this.saida = new DataOutputStream(new BufferedOutputStream(saida, 64 * 1024));
+        this.saida.writeInt(MAGICO);
+        this.saida.writeByte(VERSAO);
+    }
+
+    public synchronized void escrever(ChamadaTrace chamada) throws IOException {
+        byte[] dados = chamada.getDados();
+        saida.writeByte(chamada.getTipo().ordinal());
+        saida.writeByte((chamada.getOpcao() ? OPCAO : 0) | (dados != null ? COM_DADOS : 0)
+                | chamada.getResultado().ordinal() << DESLOCAMENTO_RESULTADO);
+        long delta = chamada.getInstante() - ultimoInstante;
+        ultimoInstante = chamada.getInstante();
+        escreverVarlong((delta << 1) ^ (delta >> 63));
+        escreverVarlong(chamada.getDuracao());
+        escreverTexto(chamada.getUsuario());
+        escreverTexto(chamada.getCaminho());
+        escreverTexto(chamada.getArgumento());
+        escreverTexto(chamada.getPermissao());
+        escreverVarlong(chamada.getOffset());
+        escreverVarlong(chamada.getTamanho());
+        if (dados != null) {
+            saida.write(dados);
+        }
+        registros++;
+    }
+
+    public synchronized long registros() {
+        return registros;
+    }
+
+    public synchronized void flush() throws IOException {
+        saida.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        saida.close();
+    }
+
+    private void escreverTexto(String texto) throws IOException {
+        if (texto == null) {
+            saida.writeByte(0);
+            return;
+        }
+        Integer indice = dicionario.get(texto);
+        if (indice != null) {
+            escreverVarlong(indice + 2L);
+            return;
+        }
+        dicionario.put(texto, dicionario.size());
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        saida.writeByte(1);
+        escreverVarlong(bytes.length);
+        saida.write(bytes);
+    }
+
+    // 7 bits por byte, o bit mais alto indica que há mais bytes; valores negativos ocupam 10 bytes
+    private void escreverVarlong(long valor) throws IOException {
+        while ((valor & ~0x7FL) != 0) {
+            saida.writeByte((int) (valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        saida.writeByte((int) valor);
+    }
+}
@@ -0,0 +1,48 @@
+package filesys;
+
+// Ocupação do conteúdo dos arquivos, retornada por FileSystemImpl.estatisticasDados().
+public final class EstatisticasDados {
+    private final long bytesLogicos;
+    private final long bytesFisicos;
+    private final int blocosDeduplicados;
+    private final int blocosLivres;
+
+    EstatisticasDados(long bytesLogicos, long bytesFisicos, int blocosDeduplicados, int blocosLivres) {
+        this.bytesLogicos = bytesLogicos;
+        this.bytesFisicos = bytesFisicos;
+        this.blocosDeduplicados = blocosDeduplicados;
+        this.blocosLivres = blocosLivres;
+    }
+
+    // Soma dos tamanhos de todos os arquivos, como "du --apparent-size"
+    public long getBytesLogicos() {
+        return bytesLogicos;
+    }
+
+    // Bytes de conteúdo distinto guardados: cada bloco (ou trecho mapeado da imagem) conta uma
+    // única vez, mesmo que seja compartilhado por cópias ou pela deduplicação
+    public long getBytesFisicos() {
+        return bytesFisicos;
+    }
+
+    // Blocos na tabela de deduplicação (0 sem deduplicação)
+    public int getBlocosDeduplicados() {
+        return blocosDeduplicados;
+    }
+
+    // Blocos devolvidos ao pool (rm, sobrescrita) e ainda não reaproveitados
+    public int getBlocosLivres() {
+        return blocosLivres;
+    }
+
+    // Bytes lógicos que não ocupam espaço próprio
+    public long getBytesEconomizados() {
+        return bytesLogicos - bytesFisicos;
+    }
+
+    @Override
+    public String toString() {
+        return "logicos=" + bytesLogicos + " fisicos=" + bytesFisicos + " economizados=" + getBytesEconomizados()
+                + " blocosDeduplicados=" + blocosDeduplicados + " blocosLivres=" + blocosLivres;
+    }
+}
@@ -1,67 +1,343 @@
 package filesys;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 import exception.CaminhoJaExistenteException;
 import exception.CaminhoNaoEncontradoException;
 import exception.PermissaoException;
 
 // Essa classe deve servir apenas como proxy para o FileSystemImpl
-final public class FileSystem implements IFileSystem {
+//
+// Métricas: depois de habilitarMetricas(), cada chamada a um método de IFileSystem é medida
+// (ver MetricasFileSystem). Sem métricas, o custo é apenas a leitura de um campo volatile.
+final public class FileSystem implements IFileSystem, Closeable {
 
-    private final IFileSystem fileSystemImpl;
+    private final FileSystemImpl fileSystemImpl;
+    // null até habilitarMetricas()
+    private volatile MetricasFileSystem metricas;
 
     public FileSystem() {
         fileSystemImpl = new FileSystemImpl();
     }
 
+    public FileSystem(MotorPermissoes motor) {
+        fileSystemImpl = new FileSystemImpl(motor);
+    }
+
+    // concorrente: se true, o sistema de arquivos pode ser usado por várias threads
+    public FileSystem(MotorPermissoes motor, boolean concorrente) {
+        fileSystemImpl = new FileSystemImpl(motor, 4096, 4096, concorrente);
+    }
+
+    // imagem: arquivo em disco onde o sistema de arquivos é persistido entre execuções
+    public FileSystem(MotorPermissoes motor, Path imagem) throws IOException {
+        this(motor, false, imagem);
+    }
+
+    public FileSystem(MotorPermissoes motor, boolean concorrente, Path imagem) throws IOException {
+        fileSystemImpl = new FileSystemImpl(motor, 4096, 4096, concorrente, imagem);
+    }
+
+    // Grava o estado atual na imagem (sem efeito se não houver imagem)
+    public void sincronizar() throws IOException {
+        fileSystemImpl.sincronizar();
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileSystemImpl.close();
+    }
+
+    // Passa a medir as chamadas e retorna as métricas; chamadas seguintes retornam as mesmas.
+    public synchronized MetricasFileSystem habilitarMetricas() {
+        if (metricas == null) {
+            metricas = new MetricasFileSystem();
+        }
+        return metricas;
+    }
+
+    // null se as métricas não foram habilitadas
+    public MetricasFileSystem getMetricas() {
+        return metricas;
+    }
+
+    // Bytes lógicos e físicos do conteúdo dos arquivos; ver FileSystemImpl.estatisticasDados
+    public EstatisticasDados estatisticasDados() {
+        return fileSystemImpl.estatisticasDados();
+    }
+
+    // Executa um lote de mkdir/touch/write; ver FileSystemImpl.submeter
+    public List<ResultadoOperacao> submeter(List<Operacao> operacoes) {
+        return fileSystemImpl.submeter(operacoes);
+    }
+
+    // Conteúdo de um arquivo para um canal, em escritas agrupadas; ver FileSystemImpl.transferTo
+    public long transferTo(String caminho, String usuario, WritableByteChannel destino)
+            throws CaminhoNaoEncontradoException, PermissaoException, IOException {
+        return fileSystemImpl.transferTo(caminho, usuario, destino);
+    }
+
+    // Conteúdo de um arquivo lido de um canal; ver FileSystemImpl.transferFrom
+    public long transferFrom(ReadableByteChannel origem, String caminho, String usuario)
+            throws CaminhoNaoEncontradoException, PermissaoException, IOException {
+        return fileSystemImpl.transferFrom(origem, caminho, usuario);
+    }
+
+    // Visão somente leitura da árvore neste momento; ver FileSystemImpl.snapshot
+    public Instantaneo snapshot() {
+        return fileSystemImpl.snapshot();
+    }
+
+    // Percursos de subárvores em paralelo; ver FileSystemImpl.configurarParalelismo
+    public void configurarParalelismo(ForkJoinPool pool, int limiar) {
+        fileSystemImpl.configurarParalelismo(pool, limiar);
+    }
+
     @Override
     public void chmod(String caminho, String usuario, String usuarioAlvo, String permissao)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        fileSystemImpl.chmod(caminho, usuario, usuarioAlvo, permissao);
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            fileSystemImpl.chmod(caminho, usuario, usuarioAlvo, permissao);
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            fileSystemImpl.chmod(caminho, usuario, usuarioAlvo, permissao);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.CHMOD, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.CHMOD, inicio, 0, 0);
     }
 
     @Override
     public void mkdir(String caminho, String usuario) throws CaminhoJaExistenteException, PermissaoException {
-        fileSystemImpl.mkdir(caminho, usuario);
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            fileSystemImpl.mkdir(caminho, usuario);
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            fileSystemImpl.mkdir(caminho, usuario);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.MKDIR, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.MKDIR, inicio, 0, 0);
     }
 
     @Override
     public void rm(String caminho, String usuario, boolean recursivo)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        fileSystemImpl.rm(caminho, usuario, recursivo);
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            fileSystemImpl.rm(caminho, usuario, recursivo);
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            fileSystemImpl.rm(caminho, usuario, recursivo);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.RM, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.RM, inicio, 0, 0);
     }
 
     @Override
-    public void touch(String caminho, String usuario) throws CaminhoJaExistenteException, PermissaoException {
-        fileSystemImpl.touch(caminho, usuario);
+    public void touch(String caminho, String usuario)
+            throws CaminhoJaExistenteException, CaminhoNaoEncontradoException, PermissaoException {
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            fileSystemImpl.touch(caminho, usuario);
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            fileSystemImpl.touch(caminho, usuario);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.TOUCH, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.TOUCH, inicio, 0, 0);
     }
 
     @Override
     public void write(String caminho, String usuario, boolean anexar, byte[] buffer)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        fileSystemImpl.write(caminho, usuario, anexar, buffer);
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            fileSystemImpl.write(caminho, usuario, anexar, buffer);
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            fileSystemImpl.write(caminho, usuario, anexar, buffer);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.WRITE, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.WRITE, inicio, 0, buffer.length);
     }
 
     @Override
     public void read(String caminho, String usuario, byte[] buffer)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        fileSystemImpl.read(caminho, usuario, buffer);
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            fileSystemImpl.read(caminho, usuario, buffer);
+            return;
+        }
+        long inicio = System.nanoTime();
+        int lidos;
+        try {
+            // equivalente a read(caminho, usuario, buffer), mas retorna quantos bytes foram lidos
+            lidos = fileSystemImpl.read(caminho, usuario, 0, buffer, 0, buffer.length);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.READ, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.READ, inicio, lidos, 0);
+    }
+
+    @Override
+    public int read(String caminho, String usuario, long offset, byte[] buf, int off, int len)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            return fileSystemImpl.read(caminho, usuario, offset, buf, off, len);
+        }
+        long inicio = System.nanoTime();
+        int lidos;
+        try {
+            lidos = fileSystemImpl.read(caminho, usuario, offset, buf, off, len);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.READ, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.READ, inicio, lidos, 0);
+        return lidos;
+    }
+
+    // Apenas a abertura é medida; os bytes lidos pelo LeitorArquivo não são contados.
+    @Override
+    public LeitorArquivo abrirLeitura(String caminho, String usuario)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            return fileSystemImpl.abrirLeitura(caminho, usuario);
+        }
+        long inicio = System.nanoTime();
+        LeitorArquivo leitor;
+        try {
+            leitor = fileSystemImpl.abrirLeitura(caminho, usuario);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.ABRIR_LEITURA, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.ABRIR_LEITURA, inicio, 0, 0);
+        return leitor;
     }
 
     @Override
     public void mv(String caminhoAntigo, String caminhoNovo, String usuario)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        fileSystemImpl.mv(caminhoAntigo, caminhoNovo, usuario);
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            fileSystemImpl.mv(caminhoAntigo, caminhoNovo, usuario);
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            fileSystemImpl.mv(caminhoAntigo, caminhoNovo, usuario);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.MV, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.MV, inicio, 0, 0);
     }
 
     @Override
     public void ls(String caminho, String usuario, boolean recursivo)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        fileSystemImpl.ls(caminho, usuario, recursivo);
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            fileSystemImpl.ls(caminho, usuario, recursivo);
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            fileSystemImpl.ls(caminho, usuario, recursivo);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.LS, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.LS, inicio, 0, 0);
+    }
+
+    // Apenas a abertura da listagem é medida, não a iteração.
+    @Override
+    public Iterator<EntradaListagem> listar(String caminho, String usuario, boolean recursivo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            return fileSystemImpl.listar(caminho, usuario, recursivo);
+        }
+        long inicio = System.nanoTime();
+        Iterator<EntradaListagem> entradas;
+        try {
+            entradas = fileSystemImpl.listar(caminho, usuario, recursivo);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.LISTAR, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.LISTAR, inicio, 0, 0);
+        return entradas;
+    }
+
+    @Override
+    public PaginaListagem listar(String caminho, String usuario, boolean recursivo, int tamanhoPagina,
+            String continuacao) throws CaminhoNaoEncontradoException, PermissaoException {
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            return fileSystemImpl.listar(caminho, usuario, recursivo, tamanhoPagina, continuacao);
+        }
+        long inicio = System.nanoTime();
+        PaginaListagem pagina;
+        try {
+            pagina = fileSystemImpl.listar(caminho, usuario, recursivo, tamanhoPagina, continuacao);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.LISTAR, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.LISTAR, inicio, 0, 0);
+        return pagina;
     }
 
     @Override
     public void cp(String caminhoOrigem, String caminhoDestino, String usuario, boolean recursivo)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        fileSystemImpl.cp(caminhoOrigem, caminhoDestino, usuario, recursivo);
+        MetricasFileSystem m = metricas;
+        if (m == null) {
+            fileSystemImpl.cp(caminhoOrigem, caminhoDestino, usuario, recursivo);
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            fileSystemImpl.cp(caminhoOrigem, caminhoDestino, usuario, recursivo);
+        } catch (Exception e) {
+            m.erro(MetricasFileSystem.CP, inicio, e);
+            throw e;
+        }
+        m.sucesso(MetricasFileSystem.CP, inicio, 0, 0);
     }
-}
\ No newline at end of file
+}
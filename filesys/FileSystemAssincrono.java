@@ -0,0 +1,218 @@
+package filesys;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Fachada assíncrona para um IFileSystem (em geral o proxy FileSystem): cada método agenda a
+// operação em um Executor e retorna um CompletableFuture, completado com o resultado ou com a
+// exceção da operação (get() lança ExecutionException com ela como causa).
+//
+// Ordem: operações sobre o mesmo caminho (normalizado) são executadas uma de cada vez, na ordem
+// em que foram agendadas; operações sobre caminhos diferentes rodam em paralelo, mesmo que um
+// esteja dentro do outro (mkdir /a e touch /a/f, por exemplo): para ordená-las, encadeie os
+// futures. mv e cp ficam ordenados em relação aos dois caminhos. Uma operação que falha não
+// impede as seguintes no mesmo caminho.
+//
+// Executor padrão: uma virtual thread por operação quando a JVM tem virtual threads (Java 21 ou
+// mais recente); no Java 17, para o qual o projeto é compilado, um pool fixo de THREADS_PADRAO
+// threads daemon, o bastante para que as esperas pelo diário de muitas operações se sobreponham.
+public final class FileSystemAssincrono implements AutoCloseable {
+    private static final int THREADS_PADRAO = Math.max(64, 8 * Runtime.getRuntime().availableProcessors());
+
+    @FunctionalInterface
+    private interface Chamada<T> {
+        T executar() throws Exception;
+    }
+
+    private final IFileSystem fileSystem;
+    private final Executor executor;
+    // encerrado por close(); null se o executor foi fornecido por quem chama
+    private final ExecutorService executorProprio;
+    // última operação agendada em cada caminho, enquanto não termina
+    private final ConcurrentHashMap<String, CompletableFuture<?>> ultimas = new ConcurrentHashMap<>();
+    // Serializa o registro das operações com dois caminhos: duas delas registradas em ordens
+    // opostas (mv /a /b e mv /b /a) esperariam uma pela outra
+    private final Object travaDoisCaminhos = new Object();
+
+    public FileSystemAssincrono(IFileSystem fileSystem) {
+        this(fileSystem, executorPadrao(), true);
+    }
+
+    // executor: onde as operações são executadas; não é encerrado por close()
+    public FileSystemAssincrono(IFileSystem fileSystem, Executor executor) {
+        this(fileSystem, executor, false);
+    }
+
+    private FileSystemAssincrono(IFileSystem fileSystem, Executor executor, boolean proprio) {
+        this.fileSystem = fileSystem;
+        this.executor = executor;
+        this.executorProprio = proprio ? (ExecutorService) executor : null;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() é procurado por reflexão, já que não existe
+    // no Java 17 (e no 19 e 20 só funciona com --enable-preview)
+    static ExecutorService executorPadrao() {
+        try {
+            Method virtuais = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtuais.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger contador = new AtomicInteger();
+            return Executors.newFixedThreadPool(THREADS_PADRAO, tarefa -> {
+                Thread thread = new Thread(tarefa, "filesys-assincrono-" + contador.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public CompletableFuture<Void> chmod(String caminho, String usuario, String usuarioAlvo, String permissao) {
+        return agendar(caminho, () -> {
+            fileSystem.chmod(caminho, usuario, usuarioAlvo, permissao);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> mkdir(String caminho, String usuario) {
+        return agendar(caminho, () -> {
+            fileSystem.mkdir(caminho, usuario);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> rm(String caminho, String usuario, boolean recursivo) {
+        return agendar(caminho, () -> {
+            fileSystem.rm(caminho, usuario, recursivo);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> touch(String caminho, String usuario) {
+        return agendar(caminho, () -> {
+            fileSystem.touch(caminho, usuario);
+            return null;
+        });
+    }
+
+    // O buffer não deve ser alterado até o future completar.
+    public CompletableFuture<Void> write(String caminho, String usuario, boolean anexar, byte[] buffer) {
+        return agendar(caminho, () -> {
+            fileSystem.write(caminho, usuario, anexar, buffer);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> read(String caminho, String usuario, byte[] buffer) {
+        return agendar(caminho, () -> {
+            fileSystem.read(caminho, usuario, buffer);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Integer> read(String caminho, String usuario, long offset, byte[] buf, int off, int len) {
+        return agendar(caminho, () -> fileSystem.read(caminho, usuario, offset, buf, off, len));
+    }
+
+    public CompletableFuture<LeitorArquivo> abrirLeitura(String caminho, String usuario) {
+        return agendar(caminho, () -> fileSystem.abrirLeitura(caminho, usuario));
+    }
+
+    public CompletableFuture<Void> mv(String caminhoAntigo, String caminhoNovo, String usuario) {
+        return agendar(caminhoAntigo, caminhoNovo, () -> {
+            fileSystem.mv(caminhoAntigo, caminhoNovo, usuario);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> ls(String caminho, String usuario, boolean recursivo) {
+        return agendar(caminho, () -> {
+            fileSystem.ls(caminho, usuario, recursivo);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Iterator<EntradaListagem>> listar(String caminho, String usuario, boolean recursivo) {
+        return agendar(caminho, () -> fileSystem.listar(caminho, usuario, recursivo));
+    }
+
+    public CompletableFuture<PaginaListagem> listar(String caminho, String usuario, boolean recursivo,
+            int tamanhoPagina, String continuacao) {
+        return agendar(caminho, () -> fileSystem.listar(caminho, usuario, recursivo, tamanhoPagina, continuacao));
+    }
+
+    public CompletableFuture<Void> cp(String caminhoOrigem, String caminhoDestino, String usuario, boolean recursivo) {
+        return agendar(caminhoOrigem, caminhoDestino, () -> {
+            fileSystem.cp(caminhoOrigem, caminhoDestino, usuario, recursivo);
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> agendar(String caminho, Chamada<T> chamada) {
+        String chave = FileSystemImpl.normalizar(caminho);
+        CompletableFuture<T> futuro = new CompletableFuture<>();
+        CompletableFuture<?> anterior = ultimas.put(chave, futuro);
+        futuro.whenComplete((r, e) -> ultimas.remove(chave, futuro));
+        if (anterior == null) {
+            executar(futuro, chamada);
+        } else {
+            anterior.whenComplete((r, e) -> executar(futuro, chamada));
+        }
+        return futuro;
+    }
+
+    private <T> CompletableFuture<T> agendar(String caminho1, String caminho2, Chamada<T> chamada) {
+        String chave1 = FileSystemImpl.normalizar(caminho1);
+        String chave2 = FileSystemImpl.normalizar(caminho2);
+        if (chave1.equals(chave2)) {
+            return agendar(caminho1, chamada);
+        }
+        CompletableFuture<T> futuro = new CompletableFuture<>();
+        CompletableFuture<?> anterior1;
+        CompletableFuture<?> anterior2;
+        synchronized (travaDoisCaminhos) {
+            anterior1 = ultimas.put(chave1, futuro);
+            anterior2 = ultimas.put(chave2, futuro);
+        }
+        futuro.whenComplete((r, e) -> {
+            ultimas.remove(chave1, futuro);
+            ultimas.remove(chave2, futuro);
+        });
+        if (anterior1 == null && anterior2 == null) {
+            executar(futuro, chamada);
+        } else if (anterior1 == null || anterior2 == null) {
+            (anterior1 != null ? anterior1 : anterior2).whenComplete((r, e) -> executar(futuro, chamada));
+        } else {
+            CompletableFuture.allOf(anterior1, anterior2).whenComplete((r, e) -> executar(futuro, chamada));
+        }
+        return futuro;
+    }
+
+    private <T> void executar(CompletableFuture<T> futuro, Chamada<T> chamada) {
+        try {
+            executor.execute(() -> {
+                try {
+                    futuro.complete(chamada.executar());
+                } catch (Throwable e) {
+                    futuro.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            futuro.completeExceptionally(e);
+        }
+    }
+
+    // Encerra o executor padrão; as operações já agendadas ainda são executadas. Sem efeito
+    // com um executor fornecido por quem chama.
+    @Override
+    public void close() {
+        if (executorProprio != null) {
+            executorProprio.shutdown();
+        }
+    }
+}
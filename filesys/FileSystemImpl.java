@@ -1,70 +1,1903 @@
 package filesys;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
 import exception.CaminhoJaExistenteException;
 import exception.CaminhoNaoEncontradoException;
 import exception.PermissaoException;
 
 // Implemente nesta classe o seu código do FileSystem.
 // A classe pode ser alterada.
-// O construtor, argumentos do construtor podem ser modificados 
+// O construtor, argumentos do construtor podem ser modificados
 // e atributos & métodos privados podem ser adicionados
-public final class FileSystemImpl implements IFileSystem {
+//
+// Modo concorrente (construtor com concorrente = true): a instância pode ser usada por
+// várias threads. A resolução de caminhos não trava nada (filhos em ConcurrentSkipListMap e
+// consultas ao cache sem trava); cada diretório tem uma trava de leitura/escrita, tomada em escrita
+// apenas pelas operações que alteram os seus filhos, e cada arquivo tem a sua, de modo que
+// leitores do mesmo arquivo não se bloqueiam. mv e cp, que travam dois diretórios, são
+// serializados por uma trava de renomeação (como no rename do Linux) e travam os
+// diretórios em ordem de caminho, o que evita deadlocks e ciclos na árvore.
+//
+// Cópia sob escrita: cp -r não copia a subárvore; os nós da origem passam a ser compartilhados
+// com a cópia (contagem de referências em No) e só são clonados, um nível por vez ao longo do
+// caminho, na primeira operação que altera um dos lados (write, touch, mkdir, rm, chmod, mv).
+// O "rwx" dado a quem copiou fica pendente nos diretórios da cópia e é aplicado a cada nó
+// compartilhado quando ele é clonado.
+//
+// Persistência (construtor com um caminho de imagem): a árvore é carregada sob demanda de uma
+// imagem mapeada em memória (ver ImagemDisco) e gravada nela por sincronizar() e close().
+// Entre um checkpoint e outro, cada operação que altera a árvore é registrada em um diário
+// (ver Diario) e só retorna depois do registro estar em disco; ao abrir, o diário é reaplicado
+// sobre a imagem. Cada alteração é registrada sob as travas dos nós que altera, antes de ficar
+// visível (ver registrar), e rm, mv e cp congelam as subárvores em que atuam (ver
+// travarEstrutura); a espera pelo disco é feita fora das travas, o que permite confirmar as
+// operações de várias threads com um único force() (group commit). O checkpoint passa o diário a um novo segmento e grava a imagem sem
+// barrar as alterações.
+//
+// Instantâneos (snapshot()): a visão retém a raiz, que passa a ser compartilhada como um nó copiado
+// por cp; a primeira alteração seguinte clona a raiz e, a partir dela, os nós do caminho alterado
+// (path copying), sem tocar nos nós que a visão alcança. Criar a visão custa O(1).
+public final class FileSystemImpl implements IFileSystem, Closeable {
     private static final String ROOT_USER = "root"; // pode ser necessário
+    static final String ROOT_DIR = "/";
+    private static final int CAPACIDADE_CACHE_PADRAO = 4096;
+    private static final int TAMANHO_BLOCO_PADRAO = 4096;
+    private static final int MAX_BLOCOS_LIVRES = 1024;
+    private static final int SEGMENTOS_CACHE_CONCORRENTE = 16;
+    private static final Duration LATENCIA_DIARIO_PADRAO = Duration.ZERO;
+    private static final byte[] SEM_DADOS = new byte[0];
+    private static final int LIMIAR_PARALELO_PADRAO = 128;
+    // transferFrom com diário: bytes por registro e registros entre uma espera e outra pelo disco
+    private static final int TAMANHO_REGISTRO_TRANSFERENCIA = 1 << 20;
+    private static final int REGISTROS_POR_ESPERA = 16;
+    // cp -r: verificações da subárvore sem travas antes de verificá-la congelada (ver copiarCaminho)
+    private static final int TENTATIVAS_COPIA = 3;
+
+    // Substituída por um clone quando compartilhada com um instantâneo (ver raizParaAlterar)
+    private volatile Diretorio raiz;
+    private final CacheCaminhos cache;
+    private final PoolBlocos pool;
+    private final MotorPermissoes motor;
+    private final boolean concorrente;
+    private final ReentrantLock travaRenomear;
+    // null quando o sistema de arquivos é apenas em memória
+    private final ImagemDisco imagem;
+    // null sem diário; atribuídos apenas no construtor, depois de reaplicar o diário
+    private Diario diario;
+    // Quantidade de nós com mais de uma referência, mais a de diretórios com filhos pendentes de
+    // uma cópia (ver copiar); enquanto for zero, as operações que alteram a árvore resolvem
+    // caminhos pelo cache sem procurar nós compartilhados (depois, pelas entradas exclusivas dele).
+    // Compartilhada com os instantâneos, que contam referências nos mesmos nós.
+    private final AtomicLong nosCompartilhados;
+    // Sem diário, as operações que alteram a árvore a tomam em leitura e snapshot() em escrita,
+    // para que nenhuma alteração que já resolveu os seus nós os altere depois de a visão retê-los.
+    // Com diário, o início de sincronizar() também a toma em escrita. null fora do modo
+    // concorrente. Não justa, mas um pedido de escrita na fila barra novos leitores: snapshot()
+    // não espera para sempre.
+    private final ReentrantReadWriteLock travaInstantaneo;
+    // Alterações em andamento por caminho, para parar apenas as subárvores copiadas por cp -r e,
+    // com diário, as de rm, mv e cp (ver copiarCaminho e travarEstrutura). null fora do modo
+    // concorrente.
+    private final TravaSubarvores subarvores;
+    private final Object travaRaiz = new Object();
+    // Um checkpoint por vez: a imagem deve receber os checkpoints na ordem das rotações do diário
+    private final Object travaCheckpoint = new Object();
+    // Percursos de subárvores em paralelo (ver configurarParalelismo)
+    private volatile ForkJoinPool poolParalelo = ForkJoinPool.commonPool();
+    private volatile int limiarParalelo = LIMIAR_PARALELO_PADRAO;
+
+    public FileSystemImpl() {
+        this(new MotorPermissoes());
+    }
+
+    public FileSystemImpl(int capacidadeCache) {
+        this(new MotorPermissoes(), capacidadeCache, TAMANHO_BLOCO_PADRAO);
+    }
+
+    public FileSystemImpl(int capacidadeCache, int tamanhoBloco) {
+        this(new MotorPermissoes(), capacidadeCache, tamanhoBloco);
+    }
+
+    // motor: regras de permissão carregadas do arquivo users
+    public FileSystemImpl(MotorPermissoes motor) {
+        this(motor, CAPACIDADE_CACHE_PADRAO, TAMANHO_BLOCO_PADRAO);
+    }
+
+    public FileSystemImpl(MotorPermissoes motor, int capacidadeCache, int tamanhoBloco) {
+        this(motor, capacidadeCache, tamanhoBloco, false);
+    }
+
+    // capacidadeCache: número máximo de caminhos mantidos no cache de resolução
+    // tamanhoBloco: tamanho, em bytes, dos blocos que guardam o conteúdo dos arquivos
+    // concorrente: se true, a instância pode ser usada por várias threads
+    public FileSystemImpl(MotorPermissoes motor, int capacidadeCache, int tamanhoBloco, boolean concorrente) {
+        this(motor, capacidadeCache, tamanhoBloco, concorrente, false);
+    }
+
+    // deduplicar: se true, blocos de conteúdo idêntico, inclusive de arquivos diferentes, são
+    // guardados uma única vez, ao custo de um hash (CRC32C) de cada bloco escrito
+    public FileSystemImpl(MotorPermissoes motor, int capacidadeCache, int tamanhoBloco, boolean concorrente,
+            boolean deduplicar) {
+        this(motor, capacidadeCache, tamanhoBloco, concorrente, deduplicar, (ImagemDisco) null);
+    }
+
+    // imagem: arquivo onde a árvore é persistida, criado se não existir. O conteúdo gravado por
+    // sincronizar()/close() de uma execução anterior é carregado sob demanda.
+    public FileSystemImpl(MotorPermissoes motor, int capacidadeCache, int tamanhoBloco, boolean concorrente,
+            Path imagem) throws IOException {
+        this(motor, capacidadeCache, tamanhoBloco, concorrente, imagem, LATENCIA_DIARIO_PADRAO);
+    }
+
+    // latenciaDiario: quanto a gravação do diário pode esperar por operações de outras threads
+    // para confirmá-las com um único force(); null desativa o diário, e então só o que foi gravado
+    // por sincronizar()/close() sobrevive a uma queda. O diário fica ao lado da imagem, em "<imagem>.diario".
+    public FileSystemImpl(MotorPermissoes motor, int capacidadeCache, int tamanhoBloco, boolean concorrente,
+            Path imagem, Duration latenciaDiario) throws IOException {
+        this(motor, capacidadeCache, tamanhoBloco, concorrente, imagem, latenciaDiario, false);
+    }
+
+    public FileSystemImpl(MotorPermissoes motor, int capacidadeCache, int tamanhoBloco, boolean concorrente,
+            Path imagem, Duration latenciaDiario, boolean deduplicar) throws IOException {
+        this(motor, capacidadeCache, tamanhoBloco, concorrente, deduplicar, ImagemDisco.abrir(imagem));
+        if (latenciaDiario == null) {
+            return;
+        }
+        try {
+            Path caminhoDiario = imagem.resolveSibling(imagem.getFileName() + ".diario");
+            this.diario = Diario.abrir(caminhoDiario, latenciaDiario.toNanos(), this.imagem.lsn(), this::reaplicar);
+        } catch (IOException | RuntimeException e) {
+            this.imagem.close();
+            throw e;
+        }
+    }
 
-    public FileSystemImpl() {}
+    private FileSystemImpl(MotorPermissoes motor, int capacidadeCache, int tamanhoBloco, boolean concorrente,
+            boolean deduplicar, ImagemDisco imagem) {
+        this.motor = motor;
+        this.concorrente = concorrente;
+        this.travaRenomear = concorrente ? new ReentrantLock() : null;
+        this.cache = new CacheCaminhos(capacidadeCache, concorrente ? SEGMENTOS_CACHE_CONCORRENTE : 1);
+        this.pool = new PoolBlocos(tamanhoBloco, MAX_BLOCOS_LIVRES, deduplicar);
+        this.imagem = imagem;
+        this.nosCompartilhados = new AtomicLong();
+        this.travaInstantaneo = concorrente ? new ReentrantReadWriteLock() : null;
+        this.subarvores = concorrente ? new TravaSubarvores() : null;
+        Diretorio raizImagem = imagem != null ? imagem.vincular(motor, pool, concorrente) : null;
+        if (raizImagem != null) {
+            this.raiz = raizImagem;
+        } else {
+            TabelaPermissoes permissoesRaiz = TabelaPermissoes.VAZIA.com(motor.idUsuario(ROOT_USER), MotorPermissoes.TOTAL);
+            this.raiz = novoDiretorio(motor.aplicarRegras(ROOT_DIR, permissoesRaiz));
+        }
+    }
+
+    // Visão somente leitura de um instantâneo, com a raiz já retida; usada apenas por Instantaneo.
+    // Compartilha os blocos e a contagem de nós compartilhados com a origem, mas não a imagem nem o diário.
+    private FileSystemImpl(FileSystemImpl origem, Diretorio raiz) {
+        this.motor = origem.motor;
+        this.concorrente = origem.concorrente;
+        this.travaRenomear = null;
+        this.cache = new CacheCaminhos(origem.cache.capacidade(), concorrente ? SEGMENTOS_CACHE_CONCORRENTE : 1);
+        this.pool = origem.pool;
+        this.imagem = null;
+        this.nosCompartilhados = origem.nosCompartilhados;
+        this.travaInstantaneo = null;
+        this.subarvores = null;
+        this.poolParalelo = origem.poolParalelo;
+        this.limiarParalelo = origem.limiarParalelo;
+        this.raiz = raiz;
+    }
 
     @Override
-    public void mkdir(String caminho, String nome) throws CaminhoJaExistenteException, PermissaoException {
-        throw new UnsupportedOperationException("Método não implementado 'mkdir'");
+    public void mkdir(String caminho, String usuario) throws CaminhoJaExistenteException, PermissaoException {
+        caminho = normalizar(caminho);
+        long lsn;
+        TravaSubarvores.Marca marca = travarAlteracao(caminho);
+        try {
+            lsn = criarDiretorio(caminho, usuario);
+        } finally {
+            destravarAlteracao(marca);
+        }
+        aguardarDiario(lsn);
+    }
+
+    // Cria o diretório e, como "mkdir -p", os diretórios intermediários que não existirem, cada um
+    // registrado no diário como um mkdir. Retorna o lsn do último registro (ver registrar).
+    private long criarDiretorio(String caminho, String usuario) throws CaminhoJaExistenteException, PermissaoException {
+        caminho = normalizar(caminho);
+        if (caminho.equals(ROOT_DIR)) {
+            throw new CaminhoJaExistenteException("Caminho já existe: " + caminho);
+        }
+        while (true) {
+            Diretorio pai = garantirDiretorio(pai(caminho), usuario);
+            long epoca = cache.epoca();
+            if (!travarAnexado(pai)) {
+                continue;
+            }
+            try {
+                if (pai.filho(nome(caminho)) != null) {
+                    throw new CaminhoJaExistenteException("Caminho já existe: " + caminho);
+                }
+                verificarPermissao(pai, usuario, MotorPermissoes.ESCRITA, pai(caminho));
+                long lsn = registrar(Diario.MKDIR, false, SEM_DADOS, caminho, usuario);
+                adicionar(pai, caminho, novoDiretorio(permissoesNovoNo(pai, caminho, usuario)), epoca);
+                return lsn;
+            } finally {
+                pai.destravarEscrita();
+            }
+        }
     }
 
     @Override
     public void chmod(String caminho, String usuario, String usuarioAlvo, String permissao)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        throw new UnsupportedOperationException("Método não implementado 'chmod'");
+        caminho = normalizar(caminho);
+        long lsn;
+        TravaSubarvores.Marca marca = travarAlteracao(caminho);
+        try {
+            lsn = alterarPermissao(caminho, usuario, usuarioAlvo, permissao);
+        } finally {
+            destravarAlteracao(marca);
+        }
+        aguardarDiario(lsn);
+    }
+
+    private long alterarPermissao(String caminho, String usuario, String usuarioAlvo, String permissao)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        caminho = normalizar(caminho);
+        int mascara = MotorPermissoes.compilar(permissao);
+        No no;
+        do {
+            no = resolverParaAlterar(caminho);
+            if (no == null) {
+                throw new CaminhoNaoEncontradoException("Caminho não encontrado: " + caminho);
+            }
+        } while (!travarAnexado(no));
+        // A trava de escrita ordena o chmod com as operações que verificam permissões no nó (e
+        // com os registros delas no diário)
+        try {
+            if (!temPermissao(no, usuario, MotorPermissoes.LEITURA | MotorPermissoes.ESCRITA)) {
+                throw new PermissaoException("Usuário " + usuario + " não pode alterar as permissões de " + caminho);
+            }
+            long lsn = registrar(Diario.CHMOD, false, SEM_DADOS, caminho, usuario, usuarioAlvo, permissao);
+            // A tabela é imutável e o campo é volatile, então as verificações de permissão não travam;
+            // o synchronized serializa o chmod com as permissões pendentes aplicadas por descompartilhar.
+            synchronized (no) {
+                no.permissoes = no.permissoes.com(motor.idUsuario(usuarioAlvo), mascara);
+            }
+            alterado(caminho);
+            return lsn;
+        } finally {
+            no.destravarEscrita();
+        }
     }
 
     @Override
     public void rm(String caminho, String usuario, boolean recursivo)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        throw new UnsupportedOperationException("Método não implementado 'rm'");
+        caminho = normalizar(caminho);
+        long lsn;
+        TravaSubarvores.Marca marca = travarEstrutura(caminho);
+        try {
+            lsn = remover(caminho, usuario, recursivo);
+        } finally {
+            destravarAlteracao(marca);
+        }
+        aguardarDiario(lsn);
+    }
+
+    private long remover(String caminho, String usuario, boolean recursivo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        caminho = normalizar(caminho);
+        if (caminho.equals(ROOT_DIR)) {
+            throw new PermissaoException("O diretório raiz não pode ser removido");
+        }
+        Diretorio pai = diretorioDestino(caminho);
+        while (!travarAnexado(pai)) {
+            pai = diretorioDestino(caminho);
+        }
+        No no;
+        long lsn;
+        try {
+            no = pai.filho(nome(caminho));
+            if (no == null) {
+                throw new CaminhoNaoEncontradoException("Caminho não encontrado: " + caminho);
+            }
+            verificarPermissao(pai, usuario, MotorPermissoes.ESCRITA, pai(caminho));
+            if (no.isDiretorio()) {
+                Diretorio dir = (Diretorio) no;
+                if (!recursivo && !dir.filhos().isEmpty()) {
+                    throw new PermissaoException("Diretório não está vazio: " + caminho + " (use recursivo)");
+                }
+                // Toda a subárvore é verificada antes de remover qualquer coisa
+                verificarSubarvore(dir, pai.concessao(nome(caminho)), usuario, MotorPermissoes.ESCRITA, caminho);
+            }
+            lsn = registrar(Diario.RM, recursivo, SEM_DADOS, caminho, usuario);
+            pai.filhos().remove(nome(caminho));
+            esquecerPendente(pai, nome(caminho));
+            cache.invalidar(caminho);
+        } finally {
+            pai.destravarEscrita();
+        }
+        liberar(no);
+        return lsn;
     }
 
     @Override
-    public void touch(String caminho, String usuario) throws CaminhoJaExistenteException, PermissaoException {
-        throw new UnsupportedOperationException("Método não implementado 'touch'");
+    public void touch(String caminho, String usuario)
+            throws CaminhoJaExistenteException, CaminhoNaoEncontradoException, PermissaoException {
+        caminho = normalizar(caminho);
+        long lsn;
+        TravaSubarvores.Marca marca = travarAlteracao(caminho);
+        try {
+            lsn = criarArquivo(caminho, usuario);
+        } finally {
+            destravarAlteracao(marca);
+        }
+        aguardarDiario(lsn);
+    }
+
+    private long criarArquivo(String caminho, String usuario)
+            throws CaminhoJaExistenteException, CaminhoNaoEncontradoException, PermissaoException {
+        caminho = normalizar(caminho);
+        if (caminho.equals(ROOT_DIR)) {
+            throw new CaminhoJaExistenteException("Caminho já existe: " + caminho);
+        }
+        long epoca = cache.epoca();
+        Diretorio pai = diretorioDestino(caminho);
+        while (!travarAnexado(pai)) {
+            epoca = cache.epoca();
+            pai = diretorioDestino(caminho);
+        }
+        try {
+            if (pai.filho(nome(caminho)) != null) {
+                throw new CaminhoJaExistenteException("Caminho já existe: " + caminho);
+            }
+            verificarPermissao(pai, usuario, MotorPermissoes.ESCRITA, pai(caminho));
+            long lsn = registrar(Diario.TOUCH, false, SEM_DADOS, caminho, usuario);
+            adicionar(pai, caminho, novoArquivo(permissoesNovoNo(pai, caminho, usuario)), epoca);
+            return lsn;
+        } finally {
+            pai.destravarEscrita();
+        }
     }
 
     @Override
     public void write(String caminho, String usuario, boolean anexar, byte[] buffer)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        throw new UnsupportedOperationException("Método não implementado 'write'");
+        caminho = normalizar(caminho);
+        long lsn;
+        TravaSubarvores.Marca marca = travarAlteracao(caminho);
+        try {
+            lsn = escrever(caminho, usuario, anexar, buffer);
+        } finally {
+            destravarAlteracao(marca);
+        }
+        aguardarDiario(lsn);
+    }
+
+    private long escrever(String caminho, String usuario, boolean anexar, byte[] buffer)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        caminho = normalizar(caminho);
+        Arquivo arquivo = arquivoParaEscrever(caminho, usuario);
+        try {
+            long lsn = registrar(Diario.WRITE, anexar, buffer, caminho, usuario);
+            if (!anexar) {
+                arquivo.truncar();
+            }
+            arquivo.anexar(buffer, 0, buffer.length);
+            return lsn;
+        } finally {
+            arquivo.destravarEscrita();
+        }
     }
 
+    // Arquivo (já normalizado) a ser escrito, criado se não existir, já travado em escrita e com a
+    // permissão de escrita verificada com a trava. Um arquivo novo é travado antes de aparecer no
+    // pai: nenhuma outra operação o altera, nem se registra no diário, antes de quem o criou.
+    private Arquivo arquivoParaEscrever(String caminho, String usuario)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        while (true) {
+            long epoca = cache.epoca();
+            No no = resolverParaAlterar(caminho);
+            Arquivo arquivo = null;
+            if (no == null) {
+                Diretorio pai = diretorioDestino(caminho);
+                if (!travarAnexado(pai)) {
+                    continue;
+                }
+                try {
+                    no = pai.filho(nome(caminho));
+                    if (no == null) {
+                        verificarPermissao(pai, usuario, MotorPermissoes.ESCRITA, pai(caminho));
+                        arquivo = novoArquivo(permissoesNovoNo(pai, caminho, usuario));
+                        arquivo.travarEscrita();
+                        adicionar(pai, caminho, arquivo, epoca);
+                    }
+                } finally {
+                    pai.destravarEscrita();
+                }
+            }
+            if (arquivo == null) {
+                arquivo = comoArquivo(no, caminho);
+                if (!travarAnexado(arquivo)) {
+                    continue;
+                }
+            }
+            try {
+                verificarPermissao(arquivo, usuario, MotorPermissoes.ESCRITA, caminho);
+            } catch (PermissaoException e) {
+                arquivo.destravarEscrita();
+                throw e;
+            }
+            return arquivo;
+        }
+    }
+
+    // Copia para o buffer o conteúdo do arquivo, até o tamanho do buffer.
     @Override
     public void read(String caminho, String usuario, byte[] buffer)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        throw new UnsupportedOperationException("Método não implementado 'read'");
+        read(caminho, usuario, 0, buffer, 0, buffer.length);
+    }
+
+    @Override
+    public int read(String caminho, String usuario, long offset, byte[] buf, int off, int len)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        if (offset < 0 || off < 0 || len < 0 || len > buf.length - off) {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", off=" + off + ", len=" + len);
+        }
+        caminho = normalizar(caminho);
+        Arquivo arquivo = comoArquivo(resolverExistente(caminho), caminho);
+        verificarPermissao(arquivo, usuario, MotorPermissoes.LEITURA, caminho);
+        // Leitores do mesmo arquivo compartilham a trava de leitura e não se bloqueiam
+        arquivo.travarLeitura();
+        try {
+            if (offset >= arquivo.tamanho()) {
+                return len == 0 ? 0 : -1;
+            }
+            return arquivo.ler(offset, buf, off, len);
+        } finally {
+            arquivo.destravarLeitura();
+        }
+    }
+
+    @Override
+    public LeitorArquivo abrirLeitura(String caminho, String usuario)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        caminho = normalizar(caminho);
+        Arquivo arquivo = comoArquivo(resolverExistente(caminho), caminho);
+        verificarPermissao(arquivo, usuario, MotorPermissoes.LEITURA, caminho);
+        return new LeitorArquivo(arquivo);
+    }
+
+    // Grava o conteúdo do arquivo em 'destino' e retorna quantos bytes foram gravados. Os blocos
+    // vão para o canal em ByteBuffers que os envolvem, em escritas agrupadas, sem passar por um
+    // byte[] ou buffer nosso; um canal de arquivo ou socket ainda os copia para um buffer direto
+    // temporário do JDK (ver Arquivo.gravar).
+    // O conteúdo gravado é o do momento da chamada: os blocos ficam retidos, como em uma cópia
+    // (cp), e a trava do arquivo não fica tomada enquanto o canal grava.
+    public long transferTo(String caminho, String usuario, WritableByteChannel destino)
+            throws CaminhoNaoEncontradoException, PermissaoException, IOException {
+        caminho = normalizar(caminho);
+        Arquivo arquivo = comoArquivo(resolverExistente(caminho), caminho);
+        verificarPermissao(arquivo, usuario, MotorPermissoes.LEITURA, caminho);
+        Arquivo retido;
+        arquivo.travarLeitura();
+        try {
+            retido = arquivo.compartilhar(arquivo.permissoes);
+        } finally {
+            arquivo.destravarLeitura();
+        }
+        try {
+            return retido.gravar(destino);
+        } finally {
+            retido.truncar();
+        }
+    }
+
+    // Substitui o conteúdo do arquivo (criado se não existir, como no write) por tudo o que
+    // 'origem' tiver até o fim e retorna quantos bytes foram lidos. O diretório pai e a permissão
+    // de escrita são verificados antes de ler o canal, que fica intacto se a chamada falhar aí.
+    // O canal é então lido direto para blocos novos, fora de qualquer trava, que só depois passam
+    // a ser o conteúdo do arquivo; as permissões são verificadas de novo nesse momento. Com diário, o conteúdo é registrado como um write
+    // seguido de anexos de até TAMANHO_REGISTRO_TRANSFERENCIA bytes, e uma queda antes do fim da
+    // chamada pode deixar no arquivo apenas os primeiros deles.
+    public long transferFrom(ReadableByteChannel origem, String caminho, String usuario)
+            throws CaminhoNaoEncontradoException, PermissaoException, IOException {
+        String normalizado = normalizar(caminho);
+        verificarEscrita(normalizado, usuario);
+        Arquivo recebido = novoArquivo(TabelaPermissoes.VAZIA);
+        try {
+            long total = recebido.anexar(origem);
+            long lsn;
+            TravaSubarvores.Marca marca = travarAlteracao(normalizado);
+            try {
+                lsn = substituirConteudo(normalizado, usuario, recebido);
+            } finally {
+                destravarAlteracao(marca);
+            }
+            aguardarDiario(lsn);
+            return total;
+        } finally {
+            // o arquivo ficou com os próprios blocos retidos
+            recebido.truncar();
+        }
+    }
+
+    // Verifica, sem travas, o que arquivoParaEscrever verificaria agora: a escrita no arquivo ou,
+    // se ele não existe, no diretório pai.
+    private void verificarEscrita(String caminho, String usuario)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        No no = resolver(caminho);
+        if (no != null) {
+            verificarPermissao(comoArquivo(no, caminho), concessaoEm(caminho), usuario, MotorPermissoes.ESCRITA,
+                    caminho);
+            return;
+        }
+        No pai = resolver(pai(caminho));
+        if (pai == null || !pai.isDiretorio()) {
+            throw new CaminhoNaoEncontradoException("Diretório não encontrado: " + pai(caminho));
+        }
+        verificarPermissao(pai, concessaoEm(pai(caminho)), usuario, MotorPermissoes.ESCRITA, pai(caminho));
+    }
+
+    private long substituirConteudo(String caminho, String usuario, Arquivo conteudo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        Arquivo arquivo = arquivoParaEscrever(caminho, usuario);
+        try {
+            long lsn = diario != null ? registrarConteudo(caminho, usuario, conteudo) : 0;
+            arquivo.substituirPor(conteudo);
+            return lsn;
+        } finally {
+            arquivo.destravarEscrita();
+        }
+    }
+
+    // Deve ser chamado com a trava de escrita do arquivo. Espera pelo disco a cada REGISTROS_POR_ESPERA
+    // registros, para que o lote em memória do diário não cresça com o tamanho do arquivo.
+    private long registrarConteudo(String caminho, String usuario, Arquivo conteudo) {
+        byte[] pedaco = new byte[(int) Math.min(TAMANHO_REGISTRO_TRANSFERENCIA, conteudo.tamanho())];
+        long posicao = 0;
+        long lsn;
+        int registros = 0;
+        do {
+            int n = conteudo.ler(posicao, pedaco, 0, pedaco.length);
+            byte[] dados = n == pedaco.length ? pedaco : Arrays.copyOf(pedaco, n);
+            lsn = diario.registrar(Diario.WRITE, posicao > 0, dados, caminho, usuario);
+            posicao += n;
+            if (++registros % REGISTROS_POR_ESPERA == 0) {
+                diario.aguardar(lsn);
+            }
+        } while (posicao < conteudo.tamanho());
+        return lsn;
     }
 
     @Override
     public void mv(String caminhoAntigo, String caminhoNovo, String usuario)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        throw new UnsupportedOperationException("Método não implementado 'mv'");
+        caminhoAntigo = normalizar(caminhoAntigo);
+        caminhoNovo = normalizar(caminhoNovo);
+        long lsn;
+        TravaSubarvores.Marca marca = travarEstrutura(caminhoAntigo, caminhoNovo);
+        try {
+            lsn = mover(caminhoAntigo, caminhoNovo, usuario);
+        } finally {
+            destravarAlteracao(marca);
+        }
+        aguardarDiario(lsn);
+    }
+
+    private long mover(String caminhoAntigo, String caminhoNovo, String usuario)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        caminhoAntigo = normalizar(caminhoAntigo);
+        caminhoNovo = normalizar(caminhoNovo);
+        if (caminhoAntigo.equals(ROOT_DIR)) {
+            throw new PermissaoException("O diretório raiz não pode ser movido");
+        }
+        if (estaDentro(caminhoNovo, caminhoAntigo)) {
+            throw new IllegalArgumentException("Não é possível mover " + caminhoAntigo + " para dentro de si mesmo");
+        }
+        No existente;
+        long lsn;
+        travarRenomear();
+        try {
+            Diretorio paiAntigo = diretorioDestino(caminhoAntigo);
+            Diretorio paiNovo = diretorioDestino(caminhoNovo);
+            travarEmOrdem(paiAntigo, pai(caminhoAntigo), true, paiNovo, pai(caminhoNovo));
+            // um pai removido (ver liberar) depois de resolvido é resolvido de novo
+            while (paiAntigo.removido || paiNovo.removido) {
+                destravarEmOrdem(paiAntigo, true, paiNovo);
+                paiAntigo = diretorioDestino(caminhoAntigo);
+                paiNovo = diretorioDestino(caminhoNovo);
+                travarEmOrdem(paiAntigo, pai(caminhoAntigo), true, paiNovo, pai(caminhoNovo));
+            }
+            try {
+                No no = paiAntigo.filho(nome(caminhoAntigo));
+                if (no == null) {
+                    throw new CaminhoNaoEncontradoException("Caminho não encontrado: " + caminhoAntigo);
+                }
+                if (caminhoAntigo.equals(caminhoNovo)) {
+                    return 0;
+                }
+                verificarPermissao(paiAntigo, usuario, MotorPermissoes.ESCRITA, pai(caminhoAntigo));
+                verificarPermissao(paiNovo, usuario, MotorPermissoes.ESCRITA, pai(caminhoNovo));
+                existente = paiNovo.filho(nome(caminhoNovo));
+                if (existente != null) {
+                    verificarPermissao(existente, paiNovo.concessao(nome(caminhoNovo)), usuario,
+                            MotorPermissoes.ESCRITA, caminhoNovo);
+                }
+                // As permissões pendentes de uma cópia só valem abaixo do pai: são aplicadas antes de sair dele
+                if (paiAntigo.concessao(nome(caminhoAntigo)) != null) {
+                    no = descompartilhar(paiAntigo, nome(caminhoAntigo), caminhoAntigo);
+                }
+
+                lsn = registrar(Diario.MV, false, SEM_DADOS, caminhoAntigo, caminhoNovo, usuario);
+                paiAntigo.filhos().remove(nome(caminhoAntigo));
+                esquecerPendente(paiAntigo, nome(caminhoAntigo));
+                cache.invalidar(caminhoAntigo);
+                cache.invalidar(caminhoNovo);
+                adicionar(paiNovo, caminhoNovo, no, cache.epoca());
+            } finally {
+                destravarEmOrdem(paiAntigo, true, paiNovo);
+            }
+        } finally {
+            destravarRenomear();
+        }
+        if (existente != null) {
+            liberar(existente);
+        }
+        return lsn;
     }
 
     @Override
     public void ls(String caminho, String usuario, boolean recursivo) throws CaminhoNaoEncontradoException, PermissaoException {
-        throw new UnsupportedOperationException("Método não implementado 'ls'");
+        caminho = normalizar(caminho);
+        No no = resolverExistente(caminho);
+        TabelaPermissoes concessao = concessaoEm(caminho);
+        verificarPermissao(no, concessao, usuario, MotorPermissoes.LEITURA, caminho);
+        if (!no.isDiretorio()) {
+            System.out.println(caminho);
+            return;
+        }
+        listar((Diretorio) no, caminho, concessao, usuario, recursivo);
+    }
+
+    @Override
+    public Iterator<EntradaListagem> listar(String caminho, String usuario, boolean recursivo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        return abrirListagem(caminho, usuario, recursivo, null);
+    }
+
+    @Override
+    public PaginaListagem listar(String caminho, String usuario, boolean recursivo, int tamanhoPagina,
+            String continuacao) throws CaminhoNaoEncontradoException, PermissaoException {
+        if (tamanhoPagina <= 0) {
+            throw new IllegalArgumentException("Tamanho de página inválido: " + tamanhoPagina);
+        }
+        Iterator<EntradaListagem> it = abrirListagem(caminho, usuario, recursivo, continuacao);
+        List<EntradaListagem> entradas = new ArrayList<>(tamanhoPagina);
+        while (entradas.size() < tamanhoPagina && it.hasNext()) {
+            entradas.add(it.next());
+        }
+        // o token é o caminho da última entrada: a próxima página recomeça logo depois dela
+        String proxima = it.hasNext() ? entradas.get(entradas.size() - 1).getCaminho() : null;
+        return new PaginaListagem(entradas, proxima);
+    }
+
+    private Iterator<EntradaListagem> abrirListagem(String caminho, String usuario, boolean recursivo,
+            String continuacao) throws CaminhoNaoEncontradoException, PermissaoException {
+        caminho = normalizar(caminho);
+        No no = resolverExistente(caminho);
+        TabelaPermissoes concessao = concessaoEm(caminho);
+        verificarPermissao(no, concessao, usuario, MotorPermissoes.LEITURA, caminho);
+        if (continuacao != null) {
+            continuacao = normalizar(continuacao);
+            if (continuacao.equals(caminho) || !estaDentro(continuacao, caminho)) {
+                throw new IllegalArgumentException("Token de continuação inválido para " + caminho + ": " + continuacao);
+            }
+        }
+        if (!no.isDiretorio()) {
+            // como no ls, listar um arquivo devolve apenas o próprio arquivo
+            if (continuacao != null) {
+                return Collections.emptyIterator();
+            }
+            return List.of(IteradorListagem.entrada(no, caminho, nome(caminho), mascara(no, concessao, usuario))).iterator();
+        }
+        return new IteradorListagem((Diretorio) no, caminho, concessao, recursivo, (n, c) -> mascara(n, c, usuario),
+                continuacao);
     }
 
     @Override
     public void cp(String caminhoOrigem, String caminhoDestino, String usuario, boolean recursivo)
             throws CaminhoNaoEncontradoException, PermissaoException {
-        throw new UnsupportedOperationException("Método não implementado 'cp'");
+        // as travas são tomadas por copiarCaminho
+        aguardarDiario(copiarCaminho(caminhoOrigem, caminhoDestino, usuario, recursivo));
+    }
+
+    // cp -r compartilha a subárvore da origem com a cópia, e não pode acontecer entre a resolução e
+    // a alteração de um nó abaixo dela por outra operação: a alteração apareceria também na cópia,
+    // depois de o cp ter terminado. No modo concorrente, a subárvore da origem fica congelada
+    // durante o compartilhamento (ver TravaSubarvores): apenas as alterações dentro dela esperam.
+    // Para quem não é root, a leitura de toda a subárvore é verificada (O(n)) antes, sem travas e
+    // sem congelar nada, com uma vigia na origem. Se algum nó da subárvore foi acrescentado ou teve
+    // as permissões alteradas nesse meio tempo, a subárvore é solta e verificada de novo; só depois
+    // de TENTATIVAS_COPIA verificações vencidas a verificação é feita com ela congelada.
+    private long copiarCaminho(String caminhoOrigem, String caminhoDestino, String usuario, boolean recursivo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        caminhoOrigem = normalizar(caminhoOrigem);
+        caminhoDestino = normalizar(caminhoDestino);
+        if (caminhoOrigem.equals(caminhoDestino) || estaDentro(caminhoDestino, caminhoOrigem)) {
+            throw new IllegalArgumentException("Não é possível copiar " + caminhoOrigem + " para dentro de si mesmo");
+        }
+        if (travaInstantaneo == null) {
+            return copiarCaminho(caminhoOrigem, caminhoDestino, usuario, recursivo, null);
+        }
+        TravaSubarvores.Marca marca;
+        if (!recursivo || ROOT_USER.equals(usuario)) {
+            // um arquivo copiado compartilha apenas os blocos, lidos com a trava de leitura do arquivo
+            marca = recursivo ? travarCopia(caminhoOrigem, caminhoDestino) : travarEstrutura(caminhoOrigem, caminhoDestino);
+            try {
+                return copiarCaminho(caminhoOrigem, caminhoDestino, usuario, recursivo, null);
+            } finally {
+                destravarAlteracao(marca);
+            }
+        }
+        for (int tentativa = 1; ; tentativa++) {
+            TravaSubarvores.Marca vigia = subarvores.vigiar(caminhoOrigem);
+            try {
+                No verificada = resolverExistente(caminhoOrigem);
+                verificarSubarvore(verificada, concessaoEm(caminhoOrigem), usuario, MotorPermissoes.LEITURA, caminhoOrigem);
+                marca = travarCopia(caminhoOrigem, caminhoDestino);
+                try {
+                    boolean vencida = vigia.alterada || resolver(caminhoOrigem) != verificada;
+                    if (!vencida || tentativa == TENTATIVAS_COPIA) {
+                        return copiarCaminho(caminhoOrigem, caminhoDestino, usuario, true, vencida ? null : verificada);
+                    }
+                } finally {
+                    destravarAlteracao(marca);
+                }
+            } finally {
+                subarvores.esquecer(vigia);
+            }
+        }
+    }
+
+    // cp -r: origem e destino congelados, com ou sem diário; destravado por destravarAlteracao
+    private TravaSubarvores.Marca travarCopia(String caminhoOrigem, String caminhoDestino) {
+        travaInstantaneo.readLock().lock();
+        return subarvores.congelar(caminhoOrigem, caminhoDestino);
+    }
+
+    // Caminhos já normalizados. verificada: a origem, se a leitura da sua subárvore já foi
+    // verificada e a árvore não mudou desde então, ou null.
+    private long copiarCaminho(String caminhoOrigem, String caminhoDestino, String usuario, boolean recursivo,
+            No verificada) throws CaminhoNaoEncontradoException, PermissaoException {
+        No existente;
+        long lsn;
+        travarRenomear();
+        try {
+            No origem;
+            String caminhoLido;
+            Diretorio lido;
+            Diretorio paiDestino;
+            while (true) {
+                origem = resolverExistente(caminhoOrigem);
+                if (origem.isDiretorio() && !recursivo) {
+                    throw new IllegalArgumentException("Omitindo diretório " + caminhoOrigem + " (use recursivo)");
+                }
+                // Trava de leitura no diretório copiado (ou no pai, para um arquivo) e de escrita no pai do destino
+                caminhoLido = origem.isDiretorio() ? caminhoOrigem : pai(caminhoOrigem);
+                lido = origem.isDiretorio() ? (Diretorio) origem : diretorioOrigem(caminhoOrigem);
+                paiDestino = diretorioDestino(caminhoDestino);
+                travarEmOrdem(lido, caminhoLido, false, paiDestino, pai(caminhoDestino));
+                // resolvidos de novo se algum foi removido (ver liberar) ou o arquivo, substituído
+                if (!lido.removido && !paiDestino.removido
+                        && (origem == lido || lido.filho(nome(caminhoOrigem)) == origem)) {
+                    break;
+                }
+                destravarEmOrdem(lido, false, paiDestino);
+            }
+            try {
+                TabelaPermissoes concessao = concessaoEm(caminhoOrigem);
+                if (origem != verificada) {
+                    verificarSubarvore(origem, concessao, usuario, MotorPermissoes.LEITURA, caminhoOrigem);
+                }
+                verificarPermissao(paiDestino, usuario, MotorPermissoes.ESCRITA, pai(caminhoDestino));
+                existente = paiDestino.filho(nome(caminhoDestino));
+                if (existente != null) {
+                    verificarPermissao(existente, paiDestino.concessao(nome(caminhoDestino)), usuario,
+                            MotorPermissoes.ESCRITA, caminhoDestino);
+                }
+
+                lsn = registrar(Diario.CP, recursivo, SEM_DADOS, caminhoOrigem, caminhoDestino, usuario);
+                No copia = copiar(origem, concessao, usuario);
+                cache.revogarExclusivos(caminhoOrigem);
+                cache.invalidar(caminhoDestino);
+                adicionar(paiDestino, caminhoDestino, copia, cache.epoca());
+            } finally {
+                destravarEmOrdem(lido, false, paiDestino);
+            }
+        } finally {
+            destravarRenomear();
+        }
+        if (existente != null) {
+            liberar(existente);
+        }
+        return lsn;
+    }
+
+    // Executa um lote de mkdir, touch e write e retorna o resultado de cada operação, na ordem
+    // do lote. As operações são agrupadas pelo diretório pai (ver Lote): cada pai é resolvido
+    // uma vez, a permissão de escrita nele é verificada uma vez por usuário e as operações do
+    // grupo são aplicadas com uma única aquisição da trava do pai. Com diário, cada operação é
+    // registrada sob a trava do nó que altera, e o lote inteiro é confirmado com uma única espera.
+    // Cada operação tem o resultado que teria se o lote fosse executado em sequência por uma
+    // única thread; operações concorrentes de outras threads podem se intercalar entre grupos.
+    public List<ResultadoOperacao> submeter(List<Operacao> operacoes) {
+        ResultadoOperacao[] resultados = new ResultadoOperacao[operacoes.size()];
+        long lsn = 0;
+        // os caminhos são declarados grupo a grupo, por aplicarGrupo
+        TravaSubarvores.Marca marca = travarAlteracao();
+        try {
+            for (Lote.Grupo grupo : Lote.agrupar(operacoes, c -> resolver(c) != null)) {
+                lsn = Math.max(lsn, aplicarGrupo(grupo, operacoes, resultados));
+            }
+        } finally {
+            destravarAlteracao(marca);
+        }
+        aguardarDiario(lsn);
+        return Arrays.asList(resultados);
+    }
+
+    // Retorna o lsn do último registro feito no diário pelo grupo, ou 0.
+    private long aplicarGrupo(Lote.Grupo grupo, List<Operacao> operacoes, ResultadoOperacao[] resultados) {
+        long epoca = cache.epoca();
+        // escrita no pai, por usuário
+        Map<String, Boolean> permitidos = new HashMap<>();
+        Diretorio pai = null;
+        long lsn = 0;
+        // as operações do grupo atuam no pai, nos filhos dele e, com "mkdir -p", nos ancestrais
+        TravaSubarvores.Marca marca = entrar(grupo.pai);
+        try {
+            for (int i : grupo.indices) {
+                Operacao operacao = operacoes.get(i);
+                try {
+                    if (pai == null) {
+                        // se falhar, a próxima operação do grupo tenta de novo, como faria sozinha
+                        Diretorio resolvido = paiOperacao(operacao, grupo.pai);
+                        while (!travarAnexado(resolvido)) {
+                            resolvido = paiOperacao(operacao, grupo.pai);
+                        }
+                        pai = resolvido;
+                    }
+                    lsn = Math.max(lsn, aplicar(operacao, pai, grupo.pai, permitidos, epoca));
+                    resultados[i] = ResultadoOperacao.SUCESSO;
+                } catch (CaminhoNaoEncontradoException | CaminhoJaExistenteException | PermissaoException
+                        | IllegalArgumentException e) {
+                    resultados[i] = new ResultadoOperacao(e);
+                }
+            }
+        } finally {
+            if (pai != null) {
+                pai.destravarEscrita();
+            }
+            sair(marca);
+        }
+        return lsn;
+    }
+
+    // Resolve o pai como a operação isolada faria, com as mesmas exceções.
+    private Diretorio paiOperacao(Operacao operacao, String caminhoPai)
+            throws CaminhoNaoEncontradoException, CaminhoJaExistenteException, PermissaoException {
+        switch (operacao.tipo) {
+            case MKDIR:
+                return garantirDiretorio(caminhoPai, operacao.usuario);
+            default:
+                return diretorioDestino(operacao.caminho);
+        }
+    }
+
+    // Deve ser chamado com a trava de escrita do pai. Retorna o lsn do registro da operação (ver registrar).
+    private long aplicar(Operacao operacao, Diretorio pai, String caminhoPai, Map<String, Boolean> permitidos,
+            long epoca) throws CaminhoJaExistenteException, PermissaoException {
+        String caminho = operacao.caminho;
+        String nome = nome(caminho);
+        if (operacao.tipo != Operacao.Tipo.WRITE) {
+            if (caminho.equals(ROOT_DIR) || pai.filho(nome) != null) {
+                throw new CaminhoJaExistenteException("Caminho já existe: " + caminho);
+            }
+            verificarEscritaPai(pai, caminhoPai, operacao.usuario, permitidos);
+            TabelaPermissoes permissoes = permissoesNovoNo(pai, caminho, operacao.usuario);
+            long lsn = operacao.tipo == Operacao.Tipo.MKDIR
+                    ? registrar(Diario.MKDIR, false, SEM_DADOS, caminho, operacao.usuario)
+                    : registrar(Diario.TOUCH, false, SEM_DADOS, caminho, operacao.usuario);
+            adicionar(pai, caminho,
+                    operacao.tipo == Operacao.Tipo.MKDIR ? novoDiretorio(permissoes) : novoArquivo(permissoes), epoca);
+            return lsn;
+        }
+        No no = caminho.equals(ROOT_DIR) ? raiz : pai.filho(nome);
+        Arquivo arquivo;
+        if (no == null) {
+            verificarEscritaPai(pai, caminhoPai, operacao.usuario, permitidos);
+            // travado antes de entrar na árvore, como em arquivoParaEscrever
+            arquivo = novoArquivo(permissoesNovoNo(pai, caminho, operacao.usuario));
+            arquivo.travarEscrita();
+            adicionar(pai, caminho, arquivo, epoca);
+        } else {
+            if (no.compartilhado() || pai.concessao(nome) != null) {
+                no = descompartilhar(pai, nome, caminho);
+            }
+            arquivo = comoArquivo(no, caminho);
+            arquivo.travarEscrita();
+        }
+        try {
+            verificarPermissao(arquivo, operacao.usuario, MotorPermissoes.ESCRITA, caminho);
+            long lsn = registrar(Diario.WRITE, operacao.anexar, operacao.dados, caminho, operacao.usuario);
+            if (!operacao.anexar) {
+                arquivo.truncar();
+            }
+            arquivo.anexar(operacao.dados, 0, operacao.dados.length);
+            return lsn;
+        } finally {
+            arquivo.destravarEscrita();
+        }
+    }
+
+    private void verificarEscritaPai(Diretorio pai, String caminhoPai, String usuario, Map<String, Boolean> permitidos)
+            throws PermissaoException {
+        if (!permitidos.computeIfAbsent(usuario, u -> temPermissao(pai, u, MotorPermissoes.ESCRITA))) {
+            verificarPermissao(pai, usuario, MotorPermissoes.ESCRITA, caminhoPai);
+        }
     }
 
     public void addUser(String user) {
-        throw new UnsupportedOperationException("Método não implementado 'addUser'");
+        motor.idUsuario(user);
+    }
+
+    // Percursos de subárvores (verificação de permissões do rm -r e do cp -r, liberação da
+    // subárvore removida e ls -R): diretórios com pelo menos 'limiar' entradas (no ls -R,
+    // subdiretórios) têm as entradas divididas entre as threads de 'pool' (ver PercursoParalelo).
+    // limiar <= 0 mantém tudo na thread que chamou. Padrão: ForkJoinPool.commonPool() e 128.
+    // O resultado é o da versão sequencial: a saída do ls -R sai na mesma ordem, impressa pelas
+    // threads do pool, e a PermissaoException cita o primeiro nó sem permissão em pré-ordem.
+    public void configurarParalelismo(ForkJoinPool pool, int limiar) {
+        this.poolParalelo = pool;
+        this.limiarParalelo = limiar;
+    }
+
+    // Visão somente leitura da árvore neste momento, em O(1): alterações posteriores (write, mv,
+    // rm, ...) não aparecem nela. Leituras e listagens na visão, inclusive ls -R longos, só
+    // travam em leitura nós que a árvore viva não trava em escrita (ela os clona antes de alterar),
+    // então não atrasam as alterações. Enquanto a visão estiver aberta, cada alteração clona os
+    // nós do seu caminho ainda compartilhados; close() a descarta. Com uma imagem, a visão pode
+    // carregar diretórios dela sob demanda e deve ser fechada antes deste sistema de arquivos.
+    public Instantaneo snapshot() {
+        Diretorio retida;
+        if (travaInstantaneo != null) {
+            travaInstantaneo.writeLock().lock();
+            try {
+                retida = reterRaiz();
+            } finally {
+                travaInstantaneo.writeLock().unlock();
+            }
+        } else {
+            retida = reterRaiz();
+        }
+        return new Instantaneo(new FileSystemImpl(this, retida));
+    }
+
+    private Diretorio reterRaiz() {
+        Diretorio atual = raiz;
+        reter(atual);
+        cache.revogarExclusivos(ROOT_DIR);
+        return atual;
+    }
+
+    // Chamado uma única vez por Instantaneo.close(), na visão
+    void soltarInstantaneo() {
+        liberar(raiz);
+    }
+
+    // Toma travaInstantaneo em leitura e declara a alteração em andamento nos caminhos (já
+    // normalizados; ver TravaSubarvores). Sem caminhos, apenas toma a trava.
+    private TravaSubarvores.Marca travarAlteracao(String... caminhos) {
+        if (travaInstantaneo == null) {
+            return null;
+        }
+        travaInstantaneo.readLock().lock();
+        return caminhos.length > 0 ? subarvores.entrar(caminhos) : null;
+    }
+
+    private void destravarAlteracao(TravaSubarvores.Marca marca) {
+        if (travaInstantaneo != null) {
+            sair(marca);
+            travaInstantaneo.readLock().unlock();
+        }
+    }
+
+    private TravaSubarvores.Marca entrar(String... caminhos) {
+        return subarvores != null ? subarvores.entrar(caminhos) : null;
+    }
+
+    private void sair(TravaSubarvores.Marca marca) {
+        if (marca != null) {
+            subarvores.sair(marca);
+        }
+    }
+
+    // rm, mv e cp. Com diário, as subárvores dos caminhos ficam congeladas, para que os caminhos
+    // dos registros sejam reaplicados sobre a mesma árvore: um mkdir sob um diretório que um mv
+    // está movendo, por exemplo, seria reaplicado no caminho antigo ou no novo conforme a ordem
+    // dos registros. Congelado, o mkdir termina antes do mv ou começa depois dele. Destravado por
+    // destravarAlteracao.
+    private TravaSubarvores.Marca travarEstrutura(String... caminhos) {
+        if (travaInstantaneo == null || diario == null) {
+            return travarAlteracao(caminhos);
+        }
+        travaInstantaneo.readLock().lock();
+        return subarvores.congelar(caminhos);
+    }
+
+    // Chamado depois de um nó ser acrescentado em 'caminho' ou ter as permissões alteradas (ver copiarCaminho)
+    private void alterado(String caminho) {
+        if (subarvores != null) {
+            subarvores.alterado(caminho);
+        }
+    }
+
+    // Registra a alteração no diário e retorna o lsn, ou 0 sem diário (e durante a reaplicação).
+    // Deve ser chamado com as travas dos nós alterados, antes de a alteração ficar visível: assim a
+    // ordem dos registros é a ordem em que as alterações de um mesmo nó foram feitas, e nada que
+    // dependa da alteração é registrado antes dela. A trava interna do diário, que atribui o lsn e
+    // acrescenta o registro ao lote, é a única trava global do caminho de escrita.
+    private long registrar(byte tipo, boolean opcao, byte[] dados, String... textos) {
+        return diario != null ? diario.registrar(tipo, opcao, dados, textos) : 0;
+    }
+
+    // Espera o force() do registro; sem efeito para lsn 0
+    private void aguardarDiario(long lsn) {
+        if (lsn > 0) {
+            diario.aguardar(lsn);
+        }
+    }
+
+    // Grava a árvore atual na imagem e descarta o diário incluído nela; sem efeito se o sistema de
+    // arquivos é apenas em memória. Sem diário, operações concorrentes com a gravação podem ou não entrar nela.
+    public void sincronizar() throws IOException {
+        if (imagem == null) {
+            return;
+        }
+        if (diario == null) {
+            imagem.sincronizar(raiz, imagem.lsn());
+            return;
+        }
+        // A árvore é retida e o diário passa a um novo segmento no mesmo instante; a gravação da
+        // imagem, a partir da árvore retida, não barra as alterações, que copiam os nós retidos
+        // antes de alterá-los (como com snapshot()) e são registradas no novo segmento.
+        synchronized (travaCheckpoint) {
+            Diretorio retida;
+            long lsn;
+            // como em snapshot(): nenhuma alteração que já resolveu os seus nós fica entre a
+            // árvore retida e o novo segmento
+            if (travaInstantaneo != null) {
+                travaInstantaneo.writeLock().lock();
+            }
+            try {
+                retida = reterRaiz();
+                try {
+                    lsn = diario.rotacionar();
+                } catch (IOException | RuntimeException e) {
+                    liberar(retida);
+                    throw e;
+                }
+            } finally {
+                if (travaInstantaneo != null) {
+                    travaInstantaneo.writeLock().unlock();
+                }
+            }
+            try {
+                imagem.sincronizar(retida, lsn);
+                diario.descartarAte(lsn);
+            } finally {
+                liberar(retida);
+            }
+        }
+    }
+
+    // Grava a árvore na imagem e a libera para outros processos.
+    @Override
+    public void close() throws IOException {
+        if (imagem == null) {
+            return;
+        }
+        try {
+            sincronizar();
+        } finally {
+            try {
+                if (diario != null) {
+                    diario.close();
+                }
+            } finally {
+                imagem.close();
+            }
+        }
+    }
+
+    // Quantidade de force() feitos no diário (0 sem diário)
+    public long getGravacoesDiario() {
+        return diario != null ? diario.forcados() : 0;
+    }
+
+    // Reaplica um registro do diário ao abrir. Uma operação que falha é ignorada: ela foi
+    // confirmada sobre um nó que outra operação, registrada antes, já havia removido.
+    private void reaplicar(Diario.Registro registro) {
+        String[] t = registro.textos;
+        try {
+            switch (registro.tipo) {
+                case Diario.MKDIR:
+                    criarDiretorio(t[0], t[1]);
+                    break;
+                case Diario.TOUCH:
+                    criarArquivo(t[0], t[1]);
+                    break;
+                case Diario.WRITE:
+                    escrever(t[0], t[1], registro.opcao, registro.dados);
+                    break;
+                case Diario.RM:
+                    remover(t[0], t[1], registro.opcao);
+                    break;
+                case Diario.MV:
+                    mover(t[0], t[1], t[2]);
+                    break;
+                case Diario.CP:
+                    copiarCaminho(t[0], t[1], t[2], registro.opcao);
+                    break;
+                case Diario.CHMOD:
+                    alterarPermissao(t[0], t[1], t[2], t[3]);
+                    break;
+                default:
+                    throw new IllegalStateException("Registro de diário desconhecido: " + registro.tipo);
+            }
+        } catch (CaminhoNaoEncontradoException | CaminhoJaExistenteException | PermissaoException
+                | IllegalArgumentException e) {
+            // ignorada, ver acima
+        }
+    }
+
+    // Bytes lógicos e físicos do conteúdo dos arquivos. Percorre a árvore inteira (carregando
+    // os diretórios ainda não lidos da imagem); os valores são aproximados se houver operações
+    // concorrentes.
+    public EstatisticasDados estatisticasDados() {
+        long logicos = 0;
+        long fisicos = 0;
+        Set<Object> vistos = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Diretorio> pendentes = new ArrayDeque<>();
+        pendentes.push(raiz);
+        while (!pendentes.isEmpty()) {
+            // uma subárvore compartilhada por cópias é visitada uma vez por caminho
+            for (Map.Entry<String, No> e : filhos(pendentes.pop())) {
+                No no = e.getValue();
+                if (no.isDiretorio()) {
+                    pendentes.push((Diretorio) no);
+                    continue;
+                }
+                Arquivo arquivo = (Arquivo) no;
+                arquivo.travarLeitura();
+                try {
+                    logicos += arquivo.tamanho();
+                    fisicos += arquivo.contarFisicos(vistos);
+                } finally {
+                    arquivo.destravarLeitura();
+                }
+            }
+        }
+        return new EstatisticasDados(logicos, fisicos, pool.blocosDeduplicados(), pool.livres());
+    }
+
+    // Estatísticas do cache de resolução de caminhos
+    public long getAcertosCache() {
+        return cache.getAcertos();
+    }
+
+    public long getFalhasCache() {
+        return cache.getFalhas();
+    }
+
+    // ---------------------------------------------------------------------
+    // Resolução de caminhos
+    // ---------------------------------------------------------------------
+
+    // Resolve o caminho (já normalizado) para o nó correspondente, ou null se não existir.
+    // Em caso de falha no cache, resolve o pai (que provavelmente está no cache)
+    // e desce apenas um nível, em vez de percorrer a árvore inteira desde a raiz.
+    private No resolver(String caminho) {
+        if (caminho.equals(ROOT_DIR)) {
+            return raiz;
+        }
+        No no = cache.obter(caminho);
+        if (no != null) {
+            return no;
+        }
+        long epoca = cache.epoca();
+        No pai = resolver(pai(caminho));
+        if (pai == null || !pai.isDiretorio()) {
+            return null;
+        }
+        no = ((Diretorio) pai).filho(nome(caminho));
+        if (no != null) {
+            cache.guardar(caminho, no, epoca);
+        }
+        return no;
+    }
+
+    private No resolverExistente(String caminho) throws CaminhoNaoEncontradoException {
+        No no = resolver(caminho);
+        if (no == null) {
+            throw new CaminhoNaoEncontradoException("Caminho não encontrado: " + caminho);
+        }
+        return no;
+    }
+
+    // Resolve o caminho para ser alterado: nenhum nó do caminho, inclusive o próprio,
+    // pode ser compartilhado com uma cópia. Os nós compartilhados encontrados a partir da raiz
+    // são clonados (cópia sob escrita). Sem nós compartilhados, equivale a resolver().
+    // Com algum nó compartilhado na árvore, o caminho percorrido fica no cache como exclusivo até
+    // uma cópia ou um instantâneo compartilhar um nó dele (ver revogarExclusivos).
+    private No resolverParaAlterar(String caminho) {
+        if (nosCompartilhados.get() == 0) {
+            return resolver(caminho);
+        }
+        No no = cache.obterExclusivo(caminho);
+        if (no != null) {
+            return no;
+        }
+        long epoca = cache.epoca();
+        no = resolverDescompartilhando(caminho);
+        if (no != null && cache.epoca() != epoca) {
+            // os clones invalidaram o caminho no cache; a segunda passada já não clona
+            epoca = cache.epoca();
+            no = resolverDescompartilhando(caminho);
+        }
+        if (no != null && !caminho.equals(ROOT_DIR)) {
+            cache.guardarExclusivo(caminho, no, epoca);
+        }
+        return no;
+    }
+
+    private No resolverDescompartilhando(String caminho) {
+        No atual = raizParaAlterar();
+        int inicio = 1;
+        while (inicio < caminho.length()) {
+            if (!atual.isDiretorio()) {
+                return null;
+            }
+            int fim = caminho.indexOf('/', inicio);
+            if (fim < 0) {
+                fim = caminho.length();
+            }
+            String nome = caminho.substring(inicio, fim);
+            No filho = ((Diretorio) atual).filho(nome);
+            if (filho == null) {
+                return null;
+            }
+            if (filho.compartilhado() || ((Diretorio) atual).concessao(nome) != null) {
+                // null se o filho foi removido por outra thread desde a leitura acima
+                filho = descompartilhar((Diretorio) atual, nome, caminho.substring(0, fim));
+                if (filho == null) {
+                    return null;
+                }
+            }
+            atual = filho;
+            inicio = fim + 1;
+        }
+        return atual;
+    }
+
+    // A raiz, clonada antes se estiver compartilhada com um instantâneo.
+    private Diretorio raizParaAlterar() {
+        Diretorio atual = raiz;
+        if (!atual.compartilhado()) {
+            return atual;
+        }
+        synchronized (travaRaiz) {
+            atual = raiz;
+            if (atual.compartilhado()) {
+                Diretorio clone = (Diretorio) clonar(atual, atual.permissoes);
+                raiz = clone;
+                liberar(atual);
+                atual = clone;
+            }
+            return atual;
+        }
+    }
+
+    // Substitui, no pai, o filho compartilhado por um clone exclusivo deste lado, com as permissões
+    // pendentes que o pai tinha para ele (ver copiar). Um filho pendente que não é mais
+    // compartilhado recebe as permissões sem ser clonado.
+    private No descompartilhar(Diretorio pai, String nome, String caminho) {
+        if (!travarAnexado(pai)) {
+            return null;
+        }
+        try {
+            No original = pai.filho(nome);
+            TabelaPermissoes concessao = pai.concessao(nome);
+            if (original == null || (!original.compartilhado() && concessao == null)) {
+                return original;
+            }
+            if (!original.compartilhado()) {
+                synchronized (original) {
+                    original.permissoes = TabelaPermissoes.somar(original.permissoes, concessao);
+                }
+                concederFilhos(original, concessao);
+                esquecerPendente(pai, nome);
+                cache.revogarExclusivos(caminho);
+                return original;
+            }
+            No clone = clonar(original, TabelaPermissoes.somar(original.permissoes, concessao));
+            concederFilhos(clone, concessao);
+            pai.filhos().put(nome, clone);
+            esquecerPendente(pai, nome);
+            cache.invalidar(caminho);
+            liberar(original);
+            return clone;
+        } finally {
+            pai.destravarEscrita();
+        }
+    }
+
+    // Passa as permissões pendentes de um diretório para todos os seus filhos
+    private void concederFilhos(No no, TabelaPermissoes concessao) {
+        if (concessao == null || !no.isDiretorio()) {
+            return;
+        }
+        no.travarEscrita();
+        try {
+            if (((Diretorio) no).conceder(concessao)) {
+                nosCompartilhados.incrementAndGet();
+            }
+        } finally {
+            no.destravarEscrita();
+        }
+    }
+
+    // Deve ser chamado com a trava de escrita do diretório.
+    private void esquecerPendente(Diretorio dir, String nome) {
+        if (dir.esquecer(nome)) {
+            nosCompartilhados.decrementAndGet();
+        }
+    }
+
+    // Permissões pendentes de cópias que valem para o nó em 'caminho' (ver copiar): a soma das que
+    // cada diretório do caminho ainda tem para o filho seguinte, ou null se não houver nenhuma.
+    private TabelaPermissoes concessaoEm(String caminho) {
+        if (nosCompartilhados.get() == 0) {
+            return null;
+        }
+        TabelaPermissoes concessao = null;
+        No atual = raiz;
+        int inicio = 1;
+        while (inicio < caminho.length() && atual != null && atual.isDiretorio()) {
+            int fim = caminho.indexOf('/', inicio);
+            if (fim < 0) {
+                fim = caminho.length();
+            }
+            String nome = caminho.substring(inicio, fim);
+            concessao = TabelaPermissoes.somar(concessao, ((Diretorio) atual).concessao(nome));
+            atual = ((Diretorio) atual).filho(nome);
+            inicio = fim + 1;
+        }
+        return concessao;
+    }
+
+    // Clone raso: um diretório clonado compartilha os filhos do original,
+    // e um arquivo clonado compartilha os blocos.
+    private No clonar(No original, TabelaPermissoes permissoes) {
+        original.travarLeitura();
+        try {
+            if (!original.isDiretorio()) {
+                return ((Arquivo) original).compartilhar(permissoes);
+            }
+            Diretorio clone = novoDiretorio(permissoes);
+            for (Map.Entry<String, No> e : ((Diretorio) original).filhos().entrySet()) {
+                reter(e.getValue());
+                clone.filhos().put(e.getKey(), e.getValue());
+            }
+            if (clone.herdarPendentes((Diretorio) original)) {
+                nosCompartilhados.incrementAndGet();
+            }
+            return clone;
+        } finally {
+            original.destravarLeitura();
+        }
+    }
+
+    // Diretório pai de um caminho que será alterado
+    private Diretorio diretorioDestino(String caminho) throws CaminhoNaoEncontradoException {
+        No pai = resolverParaAlterar(pai(caminho));
+        if (pai == null || !pai.isDiretorio()) {
+            throw new CaminhoNaoEncontradoException("Diretório não encontrado: " + pai(caminho));
+        }
+        return (Diretorio) pai;
+    }
+
+    // Diretório pai de um caminho que será apenas lido
+    private Diretorio diretorioOrigem(String caminho) throws CaminhoNaoEncontradoException {
+        No pai = resolver(pai(caminho));
+        if (pai == null || !pai.isDiretorio()) {
+            throw new CaminhoNaoEncontradoException("Diretório não encontrado: " + pai(caminho));
+        }
+        return (Diretorio) pai;
+    }
+
+    private Diretorio garantirDiretorio(String caminho, String usuario)
+            throws CaminhoJaExistenteException, PermissaoException {
+        long epoca = cache.epoca();
+        No no = resolverParaAlterar(caminho);
+        if (no == null) {
+            Diretorio pai = garantirDiretorio(pai(caminho), usuario);
+            if (!travarAnexado(pai)) {
+                return garantirDiretorio(caminho, usuario);
+            }
+            try {
+                // Outra thread pode ter criado o diretório desde a resolução
+                no = pai.filho(nome(caminho));
+                if (no == null) {
+                    verificarPermissao(pai, usuario, MotorPermissoes.ESCRITA, pai(caminho));
+                    // confirmado junto com a operação que pediu o diretório, registrada depois
+                    registrar(Diario.MKDIR, false, SEM_DADOS, caminho, usuario);
+                    no = adicionar(pai, caminho, novoDiretorio(permissoesNovoNo(pai, caminho, usuario)), epoca);
+                }
+            } finally {
+                pai.destravarEscrita();
+            }
+        }
+        if (!no.isDiretorio()) {
+            throw new CaminhoJaExistenteException("Já existe um arquivo em " + caminho);
+        }
+        return (Diretorio) no;
+    }
+
+    // Deve ser chamado com a trava de escrita do pai.
+    private No adicionar(Diretorio pai, String caminho, No no, long epoca) {
+        pai.filhos().put(nome(caminho), no);
+        esquecerPendente(pai, nome(caminho));
+        alterado(caminho);
+        cache.guardar(caminho, no, epoca);
+        return no;
+    }
+
+    private Diretorio novoDiretorio(TabelaPermissoes permissoes) {
+        return new Diretorio(permissoes, concorrente);
+    }
+
+    private Arquivo novoArquivo(TabelaPermissoes permissoes) {
+        return new Arquivo(permissoes, pool, concorrente);
+    }
+
+    // ---------------------------------------------------------------------
+    // Travas (sem efeito fora do modo concorrente)
+    // ---------------------------------------------------------------------
+
+    private void travarRenomear() {
+        if (travaRenomear != null) {
+            travaRenomear.lock();
+        }
+    }
+
+    private void destravarRenomear() {
+        if (travaRenomear != null) {
+            travaRenomear.unlock();
+        }
+    }
+
+    // Trava 'a' (em leitura ou escrita) e 'b' (em escrita) na ordem dos seus caminhos.
+    // Se forem o mesmo diretório, ele é travado uma única vez, em escrita.
+    private static void travarEmOrdem(Diretorio a, String caminhoA, boolean escritaA, Diretorio b, String caminhoB) {
+        if (a == b) {
+            b.travarEscrita();
+        } else if (caminhoA.compareTo(caminhoB) < 0) {
+            travar(a, escritaA);
+            b.travarEscrita();
+        } else {
+            b.travarEscrita();
+            travar(a, escritaA);
+        }
+    }
+
+    private static void destravarEmOrdem(Diretorio a, boolean escritaA, Diretorio b) {
+        b.destravarEscrita();
+        if (a != b) {
+            if (escritaA) {
+                a.destravarEscrita();
+            } else {
+                a.destravarLeitura();
+            }
+        }
+    }
+
+    private static void travar(No no, boolean escrita) {
+        if (escrita) {
+            no.travarEscrita();
+        } else {
+            no.travarLeitura();
+        }
+    }
+
+    // Trava o nó em escrita e retorna true, ou retorna false, sem a trava, se ele foi removido
+    // da árvore (ver liberar) depois de ter sido resolvido: quem chama resolve o caminho de novo.
+    private static boolean travarAnexado(No no) {
+        no.travarEscrita();
+        if (no.removido) {
+            no.destravarEscrita();
+            return false;
+        }
+        return true;
+    }
+
+    private static Arquivo comoArquivo(No no, String caminho) {
+        if (no.isDiretorio()) {
+            throw new IllegalArgumentException(caminho + " é um diretório");
+        }
+        return (Arquivo) no;
+    }
+
+    // Remove barras duplicadas e a barra final. Caminhos relativos são tratados a partir da raiz.
+    static String normalizar(String caminho) {
+        if (caminho == null || caminho.isEmpty()) {
+            throw new IllegalArgumentException("Caminho vazio");
+        }
+        boolean normalizado = caminho.charAt(0) == '/'
+                && (caminho.length() == 1 || caminho.charAt(caminho.length() - 1) != '/')
+                && !caminho.contains("//");
+        if (normalizado) {
+            return caminho;
+        }
+        StringBuilder sb = new StringBuilder(caminho.length() + 1);
+        for (String parte : caminho.split("/")) {
+            if (!parte.isEmpty()) {
+                sb.append('/').append(parte);
+            }
+        }
+        return sb.length() == 0 ? ROOT_DIR : sb.toString();
+    }
+
+    static String pai(String caminho) {
+        int i = caminho.lastIndexOf('/');
+        return i <= 0 ? ROOT_DIR : caminho.substring(0, i);
+    }
+
+    static String nome(String caminho) {
+        return caminho.substring(caminho.lastIndexOf('/') + 1);
+    }
+
+    static String filho(String caminho, String nome) {
+        return caminho.equals(ROOT_DIR) ? ROOT_DIR + nome : caminho + "/" + nome;
+    }
+
+    // true se caminho for um descendente estrito de ancestral
+    static boolean estaDentro(String caminho, String ancestral) {
+        return ancestral.equals(ROOT_DIR) || caminho.startsWith(ancestral + "/");
+    }
+
+    // ---------------------------------------------------------------------
+    // Permissões
+    // ---------------------------------------------------------------------
+
+    // Um novo nó herda as permissões do diretório pai, recebe as regras ancoradas
+    // no seu caminho e o criador recebe "rwx".
+    private TabelaPermissoes permissoesNovoNo(No pai, String caminho, String usuario) {
+        TabelaPermissoes permissoes = motor.aplicarRegras(caminho, pai.permissoes);
+        return permissoes.com(motor.idUsuario(usuario), MotorPermissoes.TOTAL);
+    }
+
+    // true se o usuário tiver todos os bits de 'mascara' no nó
+    private boolean temPermissao(No no, String usuario, int mascara) {
+        return (mascara(no, usuario) & mascara) == mascara;
+    }
+
+    private int mascara(No no, String usuario) {
+        return mascara(no, null, usuario);
+    }
+
+    // concessao: permissões pendentes de uma cópia que valem para o nó além das suas (ver copiar), ou null
+    private int mascara(No no, TabelaPermissoes concessao, String usuario) {
+        if (ROOT_USER.equals(usuario)) {
+            return MotorPermissoes.TOTAL;
+        }
+        int id = motor.idExistente(usuario);
+        if (id < 0) {
+            return 0;
+        }
+        int mascara = no.permissoes.mascara(id);
+        return concessao != null ? mascara | concessao.mascara(id) : mascara;
+    }
+
+    private void verificarPermissao(No no, String usuario, int mascara, String caminho)
+            throws PermissaoException {
+        verificarPermissao(no, null, usuario, mascara, caminho);
+    }
+
+    private void verificarPermissao(No no, TabelaPermissoes concessao, String usuario, int mascara, String caminho)
+            throws PermissaoException {
+        if ((mascara(no, concessao, usuario) & mascara) != mascara) {
+            throw new PermissaoException("Usuário " + usuario + " não tem permissão '"
+                    + MotorPermissoes.formatar(mascara) + "' em " + caminho);
+        }
+    }
+
+    private void verificarSubarvore(No no, TabelaPermissoes concessao, String usuario, int mascara, String caminho)
+            throws PermissaoException {
+        if (ROOT_USER.equals(usuario)) {
+            return;
+        }
+        verificarSubarvore(no, concessao, usuario, mascara, caminho, percurso());
+    }
+
+    // Com mais de um nó sem permissão, a exceção cita o primeiro em pré-ordem, também em paralelo
+    private void verificarSubarvore(No no, TabelaPermissoes concessao, String usuario, int mascara, String caminho,
+            PercursoParalelo percurso) throws PermissaoException {
+        verificarPermissao(no, concessao, usuario, mascara, caminho);
+        if (!no.isDiretorio()) {
+            return;
+        }
+        Diretorio dir = (Diretorio) no;
+        Map<String, No> filhos = dir.filhos();
+        if (percurso.paralelo(filhos.size())) {
+            percurso.paraCadaEmOrdem(new ArrayList<>(filhos.entrySet()),
+                    e -> verificarSubarvore(e.getValue(), TabelaPermissoes.somar(concessao, dir.concessao(e.getKey())),
+                            usuario, mascara, filho(caminho, e.getKey()), percurso));
+            return;
+        }
+        for (Map.Entry<String, No> e : filhos.entrySet()) {
+            verificarSubarvore(e.getValue(), TabelaPermissoes.somar(concessao, dir.concessao(e.getKey())), usuario,
+                    mascara, filho(caminho, e.getKey()), percurso);
+        }
+    }
+
+    private PercursoParalelo percurso() {
+        return new PercursoParalelo(poolParalelo, limiarParalelo);
+    }
+
+    // ---------------------------------------------------------------------
+    // Cópia e listagem
+    // ---------------------------------------------------------------------
+
+    // Apenas o nó do topo da cópia é novo; abaixo dele a subárvore da origem é compartilhada, então
+    // a cópia custa O(filhos do topo), e não O(tamanho da subárvore). A verificação de leitura da
+    // subárvore feita antes por copiarCaminho, porém, é O(n) para quem não é root.
+    // Como em uma cópia nó a nó, quem copiou recebe "rwx" em todos os nós: no topo diretamente e
+    // nos filhos compartilhados como permissão pendente, aplicada quando cada um for clonado ou
+    // alterado (ver descompartilhar). 'concessao' é a que ainda valia para a origem no seu caminho
+    // (ver concessaoEm).
+    private No copiar(No origem, TabelaPermissoes concessao, String usuario) {
+        TabelaPermissoes copiador = TabelaPermissoes.VAZIA.com(motor.idUsuario(usuario), MotorPermissoes.TOTAL);
+        No copia = clonar(origem, TabelaPermissoes.somar(TabelaPermissoes.somar(origem.permissoes, concessao), copiador));
+        // root já tem todas as permissões em qualquer nó
+        concederFilhos(copia, ROOT_USER.equals(usuario) ? concessao : TabelaPermissoes.somar(concessao, copiador));
+        return copia;
+    }
+
+    // Cópia dos filhos do diretório, lida com a trava de leitura.
+    private static List<Map.Entry<String, No>> filhos(Diretorio dir) {
+        dir.travarLeitura();
+        try {
+            List<Map.Entry<String, No>> filhos = new ArrayList<>(dir.filhos().size());
+            for (Map.Entry<String, No> e : dir.filhos().entrySet()) {
+                filhos.add(Map.entry(e.getKey(), e.getValue()));
+            }
+            return filhos;
+        } finally {
+            dir.destravarLeitura();
+        }
+    }
+
+    private void reter(No no) {
+        if (no.referencias.incrementAndGet() == 2) {
+            nosCompartilhados.incrementAndGet();
+        }
+    }
+
+    // Solta uma referência a uma subárvore removida, sobrescrita ou clonada. Quando a última
+    // referência é solta, os filhos também são soltos e os blocos dos arquivos voltam ao pool.
+    private void liberar(No no) {
+        liberar(no, null);
+    }
+
+    // percurso: o da liberação em andamento, ou null para criar um se a subárvore tiver um diretório largo
+    private void liberar(No no, PercursoParalelo percurso) {
+        int restantes = no.referencias.decrementAndGet();
+        if (restantes == 1) {
+            nosCompartilhados.decrementAndGet();
+        }
+        if (restantes > 0) {
+            return;
+        }
+        if (no.isDiretorio()) {
+            // Marcado com a trava: quem ainda não o travou não altera mais os filhos, que podem
+            // ser percorridos sem ela
+            no.travarEscrita();
+            try {
+                no.removido = true;
+                if (((Diretorio) no).descartarPendentes()) {
+                    nosCompartilhados.decrementAndGet();
+                }
+            } finally {
+                no.destravarEscrita();
+            }
+            // um diretório ainda não carregado da imagem não tem blocos a devolver
+            if (((Diretorio) no).pendente()) {
+                return;
+            }
+            Map<String, No> filhos = ((Diretorio) no).filhos();
+            PercursoParalelo atual = percurso != null ? percurso : percurso();
+            if (atual.paralelo(filhos.size())) {
+                atual.paraCada(new ArrayList<>(filhos.values()), filho -> liberar(filho, atual));
+                return;
+            }
+            for (No filho : filhos.values()) {
+                liberar(filho, atual);
+            }
+        } else {
+            no.travarEscrita();
+            try {
+                no.removido = true;
+                ((Arquivo) no).truncar();
+            } finally {
+                no.destravarEscrita();
+            }
+        }
+    }
+
+    // Formato semelhante ao "ls -R": um bloco "caminho:" por diretório,
+    // com um nome por linha e diretórios terminados em "/". 'concessao' é a que vale para 'raiz'
+    // no seu caminho (ver concessaoEm).
+    private void listar(Diretorio raiz, String caminhoRaiz, TabelaPermissoes concessao, String usuario,
+            boolean recursivo) throws PermissaoException {
+        boolean[] primeiro = { true };
+        listarSubarvore(new Listagem(0, caminhoRaiz, raiz, concessao), usuario, recursivo, percurso(), bloco -> {
+            System.out.print(primeiro[0] ? bloco : "\n" + bloco);
+            primeiro[0] = false;
+        });
+    }
+
+    // Os diretórios são visitados com uma pilha explícita (na mesma ordem da versão recursiva)
+    // e cada bloco é passado para 'saida' assim que montado. Os subdiretórios de um diretório
+    // largo são listados em paralelo (ver listarEmParalelo); como na listagem sequencial, a falta
+    // de permissão em um diretório interrompe a listagem depois dos blocos anteriores a ele.
+    private void listarSubarvore(Listagem raiz, String usuario, boolean recursivo, PercursoParalelo percurso,
+            Consumer<String> saida) throws PermissaoException {
+        ArrayDeque<Listagem> pilha = new ArrayDeque<>();
+        pilha.push(raiz);
+        while (!pilha.isEmpty()) {
+            Listagem topo = pilha.pop();
+            String caminho = topo.caminho;
+            verificarPermissao(topo.diretorio, topo.concessao, usuario, MotorPermissoes.LEITURA, caminho);
+            List<Map.Entry<String, No>> filhos = filhos(topo.diretorio);
+            StringBuilder bloco = new StringBuilder();
+            bloco.append(caminho).append(":\n");
+            List<Listagem> subdiretorios = new ArrayList<>();
+            for (Map.Entry<String, No> e : filhos) {
+                bloco.append(e.getKey()).append(e.getValue().isDiretorio() ? "/" : "").append('\n');
+                if (e.getValue().isDiretorio()) {
+                    subdiretorios.add(new Listagem(subdiretorios.size(), filho(caminho, e.getKey()), (Diretorio) e.getValue(),
+                            TabelaPermissoes.somar(topo.concessao, topo.diretorio.concessao(e.getKey()))));
+                }
+            }
+            saida.accept(bloco.toString());
+            if (!recursivo) {
+                continue;
+            }
+            if (percurso.paralelo(subdiretorios.size())) {
+                // os subdiretórios seriam os próximos visitados: são listados aqui mesmo
+                listarEmParalelo(subdiretorios, usuario, percurso, saida);
+                continue;
+            }
+            // empilhados em ordem inversa para que o primeiro subdiretório seja o próximo visitado
+            for (int i = subdiretorios.size() - 1; i >= 0; i--) {
+                pilha.push(subdiretorios.get(i));
+            }
+        }
+    }
+
+    // Cada subdiretório é listado por uma tarefa do percurso, e os blocos saem na ordem da
+    // listagem sequencial (ver SaidaOrdenada): os da primeira tarefa não terminada vão direto para
+    // 'saida', e os das seguintes ficam guardados só até chegar a vez delas.
+    private void listarEmParalelo(List<Listagem> subdiretorios, String usuario, PercursoParalelo percurso,
+            Consumer<String> saida) throws PermissaoException {
+        SaidaOrdenada ordenada = new SaidaOrdenada(subdiretorios, saida);
+        percurso.paraCadaEmOrdem(subdiretorios, listagem -> {
+            boolean completa = false;
+            try {
+                listarSubarvore(listagem, usuario, true, percurso, bloco -> ordenada.bloco(listagem, bloco));
+                completa = true;
+            } finally {
+                ordenada.terminou(listagem, completa);
+            }
+        });
+    }
+
+    // Diretório a listar no ls -R; quando listado por uma tarefa do percurso paralelo, também os
+    // blocos dele ainda não passados adiante
+    private static final class Listagem {
+        final int indice;
+        final String caminho;
+        final Diretorio diretorio;
+        // permissões pendentes de cópias que valem para o diretório (ver concessaoEm), ou null
+        final TabelaPermissoes concessao;
+        // blocos montados antes da vez desta listagem em SaidaOrdenada
+        final List<String> blocos = new ArrayList<>();
+        boolean terminada;
+        // false se a listagem foi interrompida por falta de permissão, depois de 'blocos'
+        boolean completa;
+
+        Listagem(int indice, String caminho, Diretorio diretorio, TabelaPermissoes concessao) {
+            this.indice = indice;
+            this.caminho = caminho;
+            this.diretorio = diretorio;
+            this.concessao = concessao;
+        }
+    }
+
+    // Passa para 'saida' os blocos das listagens em ordem de índice. A listagem da vez ('atual')
+    // passa os blocos direto; quando termina, os guardados pelas seguintes já terminadas, e pela
+    // primeira ainda em andamento, são passados de uma vez. Depois de uma listagem interrompida,
+    // mais nada é passado.
+    private static final class SaidaOrdenada {
+        private final List<Listagem> listagens;
+        private final Consumer<String> saida;
+        private int atual;
+
+        SaidaOrdenada(List<Listagem> listagens, Consumer<String> saida) {
+            this.listagens = listagens;
+            this.saida = saida;
+        }
+
+        synchronized void bloco(Listagem listagem, String bloco) {
+            if (listagem.indice == atual) {
+                saida.accept(bloco);
+            } else {
+                listagem.blocos.add(bloco);
+            }
+        }
+
+        synchronized void terminou(Listagem listagem, boolean completa) {
+            listagem.terminada = true;
+            listagem.completa = completa;
+            while (atual < listagens.size() && listagens.get(atual).terminada) {
+                if (!listagens.get(atual).completa) {
+                    // as seguintes não chegam a ser passadas
+                    atual = Integer.MAX_VALUE;
+                    return;
+                }
+                atual++;
+                if (atual < listagens.size()) {
+                    Listagem proxima = listagens.get(atual);
+                    proxima.blocos.forEach(saida);
+                    proxima.blocos.clear();
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,293 @@
+package filesys;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Gera traces sintéticos para testes de carga sem precisar de um trace de produção: uma árvore
+// inicial de 'largura' diretórios por nível, 'profundidade' níveis e 'arquivos' arquivos de
+// 'tamanho' bytes por diretório, criada pelo root, seguida de chamadas de usuários sorteados,
+// com métodos sorteados pelos pesos da mistura e chegadas de um processo de Poisson de 'taxa'
+// chamadas por segundo.
+//
+// As chamadas são feitas em um FileSystemImpl de referência com as regras de permissão dadas,
+// que fornece o resultado esperado de cada uma (ver ReprodutorTrace); o modelo da árvore usado
+// para sortear caminhos só é atualizado quando a chamada dá certo. Cada chamada fica dentro de um
+// único subdiretório da raiz, então o trace pode ser reproduzido com várias threads sem
+// divergências. ls é sorteado como qualquer método, mas a referência o executa como listar,
+// que verifica a mesma permissão, para não imprimir a listagem durante a geração.
+public final class GeradorTrace {
+    private static final String ROOT_USER = "root";
+    private static final String[] PERMISSOES = { "rwx", "rw-", "r--" };
+    private static final int TAMANHO_PAGINA = 100;
+
+    private static final class Subarvore {
+        final List<String> diretorios = new ArrayList<>();
+        final List<String> arquivos = new ArrayList<>();
+    }
+
+    private final MotorPermissoes motor;
+    private final List<String> usuarios;
+    private final Random random;
+    private int largura = 8;
+    private int profundidade = 2;
+    private int arquivos = 16;
+    private int tamanho = 4096;
+    private double taxa = 10_000;
+    private final int[] pesos = new int[ChamadaTrace.Tipo.values().length];
+
+    // Estado de uma geração
+    private FileSystemImpl referencia;
+    private List<ChamadaTrace> chamadas;
+    private byte[] area;
+    private double instante;
+    private long sequencia;
+
+    public GeradorTrace(MotorPermissoes motor, List<String> usuarios, long semente) {
+        if (usuarios.isEmpty()) {
+            throw new IllegalArgumentException("Nenhum usuário");
+        }
+        this.motor = motor;
+        this.usuarios = new ArrayList<>(usuarios);
+        this.random = new Random(semente);
+        // mistura padrão: predominam leituras, como em um servidor de arquivos típico; ls fica de
+        // fora porque imprime cada listagem
+        pesos[ChamadaTrace.Tipo.READ.ordinal()] = 40;
+        pesos[ChamadaTrace.Tipo.WRITE.ordinal()] = 15;
+        pesos[ChamadaTrace.Tipo.LISTAR.ordinal()] = 10;
+        pesos[ChamadaTrace.Tipo.TOUCH.ordinal()] = 8;
+        pesos[ChamadaTrace.Tipo.RM.ordinal()] = 6;
+        pesos[ChamadaTrace.Tipo.ABRIR_LEITURA.ordinal()] = 5;
+        pesos[ChamadaTrace.Tipo.MV.ordinal()] = 5;
+        pesos[ChamadaTrace.Tipo.CHMOD.ordinal()] = 5;
+        pesos[ChamadaTrace.Tipo.CP.ordinal()] = 4;
+        pesos[ChamadaTrace.Tipo.MKDIR.ordinal()] = 2;
+    }
+
+    // Regras e usuários de um arquivo no formato de users/users ("usuario padrao permissao" por
+    // linha); maxUsuarios limita os usuários sorteados aos primeiros do arquivo (0 para todos).
+    public static GeradorTrace deArquivoUsuarios(Path arquivo, int maxUsuarios, long semente) throws IOException {
+        MotorPermissoes motor = new MotorPermissoes();
+        Set<String> usuarios = new LinkedHashSet<>();
+        for (String linha : Files.readAllLines(arquivo)) {
+            String[] partes = linha.trim().split("\\s+");
+            if (partes.length != 3) {
+                continue;
+            }
+            motor.adicionarRegra(partes[0], partes[1], partes[2]);
+            if (maxUsuarios <= 0 || usuarios.size() < maxUsuarios) {
+                usuarios.add(partes[0]);
+            }
+        }
+        return new GeradorTrace(motor, new ArrayList<>(usuarios), semente);
+    }
+
+    public MotorPermissoes motor() {
+        return motor;
+    }
+
+    public void configurarArvore(int largura, int profundidade, int arquivos) {
+        if (largura < 1 || profundidade < 1 || arquivos < 0) {
+            throw new IllegalArgumentException("Forma de árvore inválida");
+        }
+        this.largura = largura;
+        this.profundidade = profundidade;
+        this.arquivos = arquivos;
+    }
+
+    // Pesos relativos de cada método; os ausentes ficam com peso 0
+    public void configurarMistura(Map<ChamadaTrace.Tipo, Integer> mistura) {
+        int total = 0;
+        for (int peso : mistura.values()) {
+            if (peso < 0) {
+                throw new IllegalArgumentException("Peso negativo");
+            }
+            total += peso;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Mistura vazia");
+        }
+        Arrays.fill(pesos, 0);
+        mistura.forEach((tipo, peso) -> pesos[tipo.ordinal()] = peso);
+    }
+
+    // Bytes de cada write e read
+    public void configurarTamanho(int tamanho) {
+        if (tamanho < 0) {
+            throw new IllegalArgumentException("Tamanho inválido: " + tamanho);
+        }
+        this.tamanho = tamanho;
+    }
+
+    // Chamadas por segundo em média, que definem os instantes do trace
+    public void configurarTaxa(double taxa) {
+        if (!(taxa > 0)) {
+            throw new IllegalArgumentException("Taxa inválida: " + taxa);
+        }
+        this.taxa = taxa;
+    }
+
+    // A criação da árvore inicial seguida de 'quantidade' chamadas sorteadas
+    public List<ChamadaTrace> gerar(int quantidade) {
+        referencia = new FileSystemImpl(motor);
+        chamadas = new ArrayList<>();
+        area = new byte[tamanho];
+        instante = 0;
+        sequencia = 0;
+        try {
+            List<Subarvore> subarvores = new ArrayList<>(largura);
+            for (int i = 0; i < largura; i++) {
+                Subarvore subarvore = new Subarvore();
+                criar(subarvore, "/d" + i, 1);
+                subarvores.add(subarvore);
+            }
+            int totalPesos = 0;
+            for (int peso : pesos) {
+                totalPesos += peso;
+            }
+            for (int i = 0; i < quantidade; i++) {
+                Subarvore subarvore = subarvores.get(random.nextInt(subarvores.size()));
+                sortear(subarvore, sortearTipo(totalPesos), usuarios.get(random.nextInt(usuarios.size())));
+            }
+            return chamadas;
+        } finally {
+            referencia = null;
+            chamadas = null;
+        }
+    }
+
+    private void criar(Subarvore subarvore, String diretorio, int nivel) {
+        if (fazer(ChamadaTrace.Tipo.MKDIR, ROOT_USER, diretorio, null, null, false, 0, 0)) {
+            subarvore.diretorios.add(diretorio);
+        }
+        for (int f = 0; f < arquivos; f++) {
+            String arquivo = diretorio + "/f" + f;
+            if (fazer(ChamadaTrace.Tipo.WRITE, ROOT_USER, arquivo, null, null, false, 0, tamanho)) {
+                subarvore.arquivos.add(arquivo);
+            }
+        }
+        if (nivel < profundidade) {
+            for (int d = 0; d < largura; d++) {
+                criar(subarvore, diretorio + "/d" + d, nivel + 1);
+            }
+        }
+    }
+
+    private ChamadaTrace.Tipo sortearTipo(int totalPesos) {
+        int sorteio = random.nextInt(totalPesos);
+        for (int i = 0; i < pesos.length; i++) {
+            sorteio -= pesos[i];
+            if (sorteio < 0) {
+                return ChamadaTrace.Tipo.deCodigo(i);
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private void sortear(Subarvore s, ChamadaTrace.Tipo tipo, String usuario) {
+        String diretorio = s.diretorios.get(random.nextInt(s.diretorios.size()));
+        if (s.arquivos.isEmpty() && tipo != ChamadaTrace.Tipo.MKDIR && tipo != ChamadaTrace.Tipo.LS
+                && tipo != ChamadaTrace.Tipo.LISTAR && tipo != ChamadaTrace.Tipo.CHMOD) {
+            // sem arquivos na subárvore, os métodos sobre arquivos viram touch
+            tipo = ChamadaTrace.Tipo.TOUCH;
+        }
+        int indice = s.arquivos.isEmpty() ? -1 : random.nextInt(s.arquivos.size());
+        String arquivo = indice < 0 ? null : s.arquivos.get(indice);
+        switch (tipo) {
+            case TOUCH: {
+                String novo = diretorio + "/t" + sequencia++;
+                if (fazer(tipo, usuario, novo, null, null, false, 0, 0)) {
+                    s.arquivos.add(novo);
+                }
+                break;
+            }
+            case MKDIR: {
+                String novo = diretorio + "/m" + sequencia++;
+                if (fazer(tipo, usuario, novo, null, null, false, 0, 0)) {
+                    s.diretorios.add(novo);
+                }
+                break;
+            }
+            case WRITE:
+                fazer(tipo, usuario, arquivo, null, null, random.nextInt(4) == 0, 0, tamanho);
+                break;
+            case READ:
+                fazer(tipo, usuario, arquivo, null, null, false, 0, tamanho);
+                break;
+            case ABRIR_LEITURA:
+                fazer(tipo, usuario, arquivo, null, null, false, 0, 0);
+                break;
+            case RM:
+                if (fazer(tipo, usuario, arquivo, null, null, false, 0, 0)) {
+                    remover(s.arquivos, indice);
+                }
+                break;
+            case MV: {
+                String novo = diretorio + "/v" + sequencia++;
+                if (fazer(tipo, usuario, arquivo, novo, null, false, 0, 0)) {
+                    s.arquivos.set(indice, novo);
+                }
+                break;
+            }
+            case CP: {
+                String novo = diretorio + "/c" + sequencia++;
+                if (fazer(tipo, usuario, arquivo, novo, null, false, 0, 0)) {
+                    s.arquivos.add(novo);
+                }
+                break;
+            }
+            case CHMOD:
+                fazer(tipo, usuario, arquivo != null && random.nextBoolean() ? arquivo : diretorio,
+                        usuarios.get(random.nextInt(usuarios.size())), PERMISSOES[random.nextInt(PERMISSOES.length)],
+                        false, 0, 0);
+                break;
+            case LS:
+                fazer(tipo, usuario, diretorio, null, null, false, 0, 0);
+                break;
+            case LISTAR:
+                fazer(tipo, usuario, diretorio, null, null, true, 0, TAMANHO_PAGINA);
+                break;
+            default:
+                throw new IllegalStateException("Método sem geração: " + tipo);
+        }
+    }
+
+    // Remoção sem deslocar a lista: o último ocupa o lugar do removido
+    private static void remover(List<String> lista, int indice) {
+        String ultimo = lista.remove(lista.size() - 1);
+        if (indice < lista.size()) {
+            lista.set(indice, ultimo);
+        }
+    }
+
+    // Faz a chamada na referência e a acrescenta ao trace; devolve se deu certo
+    private boolean fazer(ChamadaTrace.Tipo tipo, String usuario, String caminho, String argumento, String permissao,
+            boolean opcao, long offset, int tamanhoChamada) {
+        long agendado = (long) instante;
+        instante += -Math.log(1 - random.nextDouble()) / taxa * 1e9;
+        ChamadaTrace chamada = new ChamadaTrace(tipo, agendado, 0, usuario, caminho, argumento, permissao, opcao,
+                offset, tamanhoChamada, null, ChamadaTrace.Resultado.SUCESSO);
+        long inicio = System.nanoTime();
+        Exception erro = null;
+        try {
+            if (tipo == ChamadaTrace.Tipo.LS) {
+                referencia.listar(caminho, usuario, opcao);
+            } else {
+                chamada.executar(referencia, area);
+            }
+        } catch (Exception e) {
+            erro = e;
+        }
+        long duracao = System.nanoTime() - inicio;
+        chamadas.add(new ChamadaTrace(tipo, agendado, duracao, usuario, caminho, argumento, permissao, opcao, offset,
+                tamanhoChamada, null, ChamadaTrace.Resultado.de(erro)));
+        return erro == null;
+    }
+}
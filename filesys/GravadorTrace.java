@@ -0,0 +1,229 @@
+package filesys;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+import exception.CaminhoJaExistenteException;
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+
+// IFileSystem que repassa as chamadas a outro e grava cada uma, com argumentos, instante,
+// duração e resultado, em um EscritorTrace. O trace pode ser reproduzido por ReprodutorTrace
+// contra qualquer implementação.
+//
+// Com gravarConteudo false, write grava apenas o tamanho do buffer, e a reprodução escreve zeros:
+// o trace fica pequeno e sem dados dos usuários. As listagens com Iterator são gravadas na
+// abertura; o tempo gasto percorrendo o Iterator não entra na duração.
+//
+// Um erro de E/S na gravação do trace é lançado como UncheckedIOException depois de a chamada
+// ter sido feita no sistema de arquivos. close() fecha o escritor, mas não o sistema de arquivos.
+public final class GravadorTrace implements IFileSystem, Closeable {
+    private final IFileSystem alvo;
+    private final EscritorTrace escritor;
+    private final boolean gravarConteudo;
+    private final long origem = System.nanoTime();
+
+    public GravadorTrace(IFileSystem alvo, EscritorTrace escritor, boolean gravarConteudo) {
+        this.alvo = alvo;
+        this.escritor = escritor;
+        this.gravarConteudo = gravarConteudo;
+    }
+
+    @Override
+    public void chmod(String caminho, String usuario, String usuarioAlvo, String permissao)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        try {
+            alvo.chmod(caminho, usuario, usuarioAlvo, permissao);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.CHMOD, inicio, e, usuario, caminho, usuarioAlvo, permissao, false, 0, 0, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.CHMOD, inicio, null, usuario, caminho, usuarioAlvo, permissao, false, 0, 0, null);
+    }
+
+    @Override
+    public void mkdir(String caminho, String usuario) throws CaminhoJaExistenteException, PermissaoException {
+        long inicio = System.nanoTime();
+        try {
+            alvo.mkdir(caminho, usuario);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.MKDIR, inicio, e, usuario, caminho, null, null, false, 0, 0, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.MKDIR, inicio, null, usuario, caminho, null, null, false, 0, 0, null);
+    }
+
+    @Override
+    public void rm(String caminho, String usuario, boolean recursivo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        try {
+            alvo.rm(caminho, usuario, recursivo);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.RM, inicio, e, usuario, caminho, null, null, recursivo, 0, 0, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.RM, inicio, null, usuario, caminho, null, null, recursivo, 0, 0, null);
+    }
+
+    @Override
+    public void touch(String caminho, String usuario)
+            throws CaminhoJaExistenteException, CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        try {
+            alvo.touch(caminho, usuario);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.TOUCH, inicio, e, usuario, caminho, null, null, false, 0, 0, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.TOUCH, inicio, null, usuario, caminho, null, null, false, 0, 0, null);
+    }
+
+    @Override
+    public void write(String caminho, String usuario, boolean anexar, byte[] buffer)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        // cópia antes da chamada: o buffer é de quem chama e pode ser reaproveitado depois dela
+        byte[] dados = gravarConteudo ? buffer.clone() : null;
+        try {
+            alvo.write(caminho, usuario, anexar, buffer);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.WRITE, inicio, e, usuario, caminho, null, null, anexar, 0, buffer.length, dados);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.WRITE, inicio, null, usuario, caminho, null, null, anexar, 0, buffer.length, dados);
+    }
+
+    @Override
+    public void read(String caminho, String usuario, byte[] buffer)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        try {
+            alvo.read(caminho, usuario, buffer);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.READ, inicio, e, usuario, caminho, null, null, true, 0, buffer.length, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.READ, inicio, null, usuario, caminho, null, null, true, 0, buffer.length, null);
+    }
+
+    @Override
+    public int read(String caminho, String usuario, long offset, byte[] buf, int off, int len)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        int lidos;
+        try {
+            lidos = alvo.read(caminho, usuario, offset, buf, off, len);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.READ, inicio, e, usuario, caminho, null, null, false, offset, len, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.READ, inicio, null, usuario, caminho, null, null, false, offset, len, null);
+        return lidos;
+    }
+
+    @Override
+    public LeitorArquivo abrirLeitura(String caminho, String usuario)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        LeitorArquivo leitor;
+        try {
+            leitor = alvo.abrirLeitura(caminho, usuario);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.ABRIR_LEITURA, inicio, e, usuario, caminho, null, null, false, 0, 0, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.ABRIR_LEITURA, inicio, null, usuario, caminho, null, null, false, 0, 0, null);
+        return leitor;
+    }
+
+    @Override
+    public void mv(String caminhoAntigo, String caminhoNovo, String usuario)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        try {
+            alvo.mv(caminhoAntigo, caminhoNovo, usuario);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.MV, inicio, e, usuario, caminhoAntigo, caminhoNovo, null, false, 0, 0, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.MV, inicio, null, usuario, caminhoAntigo, caminhoNovo, null, false, 0, 0, null);
+    }
+
+    @Override
+    public void ls(String caminho, String usuario, boolean recursivo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        try {
+            alvo.ls(caminho, usuario, recursivo);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.LS, inicio, e, usuario, caminho, null, null, recursivo, 0, 0, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.LS, inicio, null, usuario, caminho, null, null, recursivo, 0, 0, null);
+    }
+
+    @Override
+    public Iterator<EntradaListagem> listar(String caminho, String usuario, boolean recursivo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        Iterator<EntradaListagem> it;
+        try {
+            it = alvo.listar(caminho, usuario, recursivo);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.LISTAR, inicio, e, usuario, caminho, null, null, recursivo, 0, 0, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.LISTAR, inicio, null, usuario, caminho, null, null, recursivo, 0, 0, null);
+        return it;
+    }
+
+    @Override
+    public PaginaListagem listar(String caminho, String usuario, boolean recursivo, int tamanhoPagina,
+            String continuacao) throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        PaginaListagem pagina;
+        try {
+            pagina = alvo.listar(caminho, usuario, recursivo, tamanhoPagina, continuacao);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.LISTAR, inicio, e, usuario, caminho, continuacao, null, recursivo, 0,
+                    tamanhoPagina, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.LISTAR, inicio, null, usuario, caminho, continuacao, null, recursivo, 0,
+                tamanhoPagina, null);
+        return pagina;
+    }
+
+    @Override
+    public void cp(String caminhoOrigem, String caminhoDestino, String usuario, boolean recursivo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        long inicio = System.nanoTime();
+        try {
+            alvo.cp(caminhoOrigem, caminhoDestino, usuario, recursivo);
+        } catch (Exception e) {
+            gravar(ChamadaTrace.Tipo.CP, inicio, e, usuario, caminhoOrigem, caminhoDestino, null, recursivo, 0, 0, null);
+            throw e;
+        }
+        gravar(ChamadaTrace.Tipo.CP, inicio, null, usuario, caminhoOrigem, caminhoDestino, null, recursivo, 0, 0, null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        escritor.close();
+    }
+
+    private void gravar(ChamadaTrace.Tipo tipo, long inicio, Exception erro, String usuario, String caminho,
+            String argumento, String permissao, boolean opcao, long offset, int tamanho, byte[] dados) {
+        long fim = System.nanoTime();
+        try {
+            escritor.escrever(new ChamadaTrace(tipo, inicio - origem, fim - inicio, usuario, caminho, argumento,
+                    permissao, opcao, offset, tamanho, dados, ChamadaTrace.Resultado.de(erro)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package filesys;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Histograma de latências em nanossegundos no estilo do HdrHistogram: abaixo de SUB_FAIXAS ns
+// cada valor tem a sua faixa; acima, cada potência de 2 é dividida em SUB_FAIXAS faixas iguais,
+// o que limita o erro relativo de qualquer percentil a 1/SUB_FAIXAS (~1,6%). Valores acima de
+// 2^MAIOR_EXPOENTE ns (~68 s) caem na última faixa.
+//
+// Registrar não aloca nem trava: cada thread incrementa as contagens de uma das listras
+// (AtomicLongArray), escolhida pelo id da thread, e as listras só são somadas na leitura.
+final class HistogramaLatencia {
+    private static final int BITS_SUB = 6;
+    private static final int SUB_FAIXAS = 1 << BITS_SUB;
+    private static final int MAIOR_EXPOENTE = 36;
+    private static final long MAIOR_VALOR = (1L << MAIOR_EXPOENTE) - 1;
+    private static final int FAIXAS = indice(MAIOR_VALOR) + 1;
+
+    private final AtomicLongArray[] listras;
+    private final int mascara;
+
+    HistogramaLatencia(int listras) {
+        int n = Integer.highestOneBit(Math.max(1, listras));
+        this.listras = new AtomicLongArray[n];
+        for (int i = 0; i < n; i++) {
+            this.listras[i] = new AtomicLongArray(FAIXAS);
+        }
+        this.mascara = n - 1;
+    }
+
+    private static int indice(long valor) {
+        if (valor < SUB_FAIXAS) {
+            return (int) valor;
+        }
+        int expoente = 63 - Long.numberOfLeadingZeros(valor);
+        int sub = (int) (valor >>> (expoente - BITS_SUB)) - SUB_FAIXAS;
+        return (expoente - BITS_SUB + 1) * SUB_FAIXAS + sub;
+    }
+
+    // Maior valor que cai na faixa
+    private static long maiorValor(int indice) {
+        if (indice < SUB_FAIXAS) {
+            return indice;
+        }
+        int expoente = indice / SUB_FAIXAS + BITS_SUB - 1;
+        long largura = 1L << (expoente - BITS_SUB);
+        return ((long) (SUB_FAIXAS + indice % SUB_FAIXAS) << (expoente - BITS_SUB)) + largura - 1;
+    }
+
+    void registrar(long nanos) {
+        long valor = Math.min(Math.max(nanos, 0), MAIOR_VALOR);
+        listras[(int) Thread.currentThread().getId() & mascara].getAndIncrement(indice(valor));
+    }
+
+    // Soma das listras
+    long[] contagens() {
+        long[] contagens = new long[FAIXAS];
+        for (AtomicLongArray listra : listras) {
+            for (int i = 0; i < FAIXAS; i++) {
+                contagens[i] += listra.get(i);
+            }
+        }
+        return contagens;
+    }
+
+    static long total(long[] contagens) {
+        long total = 0;
+        for (long c : contagens) {
+            total += c;
+        }
+        return total;
+    }
+
+    // Valor do percentil (0 < quantil <= 1) sobre contagens(), ou 0 se não houver registros
+    static long percentil(long[] contagens, double quantil) {
+        long total = total(contagens);
+        if (total == 0) {
+            return 0;
+        }
+        long posicao = Math.max(1, (long) Math.ceil(quantil * total));
+        long acumulado = 0;
+        for (int i = 0; i < contagens.length; i++) {
+            acumulado += contagens[i];
+            if (acumulado >= posicao) {
+                return maiorValor(i);
+            }
+        }
+        return maiorValor(contagens.length - 1);
+    }
+
+    void zerar() {
+        for (AtomicLongArray listra : listras) {
+            for (int i = 0; i < FAIXAS; i++) {
+                listra.set(i, 0);
+            }
+        }
+    }
+}
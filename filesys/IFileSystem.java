@@ -1,5 +1,7 @@
 package filesys;
 
+import java.util.Iterator;
+
 import exception.CaminhoJaExistenteException;
 import exception.CaminhoNaoEncontradoException;
 import exception.PermissaoException;
@@ -21,7 +23,9 @@ public interface IFileSystem {
     void rm(String caminho, String usuario, boolean recursivo) throws CaminhoNaoEncontradoException, PermissaoException;
 
     // Cria um novo arquivo. Atenção: Se o arquivo já existir, será lançada uma exceção.
-    void touch(String caminho, String usuario) throws CaminhoJaExistenteException, PermissaoException;
+    // ALTERAÇÃO: touch também lança CaminhoNaoEncontradoException.
+    // Justificativa: sem ela, não havia exceção declarada para o diretório pai inexistente.
+    void touch(String caminho, String usuario) throws CaminhoJaExistenteException, CaminhoNaoEncontradoException, PermissaoException;
 
     // Escreve dados em um arquivo. Se o diretório não existir, será lançada uma exceção.
     // Caso o diretório exista, o arquivo será criado ou sobrescrito.
@@ -33,6 +37,18 @@ public interface IFileSystem {
     // Leitura sequencial - todo o conteudo do arquivo sera lido e armazenado no buffer.
     void read(String caminho, String usuario, byte[] buffer) throws CaminhoNaoEncontradoException, PermissaoException;
 
+    // ALTERAÇÃO: leitura posicional e handle de leitura.
+    // Justificativa: read(caminho, usuario, buffer) exige um buffer do tamanho do arquivo para lê-lo
+    // por inteiro (ver READ_BUFFER_SIZE em Main). Com estes métodos arquivos grandes são lidos em pedaços.
+
+    // Lê até len bytes do arquivo a partir de offset, armazenando-os em buf[off..].
+    // Retorna o número de bytes lidos, ou -1 se offset estiver no fim do arquivo.
+    int read(String caminho, String usuario, long offset, byte[] buf, int off, int len) throws CaminhoNaoEncontradoException, PermissaoException;
+
+    // Abre o arquivo para leitura sequencial como InputStream/ReadableByteChannel.
+    // A permissão de leitura é verificada apenas na abertura.
+    LeitorArquivo abrirLeitura(String caminho, String usuario) throws CaminhoNaoEncontradoException, PermissaoException;
+
     // Move ou renomeia um arquivo ou diretório. Se o diretório não existir, será lançada uma exceção.
     // Se o diretório já existir, será sobrescrito.
     // mv é naturalmente recursivo.
@@ -42,6 +58,20 @@ public interface IFileSystem {
     // Caso recursivo seja true, todo o conteúdo do diretório será listado recursivamente.
     void ls(String caminho, String usuario, boolean recursivo) throws CaminhoNaoEncontradoException, PermissaoException;
 
+    // ALTERAÇÃO: listagem sob demanda e paginada.
+    // Justificativa: ls apenas imprime, e não há como percorrer uma árvore grande aos poucos
+    // nem obter tipo, tamanho e permissões das entradas sem reinterpretar a saída.
+
+    // Devolve as entradas de um diretório (ou o próprio arquivo) sob demanda, sem montar a listagem
+    // em memória. A ordem é pré-ordem: cada diretório aparece antes do seu conteúdo e os irmãos
+    // vêm em ordem de nome. Caso recursivo seja true, subdiretórios sem permissão de leitura
+    // são listados, mas o seu conteúdo não.
+    Iterator<EntradaListagem> listar(String caminho, String usuario, boolean recursivo) throws CaminhoNaoEncontradoException, PermissaoException;
+
+    // Devolve até tamanhoPagina entradas da listagem acima. Para a primeira página continuacao é null;
+    // para as seguintes, o valor de PaginaListagem.getContinuacao() da página anterior.
+    PaginaListagem listar(String caminho, String usuario, boolean recursivo, int tamanhoPagina, String continuacao) throws CaminhoNaoEncontradoException, PermissaoException;
+
     // Copia um arquivo ou diretório. Se o diretório não existir, será lançada uma exceção.
     void cp(String caminhoOrigem, String caminhoDestino, String usuario, boolean recursivo) throws CaminhoNaoEncontradoException, PermissaoException;
 } 
\ No newline at end of file
@@ -0,0 +1,697 @@
+package filesys;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Imagem do sistema de arquivos em disco, usada pelo FileSystemImpl quando criado com um caminho.
+//
+// Ao abrir, o arquivo é mapeado em memória e só a raiz é lida: um diretório tem as suas entradas
+// lidas no primeiro acesso (Diretorio.filhos()) e o conteúdo de um arquivo não alterado é lido
+// direto do mapeamento (Arquivo.ler), sem ser desserializado para o heap.
+//
+// Formato (inteiros big-endian):
+//   cabeçalho:  int MAGICO, int VERSAO, duas vagas {long sequencia, raiz, usuarios, fim, lsn, compactado, crc}
+//   usuários:   int n, n x (int tamanho, nome em UTF-8)
+//   nó:         byte tipo, int n, n x (int usuario, byte mascara), e então
+//                 arquivo:   long tamanho, long dados
+//                 diretório: long tabela
+//   tabela:     int n, n x (int tamanho, nome em UTF-8, long nó)
+//
+// sincronizar() anexa depois do fim do último checkpoint apenas os nós carregados ou criados desde a
+// abertura; diretórios não carregados e arquivos não alterados apontam para os registros antigos.
+// A vaga do cabeçalho que não está em uso é gravada por último, então uma queda no meio da gravação
+// deixa a imagem no checkpoint anterior. Os índices de usuário dos registros apontam para a tabela
+// de usuários, que só cresce. lsn é o último registro do diário (ver Diario) incluído no checkpoint.
+//
+// O espaço dos registros substituídos não é reaproveitado: quando o que foi anexado desde a última
+// compactação passa do tamanho que a imagem tinha depois dela (compactado), o checkpoint grava a
+// árvore inteira em um arquivo novo, que substitui a imagem com um rename. Subárvores não carregadas
+// são copiadas do mapeamento antigo sem passar pelo heap. O arquivo novo é uma nova geração: nós
+// lidos da anterior (inclusive os de instantâneos) continuam lendo o mapeamento antigo, e as
+// referências à imagem guardadas nos nós levam a geração, para que um checkpoint só reaproveite
+// registros do arquivo em que está gravando.
+//
+// O mapeamento é um único MappedByteBuffer, o que limita a imagem a 2 GiB: um checkpoint que
+// passaria do limite é recusado antes de gravar além dele, e a imagem fica no checkpoint anterior.
+final class ImagemDisco implements Closeable {
+    private static final int MAGICO = 0x46535449; // "FSTI"
+    // 4: tamanhos de nomes e quantidade de permissões de um nó em int, e não em short
+    private static final int VERSAO = 4;
+    private static final int VAGA = 56;
+    private static final int CABECALHO = 8 + 2 * VAGA;
+    private static final byte ARQUIVO = 0;
+    private static final byte DIRETORIO = 1;
+    private static final long LIMITE = Integer.MAX_VALUE;
+    // Anexado desde a última compactação abaixo do qual ela nunca é feita
+    private static final long LIMIAR_COMPACTACAO = 1 << 20;
+
+    private final Path caminho;
+    // Trocados pela compactação
+    private FileChannel canal;
+    private FileLock trava;
+    private volatile Mapeamento atual;
+    // Checkpoint em uso
+    private long sequencia;
+    private long raiz = -1;
+    private long fim = CABECALHO;
+    private long lsn;
+    private long compactado = CABECALHO;
+
+    // Definidos por vincular()
+    private MotorPermissoes motor;
+    private PoolBlocos pool;
+    private boolean concorrente;
+    // Nomes da tabela de usuários do arquivo atual, na ordem dos índices, e o índice de cada id do motor
+    private List<String> usuarios = new ArrayList<>();
+    private Map<Integer, Integer> indices = new HashMap<>();
+
+    // Um arquivo da imagem mapeado em memória. Diretórios e arquivos lidos dele guardam o
+    // mapeamento, que continua válido depois de a compactação substituir o arquivo.
+    final class Mapeamento {
+        private final int geracao;
+        private final MappedByteBuffer mapa;
+        // Id no motor de cada índice da tabela de usuários do arquivo
+        private int[] ids;
+
+        private Mapeamento(int geracao, MappedByteBuffer mapa, int[] ids) {
+            this.geracao = geracao;
+            this.mapa = mapa;
+            this.ids = ids;
+        }
+
+        // Lê a tabela de entradas de um diretório; chamado por Diretorio no primeiro acesso aos filhos.
+        void carregarEntradas(long tabela, Map<String, No> filhos) {
+            int pos = (int) tabela;
+            int n = mapa.getInt(pos);
+            pos += 4;
+            for (int i = 0; i < n; i++) {
+                int tamanho = mapa.getInt(pos);
+                String nome = texto(pos + 4, tamanho);
+                pos += 4 + tamanho;
+                filhos.put(nome, lerNo((int) mapa.getLong(pos)));
+                pos += 8;
+            }
+        }
+
+        private No lerNo(int pos) {
+            byte tipo = mapa.get(pos);
+            int n = mapa.getInt(pos + 1);
+            pos += 5;
+            TabelaPermissoes permissoes = TabelaPermissoes.VAZIA;
+            for (int i = 0; i < n; i++) {
+                permissoes = permissoes.com(ids[mapa.getInt(pos)], mapa.get(pos + 4));
+                pos += 5;
+            }
+            if (tipo == DIRETORIO) {
+                return new Diretorio(permissoes, concorrente, this, mapa.getLong(pos));
+            }
+            long tamanho = mapa.getLong(pos);
+            long dados = mapa.getLong(pos + 8);
+            return new Arquivo(permissoes, pool, concorrente, mapa.slice((int) dados, (int) tamanho),
+                    referencia(geracao, dados));
+        }
+
+        private String texto(int pos, int tamanho) {
+            byte[] bytes = new byte[tamanho];
+            mapa.get(pos, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private ImagemDisco(Path caminho, FileChannel canal, FileLock trava) {
+        this.caminho = caminho;
+        this.canal = canal;
+        this.trava = trava;
+    }
+
+    // Abre a imagem, criando-a se não existir. Apenas uma instância pode usar a imagem por vez.
+    static ImagemDisco abrir(Path caminho) throws IOException {
+        FileChannel canal = FileChannel.open(caminho, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock trava = travar(canal, caminho);
+            // resto de uma compactação interrompida
+            Files.deleteIfExists(caminhoCompactacao(caminho));
+            if (canal.size() == 0) {
+                ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO);
+                cabecalho.putInt(MAGICO).putInt(VERSAO);
+                canal.write(cabecalho.rewind(), 0);
+                canal.force(true);
+            }
+            if (canal.size() > LIMITE) {
+                throw new IOException("Imagem maior que 2 GiB: " + caminho);
+            }
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            ImagemDisco imagem = new ImagemDisco(caminho, canal, trava);
+            imagem.atual = imagem.new Mapeamento(0, mapa, null);
+            imagem.lerCabecalho(mapa);
+            return imagem;
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    private static Path caminhoCompactacao(Path caminho) {
+        return caminho.resolveSibling(caminho.getFileName() + ".compactando");
+    }
+
+    private static FileLock travar(FileChannel canal, Path caminho) throws IOException {
+        FileLock trava;
+        try {
+            trava = canal.tryLock();
+        } catch (OverlappingFileLockException e) {
+            trava = null;
+        }
+        if (trava == null) {
+            throw new IOException("Imagem já está em uso: " + caminho);
+        }
+        return trava;
+    }
+
+    private void lerCabecalho(MappedByteBuffer mapa) throws IOException {
+        if (mapa.capacity() < CABECALHO || mapa.getInt(0) != MAGICO) {
+            throw new IOException("Não é uma imagem de sistema de arquivos: " + caminho);
+        }
+        if (mapa.getInt(4) != VERSAO) {
+            throw new IOException("Versão de imagem não suportada: " + mapa.getInt(4));
+        }
+        long usuariosImagem = -1;
+        for (int vaga = 0; vaga < 2; vaga++) {
+            int base = 8 + vaga * VAGA;
+            long seq = mapa.getLong(base);
+            if (seq > sequencia && mapa.getLong(base + 48) == crc(seq, mapa.getLong(base + 8),
+                    mapa.getLong(base + 16), mapa.getLong(base + 24), mapa.getLong(base + 32),
+                    mapa.getLong(base + 40))) {
+                sequencia = seq;
+                raiz = mapa.getLong(base + 8);
+                usuariosImagem = mapa.getLong(base + 16);
+                fim = mapa.getLong(base + 24);
+                lsn = mapa.getLong(base + 32);
+                compactado = mapa.getLong(base + 40);
+            }
+        }
+        if (fim > mapa.capacity()) {
+            throw new IOException("Imagem truncada: " + caminho);
+        }
+        if (usuariosImagem >= 0) {
+            int pos = (int) usuariosImagem;
+            int n = mapa.getInt(pos);
+            pos += 4;
+            for (int i = 0; i < n; i++) {
+                int tamanho = mapa.getInt(pos);
+                usuarios.add(atual.texto(pos + 4, tamanho));
+                pos += 4 + tamanho;
+            }
+        }
+    }
+
+    // Último registro do diário incluído no checkpoint em uso
+    long lsn() {
+        return lsn;
+    }
+
+    // Associa a imagem ao motor de permissões e ao pool do FileSystemImpl que a usa
+    // e devolve a raiz, ou null se a imagem ainda não tem nenhum checkpoint.
+    Diretorio vincular(MotorPermissoes motor, PoolBlocos pool, boolean concorrente) {
+        this.motor = motor;
+        this.pool = pool;
+        this.concorrente = concorrente;
+        int[] ids = new int[usuarios.size()];
+        for (int i = 0; i < usuarios.size(); i++) {
+            ids[i] = motor.idUsuario(usuarios.get(i));
+            indices.put(ids[i], i);
+        }
+        atual.ids = ids;
+        return raiz < 0 ? null : (Diretorio) atual.lerNo((int) raiz);
+    }
+
+    // Referência a um trecho de uma geração da imagem, guardada em Arquivo.dadosImagem
+    private static long referencia(int geracao, long offset) {
+        return (long) geracao << 32 | offset;
+    }
+
+    // ---------------------------------------------------------------------
+    // Checkpoint
+    // ---------------------------------------------------------------------
+
+    // Diretório cujas entradas estão sendo gravadas. Na compactação, um diretório não carregado tem
+    // as entradas lidas do seu mapeamento em nós temporários, sem carregá-lo; 'origens' guarda então
+    // a referência de cada registro de origem, para que um nó compartilhado seja copiado uma vez.
+    private static final class Quadro {
+        final Diretorio dir;
+        // permissões pendentes de cópias que valem para o diretório neste caminho, ou null
+        final TabelaPermissoes concessao;
+        final List<Map.Entry<String, No>> filhos;
+        final long[] origens;
+        final long[] registros;
+        int i;
+
+        Quadro(Diretorio dir, TabelaPermissoes concessao, Escrita escrita) {
+            this.dir = dir;
+            this.concessao = concessao;
+            this.filhos = new ArrayList<>();
+            Mapeamento origem = escrita.compactacao ? dir.mapeamentoPendente() : null;
+            long tabela = origem != null ? dir.tabelaEm(origem) : -1;
+            if (tabela < 0) {
+                dir.travarLeitura();
+                try {
+                    for (Map.Entry<String, No> e : dir.filhos().entrySet()) {
+                        filhos.add(Map.entry(e.getKey(), e.getValue()));
+                    }
+                } finally {
+                    dir.destravarLeitura();
+                }
+                this.origens = null;
+            } else {
+                this.origens = escrita.lerEntradas(origem, tabela, filhos);
+            }
+            this.registros = new long[filhos.size()];
+        }
+    }
+
+    // Estado de um checkpoint: o arquivo e a geração em que ele grava, a tabela de usuários desse
+    // arquivo e os registros já gravados.
+    private final class Escrita {
+        final Gravador saida;
+        final Mapeamento destino;
+        final boolean compactacao;
+        final List<String> usuarios;
+        final Map<Integer, Integer> indices;
+        // Arquivos com o conteúdo anexado neste checkpoint -> {dados, versao, tamanho}
+        final Map<Arquivo, long[]> gravacoes = new IdentityHashMap<>();
+        // Nós compartilhados por cópias (cp) são gravados uma vez só
+        final Map<No, Long> gravados = new IdentityHashMap<>();
+        // Registros e conteúdos de outra geração já copiados: referência de origem -> offset
+        final Map<Long, Long> registrosCopiados = new HashMap<>();
+        final Map<Long, Long> conteudosCopiados = new HashMap<>();
+        // Diretórios da árvore não carregados e copiados para o arquivo novo -> nova tabela
+        final Map<Diretorio, Long> realocados = new IdentityHashMap<>();
+
+        Escrita(Gravador saida, Mapeamento destino, boolean compactacao, List<String> usuarios,
+                Map<Integer, Integer> indices) {
+            this.saida = saida;
+            this.destino = destino;
+            this.compactacao = compactacao;
+            this.usuarios = usuarios;
+            this.indices = indices;
+        }
+
+        // Lê as entradas da tabela em nós temporários e retorna a referência de cada registro
+        long[] lerEntradas(Mapeamento origem, long tabela, List<Map.Entry<String, No>> filhos) {
+            MappedByteBuffer mapa = origem.mapa;
+            int pos = (int) tabela;
+            int n = mapa.getInt(pos);
+            long[] origens = new long[n];
+            pos += 4;
+            for (int i = 0; i < n; i++) {
+                int tamanho = mapa.getInt(pos);
+                String nome = origem.texto(pos + 4, tamanho);
+                pos += 4 + tamanho;
+                long registro = mapa.getLong(pos);
+                origens[i] = referencia(origem.geracao, registro);
+                filhos.add(Map.entry(nome, origem.lerNo((int) registro)));
+                pos += 8;
+            }
+            return origens;
+        }
+
+        // Grava a árvore a partir de 'raizArvore' e retorna o registro da raiz.
+        // Pós-ordem com pilha explícita: os filhos são gravados antes da tabela que aponta para eles.
+        // Um nó com permissões pendentes de uma cópia (ver FileSystemImpl.copiar) é gravado à parte,
+        // com elas aplicadas, e a imagem não guarda pendências.
+        long gravarArvore(Diretorio raizArvore) throws IOException {
+            ArrayDeque<Quadro> pilha = new ArrayDeque<>();
+            pilha.push(new Quadro(raizArvore, null, this));
+            while (true) {
+                Quadro topo = pilha.peek();
+                if (topo.i < topo.filhos.size()) {
+                    Map.Entry<String, No> entrada = topo.filhos.get(topo.i);
+                    No filho = entrada.getValue();
+                    long origem = topo.origens != null ? topo.origens[topo.i] : -1;
+                    TabelaPermissoes concessao = TabelaPermissoes.somar(topo.concessao, topo.dir.concessao(entrada.getKey()));
+                    Long registro = null;
+                    if (concessao == null) {
+                        registro = origem >= 0 ? registrosCopiados.get(origem) : gravados.get(filho);
+                    }
+                    // tabela reaproveitável: diretório não carregado, lido deste arquivo
+                    long tabela = registro == null && concessao == null && filho.isDiretorio()
+                            ? ((Diretorio) filho).tabelaEm(destino) : -1;
+                    if (registro == null && filho.isDiretorio() && tabela < 0) {
+                        pilha.push(new Quadro((Diretorio) filho, concessao, this));
+                        continue;
+                    }
+                    if (registro == null) {
+                        TabelaPermissoes permissoes = TabelaPermissoes.somar(filho.permissoes, concessao);
+                        registro = filho.isDiretorio()
+                                ? gravarDiretorio(permissoes, tabela)
+                                : gravarArquivo((Arquivo) filho, permissoes, origem < 0);
+                        if (concessao == null) {
+                            lembrar(filho, origem, registro);
+                        }
+                    }
+                    topo.registros[topo.i++] = registro;
+                    continue;
+                }
+                pilha.pop();
+                long tabela = saida.posicao();
+                saida.putInt(topo.filhos.size());
+                for (int i = 0; i < topo.filhos.size(); i++) {
+                    saida.putTexto(topo.filhos.get(i).getKey());
+                    saida.putLong(topo.registros[i]);
+                }
+                long registro = gravarDiretorio(TabelaPermissoes.somar(topo.dir.permissoes, topo.concessao), tabela);
+                Quadro pai = pilha.peek();
+                long origem = pai != null && pai.origens != null ? pai.origens[pai.i] : -1;
+                if (topo.concessao == null) {
+                    lembrar(topo.dir, origem, registro);
+                }
+                if (topo.origens != null && origem < 0) {
+                    // diretório da árvore (não temporário) copiado de outra geração
+                    realocados.put(topo.dir, tabela);
+                }
+                if (pai == null) {
+                    return registro;
+                }
+                pai.registros[pai.i++] = registro;
+            }
+        }
+
+        private void lembrar(No no, long origem, long registro) {
+            if (origem >= 0) {
+                registrosCopiados.put(origem, registro);
+            } else {
+                gravados.put(no, registro);
+            }
+        }
+
+        private long gravarDiretorio(TabelaPermissoes permissoes, long tabela) throws IOException {
+            long registro = saida.posicao();
+            saida.putByte(DIRETORIO);
+            gravarPermissoes(permissoes);
+            saida.putLong(tabela);
+            return registro;
+        }
+
+        // Arquivos alterados desde o último checkpoint, ou lidos de outra geração, têm o conteúdo
+        // anexado (uma vez, mesmo que o arquivo seja gravado em mais de um registro ou o conteúdo
+        // seja compartilhado por vários arquivos); os demais reaproveitam o trecho já gravado.
+        // Os anexados de nós da árvore são registrados em 'gravacoes' para serem marcados como
+        // gravados depois que o checkpoint for confirmado.
+        private long gravarArquivo(Arquivo arquivo, TabelaPermissoes permissoes, boolean daArvore)
+                throws IOException {
+            long tamanho;
+            long dados;
+            arquivo.travarLeitura();
+            try {
+                long[] anexado = gravacoes.get(arquivo);
+                long referencia = arquivo.dadosImagem();
+                tamanho = anexado != null ? anexado[2] : arquivo.tamanho();
+                if (anexado != null) {
+                    dados = anexado[0];
+                } else if (referencia >= 0 && (int) (referencia >>> 32) == destino.geracao) {
+                    dados = (int) referencia;
+                } else {
+                    Long copiado = referencia >= 0 ? conteudosCopiados.get(referencia) : null;
+                    dados = copiado != null ? copiado : anexar(arquivo, tamanho);
+                    if (referencia >= 0) {
+                        conteudosCopiados.put(referencia, dados);
+                    }
+                    if (daArvore) {
+                        gravacoes.put(arquivo, new long[] { dados, arquivo.versao(), tamanho });
+                    }
+                }
+            } finally {
+                arquivo.destravarLeitura();
+            }
+            long registro = saida.posicao();
+            saida.putByte(ARQUIVO);
+            gravarPermissoes(permissoes);
+            saida.putLong(tamanho);
+            saida.putLong(dados);
+            return registro;
+        }
+
+        private long anexar(Arquivo arquivo, long tamanho) throws IOException {
+            long dados = saida.posicao();
+            ByteBuffer pedaco = ByteBuffer.allocate(Gravador.TAMANHO_BUFFER);
+            for (long pos = 0; pos < tamanho; ) {
+                pedaco.clear();
+                pos += arquivo.ler(pos, pedaco);
+                saida.put(pedaco.flip());
+            }
+            return dados;
+        }
+
+        private void gravarPermissoes(TabelaPermissoes permissoes) throws IOException {
+            saida.putInt(permissoes.tamanho());
+            for (int i = 0; i < permissoes.tamanho(); i++) {
+                saida.putInt(indiceUsuario(permissoes.usuario(i)));
+                saida.putByte(permissoes.mascaraEm(i));
+            }
+        }
+
+        // Índice do usuário na tabela do arquivo, acrescentando-o se for novo
+        private int indiceUsuario(int idMotor) {
+            Integer indice = indices.get(idMotor);
+            if (indice == null) {
+                indice = usuarios.size();
+                usuarios.add(motor.nomeUsuario(idMotor));
+                indices.put(idMotor, indice);
+            }
+            return indice;
+        }
+
+        // Grava a tabela de usuários e retorna o seu offset
+        long gravarUsuarios() throws IOException {
+            long tabela = saida.posicao();
+            saida.putInt(usuarios.size());
+            for (String usuario : usuarios) {
+                saida.putTexto(usuario);
+            }
+            return tabela;
+        }
+
+        // Marca como gravados os arquivos anexados, depois de o checkpoint ser confirmado
+        void confirmar() {
+            for (Map.Entry<Arquivo, long[]> e : gravacoes.entrySet()) {
+                Arquivo arquivo = e.getKey();
+                arquivo.travarEscrita();
+                try {
+                    arquivo.gravadoEm(referencia(destino.geracao, e.getValue()[0]), e.getValue()[1]);
+                } finally {
+                    arquivo.destravarEscrita();
+                }
+            }
+        }
+    }
+
+    // Recusa de um checkpoint que passaria do limite da imagem
+    private static final class LimiteExcedido extends IOException {
+        LimiteExcedido() {
+            super("Checkpoint ultrapassaria o limite de 2 GiB da imagem");
+        }
+    }
+
+    // Grava a árvore a partir de 'raizArvore' como um novo checkpoint, que inclui o diário até 'lsnDiario'.
+    // Operações que alteram a árvore durante a gravação podem ou não entrar no checkpoint.
+    synchronized void sincronizar(Diretorio raizArvore, long lsnDiario) throws IOException {
+        if (fim - compactado <= Math.max(LIMIAR_COMPACTACAO, compactado)) {
+            try {
+                anexarCheckpoint(raizArvore, lsnDiario);
+                return;
+            } catch (LimiteExcedido e) {
+                // o que foi anexado não é apontado por nenhuma vaga; tenta sem os registros mortos
+                canal.truncate(fim);
+            }
+        }
+        compactar(raizArvore, lsnDiario);
+    }
+
+    private void anexarCheckpoint(Diretorio raizArvore, long lsnDiario) throws IOException {
+        Escrita escrita = new Escrita(new Gravador(canal, fim), atual, false, usuarios, indices);
+        long registroRaiz = escrita.gravarArvore(raizArvore);
+        long tabelaUsuarios = escrita.gravarUsuarios();
+        escrita.saida.descarregar();
+        canal.force(true);
+
+        // Só depois dos dados estarem em disco a vaga livre passa a apontar para eles
+        long novaSequencia = sequencia + 1;
+        long novoFim = escrita.saida.posicao();
+        gravarVaga(canal, novaSequencia, registroRaiz, tabelaUsuarios, novoFim, lsnDiario, compactado);
+        sequencia = novaSequencia;
+        raiz = registroRaiz;
+        fim = novoFim;
+        lsn = lsnDiario;
+        escrita.confirmar();
+    }
+
+    // Grava a árvore inteira em um arquivo novo, que substitui a imagem; os diretórios não
+    // carregados passam a apontar para ele.
+    private void compactar(Diretorio raizArvore, long lsnDiario) throws IOException {
+        Path novo = caminhoCompactacao(caminho);
+        FileChannel canalNovo = FileChannel.open(novo, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean substituido = false;
+        try {
+            FileLock travaNova = travar(canalNovo, novo);
+            canalNovo.write(ByteBuffer.allocate(CABECALHO).putInt(MAGICO).putInt(VERSAO).rewind(), 0);
+            Mapeamento destino = new Mapeamento(atual.geracao + 1, null, null);
+            Escrita escrita = new Escrita(new Gravador(canalNovo, CABECALHO), destino, true, new ArrayList<>(),
+                    new HashMap<>());
+            long registroRaiz = escrita.gravarArvore(raizArvore);
+            long tabelaUsuarios = escrita.gravarUsuarios();
+            escrita.saida.descarregar();
+            long novoFim = escrita.saida.posicao();
+            canalNovo.force(true);
+            gravarVaga(canalNovo, sequencia + 1, registroRaiz, tabelaUsuarios, novoFim, lsnDiario, novoFim);
+            Files.move(novo, caminho, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            substituido = true;
+
+            int[] ids = new int[escrita.usuarios.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = motor.idUsuario(escrita.usuarios.get(i));
+            }
+            Mapeamento mapeado = new Mapeamento(destino.geracao,
+                    canalNovo.map(FileChannel.MapMode.READ_ONLY, 0, novoFim), ids);
+            FileChannel canalAntigo = canal;
+            FileLock travaAntiga = trava;
+            canal = canalNovo;
+            trava = travaNova;
+            atual = mapeado;
+            usuarios = escrita.usuarios;
+            indices = escrita.indices;
+            sequencia++;
+            raiz = registroRaiz;
+            fim = novoFim;
+            compactado = novoFim;
+            lsn = lsnDiario;
+            for (Map.Entry<Diretorio, Long> e : escrita.realocados.entrySet()) {
+                e.getKey().realocar(mapeado, e.getValue());
+            }
+            // as gravações do destino provisório valem para o arquivo mapeado, da mesma geração
+            escrita.confirmar();
+            try {
+                travaAntiga.release();
+            } finally {
+                canalAntigo.close();
+            }
+        } finally {
+            if (!substituido) {
+                canalNovo.close();
+                Files.deleteIfExists(novo);
+            }
+        }
+    }
+
+    private static void gravarVaga(FileChannel destino, long sequencia, long raiz, long usuarios, long fim, long lsn,
+            long compactado) throws IOException {
+        ByteBuffer vaga = ByteBuffer.allocate(VAGA);
+        vaga.putLong(sequencia).putLong(raiz).putLong(usuarios).putLong(fim).putLong(lsn).putLong(compactado)
+                .putLong(crc(sequencia, raiz, usuarios, fim, lsn, compactado));
+        destino.write(vaga.rewind(), 8 + (sequencia % 2) * VAGA);
+        destino.force(true);
+    }
+
+    private static long crc(long sequencia, long raiz, long usuarios, long fim, long lsn, long compactado) {
+        ByteBuffer campos = ByteBuffer.allocate(48).putLong(sequencia).putLong(raiz).putLong(usuarios).putLong(fim)
+                .putLong(lsn).putLong(compactado);
+        CRC32 crc = new CRC32();
+        crc.update(campos.rewind());
+        return crc.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // O mapeamento continua válido depois de fechar o canal, até ser coletado
+        try {
+            trava.release();
+        } finally {
+            canal.close();
+        }
+    }
+
+    // Escrita sequencial com buffer a partir de uma posição de um arquivo da imagem. Nada é
+    // gravado além de LIMITE.
+    private static final class Gravador {
+        static final int TAMANHO_BUFFER = 64 * 1024;
+
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_BUFFER);
+        private long inicio;
+
+        Gravador(FileChannel canal, long inicio) {
+            this.canal = canal;
+            this.inicio = inicio;
+        }
+
+        long posicao() {
+            return inicio + buffer.position();
+        }
+
+        private void reservar(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                descarregar();
+            }
+        }
+
+        void putByte(int valor) throws IOException {
+            reservar(1);
+            buffer.put((byte) valor);
+        }
+
+        void putInt(int valor) throws IOException {
+            reservar(4);
+            buffer.putInt(valor);
+        }
+
+        void putLong(long valor) throws IOException {
+            reservar(8);
+            buffer.putLong(valor);
+        }
+
+        void putTexto(String texto) throws IOException {
+            byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            put(ByteBuffer.wrap(bytes));
+        }
+
+        void put(ByteBuffer dados) throws IOException {
+            while (dados.hasRemaining()) {
+                reservar(1);
+                int n = Math.min(dados.remaining(), buffer.remaining());
+                buffer.put(buffer.position(), dados, dados.position(), n);
+                buffer.position(buffer.position() + n);
+                dados.position(dados.position() + n);
+            }
+        }
+
+        void descarregar() throws IOException {
+            if (posicao() > LIMITE) {
+                throw new LimiteExcedido();
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                inicio += canal.write(buffer, inicio);
+            }
+            buffer.clear();
+        }
+    }
+}
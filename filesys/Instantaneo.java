@@ -0,0 +1,120 @@
+package filesys;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+
+// Visão somente leitura da árvore de um FileSystemImpl no momento de snapshot(). As leituras e
+// listagens, com as mesmas permissões da origem, veem a árvore daquele momento; os métodos que
+// alteram a árvore lançam UnsupportedOperationException.
+//
+// close() solta os nós retidos pela visão, e a origem volta a alterá-los sem cloná-los. Leituras
+// não podem estar em andamento durante o close(), e a visão não pode ser usada depois dele.
+public final class Instantaneo implements IFileSystem, Closeable {
+    private final FileSystemImpl visao;
+    private final AtomicBoolean fechado = new AtomicBoolean();
+
+    Instantaneo(FileSystemImpl visao) {
+        this.visao = visao;
+    }
+
+    @Override
+    public void read(String caminho, String usuario, byte[] buffer)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        aberta().read(caminho, usuario, buffer);
+    }
+
+    @Override
+    public int read(String caminho, String usuario, long offset, byte[] buf, int off, int len)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        return aberta().read(caminho, usuario, offset, buf, off, len);
+    }
+
+    @Override
+    public LeitorArquivo abrirLeitura(String caminho, String usuario)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        return aberta().abrirLeitura(caminho, usuario);
+    }
+
+    // Ver FileSystemImpl.transferTo
+    public long transferTo(String caminho, String usuario, WritableByteChannel destino)
+            throws CaminhoNaoEncontradoException, PermissaoException, IOException {
+        return aberta().transferTo(caminho, usuario, destino);
+    }
+
+    @Override
+    public void ls(String caminho, String usuario, boolean recursivo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        aberta().ls(caminho, usuario, recursivo);
+    }
+
+    @Override
+    public Iterator<EntradaListagem> listar(String caminho, String usuario, boolean recursivo)
+            throws CaminhoNaoEncontradoException, PermissaoException {
+        return aberta().listar(caminho, usuario, recursivo);
+    }
+
+    @Override
+    public PaginaListagem listar(String caminho, String usuario, boolean recursivo, int tamanhoPagina,
+            String continuacao) throws CaminhoNaoEncontradoException, PermissaoException {
+        return aberta().listar(caminho, usuario, recursivo, tamanhoPagina, continuacao);
+    }
+
+    @Override
+    public void chmod(String caminho, String usuario, String usuarioAlvo, String permissao) {
+        throw somenteLeitura();
+    }
+
+    @Override
+    public void mkdir(String caminho, String usuario) {
+        throw somenteLeitura();
+    }
+
+    @Override
+    public void rm(String caminho, String usuario, boolean recursivo) {
+        throw somenteLeitura();
+    }
+
+    @Override
+    public void touch(String caminho, String usuario) {
+        throw somenteLeitura();
+    }
+
+    @Override
+    public void write(String caminho, String usuario, boolean anexar, byte[] buffer) {
+        throw somenteLeitura();
+    }
+
+    @Override
+    public void mv(String caminhoAntigo, String caminhoNovo, String usuario) {
+        throw somenteLeitura();
+    }
+
+    @Override
+    public void cp(String caminhoOrigem, String caminhoDestino, String usuario, boolean recursivo) {
+        throw somenteLeitura();
+    }
+
+    @Override
+    public void close() {
+        if (fechado.compareAndSet(false, true)) {
+            visao.soltarInstantaneo();
+        }
+    }
+
+    private FileSystemImpl aberta() {
+        if (fechado.get()) {
+            throw new IllegalStateException("Instantâneo fechado");
+        }
+        return visao;
+    }
+
+    private static UnsupportedOperationException somenteLeitura() {
+        return new UnsupportedOperationException("Instantâneo somente leitura");
+    }
+}
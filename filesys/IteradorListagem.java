@@ -0,0 +1,133 @@
+package filesys;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.ToIntBiFunction;
+
+// Percorre um diretório em pré-ordem (cada diretório seguido do seu conteúdo), com os
+// irmãos em ordem de nome. A profundidade é controlada por uma pilha explícita, então
+// árvores profundas não estouram a pilha de chamadas, e só um iterador por diretório ainda
+// aberto fica em memória: nada da listagem é acumulado nem copiado.
+// Os filhos são lidos em ordem direto do mapa ordenado do diretório (ver Diretorio.filhos),
+// com um iterador fracamente consistente; alterações feitas durante a listagem podem ou não
+// aparecer nela, mas nenhuma entrada é repetida. Retomar uma página custa O(log n) por
+// diretório do caminho da continuação (tailMap), e não a ordenação dos nomes.
+final class IteradorListagem implements Iterator<EntradaListagem> {
+    // Filhos de um diretório ainda não visitados
+    private static final class Quadro {
+        final Diretorio diretorio;
+        final String caminho;
+        // permissões pendentes de cópias que valem para o diretório (ver FileSystemImpl.copiar), ou null
+        final TabelaPermissoes concessao;
+        final Iterator<Map.Entry<String, No>> filhos;
+
+        Quadro(Diretorio diretorio, String caminho, TabelaPermissoes concessao, Iterator<Map.Entry<String, No>> filhos) {
+            this.diretorio = diretorio;
+            this.caminho = caminho;
+            this.concessao = concessao;
+            this.filhos = filhos;
+        }
+    }
+
+    private final boolean recursivo;
+    // máscara de permissões do usuário da listagem em um nó, somadas as concessões pendentes dele
+    private final ToIntBiFunction<No, TabelaPermissoes> mascara;
+    private final ArrayDeque<Quadro> pilha = new ArrayDeque<>();
+    private EntradaListagem proxima;
+
+    // Lista o conteúdo de 'raiz'. Se 'apos' não for null, a listagem começa logo depois
+    // da entrada com esse caminho (que deve estar dentro de 'caminho'), mesmo que ela
+    // já tenha sido removida. 'concessao' é a que vale para 'raiz' no seu caminho, ou null.
+    IteradorListagem(Diretorio raiz, String caminho, TabelaPermissoes concessao, boolean recursivo,
+            ToIntBiFunction<No, TabelaPermissoes> mascara, String apos) {
+        this.recursivo = recursivo;
+        this.mascara = mascara;
+        if (apos == null) {
+            pilha.push(abrir(raiz, caminho, concessao, null));
+        } else {
+            retomar(raiz, caminho, concessao, apos);
+        }
+    }
+
+    // Reconstrói a pilha que existia depois de visitar 'apos': para cada diretório no
+    // caminho até ela, os irmãos seguintes; se 'apos' for um diretório, também o seu conteúdo.
+    private void retomar(Diretorio raiz, String caminho, TabelaPermissoes concessao, String apos) {
+        String relativo = apos.substring(caminho.equals(FileSystemImpl.ROOT_DIR) ? 1 : caminho.length() + 1);
+        String[] partes = relativo.split("/");
+        Diretorio dir = raiz;
+        String atual = caminho;
+        for (int i = 0; i < partes.length; i++) {
+            pilha.push(abrir(dir, atual, concessao, partes[i]));
+            No no = dir.filhos().get(partes[i]);
+            concessao = TabelaPermissoes.somar(concessao, dir.concessao(partes[i]));
+            if (no == null || !podeDescer(no, concessao)) {
+                return;
+            }
+            dir = (Diretorio) no;
+            atual = FileSystemImpl.filho(atual, partes[i]);
+            if (i == partes.length - 1) {
+                pilha.push(abrir(dir, atual, concessao, null));
+            }
+        }
+    }
+
+    // Quadro com os filhos de 'dir' posicionado depois de 'apos' (ou no início).
+    private static Quadro abrir(Diretorio dir, String caminho, TabelaPermissoes concessao, String apos) {
+        Map<String, No> filhos = apos != null ? dir.filhos().tailMap(apos, false) : dir.filhos();
+        return new Quadro(dir, caminho, concessao, filhos.entrySet().iterator());
+    }
+
+    // Diretórios sem permissão de leitura aparecem na listagem, mas o seu conteúdo não.
+    private boolean podeDescer(No no, TabelaPermissoes concessao) {
+        return recursivo && no.isDiretorio() && (mascara.applyAsInt(no, concessao) & MotorPermissoes.LEITURA) != 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (proxima == null) {
+            Quadro topo = pilha.peek();
+            if (topo == null) {
+                return false;
+            }
+            if (!topo.filhos.hasNext()) {
+                pilha.pop();
+                continue;
+            }
+            Map.Entry<String, No> filho = topo.filhos.next();
+            String nome = filho.getKey();
+            No no = filho.getValue();
+            String caminho = FileSystemImpl.filho(topo.caminho, nome);
+            TabelaPermissoes concessao = TabelaPermissoes.somar(topo.concessao, topo.diretorio.concessao(nome));
+            proxima = entrada(no, caminho, nome, mascara.applyAsInt(no, concessao));
+            if (podeDescer(no, concessao)) {
+                pilha.push(abrir((Diretorio) no, caminho, concessao, null));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public EntradaListagem next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        EntradaListagem entrada = proxima;
+        proxima = null;
+        return entrada;
+    }
+
+    static EntradaListagem entrada(No no, String caminho, String nome, int mascara) {
+        long tamanho = 0;
+        if (!no.isDiretorio()) {
+            no.travarLeitura();
+            try {
+                tamanho = ((Arquivo) no).tamanho();
+            } finally {
+                no.destravarLeitura();
+            }
+        }
+        return new EntradaListagem(caminho, nome, no.isDiretorio(), tamanho, MotorPermissoes.formatar(mascara));
+    }
+}
@@ -0,0 +1,112 @@
+package filesys;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+// Handle de leitura sequencial de um arquivo, obtido com IFileSystem.abrirLeitura.
+// Pode ser usado como InputStream ou como ReadableByteChannel, lendo em pedaços
+// de tamanho fixo sem alocar um buffer do tamanho do arquivo.
+// A permissão de leitura é verificada uma única vez, ao abrir o handle; no modo
+// concorrente cada pedaço é lido com a trava de leitura do arquivo.
+public final class LeitorArquivo extends InputStream implements ReadableByteChannel {
+    private final Arquivo arquivo;
+    // destino de read(), reaproveitado a cada byte lido
+    private final byte[] umByte = new byte[1];
+    private long posicao;
+    private boolean aberto = true;
+
+    LeitorArquivo(Arquivo arquivo) {
+        this.arquivo = arquivo;
+    }
+
+    public long tamanho() {
+        arquivo.travarLeitura();
+        try {
+            return arquivo.tamanho();
+        } finally {
+            arquivo.destravarLeitura();
+        }
+    }
+
+    public long posicao() {
+        return posicao;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(umByte, 0, 1) < 0 ? -1 : umByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int tamanho) throws IOException {
+        verificarAberto();
+        if (tamanho == 0) {
+            return 0;
+        }
+        int lidos;
+        arquivo.travarLeitura();
+        try {
+            lidos = arquivo.ler(posicao, buffer, offset, tamanho);
+        } finally {
+            arquivo.destravarLeitura();
+        }
+        if (lidos == 0) {
+            return -1;
+        }
+        posicao += lidos;
+        return lidos;
+    }
+
+    @Override
+    public int read(ByteBuffer destino) throws IOException {
+        verificarAberto();
+        if (!destino.hasRemaining()) {
+            return 0;
+        }
+        int lidos;
+        arquivo.travarLeitura();
+        try {
+            lidos = arquivo.ler(posicao, destino);
+        } finally {
+            arquivo.destravarLeitura();
+        }
+        if (lidos == 0) {
+            return -1;
+        }
+        posicao += lidos;
+        return lidos;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        verificarAberto();
+        long pulados = Math.max(0, Math.min(n, tamanho() - posicao));
+        posicao += pulados;
+        return pulados;
+    }
+
+    @Override
+    public int available() throws IOException {
+        verificarAberto();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, tamanho() - posicao));
+    }
+
+    @Override
+    public boolean isOpen() {
+        return aberto;
+    }
+
+    @Override
+    public void close() {
+        aberto = false;
+    }
+
+    private void verificarAberto() throws IOException {
+        if (!aberto) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package filesys;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Lê um trace gravado por EscritorTrace (o formato está descrito lá). A leitura para no fim do
+// arquivo ou no primeiro registro incompleto, deixado por uma gravação interrompida.
+public final class LeitorTrace implements Closeable {
+    private final DataInputStream entrada;
+    private final List<String> dicionario = new ArrayList<>();
+    private long ultimoInstante;
+
+    public LeitorTrace(InputStream entrada) throws IOException {
+        this.entrada = new DataInputStream(new BufferedInputStream(entrada, 64 * 1024));
+        int magico;
+        int versao;
+        try {
+            magico = this.entrada.readInt();
+            versao = this.entrada.readUnsignedByte();
+        } catch (EOFException e) {
+            throw new IOException("Trace vazio ou truncado", e);
+        }
+        if (magico != EscritorTrace.MAGICO) {
+            throw new IOException("Não é um trace do sistema de arquivos");
+        }
+        if (versao != EscritorTrace.VERSAO) {
+            throw new IOException("Versão de trace não suportada: " + versao);
+        }
+    }
+
+    // Todas as chamadas do arquivo, na ordem em que foram gravadas
+    public static List<ChamadaTrace> ler(Path arquivo) throws IOException {
+        List<ChamadaTrace> chamadas = new ArrayList<>();
+        try (LeitorTrace leitor = new LeitorTrace(Files.newInputStream(arquivo))) {
+            ChamadaTrace chamada;
+            while ((chamada = leitor.proxima()) != null) {
+                chamadas.add(chamada);
+            }
+        }
+        return chamadas;
+    }
+
+    // A próxima chamada, ou null no fim do trace
+    public ChamadaTrace proxima() throws IOException {
+        int tipo = entrada.read();
+        if (tipo < 0) {
+            return null;
+        }
+        try {
+            int flags = entrada.readUnsignedByte();
+            long zigzag = lerVarlong();
+            long instante = ultimoInstante + ((zigzag >>> 1) ^ -(zigzag & 1));
+            long duracao = lerVarlong();
+            String usuario = lerTexto();
+            String caminho = lerTexto();
+            String argumento = lerTexto();
+            String permissao = lerTexto();
+            long offset = lerVarlong();
+            int tamanho = (int) lerVarlong();
+            byte[] dados = null;
+            if ((flags & EscritorTrace.COM_DADOS) != 0) {
+                dados = new byte[tamanho];
+                entrada.readFully(dados);
+            }
+            ultimoInstante = instante;
+            return new ChamadaTrace(ChamadaTrace.Tipo.deCodigo(tipo), instante, duracao, usuario, caminho,
+                    argumento, permissao, (flags & EscritorTrace.OPCAO) != 0, offset, tamanho, dados,
+                    ChamadaTrace.Resultado.deCodigo(flags >>> EscritorTrace.DESLOCAMENTO_RESULTADO));
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        entrada.close();
+    }
+
+    private String lerTexto() throws IOException {
+        long codigo = lerVarlong();
+        if (codigo == 0) {
+            return null;
+        }
+        if (codigo > 1) {
+            if (codigo - 2 >= dicionario.size()) {
+                throw new IOException("Texto inválido no trace: " + codigo);
+            }
+            return dicionario.get((int) (codigo - 2));
+        }
+        byte[] bytes = new byte[(int) lerVarlong()];
+        entrada.readFully(bytes);
+        String texto = new String(bytes, StandardCharsets.UTF_8);
+        dicionario.add(texto);
+        return texto;
+    }
+
+    private long lerVarlong() throws IOException {
+        long valor = 0;
+        for (int deslocamento = 0; deslocamento < 64; deslocamento += 7) {
+            int b = entrada.readUnsignedByte();
+            valor |= (long) (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Número inválido no trace");
+    }
+}
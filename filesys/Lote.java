@@ -0,0 +1,119 @@
+package filesys;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// Agrupamento das operações de um lote (FileSystemImpl.submeter) pelo diretório pai.
+//
+// Os grupos são executados na ordem em que o pai aparece pela primeira vez no lote e, dentro
+// de um grupo, as operações mantêm a ordem do lote; operações de grupos diferentes trocam de
+// ordem entre si. Como o lote não remove nada, a única dependência entre operações de pais
+// diferentes é a criação de um caminho (o próprio caminho, e os diretórios intermediários de
+// "mkdir -p") do qual o pai da outra depende. Uma operação que trocaria de ordem com outra
+// dessa forma abre um novo segmento: os grupos já abertos são executados antes dela e os
+// seguintes depois, e cada operação tem o mesmo resultado que teria em sequência.
+final class Lote {
+    static final class Grupo {
+        final String pai;
+        // índice da primeira operação do grupo no lote; define a ordem dos grupos
+        final int primeira;
+        final List<Integer> indices = new ArrayList<>();
+        // o pai e os seus ancestrais, até a raiz
+        final List<String> ancestrais = new ArrayList<>();
+        // se o pai existe antes do lote (null enquanto não consultado)
+        private Boolean paiExistente;
+
+        Grupo(String pai, int primeira) {
+            this.pai = pai;
+            this.primeira = primeira;
+            for (String c = pai; ; c = FileSystemImpl.pai(c)) {
+                ancestrais.add(c);
+                if (c.equals(FileSystemImpl.ROOT_DIR)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private Lote() {
+    }
+
+    // existe: se um caminho existe antes do lote; consultado no máximo uma vez por grupo com mkdir
+    static List<Grupo> agrupar(List<Operacao> operacoes, Predicate<String> existe) {
+        List<Grupo> ordem = new ArrayList<>();
+        // Estado do segmento atual
+        Map<String, Grupo> abertos = new HashMap<>();
+        // caminho que uma operação pode criar -> maior 'primeira' entre os grupos dessas operações
+        Map<String, Integer> criados = new HashMap<>();
+        // caminho -> maior 'primeira' entre os grupos cujo pai é o caminho ou está abaixo dele
+        Map<String, Integer> dependentes = new HashMap<>();
+        for (int i = 0; i < operacoes.size(); i++) {
+            Operacao operacao = operacoes.get(i);
+            String pai = FileSystemImpl.pai(operacao.caminho);
+            Grupo grupo = abertos.get(pai);
+            if (grupo != null && conflita(operacao, grupo, existe, criados, dependentes)) {
+                abertos.clear();
+                criados.clear();
+                dependentes.clear();
+                grupo = null;
+            }
+            if (grupo == null) {
+                // um grupo novo é executado depois de todos os abertos, então não conflita
+                grupo = new Grupo(pai, i);
+                abertos.put(pai, grupo);
+                ordem.add(grupo);
+                for (String c : grupo.ancestrais) {
+                    dependentes.merge(c, i, Math::max);
+                }
+            }
+            grupo.indices.add(i);
+            criados.merge(operacao.caminho, grupo.primeira, Math::max);
+            if (criaIntermediarios(operacao, grupo, existe)) {
+                for (String c : grupo.ancestrais) {
+                    criados.merge(c, grupo.primeira, Math::max);
+                }
+            }
+        }
+        return ordem;
+    }
+
+    // true se a operação, executada no grupo, passaria à frente ou para trás de outra da qual depende
+    private static boolean conflita(Operacao operacao, Grupo grupo, Predicate<String> existe,
+            Map<String, Integer> criados, Map<String, Integer> dependentes) {
+        // depende de um caminho criado por uma operação anterior de um grupo executado depois
+        for (String c : grupo.ancestrais) {
+            Integer criador = criados.get(c);
+            if (criador != null && criador > grupo.primeira) {
+                return true;
+            }
+        }
+        // cria um caminho do qual dependem operações anteriores de um grupo executado depois
+        Integer dependente = dependentes.get(operacao.caminho);
+        if (dependente != null && dependente > grupo.primeira) {
+            return true;
+        }
+        if (criaIntermediarios(operacao, grupo, existe)) {
+            for (String c : grupo.ancestrais) {
+                dependente = dependentes.get(c);
+                if (dependente != null && dependente > grupo.primeira) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Um mkdir pode criar os diretórios intermediários se o pai não existir antes do lote
+    private static boolean criaIntermediarios(Operacao operacao, Grupo grupo, Predicate<String> existe) {
+        if (operacao.tipo != Operacao.Tipo.MKDIR) {
+            return false;
+        }
+        if (grupo.paiExistente == null) {
+            grupo.paiExistente = existe.test(grupo.pai);
+        }
+        return !grupo.paiExistente;
+    }
+}
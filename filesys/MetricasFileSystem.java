@@ -0,0 +1,153 @@
+package filesys;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import exception.CaminhoJaExistenteException;
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+
+// Métricas por método de IFileSystem, registradas pelo proxy FileSystem depois de
+// habilitarMetricas(): chamadas, erros por tipo de exceção, bytes lidos e escritos e um
+// histograma de latências (ver HistogramaLatencia).
+//
+// O registro não aloca nem trava (LongAdder, LongAccumulator e histograma em listras), então
+// pode ser feito em todas as chamadas. O retrato soma os contadores sem parar as threads que
+// registram: com chamadas concorrentes, os valores de um retrato podem não ser simultâneos.
+public final class MetricasFileSystem implements MetricasFileSystemMXBean {
+    static final int CHMOD = 0;
+    static final int MKDIR = 1;
+    static final int RM = 2;
+    static final int TOUCH = 3;
+    static final int WRITE = 4;
+    static final int READ = 5;
+    static final int ABRIR_LEITURA = 6;
+    static final int MV = 7;
+    static final int LS = 8;
+    static final int LISTAR = 9;
+    static final int CP = 10;
+    private static final String[] NOMES = { "chmod", "mkdir", "rm", "touch", "write", "read", "abrirLeitura",
+            "mv", "ls", "listar", "cp" };
+
+    private static final class Contadores {
+        final LongAdder errosCaminhoNaoEncontrado = new LongAdder();
+        final LongAdder errosCaminhoJaExistente = new LongAdder();
+        final LongAdder errosPermissao = new LongAdder();
+        final LongAdder outrosErros = new LongAdder();
+        final LongAdder bytesLidos = new LongAdder();
+        final LongAdder bytesEscritos = new LongAdder();
+        final LongAdder latenciaTotal = new LongAdder();
+        final LongAccumulator latenciaMaxima = new LongAccumulator(Math::max, 0);
+        // também conta as chamadas: não há um contador separado para elas
+        final HistogramaLatencia histograma;
+
+        Contadores(int listras) {
+            histograma = new HistogramaLatencia(listras);
+        }
+    }
+
+    private final Contadores[] metodos = new Contadores[NOMES.length];
+    // nome com que foi registrado no JMX, ou null
+    private ObjectName nomeJmx;
+
+    MetricasFileSystem() {
+        int listras = Math.min(8, Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i < metodos.length; i++) {
+            metodos[i] = new Contadores(listras);
+        }
+    }
+
+    // Registra uma chamada que terminou normalmente; 'inicio' é o System.nanoTime() da entrada.
+    void sucesso(int metodo, long inicio, long bytesLidos, long bytesEscritos) {
+        Contadores c = registrar(metodo, inicio);
+        if (bytesLidos > 0) {
+            c.bytesLidos.add(bytesLidos);
+        }
+        if (bytesEscritos > 0) {
+            c.bytesEscritos.add(bytesEscritos);
+        }
+    }
+
+    void erro(int metodo, long inicio, Exception e) {
+        Contadores c = registrar(metodo, inicio);
+        if (e instanceof CaminhoNaoEncontradoException) {
+            c.errosCaminhoNaoEncontrado.increment();
+        } else if (e instanceof CaminhoJaExistenteException) {
+            c.errosCaminhoJaExistente.increment();
+        } else if (e instanceof PermissaoException) {
+            c.errosPermissao.increment();
+        } else {
+            c.outrosErros.increment();
+        }
+    }
+
+    private Contadores registrar(int metodo, long inicio) {
+        long latencia = System.nanoTime() - inicio;
+        Contadores c = metodos[metodo];
+        c.latenciaTotal.add(latencia);
+        c.latenciaMaxima.accumulate(latencia);
+        c.histograma.registrar(latencia);
+        return c;
+    }
+
+    // Retrato das métricas de cada método, na ordem de IFileSystem
+    public Map<String, MetricasMetodo> retrato() {
+        Map<String, MetricasMetodo> retrato = new LinkedHashMap<>();
+        for (int i = 0; i < metodos.length; i++) {
+            Contadores c = metodos[i];
+            long[] contagens = c.histograma.contagens();
+            long chamadas = HistogramaLatencia.total(contagens);
+            retrato.put(NOMES[i], new MetricasMetodo(NOMES[i], chamadas, c.errosCaminhoNaoEncontrado.sum(),
+                    c.errosCaminhoJaExistente.sum(), c.errosPermissao.sum(), c.outrosErros.sum(), c.bytesLidos.sum(),
+                    c.bytesEscritos.sum(), chamadas == 0 ? 0 : c.latenciaTotal.sum() / chamadas,
+                    c.latenciaMaxima.get(), HistogramaLatencia.percentil(contagens, 0.5),
+                    HistogramaLatencia.percentil(contagens, 0.99), HistogramaLatencia.percentil(contagens, 0.999)));
+        }
+        return retrato;
+    }
+
+    @Override
+    public Map<String, MetricasMetodo> getMetodos() {
+        return retrato();
+    }
+
+    @Override
+    public void zerar() {
+        for (Contadores c : metodos) {
+            c.errosCaminhoNaoEncontrado.reset();
+            c.errosCaminhoJaExistente.reset();
+            c.errosPermissao.reset();
+            c.outrosErros.reset();
+            c.bytesLidos.reset();
+            c.bytesEscritos.reset();
+            c.latenciaTotal.reset();
+            c.latenciaMaxima.reset();
+            c.histograma.zerar();
+        }
+    }
+
+    // Registra as métricas no servidor JMX da plataforma como "filesys:type=FileSystem,name=<nome>".
+    public synchronized ObjectName registrarJmx(String nome) throws JMException {
+        if (nomeJmx != null) {
+            throw new IllegalStateException("Métricas já registradas como " + nomeJmx);
+        }
+        ObjectName objectName = new ObjectName("filesys:type=FileSystem,name=" + ObjectName.quote(nome));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        nomeJmx = objectName;
+        return objectName;
+    }
+
+    // Remove o registro feito por registrarJmx(); sem efeito se não houver registro.
+    public synchronized void removerJmx() throws JMException {
+        if (nomeJmx != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(nomeJmx);
+            nomeJmx = null;
+        }
+    }
+}
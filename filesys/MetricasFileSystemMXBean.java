@@ -0,0 +1,12 @@
+package filesys;
+
+import java.util.Map;
+
+// Interface JMX das métricas de um FileSystem, registrada por MetricasFileSystem.registrarJmx().
+public interface MetricasFileSystemMXBean {
+    // Métricas de cada método de IFileSystem, pelo nome do método
+    Map<String, MetricasMetodo> getMetodos();
+
+    // Zera todas as métricas
+    void zerar();
+}
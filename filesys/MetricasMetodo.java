@@ -0,0 +1,101 @@
+package filesys;
+
+// Retrato das métricas de um método de IFileSystem (ver MetricasFileSystem). As latências
+// são em nanossegundos; os percentis têm erro relativo de até ~1,6%.
+public final class MetricasMetodo {
+    private final String nome;
+    private final long chamadas;
+    private final long errosCaminhoNaoEncontrado;
+    private final long errosCaminhoJaExistente;
+    private final long errosPermissao;
+    private final long outrosErros;
+    private final long bytesLidos;
+    private final long bytesEscritos;
+    private final long latenciaMedia;
+    private final long latenciaMaxima;
+    private final long p50;
+    private final long p99;
+    private final long p999;
+
+    MetricasMetodo(String nome, long chamadas, long errosCaminhoNaoEncontrado, long errosCaminhoJaExistente,
+            long errosPermissao, long outrosErros, long bytesLidos, long bytesEscritos, long latenciaMedia,
+            long latenciaMaxima, long p50, long p99, long p999) {
+        this.nome = nome;
+        this.chamadas = chamadas;
+        this.errosCaminhoNaoEncontrado = errosCaminhoNaoEncontrado;
+        this.errosCaminhoJaExistente = errosCaminhoJaExistente;
+        this.errosPermissao = errosPermissao;
+        this.outrosErros = outrosErros;
+        this.bytesLidos = bytesLidos;
+        this.bytesEscritos = bytesEscritos;
+        this.latenciaMedia = latenciaMedia;
+        this.latenciaMaxima = latenciaMaxima;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.p999 = p999;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    // Inclui as chamadas que terminaram com erro
+    public long getChamadas() {
+        return chamadas;
+    }
+
+    public long getErrosCaminhoNaoEncontrado() {
+        return errosCaminhoNaoEncontrado;
+    }
+
+    public long getErrosCaminhoJaExistente() {
+        return errosCaminhoJaExistente;
+    }
+
+    public long getErrosPermissao() {
+        return errosPermissao;
+    }
+
+    // Exceções não verificadas, como IllegalArgumentException
+    public long getOutrosErros() {
+        return outrosErros;
+    }
+
+    public long getErros() {
+        return errosCaminhoNaoEncontrado + errosCaminhoJaExistente + errosPermissao + outrosErros;
+    }
+
+    public long getBytesLidos() {
+        return bytesLidos;
+    }
+
+    public long getBytesEscritos() {
+        return bytesEscritos;
+    }
+
+    public long getLatenciaMediaNs() {
+        return latenciaMedia;
+    }
+
+    public long getLatenciaMaximaNs() {
+        return latenciaMaxima;
+    }
+
+    public long getP50Ns() {
+        return p50;
+    }
+
+    public long getP99Ns() {
+        return p99;
+    }
+
+    public long getP999Ns() {
+        return p999;
+    }
+
+    @Override
+    public String toString() {
+        return nome + ": chamadas=" + chamadas + " erros=" + getErros() + " lidos=" + bytesLidos + " escritos="
+                + bytesEscritos + " p50=" + p50 + "ns p99=" + p99 + "ns p999=" + p999 + "ns max=" + latenciaMaxima + "ns";
+    }
+}
@@ -0,0 +1,161 @@
+package filesys;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Regras de permissão do arquivo users ("usuario dir permissao", ex.: "maria /** rw-"),
+// compiladas em uma trie indexada por segmento de caminho.
+//
+// Cada nó da trie guarda as regras ancoradas naquele caminho como máscaras de bits por
+// usuário (LEITURA | ESCRITA | EXECUCAO), de modo que avaliar as regras para um caminho
+// é uma única descida na trie, sem percorrer a lista de regras nem interpretar "rwx".
+//
+// Padrões aceitos: segmentos literais, "*" (qualquer segmento) e "**" no fim do padrão.
+// Assim como uma permissão dada por chmod, uma regra vale para o nó do caminho e é
+// herdada pelos nós criados abaixo dele; "/dir" e "/dir/**" são equivalentes.
+// As regras devem ser todas adicionadas antes do motor ser usado por um FileSystemImpl;
+// depois disso o motor pode ser consultado por várias threads.
+public final class MotorPermissoes {
+    public static final int LEITURA = 4;
+    public static final int ESCRITA = 2;
+    public static final int EXECUCAO = 1;
+    public static final int TOTAL = LEITURA | ESCRITA | EXECUCAO;
+
+    private static final String CURINGA = "*";
+    private static final String CURINGA_RECURSIVO = "**";
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> nomes = new ArrayList<>();
+    private final NoRegra raiz = new NoRegra();
+
+    private static final class NoRegra {
+        final Map<String, NoRegra> filhos = new HashMap<>();
+        NoRegra curinga;
+        TabelaPermissoes regras = TabelaPermissoes.VAZIA;
+    }
+
+    public void adicionarRegra(String usuario, String padrao, String permissao) {
+        int mascara = compilar(permissao);
+        NoRegra no = raiz;
+        String[] segmentos = FileSystemImpl.normalizar(padrao).split("/");
+        for (int i = 1; i < segmentos.length; i++) {
+            String segmento = segmentos[i];
+            if (segmento.equals(CURINGA_RECURSIVO)) {
+                if (i != segmentos.length - 1) {
+                    throw new IllegalArgumentException("'**' só é aceito no fim do padrão: " + padrao);
+                }
+                break;
+            }
+            if (segmento.equals(CURINGA)) {
+                if (no.curinga == null) {
+                    no.curinga = new NoRegra();
+                }
+                no = no.curinga;
+            } else {
+                no = no.filhos.computeIfAbsent(segmento, s -> new NoRegra());
+            }
+        }
+        no.regras = no.regras.com(idUsuario(usuario), mascara);
+    }
+
+    // Máscara de permissão que as regras dão ao usuário no caminho. Prevalece a regra ancorada
+    // mais fundo (o ancestral mais próximo ou o próprio caminho); entre regras ancoradas na mesma
+    // profundidade, a que tem um segmento literal onde a outra tem "*", no primeiro segmento em que
+    // diferem. É a mesma precedência que aplicarRegras dá às tabelas dos nós criados.
+    public int mascara(String caminho, String usuario) {
+        Integer id = ids.get(usuario);
+        if (id == null) {
+            return 0;
+        }
+        int resultado = buscar(raiz, FileSystemImpl.normalizar(caminho), 1, 0, id);
+        return resultado < 0 ? 0 : resultado & TOTAL;
+    }
+
+    // Retorna a regra que prevalece entre as que casam com caminho[inicio..], como
+    // (profundidade << 3) | mascara, ou -1 se nenhuma casar.
+    private static int buscar(NoRegra no, String caminho, int inicio, int profundidade, int usuario) {
+        int aqui = no.regras.contem(usuario) ? profundidade << 3 | no.regras.mascara(usuario) : -1;
+        if (inicio >= caminho.length()) {
+            return aqui;
+        }
+        int fim = proximaBarra(caminho, inicio);
+        NoRegra literal = no.filhos.get(caminho.substring(inicio, fim));
+        int abaixo = literal != null ? buscar(literal, caminho, fim + 1, profundidade + 1, usuario) : -1;
+        if (no.curinga != null) {
+            int curinga = buscar(no.curinga, caminho, fim + 1, profundidade + 1, usuario);
+            // o curinga só prevalece sobre o literal se estiver ancorado mais fundo
+            if (curinga >= 0 && (abaixo < 0 || curinga >> 3 > abaixo >> 3)) {
+                abaixo = curinga;
+            }
+        }
+        return abaixo >= 0 ? abaixo : aqui;
+    }
+
+    // Aplica sobre 'herdada' as regras ancoradas exatamente no caminho (já normalizado).
+    TabelaPermissoes aplicarRegras(String caminho, TabelaPermissoes herdada) {
+        return aplicar(raiz, caminho, 1, herdada);
+    }
+
+    private static TabelaPermissoes aplicar(NoRegra no, String caminho, int inicio, TabelaPermissoes tabela) {
+        if (inicio >= caminho.length()) {
+            return tabela.sobrepor(no.regras);
+        }
+        int fim = proximaBarra(caminho, inicio);
+        // Regras com curinga são aplicadas antes, para que as literais (mais específicas) prevaleçam
+        if (no.curinga != null) {
+            tabela = aplicar(no.curinga, caminho, fim + 1, tabela);
+        }
+        NoRegra literal = no.filhos.get(caminho.substring(inicio, fim));
+        return literal != null ? aplicar(literal, caminho, fim + 1, tabela) : tabela;
+    }
+
+    private static int proximaBarra(String caminho, int inicio) {
+        int fim = caminho.indexOf('/', inicio);
+        return fim < 0 ? caminho.length() : fim;
+    }
+
+    // Id compacto do usuário, criado no primeiro uso.
+    int idUsuario(String usuario) {
+        Integer id = ids.get(usuario);
+        return id != null ? id : registrar(usuario);
+    }
+
+    private synchronized int registrar(String usuario) {
+        Integer id = ids.get(usuario);
+        if (id == null) {
+            id = nomes.size();
+            nomes.add(usuario);
+            ids.put(usuario, id);
+        }
+        return id;
+    }
+
+    // Id do usuário, ou -1 se ele nunca foi visto (e portanto não tem permissão alguma).
+    int idExistente(String usuario) {
+        Integer id = ids.get(usuario);
+        return id == null ? -1 : id;
+    }
+
+    synchronized String nomeUsuario(int id) {
+        return nomes.get(id);
+    }
+
+    public static int compilar(String permissao) {
+        if (permissao == null || !permissao.matches("[r-][w-][x-]")) {
+            throw new IllegalArgumentException("Permissão inválida (formato \"rwx\"): " + permissao);
+        }
+        return (permissao.charAt(0) == 'r' ? LEITURA : 0)
+                | (permissao.charAt(1) == 'w' ? ESCRITA : 0)
+                | (permissao.charAt(2) == 'x' ? EXECUCAO : 0);
+    }
+
+    public static String formatar(int mascara) {
+        return new String(new char[] {
+                (mascara & LEITURA) != 0 ? 'r' : '-',
+                (mascara & ESCRITA) != 0 ? 'w' : '-',
+                (mascara & EXECUCAO) != 0 ? 'x' : '-' });
+    }
+}
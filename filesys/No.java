@@ -0,0 +1,64 @@
+package filesys;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Nó da árvore do sistema de arquivos.
+// O nó não guarda o próprio nome nem o pai: o nome é a chave no mapa de filhos
+// do diretório pai, e a posição na árvore é dada pelo caminho usado para alcançá-lo.
+abstract class No {
+    // Permissões por usuário; substituída por uma nova tabela a cada chmod.
+    volatile TabelaPermissoes permissoes;
+
+    // Quantos diretórios apontam para este nó. Mais de um quando uma cópia (cp) compartilha
+    // o nó com a origem; o nó é clonado antes de ser alterado (ver FileSystemImpl).
+    final AtomicInteger referencias = new AtomicInteger(1);
+
+    // Marcado com a trava de escrita quando a última referência ao nó é solta (ver
+    // FileSystemImpl.liberar). Quem resolveu o nó antes e só depois o travou o encontra fora da
+    // árvore e resolve o caminho de novo, em vez de alterar um nó que ninguém mais alcança.
+    boolean removido;
+
+    // Trava de leitura/escrita do nó; null quando o FileSystemImpl não é concorrente.
+    // Em um diretório protege o mapa de filhos; em um arquivo, o seu conteúdo.
+    private final ReentrantReadWriteLock trava;
+
+    No(TabelaPermissoes permissoes, boolean concorrente) {
+        this.permissoes = permissoes;
+        this.trava = concorrente ? new ReentrantReadWriteLock() : null;
+    }
+
+    abstract boolean isDiretorio();
+
+    boolean compartilhado() {
+        return referencias.get() > 1;
+    }
+
+    boolean concorrente() {
+        return trava != null;
+    }
+
+    void travarLeitura() {
+        if (trava != null) {
+            trava.readLock().lock();
+        }
+    }
+
+    void destravarLeitura() {
+        if (trava != null) {
+            trava.readLock().unlock();
+        }
+    }
+
+    void travarEscrita() {
+        if (trava != null) {
+            trava.writeLock().lock();
+        }
+    }
+
+    void destravarEscrita() {
+        if (trava != null) {
+            trava.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package filesys;
+
+import java.util.Objects;
+
+// Uma operação de um lote executado por FileSystemImpl.submeter.
+public final class Operacao {
+    enum Tipo {
+        MKDIR, TOUCH, WRITE
+    }
+
+    final Tipo tipo;
+    // normalizado
+    final String caminho;
+    final String usuario;
+    final boolean anexar;
+    final byte[] dados;
+
+    private Operacao(Tipo tipo, String caminho, String usuario, boolean anexar, byte[] dados) {
+        this.tipo = tipo;
+        this.caminho = FileSystemImpl.normalizar(caminho);
+        this.usuario = Objects.requireNonNull(usuario, "usuario");
+        this.anexar = anexar;
+        this.dados = dados;
+    }
+
+    public static Operacao mkdir(String caminho, String usuario) {
+        return new Operacao(Tipo.MKDIR, caminho, usuario, false, null);
+    }
+
+    public static Operacao touch(String caminho, String usuario) {
+        return new Operacao(Tipo.TOUCH, caminho, usuario, false, null);
+    }
+
+    // O buffer não é copiado e não deve ser alterado até o lote ser executado.
+    public static Operacao write(String caminho, String usuario, boolean anexar, byte[] buffer) {
+        return new Operacao(Tipo.WRITE, caminho, usuario, anexar, Objects.requireNonNull(buffer, "buffer"));
+    }
+
+    @Override
+    public String toString() {
+        return tipo.name().toLowerCase() + " " + caminho + " (" + usuario + ")";
+    }
+}
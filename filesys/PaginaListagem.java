@@ -0,0 +1,27 @@
+package filesys;
+
+import java.util.List;
+
+// Uma página de IFileSystem.listar. 'continuacao' é o token a passar na próxima
+// chamada para obter a página seguinte, ou null se a listagem terminou.
+public final class PaginaListagem {
+    private final List<EntradaListagem> entradas;
+    private final String continuacao;
+
+    PaginaListagem(List<EntradaListagem> entradas, String continuacao) {
+        this.entradas = entradas;
+        this.continuacao = continuacao;
+    }
+
+    public List<EntradaListagem> getEntradas() {
+        return entradas;
+    }
+
+    public String getContinuacao() {
+        return continuacao;
+    }
+
+    public boolean temProxima() {
+        return continuacao != null;
+    }
+}
@@ -0,0 +1,143 @@
+package filesys;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Percurso de uma subárvore (rm -r, cp -r, ls -R) com as entradas dos diretórios largos
+// processadas em paralelo em um ForkJoinPool. Uma instância por operação: com paraCada, a
+// primeira exceção lançada por qualquer item interrompe o percurso inteiro, e os itens ainda não
+// iniciados, em qualquer nível, são descartados; com paraCadaEmOrdem, a exceção lançada é a do
+// primeiro item da lista que falhou.
+//
+// paraCada() só usa o pool para listas com pelo menos 'limiar' itens; abaixo disso, e com
+// limiar <= 0 ou um pool de uma única thread, os itens são processados em sequência na thread
+// que chamou. A lista é dividida ao meio até pedaços de cerca de 1/(8 x paralelismo) dela, para
+// que um subdiretório grande em um pedaço não deixe as outras threads sem trabalho.
+final class PercursoParalelo {
+    @FunctionalInterface
+    interface Acao<T, E extends Exception> {
+        void executar(T item) throws E;
+    }
+
+    private static final int PEDACOS_POR_THREAD = 8;
+
+    private final ForkJoinPool pool;
+    private final int limiar;
+    private final AtomicReference<Throwable> falha = new AtomicReference<>();
+
+    PercursoParalelo(ForkJoinPool pool, int limiar) {
+        this.pool = pool;
+        this.limiar = limiar > 0 && pool.getParallelism() > 1 ? limiar : 0;
+    }
+
+    // true se uma lista de 'itens' itens seria processada em paralelo
+    boolean paralelo(int itens) {
+        return limiar > 0 && itens >= limiar;
+    }
+
+    <T, E extends Exception> void paraCada(List<T> itens, Acao<T, E> acao) throws E {
+        if (!paralelo(itens.size())) {
+            for (T item : itens) {
+                if (falha.get() != null) {
+                    return;
+                }
+                acao.executar(item);
+            }
+            return;
+        }
+        executar(itens.size(), i -> acao.executar(itens.get(i)));
+        lancarFalha();
+    }
+
+    // Como paraCada, mas a exceção E de um item não interrompe o percurso inteiro: só os itens
+    // seguintes a ele na lista, ainda não iniciados, são descartados. No fim é lançada a exceção
+    // do primeiro item da lista que falhou, a mesma que o percurso sequencial lançaria.
+    // Exceções não verificadas interrompem o percurso, como em paraCada.
+    @SuppressWarnings("unchecked")
+    <T, E extends Exception> void paraCadaEmOrdem(List<T> itens, Acao<T, E> acao) throws E {
+        if (!paralelo(itens.size())) {
+            paraCada(itens, acao);
+            return;
+        }
+        Exception[] erros = new Exception[itens.size()];
+        AtomicInteger primeiroErro = new AtomicInteger(Integer.MAX_VALUE);
+        executar(itens.size(), i -> {
+            if (i > primeiroErro.get()) {
+                return;
+            }
+            try {
+                acao.executar(itens.get(i));
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                erros[i] = e;
+                primeiroErro.accumulateAndGet(i, Math::min);
+            }
+        });
+        lancarFalha();
+        if (primeiroErro.get() != Integer.MAX_VALUE) {
+            // só pode ser a exceção E de uma ação deste percurso
+            throw (E) erros[primeiroErro.get()];
+        }
+    }
+
+    private void executar(int quantidade, Acao<Integer, Exception> acao) {
+        int pedaco = Math.max(1, quantidade / (PEDACOS_POR_THREAD * pool.getParallelism()));
+        Pedaco tarefa = new Pedaco(0, quantidade, pedaco, acao);
+        if (ForkJoinTask.getPool() == pool) {
+            tarefa.invoke();
+        } else {
+            pool.invoke(tarefa);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Exception> void lancarFalha() throws E {
+        Throwable f = falha.get();
+        if (f instanceof RuntimeException) {
+            throw (RuntimeException) f;
+        }
+        if (f instanceof Error) {
+            throw (Error) f;
+        }
+        if (f != null) {
+            // só pode ser a exceção E de uma ação deste percurso
+            throw (E) f;
+        }
+    }
+
+    // Itens [inicio, fim) da lista, pelo índice
+    private final class Pedaco extends RecursiveAction {
+        private final int inicio;
+        private final int fim;
+        private final int pedaco;
+        private final Acao<Integer, Exception> acao;
+
+        Pedaco(int inicio, int fim, int pedaco, Acao<Integer, Exception> acao) {
+            this.inicio = inicio;
+            this.fim = fim;
+            this.pedaco = pedaco;
+            this.acao = acao;
+        }
+
+        @Override
+        protected void compute() {
+            if (fim - inicio > pedaco) {
+                int meio = (inicio + fim) >>> 1;
+                invokeAll(new Pedaco(inicio, meio, pedaco, acao), new Pedaco(meio, fim, pedaco, acao));
+                return;
+            }
+            for (int i = inicio; i < fim && falha.get() == null; i++) {
+                try {
+                    acao.executar(i);
+                } catch (Throwable e) {
+                    falha.compareAndSet(null, e);
+                }
+            }
+        }
+    }
+}
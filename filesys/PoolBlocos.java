@@ -0,0 +1,104 @@
+package filesys;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Pool de blocos compartilhado por todos os arquivos de um FileSystemImpl.
+// Blocos liberados (rm, sobrescrita) são reaproveitados em vez de deixados para o GC.
+// Com deduplicação, blocos de mesmo conteúdo são guardados uma única vez (ver DeduplicadorBlocos).
+// Seguro para uso por várias threads.
+final class PoolBlocos {
+    private final int tamanhoBloco;
+    private final int maxLivres;
+    private final Queue<byte[]> livres = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger quantidadeLivres = new AtomicInteger();
+    // null sem deduplicação
+    private final DeduplicadorBlocos deduplicador;
+
+    PoolBlocos(int tamanhoBloco, int maxLivres) {
+        this(tamanhoBloco, maxLivres, false);
+    }
+
+    PoolBlocos(int tamanhoBloco, int maxLivres, boolean deduplicar) {
+        if (tamanhoBloco <= 0) {
+            throw new IllegalArgumentException("Tamanho de bloco deve ser positivo: " + tamanhoBloco);
+        }
+        this.tamanhoBloco = tamanhoBloco;
+        this.maxLivres = maxLivres;
+        this.deduplicador = deduplicar ? new DeduplicadorBlocos() : null;
+    }
+
+    int tamanhoBloco() {
+        return tamanhoBloco;
+    }
+
+    Bloco alocar() {
+        byte[] dados = livres.poll();
+        if (dados != null) {
+            quantidadeLivres.decrementAndGet();
+        }
+        return new Bloco(dados != null ? dados : new byte[tamanhoBloco]);
+    }
+
+    // Novo bloco com os primeiros 'usados' bytes de origem; usado antes de alterar um bloco compartilhado.
+    Bloco copiar(Bloco origem, int usados) {
+        Bloco copia = alocar();
+        System.arraycopy(origem.dados, 0, copia.dados, 0, usados);
+        return copia;
+    }
+
+    // Bloco a guardar no lugar de 'bloco', que não será mais alterado no lugar: um bloco de mesmo
+    // conteúdo já existente (e então 'bloco' é liberado) ou o próprio bloco. 'bloco' deve ser
+    // usado apenas por quem chama. Sem deduplicação, retorna o próprio bloco.
+    Bloco internar(Bloco bloco, int usados) {
+        if (deduplicador == null) {
+            return bloco;
+        }
+        Bloco existente = deduplicador.internar(bloco, usados);
+        if (existente != bloco) {
+            liberar(bloco);
+        }
+        return existente;
+    }
+
+    // O último bloco de um arquivo, pronto para ser alterado no lugar: o próprio bloco, se só
+    // esse arquivo o usa, ou uma cópia dos primeiros 'usados' bytes, e então 'bloco' é liberado.
+    Bloco exclusivo(Bloco bloco, int usados) {
+        boolean compartilhado = bloco.chave != null ? !deduplicador.retirarExclusivo(bloco) : bloco.compartilhado();
+        if (!compartilhado) {
+            return bloco;
+        }
+        Bloco copia = copiar(bloco, usados);
+        liberar(bloco);
+        return copia;
+    }
+
+    void reter(Bloco bloco) {
+        bloco.referencias.incrementAndGet();
+    }
+
+    void liberar(Bloco bloco) {
+        if (bloco.referencias.decrementAndGet() != 0) {
+            return;
+        }
+        if (bloco.chave != null) {
+            deduplicador.remover(bloco);
+        }
+        // Reserva uma vaga antes de devolver o bloco, para não passar de maxLivres
+        if (quantidadeLivres.incrementAndGet() <= maxLivres) {
+            livres.offer(bloco.dados);
+        } else {
+            quantidadeLivres.decrementAndGet();
+        }
+    }
+
+    // Blocos distintos na tabela de deduplicação (0 sem deduplicação)
+    int blocosDeduplicados() {
+        return deduplicador != null ? deduplicador.tamanho() : 0;
+    }
+
+    int livres() {
+        return quantidadeLivres.get();
+    }
+}
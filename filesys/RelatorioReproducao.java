@@ -0,0 +1,99 @@
+package filesys;
+
+import java.util.Map;
+
+// Resultado de ReprodutorTrace.reproduzir. As latências são em nanossegundos; os percentis têm
+// erro relativo de até ~1,6% (ver HistogramaLatencia).
+public final class RelatorioReproducao {
+    private final long chamadas;
+    private final long duracaoNs;
+    private final long divergencias;
+    private final long atrasoMaximoNs;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final Map<String, MetricasMetodo> metodos;
+
+    RelatorioReproducao(long chamadas, long duracaoNs, long divergencias, long atrasoMaximoNs, long p50, long p90,
+            long p99, long p999, Map<String, MetricasMetodo> metodos) {
+        this.chamadas = chamadas;
+        this.duracaoNs = duracaoNs;
+        this.divergencias = divergencias;
+        this.atrasoMaximoNs = atrasoMaximoNs;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.metodos = metodos;
+    }
+
+    public long getChamadas() {
+        return chamadas;
+    }
+
+    public long getDuracaoNs() {
+        return duracaoNs;
+    }
+
+    public double getOperacoesPorSegundo() {
+        return duracaoNs == 0 ? 0 : chamadas * 1e9 / duracaoNs;
+    }
+
+    // Chamadas cujo resultado (sucesso ou tipo de exceção) difere do gravado no trace
+    public long getDivergencias() {
+        return divergencias;
+    }
+
+    // Maior atraso de uma chamada em relação ao agendamento; 0 na velocidade máxima
+    public long getAtrasoMaximoNs() {
+        return atrasoMaximoNs;
+    }
+
+    public long getP50Ns() {
+        return p50;
+    }
+
+    public long getP90Ns() {
+        return p90;
+    }
+
+    public long getP99Ns() {
+        return p99;
+    }
+
+    public long getP999Ns() {
+        return p999;
+    }
+
+    public long getLatenciaMaximaNs() {
+        long maxima = 0;
+        for (MetricasMetodo metodo : metodos.values()) {
+            maxima = Math.max(maxima, metodo.getLatenciaMaximaNs());
+        }
+        return maxima;
+    }
+
+    // Métricas de cada método, na ordem de IFileSystem
+    public Map<String, MetricasMetodo> getMetodos() {
+        return metodos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("chamadas=%d duracao=%.3fs vazao=%.0f ops/s divergencias=%d", chamadas,
+                duracaoNs / 1e9, getOperacoesPorSegundo(), divergencias));
+        if (atrasoMaximoNs > 0) {
+            sb.append(" atrasoMaximo=").append(atrasoMaximoNs).append("ns");
+        }
+        sb.append(String.format("%nlatencia: p50=%dns p90=%dns p99=%dns p999=%dns max=%dns", p50, p90, p99, p999,
+                getLatenciaMaximaNs()));
+        for (MetricasMetodo metodo : metodos.values()) {
+            if (metodo.getChamadas() > 0) {
+                sb.append(System.lineSeparator()).append("  ").append(metodo);
+            }
+        }
+        return sb.toString();
+    }
+}
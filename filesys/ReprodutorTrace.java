@@ -0,0 +1,140 @@
+package filesys;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Reproduz um trace (ver GravadorTrace e GeradorTrace) contra qualquer IFileSystem e mede
+// vazão, latências e divergências, isto é, chamadas cujo resultado difere do gravado.
+//
+// velocidade <= 0 reproduz na velocidade máxima: cada thread faz a próxima chamada assim que a
+// anterior termina. Com velocidade > 0, cada chamada é agendada para instante / velocidade depois
+// do início (1 é o ritmo original, 2 o dobro) e a latência é medida a partir do agendamento, não
+// do início efetivo: uma chamada atrasada pelas anteriores conta o tempo de espera, como contaria
+// para quem a fez (sem isso, um sistema lento faria menos chamadas e pareceria mais rápido).
+//
+// Com mais de uma thread, as chamadas são divididas pelo primeiro componente do caminho, e cada
+// thread faz as suas na ordem do trace: a ordem é mantida dentro de cada subdiretório da raiz,
+// mas não entre eles. mv e cp entre subdiretórios diferentes da raiz, ou sobre a própria raiz,
+// podem então divergir. O alvo precisa suportar chamadas concorrentes.
+//
+// ls imprime em System.out; quem reproduz traces com ls pode querer redirecioná-lo antes.
+public final class ReprodutorTrace {
+    // parkNanos acorda dezenas de µs depois do pedido: a espera dorme até esse tempo antes do
+    // agendamento e gira o restante, para não somar o atraso do despertar às latências
+    private static final long ESPERA_ATIVA_NS = 100_000;
+
+    private ReprodutorTrace() {
+    }
+
+    public static RelatorioReproducao reproduzir(List<ChamadaTrace> chamadas, IFileSystem alvo, int threads,
+            double velocidade) throws InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Número de threads inválido: " + threads);
+        }
+        List<List<ChamadaTrace>> particoes = particionar(chamadas, threads);
+        MetricasFileSystem metricas = new MetricasFileSystem();
+        HistogramaLatencia histograma = new HistogramaLatencia(threads);
+        LongAdder divergencias = new LongAdder();
+        LongAccumulator atrasoMaximo = new LongAccumulator(Math::max, 0);
+        AtomicReference<Throwable> falha = new AtomicReference<>();
+        CountDownLatch largada = new CountDownLatch(1);
+        long[] origem = new long[1];
+
+        List<Thread> executoras = new ArrayList<>(threads);
+        for (List<ChamadaTrace> particao : particoes) {
+            Thread executora = new Thread(() -> {
+                try {
+                    largada.await();
+                    byte[] area = new byte[maiorLeitura(particao)];
+                    for (ChamadaTrace chamada : particao) {
+                        long inicio = System.nanoTime();
+                        if (velocidade > 0) {
+                            long agendado = origem[0] + (long) (chamada.getInstante() / velocidade);
+                            while (inicio < agendado) {
+                                if (agendado - inicio > ESPERA_ATIVA_NS) {
+                                    LockSupport.parkNanos(agendado - inicio - ESPERA_ATIVA_NS);
+                                } else {
+                                    Thread.onSpinWait();
+                                }
+                                inicio = System.nanoTime();
+                            }
+                            atrasoMaximo.accumulate(inicio - agendado);
+                            inicio = agendado;
+                        }
+                        ChamadaTrace.Resultado resultado;
+                        try {
+                            long bytes = chamada.executar(alvo, area);
+                            resultado = ChamadaTrace.Resultado.SUCESSO;
+                            boolean leitura = chamada.getTipo() == ChamadaTrace.Tipo.READ;
+                            metricas.sucesso(chamada.getTipo().ordinal(), inicio, leitura ? bytes : 0,
+                                    leitura ? 0 : bytes);
+                        } catch (Exception e) {
+                            resultado = ChamadaTrace.Resultado.de(e);
+                            metricas.erro(chamada.getTipo().ordinal(), inicio, e);
+                        }
+                        histograma.registrar(System.nanoTime() - inicio);
+                        if (resultado != chamada.getResultado()) {
+                            divergencias.increment();
+                        }
+                    }
+                } catch (Throwable e) {
+                    falha.compareAndSet(null, e);
+                }
+            }, "reprodutor-trace-" + executoras.size());
+            executoras.add(executora);
+            executora.start();
+        }
+
+        origem[0] = System.nanoTime();
+        largada.countDown();
+        for (Thread executora : executoras) {
+            executora.join();
+        }
+        long duracao = System.nanoTime() - origem[0];
+        if (falha.get() != null) {
+            throw new IllegalStateException("Falha na reprodução do trace", falha.get());
+        }
+        long[] contagens = histograma.contagens();
+        return new RelatorioReproducao(chamadas.size(), duracao, divergencias.sum(),
+                velocidade > 0 ? atrasoMaximo.get() : 0, HistogramaLatencia.percentil(contagens, 0.5),
+                HistogramaLatencia.percentil(contagens, 0.9), HistogramaLatencia.percentil(contagens, 0.99),
+                HistogramaLatencia.percentil(contagens, 0.999), metricas.retrato());
+    }
+
+    private static List<List<ChamadaTrace>> particionar(List<ChamadaTrace> chamadas, int threads) {
+        List<List<ChamadaTrace>> particoes = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            particoes.add(new ArrayList<>(chamadas.size() / threads + 1));
+        }
+        for (ChamadaTrace chamada : chamadas) {
+            int particao = threads == 1 ? 0 : Math.floorMod(primeiroComponente(chamada.getCaminho()).hashCode(), threads);
+            particoes.get(particao).add(chamada);
+        }
+        return particoes;
+    }
+
+    // "a" para "/a/b/c" e "a", "" para a raiz
+    static String primeiroComponente(String caminho) {
+        int inicio = 0;
+        while (inicio < caminho.length() && caminho.charAt(inicio) == '/') {
+            inicio++;
+        }
+        int fim = caminho.indexOf('/', inicio);
+        return caminho.substring(inicio, fim < 0 ? caminho.length() : fim);
+    }
+
+    private static int maiorLeitura(List<ChamadaTrace> chamadas) {
+        int maior = 0;
+        for (ChamadaTrace chamada : chamadas) {
+            if (chamada.getTipo() == ChamadaTrace.Tipo.READ && !chamada.getOpcao()) {
+                maior = Math.max(maior, chamada.getTamanho());
+            }
+        }
+        return maior;
+    }
+}
@@ -0,0 +1,46 @@
+package filesys;
+
+import exception.CaminhoJaExistenteException;
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+
+// Resultado de uma operação de um lote: sucesso, ou a exceção que a chamada individual lançaria.
+public final class ResultadoOperacao {
+    static final ResultadoOperacao SUCESSO = new ResultadoOperacao(null);
+
+    private final Exception erro;
+
+    ResultadoOperacao(Exception erro) {
+        this.erro = erro;
+    }
+
+    public boolean sucesso() {
+        return erro == null;
+    }
+
+    // null em caso de sucesso
+    public Exception getErro() {
+        return erro;
+    }
+
+    // Lança a exceção da operação, se houver.
+    public void verificar() throws CaminhoNaoEncontradoException, CaminhoJaExistenteException, PermissaoException {
+        if (erro instanceof CaminhoNaoEncontradoException) {
+            throw (CaminhoNaoEncontradoException) erro;
+        }
+        if (erro instanceof CaminhoJaExistenteException) {
+            throw (CaminhoJaExistenteException) erro;
+        }
+        if (erro instanceof PermissaoException) {
+            throw (PermissaoException) erro;
+        }
+        if (erro != null) {
+            throw (RuntimeException) erro;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return erro == null ? "ok" : erro.getClass().getSimpleName() + ": " + erro.getMessage();
+    }
+}
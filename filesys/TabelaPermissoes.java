@@ -0,0 +1,87 @@
+package filesys;
+
+import java.util.Arrays;
+
+// Permissões de um nó: máscara de bits (ver MotorPermissoes) por id de usuário.
+// Imutável, para que nós criados a partir do mesmo diretório compartilhem a mesma tabela;
+// alterações (chmod) produzem uma nova tabela.
+final class TabelaPermissoes {
+    static final TabelaPermissoes VAZIA = new TabelaPermissoes(new int[0], new byte[0]);
+
+    // ids de usuário em ordem crescente, paralelos a mascaras
+    private final int[] usuarios;
+    private final byte[] mascaras;
+
+    private TabelaPermissoes(int[] usuarios, byte[] mascaras) {
+        this.usuarios = usuarios;
+        this.mascaras = mascaras;
+    }
+
+    int mascara(int usuario) {
+        int i = Arrays.binarySearch(usuarios, usuario);
+        return i >= 0 ? mascaras[i] : 0;
+    }
+
+    boolean contem(int usuario) {
+        return Arrays.binarySearch(usuarios, usuario) >= 0;
+    }
+
+    TabelaPermissoes com(int usuario, int mascara) {
+        int i = Arrays.binarySearch(usuarios, usuario);
+        if (i >= 0) {
+            if (mascaras[i] == mascara) {
+                return this;
+            }
+            byte[] novasMascaras = mascaras.clone();
+            novasMascaras[i] = (byte) mascara;
+            return new TabelaPermissoes(usuarios, novasMascaras);
+        }
+        int pos = -i - 1;
+        int[] novosUsuarios = new int[usuarios.length + 1];
+        byte[] novasMascaras = new byte[mascaras.length + 1];
+        System.arraycopy(usuarios, 0, novosUsuarios, 0, pos);
+        System.arraycopy(mascaras, 0, novasMascaras, 0, pos);
+        novosUsuarios[pos] = usuario;
+        novasMascaras[pos] = (byte) mascara;
+        System.arraycopy(usuarios, pos, novosUsuarios, pos + 1, usuarios.length - pos);
+        System.arraycopy(mascaras, pos, novasMascaras, pos + 1, mascaras.length - pos);
+        return new TabelaPermissoes(novosUsuarios, novasMascaras);
+    }
+
+    // Entradas de 'outra' prevalecem sobre as desta tabela.
+    TabelaPermissoes sobrepor(TabelaPermissoes outra) {
+        TabelaPermissoes resultado = this;
+        for (int i = 0; i < outra.usuarios.length; i++) {
+            resultado = resultado.com(outra.usuarios[i], outra.mascaras[i]);
+        }
+        return resultado;
+    }
+
+    // Máscaras de 'a' com os bits de 'b' acrescentados, usuário a usuário; qualquer uma pode ser null
+    // (sem permissões), e o resultado é null se as duas forem.
+    static TabelaPermissoes somar(TabelaPermissoes a, TabelaPermissoes b) {
+        if (b == null) {
+            return a;
+        }
+        if (a == null) {
+            return b;
+        }
+        TabelaPermissoes resultado = a;
+        for (int i = 0; i < b.usuarios.length; i++) {
+            resultado = resultado.com(b.usuarios[i], resultado.mascara(b.usuarios[i]) | b.mascaras[i]);
+        }
+        return resultado;
+    }
+
+    int tamanho() {
+        return usuarios.length;
+    }
+
+    int usuario(int i) {
+        return usuarios[i];
+    }
+
+    int mascaraEm(int i) {
+        return mascaras[i];
+    }
+}
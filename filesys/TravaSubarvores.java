@@ -0,0 +1,181 @@
+package filesys;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Exclusão por subárvore entre as operações que alteram a árvore, no modo concorrente.
+//
+// Cada alteração se declara em andamento nos caminhos em que vai atuar (entrar) antes de
+// resolvê-los e deixa de estar depois de a alteração ficar visível (sair). Uma operação que
+// precisa parar a subárvore de um caminho (congelar) espera as alterações em andamento dentro
+// dela terminarem, e as que chegarem depois esperam por ela; alterações fora das subárvores
+// congeladas seguem sem esperar. Sem subárvores congeladas, entrar e sair custam uma inserção e
+// uma remoção em um conjunto concorrente e uma leitura volatile.
+//
+// Quem entra grava o conjunto e depois lê as congeladas; quem congela grava as congeladas e
+// depois lê o conjunto. Como as duas são operações volatile, ao menos um dos dois vê o outro.
+// As esperas são feitas no monitor do objeto, e ninguém espera com travas de nós tomadas.
+//
+// Uma vigia (vigiar) não barra nada: apenas anota se algum nó foi acrescentado ou teve as
+// permissões alteradas dentro da subárvore desde que ela foi criada (ver alterado).
+final class TravaSubarvores {
+    static final class Marca {
+        final String[] caminhos;
+        // de uma vigia: algum nó da subárvore foi acrescentado ou teve as permissões alteradas
+        volatile boolean alterada;
+
+        private Marca(String[] caminhos) {
+            this.caminhos = caminhos;
+        }
+
+        // true se 'caminho' é um dos caminhos da marca ou está abaixo de um deles
+        boolean cobre(String caminho) {
+            for (String c : caminhos) {
+                if (caminho.equals(c) || FileSystemImpl.estaDentro(caminho, c)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final Set<Marca> emAndamento = ConcurrentHashMap.newKeySet();
+    // Substituída por uma nova lista a cada alteração, sempre com o monitor
+    private volatile List<Marca> congeladas = List.of();
+    private final List<Marca> vigias = new CopyOnWriteArrayList<>();
+
+    // Declara uma alteração em andamento nos caminhos (já normalizados), esperando antes que
+    // nenhum deles esteja em uma subárvore congelada por outra operação.
+    Marca entrar(String... caminhos) {
+        Marca marca = new Marca(caminhos);
+        while (true) {
+            emAndamento.add(marca);
+            if (congeladas.isEmpty() || barradora(marca) == null) {
+                return marca;
+            }
+            remover(marca);
+            esperarLiberacao(marca);
+        }
+    }
+
+    // Como entrar, e depois congela as subárvores dos caminhos: espera as alterações em
+    // andamento dentro delas terminarem, e as seguintes esperam por sair(marca).
+    Marca congelar(String... caminhos) {
+        Marca marca = new Marca(caminhos);
+        while (true) {
+            emAndamento.add(marca);
+            synchronized (this) {
+                if (barradora(marca) == null) {
+                    List<Marca> novas = new ArrayList<>(congeladas);
+                    novas.add(marca);
+                    congeladas = novas;
+                    boolean interrompida = false;
+                    while (ocupada(marca)) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            interrompida = true;
+                        }
+                    }
+                    if (interrompida) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return marca;
+                }
+            }
+            remover(marca);
+            esperarLiberacao(marca);
+        }
+    }
+
+    // Encerra uma marca de entrar ou congelar
+    void sair(Marca marca) {
+        if (congeladas.contains(marca)) {
+            synchronized (this) {
+                List<Marca> novas = new ArrayList<>(congeladas);
+                novas.remove(marca);
+                congeladas = novas;
+                notifyAll();
+            }
+        }
+        remover(marca);
+    }
+
+    Marca vigiar(String caminho) {
+        Marca vigia = new Marca(new String[] { caminho });
+        vigias.add(vigia);
+        return vigia;
+    }
+
+    void esquecer(Marca vigia) {
+        vigias.remove(vigia);
+    }
+
+    // Chamado depois de um nó ser acrescentado em 'caminho' ou ter as permissões alteradas
+    void alterado(String caminho) {
+        for (Marca vigia : vigias) {
+            if (vigia.cobre(caminho)) {
+                vigia.alterada = true;
+            }
+        }
+    }
+
+    private void remover(Marca marca) {
+        emAndamento.remove(marca);
+        // alguém pode estar esperando em congelar por esta marca
+        if (!congeladas.isEmpty()) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private void esperarLiberacao(Marca marca) {
+        boolean interrompida = false;
+        synchronized (this) {
+            while (barradora(marca) != null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrompida = true;
+                }
+            }
+        }
+        if (interrompida) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Subárvore congelada por outra operação que contém um dos caminhos da marca, ou null
+    private Marca barradora(Marca marca) {
+        for (Marca congelada : congeladas) {
+            if (congelada == marca) {
+                continue;
+            }
+            for (String caminho : marca.caminhos) {
+                if (congelada.cobre(caminho)) {
+                    return congelada;
+                }
+            }
+        }
+        return null;
+    }
+
+    // true se outra alteração em andamento atua dentro de uma das subárvores da marca
+    private boolean ocupada(Marca marca) {
+        for (Marca outra : emAndamento) {
+            if (outra == marca) {
+                continue;
+            }
+            for (String caminho : outra.caminhos) {
+                if (marca.cobre(caminho)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
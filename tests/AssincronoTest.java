@@ -0,0 +1,137 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import exception.CaminhoJaExistenteException;
+import exception.CaminhoNaoEncontradoException;
+import filesys.FileSystem;
+import filesys.FileSystemAssincrono;
+import filesys.IFileSystem;
+import filesys.MotorPermissoes;
+
+// Essa classe testa a fachada assíncrona: ordem por caminho, exceções e paralelismo entre caminhos
+public class AssincronoTest {
+    private static final String ROOT_USER = "root";
+
+    @Test
+    public void testMesmoCaminhoMantemOrdem() throws Exception {
+        FileSystem fileSystem = new FileSystem(new MotorPermissoes(), true);
+        try (FileSystemAssincrono assincrono = new FileSystemAssincrono(fileSystem)) {
+            assincrono.touch("/f", ROOT_USER);
+            List<CompletableFuture<Void>> futuros = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futuros.add(assincrono.write("/f", ROOT_USER, true, new byte[] { (byte) i }));
+            }
+            byte[] lido = new byte[200];
+            // agendada depois das escritas, a leitura vê todas elas
+            assincrono.read("//f/", ROOT_USER, lido).get(10, TimeUnit.SECONDS);
+            for (CompletableFuture<Void> futuro : futuros) {
+                assertTrue(futuro.isDone());
+            }
+            byte[] esperado = new byte[200];
+            for (int i = 0; i < esperado.length; i++) {
+                esperado[i] = (byte) i;
+            }
+            assertArrayEquals(esperado, lido);
+        }
+    }
+
+    @Test
+    public void testExcecaoNaoInterrompeOsSeguintes() throws Exception {
+        FileSystem fileSystem = new FileSystem(new MotorPermissoes(), true);
+        try (FileSystemAssincrono assincrono = new FileSystemAssincrono(fileSystem)) {
+            CompletableFuture<Void> ausente = assincrono.read("/a", ROOT_USER, new byte[1]);
+            CompletableFuture<Void> mkdir = assincrono.mkdir("/a", ROOT_USER);
+            CompletableFuture<Void> repetido = assincrono.mkdir("/a", ROOT_USER);
+            CompletableFuture<Void> touch = assincrono.touch("/a/f", ROOT_USER);
+
+            ExecutionException erro = assertThrows(ExecutionException.class, () -> ausente.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(CaminhoNaoEncontradoException.class, erro.getCause());
+            mkdir.get(10, TimeUnit.SECONDS);
+            erro = assertThrows(ExecutionException.class, () -> repetido.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(CaminhoJaExistenteException.class, erro.getCause());
+            // caminhos diferentes não são ordenados: quem precisa de /a pronto encadeia no future
+            touch.handle((r, e) -> null).get(10, TimeUnit.SECONDS);
+            mkdir.thenCompose(r -> assincrono.touch("/a/g", ROOT_USER)).get(10, TimeUnit.SECONDS);
+            assincrono.read("/a/g", ROOT_USER, new byte[0]).get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testCaminhosDiferentesEmParalelo() throws Exception {
+        // cada touch espera o outro começar: só termina se os dois rodarem ao mesmo tempo
+        CountDownLatch iniciados = new CountDownLatch(2);
+        IFileSystem bloqueante = (IFileSystem) java.lang.reflect.Proxy.newProxyInstance(
+                IFileSystem.class.getClassLoader(), new Class<?>[] { IFileSystem.class }, (proxy, metodo, args) -> {
+                    iniciados.countDown();
+                    assertTrue(iniciados.await(10, TimeUnit.SECONDS));
+                    return null;
+                });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            FileSystemAssincrono assincrono = new FileSystemAssincrono(bloqueante, executor);
+            CompletableFuture<Void> a = assincrono.touch("/a", ROOT_USER);
+            CompletableFuture<Void> b = assincrono.touch("/b", ROOT_USER);
+            CompletableFuture.allOf(a, b).get(10, TimeUnit.SECONDS);
+            assincrono.close();
+            // close() não encerra um executor fornecido por quem chama
+            executor.submit(() -> null).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMvCruzadosNaoSeBloqueiam() throws Exception {
+        FileSystem fileSystem = new FileSystem(new MotorPermissoes(), true);
+        try (FileSystemAssincrono assincrono = new FileSystemAssincrono(fileSystem)) {
+            assincrono.touch("/a", ROOT_USER).get(10, TimeUnit.SECONDS);
+            List<CompletableFuture<Void>> futuros = new ArrayList<>();
+            Thread[] threads = new Thread[2];
+            for (int t = 0; t < threads.length; t++) {
+                String origem = t == 0 ? "/a" : "/b";
+                String destino = t == 0 ? "/b" : "/a";
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        CompletableFuture<Void> futuro = assincrono.mv(origem, destino, ROOT_USER);
+                        synchronized (futuros) {
+                            futuros.add(futuro);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            // cada mv termina (com sucesso ou com CaminhoNaoEncontradoException)
+            CompletableFuture.allOf(futuros.toArray(new CompletableFuture<?>[0]))
+                    .handle((r, e) -> null).get(10, TimeUnit.SECONDS);
+            int existentes = 0;
+            for (String caminho : new String[] { "/a", "/b" }) {
+                try {
+                    assincrono.read(caminho, ROOT_USER, new byte[0]).get(10, TimeUnit.SECONDS);
+                    existentes++;
+                } catch (ExecutionException e) {
+                    assertInstanceOf(CaminhoNaoEncontradoException.class, e.getCause());
+                }
+            }
+            assertEquals(1, existentes);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import filesys.EstatisticasDados;
+import filesys.FileSystemImpl;
+
+// Essa classe testa o armazenamento do conteúdo em blocos de tamanho fixo e o pool que
+// reaproveita os blocos liberados, inclusive quando os blocos são compartilhados por um cp.
+public class BlocosTest {
+    private static final String ROOT_USER = "root";
+    private static final int BLOCO = 8;
+
+    private FileSystemImpl fileSystem;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        fileSystem = new FileSystemImpl(64, BLOCO);
+        fileSystem.mkdir("/a", ROOT_USER);
+    }
+
+    private static byte[] aleatorios(int tamanho, long semente) {
+        byte[] dados = new byte[tamanho];
+        new Random(semente).nextBytes(dados);
+        return dados;
+    }
+
+    private byte[] ler(String caminho, int tamanho) throws Exception {
+        byte[] buffer = new byte[tamanho];
+        assertEquals(tamanho, fileSystem.read(caminho, ROOT_USER, 0, buffer, 0, tamanho));
+        return buffer;
+    }
+
+    private static byte[] juntar(byte[] a, byte[] b) {
+        byte[] junto = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, junto, a.length, b.length);
+        return junto;
+    }
+
+    @Test
+    public void testAnexoAtravessaLimiteDeBloco() throws Exception {
+        byte[] inicio = aleatorios(6, 1);
+        byte[] resto = aleatorios(13, 2);
+        fileSystem.write("/a/f", ROOT_USER, false, inicio);
+        // completa o primeiro bloco, enche o segundo e começa o terceiro
+        fileSystem.write("/a/f", ROOT_USER, true, resto);
+
+        byte[] esperado = juntar(inicio, resto);
+        assertArrayEquals(esperado, ler("/a/f", esperado.length));
+        // um trecho que começa no fim de um bloco e termina no seguinte
+        byte[] trecho = new byte[5];
+        assertEquals(5, fileSystem.read("/a/f", ROOT_USER, 5, trecho, 0, 5));
+        assertArrayEquals(Arrays.copyOfRange(esperado, 5, 10), trecho);
+        EstatisticasDados estatisticas = fileSystem.estatisticasDados();
+        assertEquals(19, estatisticas.getBytesLogicos());
+        assertEquals(19, estatisticas.getBytesFisicos());
+    }
+
+    @Test
+    public void testSobrescritaDevolveBlocosAoPool() throws Exception {
+        fileSystem.write("/a/f", ROOT_USER, false, aleatorios(5 * BLOCO, 1));
+        assertEquals(0, fileSystem.estatisticasDados().getBlocosLivres());
+
+        // os cinco blocos voltam ao pool e o novo conteúdo usa um deles
+        byte[] novo = aleatorios(BLOCO, 2);
+        fileSystem.write("/a/f", ROOT_USER, false, novo);
+        assertEquals(4, fileSystem.estatisticasDados().getBlocosLivres());
+        assertArrayEquals(novo, ler("/a/f", BLOCO));
+
+        // outro arquivo reaproveita os blocos livres, com o próprio conteúdo
+        byte[] outro = aleatorios(3 * BLOCO, 3);
+        fileSystem.write("/a/g", ROOT_USER, false, outro);
+        assertEquals(1, fileSystem.estatisticasDados().getBlocosLivres());
+        assertArrayEquals(outro, ler("/a/g", outro.length));
+        assertArrayEquals(novo, ler("/a/f", BLOCO));
+
+        fileSystem.rm("/a/g", ROOT_USER, false);
+        assertEquals(4, fileSystem.estatisticasDados().getBlocosLivres());
+    }
+
+    @Test
+    public void testCpCompartilhaBlocosECopiaOAlterado() throws Exception {
+        byte[] conteudo = aleatorios(2 * BLOCO + 4, 1);
+        fileSystem.write("/a/f", ROOT_USER, false, conteudo);
+        fileSystem.cp("/a", "/b", ROOT_USER, true);
+
+        EstatisticasDados estatisticas = fileSystem.estatisticasDados();
+        assertEquals(2 * conteudo.length, estatisticas.getBytesLogicos());
+        assertEquals(conteudo.length, estatisticas.getBytesFisicos());
+
+        // só o último bloco, que recebe o anexo, é copiado; os outros continuam compartilhados
+        byte[] anexo = aleatorios(2, 2);
+        fileSystem.write("/b/f", ROOT_USER, true, anexo);
+        estatisticas = fileSystem.estatisticasDados();
+        assertEquals(conteudo.length + 4 + anexo.length, estatisticas.getBytesFisicos());
+        assertEquals(0, estatisticas.getBlocosLivres());
+        assertArrayEquals(conteudo, ler("/a/f", conteudo.length));
+        assertArrayEquals(juntar(conteudo, anexo), ler("/b/f", conteudo.length + anexo.length));
+
+        // sobrescrever a origem só devolve ao pool o bloco que a cópia não usa mais
+        fileSystem.write("/a/f", ROOT_USER, false, new byte[0]);
+        assertEquals(1, fileSystem.estatisticasDados().getBlocosLivres());
+        assertArrayEquals(juntar(conteudo, anexo), ler("/b/f", conteudo.length + anexo.length));
+
+        fileSystem.rm("/b", ROOT_USER, true);
+        assertEquals(4, fileSystem.estatisticasDados().getBlocosLivres());
+    }
+}
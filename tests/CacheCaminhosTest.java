@@ -0,0 +1,129 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import exception.CaminhoNaoEncontradoException;
+import filesys.FileSystemImpl;
+
+// Essa classe testa o cache de resolução de caminhos e sua invalidação
+public class CacheCaminhosTest {
+    private static final String ROOT_USER = "root";
+
+    private FileSystemImpl fileSystem;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        fileSystem = new FileSystemImpl(8);
+        fileSystem.mkdir("/a/b/c/d", ROOT_USER);
+        fileSystem.write("/a/b/c/d/e", ROOT_USER, false, "conteudo".getBytes());
+    }
+
+    @Test
+    public void testResolucaoRepetidaAcertaNoCache() throws Exception {
+        byte[] buffer = new byte[8];
+        fileSystem.read("/a/b/c/d/e", ROOT_USER, buffer);
+        long acertos = fileSystem.getAcertosCache();
+        long falhas = fileSystem.getFalhasCache();
+
+        fileSystem.read("/a/b/c/d/e", ROOT_USER, buffer);
+
+        assertEquals(acertos + 1, fileSystem.getAcertosCache());
+        assertEquals(falhas, fileSystem.getFalhasCache());
+        assertArrayEquals("conteudo".getBytes(), buffer);
+    }
+
+    @Test
+    public void testMvInvalidaSubarvore() throws Exception {
+        fileSystem.mv("/a/b", "/x", ROOT_USER);
+
+        assertThrows(CaminhoNaoEncontradoException.class,
+                () -> fileSystem.read("/a/b/c/d/e", ROOT_USER, new byte[8]));
+        byte[] buffer = new byte[8];
+        fileSystem.read("/x/c/d/e", ROOT_USER, buffer);
+        assertArrayEquals("conteudo".getBytes(), buffer);
+    }
+
+    @Test
+    public void testRmInvalidaSubarvore() throws Exception {
+        fileSystem.rm("/a/b", ROOT_USER, true);
+
+        assertThrows(CaminhoNaoEncontradoException.class,
+                () -> fileSystem.read("/a/b/c/d/e", ROOT_USER, new byte[8]));
+    }
+
+    @Test
+    public void testCpSobrescreveDestinoEmCache() throws Exception {
+        fileSystem.mkdir("/z/c/d", ROOT_USER);
+        fileSystem.write("/z/c/d/e", ROOT_USER, false, "antigo!!".getBytes());
+        fileSystem.read("/z/c/d/e", ROOT_USER, new byte[8]);
+
+        fileSystem.cp("/a/b", "/z", ROOT_USER, true);
+
+        byte[] buffer = new byte[8];
+        fileSystem.read("/z/c/d/e", ROOT_USER, buffer);
+        assertArrayEquals("conteudo".getBytes(), buffer);
+        // A cópia é independente da origem
+        fileSystem.write("/z/c/d/e", ROOT_USER, false, "alterado".getBytes());
+        fileSystem.read("/a/b/c/d/e", ROOT_USER, buffer);
+        assertArrayEquals("conteudo".getBytes(), buffer);
+    }
+
+    @Test
+    public void testCapacidadeLimitada() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            fileSystem.touch("/a/f" + i, ROOT_USER);
+        }
+        for (int i = 0; i < 100; i++) {
+            fileSystem.read("/a/f" + i, ROOT_USER, new byte[0]);
+        }
+        assertTrue(fileSystem.getFalhasCache() > 0);
+    }
+
+    @Test
+    public void testInvalidacaoNaoAlcancaIrmaoComMesmoPrefixo() throws Exception {
+        fileSystem.touch("/a/bc", ROOT_USER);
+        fileSystem.read("/a/bc", ROOT_USER, new byte[0]);
+
+        fileSystem.mv("/a/b", "/x", ROOT_USER);
+        long falhas = fileSystem.getFalhasCache();
+        fileSystem.read("/a/bc", ROOT_USER, new byte[0]);
+
+        assertEquals(falhas, fileSystem.getFalhasCache());
+    }
+
+    @Test
+    public void testAlteracoesComNosCompartilhadosUsamCache() throws Exception {
+        fileSystem.cp("/a/b", "/z", ROOT_USER, true);
+        fileSystem.write("/a/b/c/d/e", ROOT_USER, false, "primeiro".getBytes());
+        long falhas = fileSystem.getFalhasCache();
+
+        fileSystem.write("/a/b/c/d/e", ROOT_USER, false, "segundo!".getBytes());
+
+        assertEquals(falhas, fileSystem.getFalhasCache());
+        byte[] buffer = new byte[8];
+        fileSystem.read("/z/c/d/e", ROOT_USER, buffer);
+        assertArrayEquals("conteudo".getBytes(), buffer);
+    }
+
+    @Test
+    public void testCopiaRevogaCaminhoExclusivoEmCache() throws Exception {
+        fileSystem.cp("/a/b", "/z", ROOT_USER, true);
+        // o caminho fica no cache como exclusivo
+        fileSystem.write("/a/b/c/d/e", ROOT_USER, false, "primeiro".getBytes());
+
+        fileSystem.cp("/a", "/w", ROOT_USER, true);
+        fileSystem.write("/a/b/c/d/e", ROOT_USER, false, "segundo!".getBytes());
+
+        byte[] buffer = new byte[8];
+        fileSystem.read("/w/b/c/d/e", ROOT_USER, buffer);
+        assertArrayEquals("primeiro".getBytes(), buffer);
+        fileSystem.read("/a/b/c/d/e", ROOT_USER, buffer);
+        assertArrayEquals("segundo!".getBytes(), buffer);
+    }
+}
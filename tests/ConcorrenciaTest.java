@@ -0,0 +1,286 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.Test;
+
+import exception.CaminhoJaExistenteException;
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+import filesys.FileSystemImpl;
+import filesys.LeitorArquivo;
+import filesys.MotorPermissoes;
+
+// Essa classe testa o modo concorrente: várias threads executam operações aleatórias
+// sobre um conjunto pequeno de caminhos e, ao final, os invariantes da árvore são verificados.
+public class ConcorrenciaTest {
+    private static final String ROOT_USER = "root";
+    private static final int THREADS = 8;
+    private static final int OPERACOES_POR_THREAD = 20_000;
+    private static final int TAMANHO_REGISTRO = 8;
+    private static final String[] NOMES = { "d0", "d1", "d2", "s0", "s1", "f0", "f1", "f2" };
+
+    @Test
+    public void testOperacoesAleatoriasConcorrentes() throws Exception {
+        // Cache e blocos pequenos para exercitar descarte e blocos compartilhados
+        FileSystemImpl fileSystem = new FileSystemImpl(new MotorPermissoes(), 64, 16, true);
+        List<String> caminhos = universo();
+        ConcurrentLinkedQueue<Throwable> erros = new ConcurrentLinkedQueue<>();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(120), () -> {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                long semente = t;
+                Thread thread = new Thread(() -> executar(fileSystem, caminhos, new Random(semente), erros));
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }, "possível deadlock");
+
+        if (!erros.isEmpty()) {
+            erros.peek().printStackTrace();
+            fail("Exceção inesperada: " + erros.peek());
+        }
+
+        Set<String> diretorios = new HashSet<>();
+        Set<String> arquivos = new HashSet<>();
+        listarRecursivo(fileSystem, diretorios, arquivos);
+
+        for (String arquivo : arquivos) {
+            verificarRegistros(fileSystem, arquivo);
+        }
+        for (String diretorio : diretorios) {
+            // Listar cada diretório diretamente deve passar pelo cache sem erro
+            listar(fileSystem, diretorio, false);
+        }
+        // Nenhum caminho removido ou movido pode continuar resolvendo pelo cache
+        for (String caminho : caminhos) {
+            if (!diretorios.contains(caminho) && !arquivos.contains(caminho)) {
+                assertThrows(CaminhoNaoEncontradoException.class, () -> listar(fileSystem, caminho, false), caminho);
+            }
+        }
+    }
+
+    @Test
+    public void testAlteracoesEmDiretorioRemovido() throws Exception {
+        // Operações que resolvem /d antes de um rm -r /d e só depois travam o diretório não podem
+        // alterar o diretório removido: elas resolvem o caminho de novo ou falham
+        FileSystemImpl fileSystem = new FileSystemImpl(new MotorPermissoes(), 64, 16, true);
+        ConcurrentLinkedQueue<Throwable> erros = new ConcurrentLinkedQueue<>();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                long semente = t;
+                threads.add(new Thread(() -> alterarSobD(fileSystem, new Random(semente), erros)));
+            }
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 2_000 && erros.isEmpty(); i++) {
+                    try {
+                        fileSystem.rm("/d", ROOT_USER, true);
+                    } catch (CaminhoNaoEncontradoException e) {
+                        // ainda não recriado
+                    } catch (Throwable e) {
+                        erros.add(e);
+                    }
+                }
+            }));
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }, "possível deadlock");
+
+        if (!erros.isEmpty()) {
+            erros.peek().printStackTrace();
+            fail("Exceção inesperada: " + erros.peek());
+        }
+        Set<String> diretorios = new HashSet<>();
+        Set<String> arquivos = new HashSet<>();
+        listarRecursivo(fileSystem, diretorios, arquivos);
+        for (String arquivo : arquivos) {
+            verificarRegistros(fileSystem, arquivo);
+        }
+        if (diretorios.contains("/d")) {
+            fileSystem.rm("/d", ROOT_USER, true);
+        }
+        assertEquals(0, fileSystem.estatisticasDados().getBytesLogicos());
+    }
+
+    @Test
+    public void testErrosSaoExcecoesDeclaradas() throws Exception {
+        // pai inexistente e diretório com filhos saem pelas exceções de IFileSystem, não como
+        // IllegalArgumentException
+        FileSystemImpl fileSystem = new FileSystemImpl(new MotorPermissoes(), 64, 16, true);
+        fileSystem.mkdir("/d/e", ROOT_USER);
+        assertThrows(CaminhoNaoEncontradoException.class, () -> fileSystem.touch("/nada/f", ROOT_USER));
+        assertThrows(CaminhoNaoEncontradoException.class, () -> fileSystem.touch("/d/e/nada/f", ROOT_USER));
+        assertThrows(PermissaoException.class, () -> fileSystem.rm("/d", ROOT_USER, false));
+        assertEquals("/d:\ne/\n\n/d/e:\n", listar(fileSystem, "/d", true));
+        fileSystem.rm("/d/e", ROOT_USER, false);
+        fileSystem.rm("/d", ROOT_USER, false);
+    }
+
+    private static void alterarSobD(FileSystemImpl fileSystem, Random random, ConcurrentLinkedQueue<Throwable> erros) {
+        for (int i = 0; i < 4_000; i++) {
+            String caminho = "/d/" + NOMES[random.nextInt(3)] + "/" + NOMES[5 + random.nextInt(3)];
+            try {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        // "mkdir -p": cria /d e o diretório intermediário se preciso
+                        fileSystem.mkdir(caminho + "x", ROOT_USER);
+                        break;
+                    case 1:
+                        fileSystem.touch(caminho, ROOT_USER);
+                        break;
+                    case 2:
+                        fileSystem.mv(caminho, caminho + "m", ROOT_USER);
+                        break;
+                    default:
+                        byte[] buffer = new byte[TAMANHO_REGISTRO];
+                        java.util.Arrays.fill(buffer, (byte) i);
+                        fileSystem.write(caminho, ROOT_USER, true, buffer);
+                        break;
+                }
+            } catch (CaminhoNaoEncontradoException | CaminhoJaExistenteException | IllegalArgumentException e) {
+                // /d ou o diretório intermediário removidos no meio do caminho
+            } catch (Throwable e) {
+                erros.add(e);
+                return;
+            }
+        }
+    }
+
+    private static void executar(FileSystemImpl fileSystem, List<String> caminhos, Random random,
+            ConcurrentLinkedQueue<Throwable> erros) {
+        byte[] registro = new byte[TAMANHO_REGISTRO];
+        for (int i = 0; i < OPERACOES_POR_THREAD; i++) {
+            String caminho = caminhos.get(random.nextInt(caminhos.size()));
+            String outro = caminhos.get(random.nextInt(caminhos.size()));
+            try {
+                switch (random.nextInt(9)) {
+                    case 0:
+                        fileSystem.mkdir(caminho, ROOT_USER);
+                        break;
+                    case 1:
+                        fileSystem.touch(caminho, ROOT_USER);
+                        break;
+                    case 2:
+                    case 3:
+                        // Cada escrita contém registros completos com um único valor
+                        byte valor = (byte) random.nextInt(128);
+                        byte[] buffer = new byte[TAMANHO_REGISTRO * (1 + random.nextInt(4))];
+                        java.util.Arrays.fill(buffer, valor);
+                        fileSystem.write(caminho, ROOT_USER, random.nextBoolean(), buffer);
+                        break;
+                    case 4:
+                        fileSystem.read(caminho, ROOT_USER, registro);
+                        break;
+                    case 5:
+                        fileSystem.mv(caminho, outro, ROOT_USER);
+                        break;
+                    case 6:
+                        fileSystem.rm(caminho, ROOT_USER, random.nextBoolean());
+                        break;
+                    case 7:
+                        fileSystem.cp(caminho, outro, ROOT_USER, true);
+                        break;
+                    default:
+                        fileSystem.chmod(caminho, ROOT_USER, "maria", random.nextBoolean() ? "rw-" : "r--");
+                        break;
+                }
+            } catch (CaminhoNaoEncontradoException | CaminhoJaExistenteException | PermissaoException
+                    | IllegalArgumentException e) {
+                // Resultados esperados de operações aleatórias (rm não recursivo de um diretório com filhos, inclusive)
+            } catch (Throwable e) {
+                erros.add(e);
+                return;
+            }
+        }
+    }
+
+    // Todos os caminhos de profundidade até 3 formados com NOMES
+    private static List<String> universo() {
+        List<String> caminhos = new ArrayList<>();
+        List<String> nivel = List.of("");
+        for (int profundidade = 0; profundidade < 3; profundidade++) {
+            List<String> proximo = new ArrayList<>();
+            for (String prefixo : nivel) {
+                for (String nome : NOMES) {
+                    proximo.add(prefixo + "/" + nome);
+                }
+            }
+            caminhos.addAll(proximo);
+            nivel = proximo;
+        }
+        return caminhos;
+    }
+
+    private static void verificarRegistros(FileSystemImpl fileSystem, String arquivo) throws Exception {
+        ByteArrayOutputStream conteudo = new ByteArrayOutputStream();
+        try (LeitorArquivo leitor = fileSystem.abrirLeitura(arquivo, ROOT_USER)) {
+            leitor.transferTo(conteudo);
+        }
+        byte[] dados = conteudo.toByteArray();
+        assertEquals(0, dados.length % TAMANHO_REGISTRO, "registro incompleto em " + arquivo);
+        for (int i = 0; i < dados.length; i += TAMANHO_REGISTRO) {
+            for (int j = 1; j < TAMANHO_REGISTRO; j++) {
+                assertEquals(dados[i], dados[i + j], "escrita intercalada em " + arquivo);
+            }
+        }
+    }
+
+    // Interpreta a saída do ls recursivo ("caminho:" seguido de um nome por linha)
+    private static void listarRecursivo(FileSystemImpl fileSystem, Set<String> diretorios, Set<String> arquivos)
+            throws Exception {
+        String atual = null;
+        for (String linha : listar(fileSystem, "/", true).split("\n")) {
+            if (linha.isEmpty()) {
+                continue;
+            }
+            if (linha.endsWith(":")) {
+                atual = linha.substring(0, linha.length() - 1);
+                assertTrue(atual.equals("/") || diretorios.contains(atual), "diretório não listado pelo pai: " + atual);
+                continue;
+            }
+            String base = atual.equals("/") ? "" : atual;
+            if (linha.endsWith("/")) {
+                assertTrue(diretorios.add(base + "/" + linha.substring(0, linha.length() - 1)), "nó repetido");
+            } else {
+                assertTrue(arquivos.add(base + "/" + linha), "nó repetido");
+            }
+        }
+    }
+
+    private static String listar(FileSystemImpl fileSystem, String caminho, boolean recursivo) throws Exception {
+        PrintStream original = System.out;
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(saida, true, StandardCharsets.UTF_8));
+        try {
+            fileSystem.ls(caminho, ROOT_USER, recursivo);
+        } finally {
+            System.setOut(original);
+        }
+        return saida.toString(StandardCharsets.UTF_8);
+    }
+}
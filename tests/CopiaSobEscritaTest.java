@@ -0,0 +1,347 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+import filesys.FileSystemImpl;
+import filesys.LeitorArquivo;
+import filesys.MotorPermissoes;
+import filesys.Operacao;
+import filesys.PaginaListagem;
+
+// Essa classe testa a cópia sob escrita do cp recursivo: alterações em um lado
+// não podem aparecer no outro, qualquer que seja o lado alterado.
+public class CopiaSobEscritaTest {
+    private static final String ROOT_USER = "root";
+
+    private FileSystemImpl fileSystem;
+
+    @TempDir
+    Path diretorio;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("maria", "/**", "r--");
+        fileSystem = new FileSystemImpl(motor, 64, 4);
+        fileSystem.mkdir("/origem/a/b", ROOT_USER);
+        fileSystem.write("/origem/a/b/arquivo", ROOT_USER, false, "original".getBytes());
+        fileSystem.cp("/origem", "/copia", ROOT_USER, true);
+    }
+
+    @Test
+    public void testWriteNaCopiaNaoAlteraOrigem() throws Exception {
+        fileSystem.write("/copia/a/b/arquivo", ROOT_USER, true, "+copia".getBytes());
+        assertEquals("original", ler("/origem/a/b/arquivo"));
+        assertEquals("original+copia", ler("/copia/a/b/arquivo"));
+    }
+
+    @Test
+    public void testWriteNaOrigemNaoAlteraCopia() throws Exception {
+        // Resolve pela cópia antes, para que o cache tenha entradas dos dois lados
+        ler("/copia/a/b/arquivo");
+        fileSystem.write("/origem/a/b/arquivo", ROOT_USER, false, "novo".getBytes());
+        assertEquals("novo", ler("/origem/a/b/arquivo"));
+        assertEquals("original", ler("/copia/a/b/arquivo"));
+    }
+
+    @Test
+    public void testCriacaoERemocaoSaoIndependentes() throws Exception {
+        fileSystem.touch("/copia/a/b/novo", ROOT_USER);
+        fileSystem.mkdir("/origem/a/c", ROOT_USER);
+        fileSystem.rm("/origem/a/b", ROOT_USER, true);
+
+        assertThrows(CaminhoNaoEncontradoException.class, () -> ler("/origem/a/b/arquivo"));
+        assertThrows(CaminhoNaoEncontradoException.class, () -> fileSystem.ls("/copia/a/c", ROOT_USER, false));
+        assertEquals("original", ler("/copia/a/b/arquivo"));
+        assertEquals("", ler("/copia/a/b/novo"));
+    }
+
+    @Test
+    public void testChmodNaCopiaNaoAlteraOrigem() throws Exception {
+        fileSystem.chmod("/copia/a/b/arquivo", ROOT_USER, "maria", "---");
+        assertThrows(PermissaoException.class, () -> fileSystem.read("/copia/a/b/arquivo", "maria", new byte[8]));
+        fileSystem.read("/origem/a/b/arquivo", "maria", new byte[8]);
+    }
+
+    @Test
+    public void testCopiaDeCopia() throws Exception {
+        fileSystem.cp("/copia/a", "/outra", ROOT_USER, true);
+        fileSystem.write("/copia/a/b/arquivo", ROOT_USER, false, "copia".getBytes());
+        fileSystem.rm("/origem", ROOT_USER, true);
+        assertEquals("original", ler("/outra/b/arquivo"));
+        assertEquals("copia", ler("/copia/a/b/arquivo"));
+    }
+
+    @Test
+    public void testDadosDaOrigemContinuamLegiveis() throws Exception {
+        byte[] buffer = new byte[8];
+        fileSystem.read("/copia/a/b/arquivo", ROOT_USER, buffer);
+        assertArrayEquals("original".getBytes(), buffer);
+    }
+
+    @Test
+    public void testQuemCopiaPodeAlterarACopia() throws Exception {
+        // maria só pode ler a origem, mas a cópia é dela em todos os níveis, inclusive nos nós
+        // ainda compartilhados com a origem
+        FileSystemImpl fs = new FileSystemImpl(motorCopiadora(), 64, 4);
+        criarOrigem(fs);
+        fs.cp("/origem", "/maria/copia", "maria", true);
+
+        fs.write("/maria/copia/a/b/arquivo", "maria", true, "+maria".getBytes());
+        fs.touch("/maria/copia/a/novo", "maria");
+        fs.chmod("/maria/copia/a/b", "maria", "joao", "r--");
+        assertEquals("original+maria", lerDe(fs, "/maria/copia/a/b/arquivo"));
+        assertThrows(PermissaoException.class, () -> fs.write("/origem/a/b/arquivo", "maria", true, "x".getBytes()));
+        fs.rm("/maria/copia", "maria", true);
+
+        assertEquals("original", lerDe(fs, "/origem/a/b/arquivo"));
+        assertThrows(PermissaoException.class, () -> fs.rm("/origem/a", "maria", true));
+    }
+
+    @Test
+    public void testListagemMostraPermissoesDeQuemCopia() throws Exception {
+        // abaixo do topo da cópia, as permissões de maria ainda estão pendentes nos diretórios
+        // compartilhados, e a listagem deve somá-las como as demais operações
+        FileSystemImpl fs = new FileSystemImpl(motorCopiadora(), 64, 4);
+        criarOrigem(fs);
+        fs.cp("/origem", "/maria/copia", "maria", true);
+
+        List<String> entradas = new ArrayList<>();
+        fs.listar("/maria/copia", "maria", true).forEachRemaining(e -> entradas.add(e.getPermissoes() + " " + e.getCaminho()));
+        assertEquals(List.of("rwx /maria/copia/a", "rwx /maria/copia/a/b", "rwx /maria/copia/a/b/arquivo"), entradas);
+
+        // retomando a listagem no meio da subárvore compartilhada
+        PaginaListagem pagina = fs.listar("/maria/copia", "maria", true, 2, null);
+        assertEquals("/maria/copia/a/b", pagina.getContinuacao());
+        pagina = fs.listar("/maria/copia", "maria", true, 2, pagina.getContinuacao());
+        assertEquals("rwx", pagina.getEntradas().get(0).getPermissoes());
+        assertEquals("rwx", fs.listar("/maria/copia/a/b/arquivo", "maria", false).next().getPermissoes());
+        assertEquals("r--", fs.listar("/origem/a/b/arquivo", "maria", false).next().getPermissoes());
+    }
+
+    @Test
+    public void testPermissoesDaCopiaSeguemSubarvoreMovida() throws Exception {
+        FileSystemImpl fs = new FileSystemImpl(motorCopiadora(), 64, 4);
+        criarOrigem(fs);
+        fs.cp("/origem", "/maria/copia", "maria", true);
+        // a subárvore sai da cópia ainda compartilhada, e a origem deixa de compartilhá-la
+        fs.mv("/maria/copia/a", "/maria/a", "maria");
+        fs.rm("/origem", ROOT_USER, true);
+
+        fs.write("/maria/a/b/arquivo", "maria", false, "movido".getBytes());
+        assertEquals("movido", lerDe(fs, "/maria/a/b/arquivo"));
+        fs.rm("/maria/a", "maria", true);
+    }
+
+    @Test
+    public void testPermissoesDaCopiaSobrevivemAoReinicio() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        try (FileSystemImpl fs = new FileSystemImpl(motorCopiadora(), 64, 4, false, imagem, null)) {
+            criarOrigem(fs);
+            fs.cp("/origem", "/maria/copia", "maria", true);
+        }
+        try (FileSystemImpl fs = new FileSystemImpl(motorCopiadora(), 64, 4, false, imagem, null)) {
+            fs.write("/maria/copia/a/b/arquivo", "maria", true, "+maria".getBytes());
+            assertEquals("original+maria", lerDe(fs, "/maria/copia/a/b/arquivo"));
+            assertEquals("original", lerDe(fs, "/origem/a/b/arquivo"));
+            assertThrows(PermissaoException.class, () -> fs.write("/origem/a/b/arquivo", "maria", true, "x".getBytes()));
+        }
+    }
+
+    @Test
+    public void testCopiaNaoMudaDepoisDoCp() throws Exception {
+        // Um write que resolveu o arquivo antes do cp compartilhar um ancestral dele não pode
+        // terminar depois do cp no nó compartilhado: a cópia mudaria sem ninguém escrever nela.
+        FileSystemImpl concorrente = new FileSystemImpl(new MotorPermissoes(), 64, 4, true);
+        int arquivos = 8;
+        concorrente.mkdir("/origem/a", ROOT_USER);
+        for (int i = 0; i < arquivos; i++) {
+            concorrente.write("/origem/a/f" + i, ROOT_USER, false, new byte[0]);
+        }
+        ConcurrentLinkedQueue<Throwable> erros = new ConcurrentLinkedQueue<>();
+        AtomicBoolean parar = new AtomicBoolean();
+        List<Thread> escritoras = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            int inicio = t;
+            Thread escritora = new Thread(() -> {
+                try {
+                    // acrescenta um byte por vez e volta a zero de tempos em tempos, para que os
+                    // arquivos fiquem em um bloco e cada write custe o mesmo durante todo o teste
+                    for (int i = inicio; !parar.get(); i++) {
+                        boolean anexar = i / arquivos % 16 != 0;
+                        concorrente.write("/origem/a/f" + (i % arquivos), ROOT_USER, anexar, new byte[anexar ? 1 : 0]);
+                    }
+                } catch (Throwable e) {
+                    erros.add(e);
+                }
+            });
+            escritoras.add(escritora);
+            escritora.start();
+        }
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+                for (int i = 0; i < 1_000 && erros.isEmpty(); i++) {
+                    concorrente.cp("/origem", "/copia", ROOT_USER, true);
+                    long antes = tamanhoTotal(concorrente, "/copia/a", arquivos);
+                    Thread.yield();
+                    long depois = tamanhoTotal(concorrente, "/copia/a", arquivos);
+                    assertEquals(antes, depois, "cópia alterada depois do cp, na iteração " + i);
+                    concorrente.rm("/copia", ROOT_USER, true);
+                }
+            }, "possível deadlock");
+        } finally {
+            parar.set(true);
+            for (Thread escritora : escritoras) {
+                escritora.join();
+            }
+        }
+        if (!erros.isEmpty()) {
+            erros.peek().printStackTrace();
+            fail("Exceção inesperada: " + erros.peek());
+        }
+    }
+
+    @Test
+    public void testCpRecursivoNaoEsperaAlteracoesForaDaOrigem() throws Exception {
+        // Um lote longo em /lote fica alterando a árvore enquanto maria copia /origem: o cp -r só
+        // para a subárvore copiada e termina antes do lote
+        FileSystemImpl concorrente = new FileSystemImpl(motorCopiadora(), 64, 4, true);
+        criarOrigem(concorrente);
+        concorrente.mkdir("/lote", ROOT_USER);
+        List<Operacao> operacoes = new ArrayList<>();
+        // o grupo de /sinal termina antes de o de /lote começar
+        operacoes.add(Operacao.touch("/sinal", ROOT_USER));
+        for (int i = 0; i < 300_000; i++) {
+            operacoes.add(Operacao.touch("/lote/f" + i, ROOT_USER));
+        }
+        ConcurrentLinkedQueue<Throwable> erros = new ConcurrentLinkedQueue<>();
+        Thread lote = new Thread(() -> {
+            try {
+                concorrente.submeter(operacoes);
+            } catch (Throwable e) {
+                erros.add(e);
+            }
+        });
+        lote.start();
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            while (true) {
+                try {
+                    concorrente.listar("/sinal", ROOT_USER, false);
+                    break;
+                } catch (CaminhoNaoEncontradoException e) {
+                    Thread.onSpinWait();
+                }
+            }
+            concorrente.cp("/origem", "/maria/copia", "maria", true);
+            assertTrue(lote.isAlive(), "o cp -r esperou o lote");
+            lote.join();
+        }, "possível deadlock");
+        if (!erros.isEmpty()) {
+            erros.peek().printStackTrace();
+            fail("Exceção inesperada: " + erros.peek());
+        }
+        assertEquals("original", lerDe(concorrente, "/maria/copia/a/b/arquivo"));
+    }
+
+    private static long tamanhoTotal(FileSystemImpl fileSystem, String diretorio, int arquivos) throws Exception {
+        long total = 0;
+        for (int i = 0; i < arquivos; i++) {
+            LeitorArquivo leitor = fileSystem.abrirLeitura(diretorio + "/f" + i, ROOT_USER);
+            total += leitor.tamanho();
+            leitor.close();
+        }
+        return total;
+    }
+
+    // maria lê tudo e só escreve em /maria
+    private static MotorPermissoes motorCopiadora() {
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("maria", "/**", "r--");
+        motor.adicionarRegra("maria", "/maria", "rwx");
+        return motor;
+    }
+
+    private static void criarOrigem(FileSystemImpl fs) throws Exception {
+        fs.mkdir("/maria", ROOT_USER);
+        fs.mkdir("/origem/a/b", ROOT_USER);
+        fs.write("/origem/a/b/arquivo", ROOT_USER, false, "original".getBytes());
+    }
+
+    @Test
+    public void testRmConcorrenteDuranteDescompartilhamento() throws Exception {
+        // Um rm do filho compartilhado entre a sua leitura e a trava do pai não pode quebrar a
+        // resolução de quem altera abaixo dele: o write dá certo ou não encontra o caminho.
+        // O rm de maria verifica a permissão de toda a subárvore com o pai travado, o que abre
+        // tempo para o write ler o filho ainda presente e esperar pela trava do pai.
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("maria", "/**", "rwx");
+        FileSystemImpl concorrente = new FileSystemImpl(motor, 64, 4, true);
+        concorrente.mkdir("/origem/a/b", ROOT_USER);
+        concorrente.mkdir("/origem/a/muitos", ROOT_USER);
+        for (int i = 0; i < 20_000; i++) {
+            concorrente.touch("/origem/a/muitos/f" + i, ROOT_USER);
+        }
+        concorrente.write("/origem/a/b/arquivo", ROOT_USER, false, "original".getBytes());
+        ConcurrentLinkedQueue<Throwable> erros = new ConcurrentLinkedQueue<>();
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            for (int i = 0; i < 20 && erros.isEmpty(); i++) {
+                concorrente.cp("/origem", "/copia", ROOT_USER, true);
+                CountDownLatch removendo = new CountDownLatch(1);
+                Thread removedora = new Thread(() -> {
+                    try {
+                        removendo.countDown();
+                        concorrente.rm("/copia/a", "maria", true);
+                    } catch (Throwable e) {
+                        erros.add(e);
+                    }
+                });
+                removedora.start();
+                removendo.await();
+                Thread.sleep(1);
+                try {
+                    concorrente.write("/copia/a/b/arquivo", ROOT_USER, true, "+".getBytes());
+                } catch (CaminhoNaoEncontradoException e) {
+                    // o rm terminou antes
+                } catch (Throwable e) {
+                    erros.add(e);
+                }
+                removedora.join();
+                concorrente.rm("/copia", ROOT_USER, true);
+            }
+        }, "possível deadlock");
+        if (!erros.isEmpty()) {
+            erros.peek().printStackTrace();
+            fail("Exceção inesperada: " + erros.peek());
+        }
+        assertEquals("original", lerDe(concorrente, "/origem/a/b/arquivo"));
+    }
+
+    private String ler(String caminho) throws Exception {
+        return lerDe(fileSystem, caminho);
+    }
+
+    private static String lerDe(FileSystemImpl fileSystem, String caminho) throws Exception {
+        byte[] buffer = new byte[64];
+        int lidos = fileSystem.read(caminho, ROOT_USER, 0, buffer, 0, buffer.length);
+        return lidos < 0 ? "" : new String(buffer, 0, lidos);
+    }
+}
@@ -0,0 +1,160 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import filesys.EstatisticasDados;
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+
+// Essa classe testa a deduplicação de blocos: conteúdo idêntico ocupa um único bloco,
+// alterar um arquivo não altera os outros e rm libera o bloco quando não há mais referências.
+public class DeduplicacaoTest {
+    private static final String ROOT_USER = "root";
+    private static final int BLOCO = 16;
+
+    private FileSystemImpl fileSystem;
+
+    @BeforeEach
+    public void setUp() {
+        fileSystem = new FileSystemImpl(new MotorPermissoes(), 64, BLOCO, false, true);
+    }
+
+    private String ler(String caminho) throws Exception {
+        byte[] buffer = new byte[256];
+        int n = fileSystem.read(caminho, ROOT_USER, 0, buffer, 0, buffer.length);
+        return n < 0 ? "" : new String(buffer, 0, n);
+    }
+
+    @Test
+    public void testConteudoIgualOcupaUmaVez() throws Exception {
+        // 2 blocos cheios e um incompleto
+        byte[] conteudo = "modelo de arquivo repetido, 40 bytes...".getBytes();
+        for (int i = 0; i < 10; i++) {
+            fileSystem.write("/f" + i, ROOT_USER, false, conteudo);
+        }
+        EstatisticasDados estatisticas = fileSystem.estatisticasDados();
+        assertEquals(10L * conteudo.length, estatisticas.getBytesLogicos());
+        assertEquals(conteudo.length, estatisticas.getBytesFisicos());
+        assertEquals(3, estatisticas.getBlocosDeduplicados());
+    }
+
+    @Test
+    public void testBlocosCheiosIguaisEmArquivosDiferentes() throws Exception {
+        fileSystem.write("/a", ROOT_USER, false, "0123456789abcdefXXXX".getBytes());
+        fileSystem.write("/b", ROOT_USER, false, "0123456789abcdefYY".getBytes());
+        // só o primeiro bloco é comum
+        assertEquals(16 + 4 + 2, fileSystem.estatisticasDados().getBytesFisicos());
+    }
+
+    @Test
+    public void testAnexarNaoAlteraArquivoComMesmoConteudo() throws Exception {
+        fileSystem.write("/a", ROOT_USER, false, "igual".getBytes());
+        fileSystem.write("/b", ROOT_USER, false, "igual".getBytes());
+        fileSystem.write("/a", ROOT_USER, true, "+a".getBytes());
+        fileSystem.write("/b", ROOT_USER, true, "+b".getBytes());
+        assertEquals("igual+a", ler("/a"));
+        assertEquals("igual+b", ler("/b"));
+
+        // o único dono de um bloco da tabela anexa no lugar, sem afetar quem o encontrar depois
+        fileSystem.write("/c", ROOT_USER, false, "unico".getBytes());
+        fileSystem.write("/c", ROOT_USER, true, "!".getBytes());
+        fileSystem.write("/d", ROOT_USER, false, "unico".getBytes());
+        assertEquals("unico!", ler("/c"));
+        assertEquals("unico", ler("/d"));
+    }
+
+    @Test
+    public void testRmLiberaQuandoNaoHaMaisReferencias() throws Exception {
+        byte[] conteudo = "0123456789abcdefghijklmnopqrstuv".getBytes();
+        fileSystem.write("/a", ROOT_USER, false, conteudo);
+        fileSystem.write("/b", ROOT_USER, false, conteudo);
+        assertEquals(2, fileSystem.estatisticasDados().getBlocosDeduplicados());
+
+        fileSystem.rm("/a", ROOT_USER, false);
+        assertEquals(2, fileSystem.estatisticasDados().getBlocosDeduplicados());
+        assertEquals(conteudo.length, fileSystem.estatisticasDados().getBytesFisicos());
+
+        fileSystem.rm("/b", ROOT_USER, false);
+        assertEquals(0, fileSystem.estatisticasDados().getBlocosDeduplicados());
+
+        // um bloco devolvido ao pool e reaproveitado não é encontrado com o conteúdo antigo
+        fileSystem.write("/c", ROOT_USER, false, "ffffffffffffffff".getBytes());
+        fileSystem.write("/d", ROOT_USER, false, conteudo);
+        assertEquals("ffffffffffffffff", ler("/c"));
+        assertEquals(new String(conteudo), ler("/d"));
+    }
+
+    @Test
+    public void testCopiaSobrescritaComOsMesmosBytes() throws Exception {
+        byte[] conteudo = "0123456789abcdefghijklmnopqrstuv".getBytes();
+        fileSystem.mkdir("/origem", ROOT_USER);
+        fileSystem.write("/origem/f", ROOT_USER, false, conteudo);
+        fileSystem.cp("/origem", "/copia", ROOT_USER, true);
+        fileSystem.write("/copia/f", ROOT_USER, false, conteudo);
+        EstatisticasDados estatisticas = fileSystem.estatisticasDados();
+        assertEquals(2L * conteudo.length, estatisticas.getBytesLogicos());
+        assertEquals(conteudo.length, estatisticas.getBytesFisicos());
+    }
+
+    @Test
+    public void testSemDeduplicacao() throws Exception {
+        FileSystemImpl semDeduplicacao = new FileSystemImpl(new MotorPermissoes(), 64, BLOCO);
+        for (int i = 0; i < 3; i++) {
+            semDeduplicacao.write("/f" + i, ROOT_USER, false, "0123456789abcdef".getBytes());
+        }
+        EstatisticasDados estatisticas = semDeduplicacao.estatisticasDados();
+        assertEquals(48, estatisticas.getBytesLogicos());
+        assertEquals(48, estatisticas.getBytesFisicos());
+        assertEquals(0, estatisticas.getBlocosDeduplicados());
+    }
+
+    // Threads escrevendo, anexando e removendo arquivos de poucos conteúdos possíveis: cada
+    // arquivo tem que ter exatamente o que a sua thread escreveu
+    @Test
+    public void testConcorrente() throws Exception {
+        FileSystemImpl concorrente = new FileSystemImpl(new MotorPermissoes(), 64, BLOCO, true, true);
+        String[] conteudos = { "a", "0123456789abcdef", "0123456789abcdef0123", "xyz" };
+        AtomicReference<Throwable> erro = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int id = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(id);
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        String caminho = "/t" + id + "_" + random.nextInt(4);
+                        String base = conteudos[random.nextInt(conteudos.length)];
+                        String anexo = conteudos[random.nextInt(conteudos.length)];
+                        concorrente.write(caminho, ROOT_USER, false, base.getBytes());
+                        concorrente.write(caminho, ROOT_USER, true, anexo.getBytes());
+                        byte[] buffer = new byte[64];
+                        int n = concorrente.read(caminho, ROOT_USER, 0, buffer, 0, buffer.length);
+                        assertEquals(base + anexo, new String(buffer, 0, n));
+                        if (random.nextInt(4) == 0) {
+                            concorrente.rm(caminho, ROOT_USER, false);
+                        }
+                    }
+                } catch (Throwable e) {
+                    erro.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (erro.get() != null) {
+            throw new AssertionError(erro.get());
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+import filesys.Operacao;
+
+// Essa classe testa o diário: operações confirmadas sobrevivem a uma queda sem checkpoint
+public class DiarioTest {
+    private static final String ROOT_USER = "root";
+
+    @TempDir
+    Path diretorio;
+
+    private static FileSystemImpl abrir(Path imagem, boolean concorrente, Duration latencia) throws IOException {
+        return new FileSystemImpl(new MotorPermissoes(), 64, 16, concorrente, imagem, latencia);
+    }
+
+    // Copia a imagem e o diário como estão em disco, como se o processo tivesse caído agora
+    // (inclusive os segmentos do diário que um checkpoint ainda não descartou)
+    private Path queda(Path imagem, String nome) throws IOException {
+        Path copia = diretorio.resolve(nome);
+        Files.copy(imagem, copia);
+        String prefixo = imagem.getFileName() + ".diario";
+        try (DirectoryStream<Path> diarios = Files.newDirectoryStream(diretorio, prefixo + "*")) {
+            for (Path diario : diarios) {
+                String sufixo = diario.getFileName().toString().substring(prefixo.length());
+                Files.copy(diario, copia.resolveSibling(nome + ".diario" + sufixo));
+            }
+        }
+        return copia;
+    }
+
+    private static byte[] ler(FileSystemImpl fileSystem, String caminho, int tamanho) throws Exception {
+        byte[] buffer = new byte[tamanho];
+        fileSystem.read(caminho, ROOT_USER, buffer);
+        return buffer;
+    }
+
+    @Test
+    public void testOperacoesConfirmadasSobrevivemAQueda() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        Path copia;
+        try (FileSystemImpl fileSystem = abrir(imagem, false, Duration.ZERO)) {
+            fileSystem.mkdir("/a/b", ROOT_USER);
+            fileSystem.write("/a/b/f", ROOT_USER, false, "conteudo".getBytes());
+            fileSystem.write("/a/b/f", ROOT_USER, true, " anexado".getBytes());
+            fileSystem.touch("/a/vazio", ROOT_USER);
+            fileSystem.chmod("/a", ROOT_USER, "maria", "r--");
+            fileSystem.cp("/a", "/copia", ROOT_USER, true);
+            fileSystem.mv("/a/b", "/b", ROOT_USER);
+            fileSystem.rm("/a/vazio", ROOT_USER, false);
+            copia = queda(imagem, "queda.img");
+        }
+        try (FileSystemImpl fileSystem = abrir(copia, false, Duration.ZERO)) {
+            assertArrayEquals("conteudo anexado".getBytes(), ler(fileSystem, "/b/f", 16));
+            assertArrayEquals("conteudo anexado".getBytes(), ler(fileSystem, "/copia/b/f", 16));
+            fileSystem.ls("/copia/vazio", ROOT_USER, false);
+            assertThrows(CaminhoNaoEncontradoException.class, () -> fileSystem.ls("/a/vazio", ROOT_USER, false));
+            assertThrows(PermissaoException.class, () -> fileSystem.touch("/a/x", "maria"));
+        }
+    }
+
+    @Test
+    public void testCaminhoLongoSobreviveAQueda() throws Exception {
+        // caminho com mais de 65535 bytes em UTF-8, seguido de outro registro
+        StringBuilder caminho = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            caminho.append('/').append(String.valueOf((char) ('a' + i % 26)).repeat(200)).append("ção");
+        }
+        Path imagem = diretorio.resolve("fs.img");
+        Path copia;
+        try (FileSystemImpl fileSystem = abrir(imagem, false, Duration.ZERO)) {
+            fileSystem.mkdir(caminho.toString(), ROOT_USER);
+            fileSystem.write(caminho + "/f", ROOT_USER, false, "longo".getBytes());
+            fileSystem.mkdir("/depois", ROOT_USER);
+            copia = queda(imagem, "queda.img");
+        }
+        try (FileSystemImpl fileSystem = abrir(copia, false, Duration.ZERO)) {
+            assertArrayEquals("longo".getBytes(), ler(fileSystem, caminho + "/f", 5));
+            fileSystem.ls("/depois", ROOT_USER, false);
+        }
+    }
+
+    @Test
+    public void testCheckpointNaoReaplicaRegistros() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        Path copia;
+        try (FileSystemImpl fileSystem = abrir(imagem, false, Duration.ZERO)) {
+            fileSystem.write("/f", ROOT_USER, false, "ab".getBytes());
+            fileSystem.sincronizar();
+            fileSystem.write("/f", ROOT_USER, true, "cd".getBytes());
+            copia = queda(imagem, "queda.img");
+        }
+        try (FileSystemImpl fileSystem = abrir(copia, false, Duration.ZERO)) {
+            byte[] buffer = new byte[8];
+            assertEquals(4, fileSystem.read("/f", ROOT_USER, 0, buffer, 0, 8));
+            assertArrayEquals("abcd".getBytes(), ler(fileSystem, "/f", 4));
+        }
+    }
+
+    @Test
+    public void testRegistroIncompletoEDescartado() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        Path copia;
+        try (FileSystemImpl fileSystem = abrir(imagem, false, Duration.ZERO)) {
+            fileSystem.mkdir("/ok", ROOT_USER);
+            copia = queda(imagem, "queda.img");
+        }
+        // gravação interrompida no meio de um registro
+        Files.write(copia.resolveSibling("queda.img.diario"), new byte[] { 0, 0, 0, 40, 0, 0, 0 },
+                StandardOpenOption.APPEND);
+        try (FileSystemImpl fileSystem = abrir(copia, false, Duration.ZERO)) {
+            fileSystem.ls("/ok", ROOT_USER, false);
+            fileSystem.mkdir("/depois", ROOT_USER);
+        }
+        try (FileSystemImpl fileSystem = abrir(copia, false, Duration.ZERO)) {
+            fileSystem.ls("/depois", ROOT_USER, false);
+        }
+    }
+
+    @Test
+    public void testCheckpointComEscritasConcorrentes() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        int threads = 4;
+        int porThread = 200;
+        Path copia;
+        try (FileSystemImpl fileSystem = abrir(imagem, true, Duration.ZERO)) {
+            List<Thread> lista = new ArrayList<>();
+            List<Throwable> falhas = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String dir = "/t" + t;
+                Thread th = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < porThread; i++) {
+                            fileSystem.write(dir + "/f" + i % 8, ROOT_USER, i >= 8, new byte[] { (byte) i });
+                            fileSystem.mkdir(dir + "/d" + i, ROOT_USER);
+                        }
+                    } catch (Exception e) {
+                        synchronized (falhas) {
+                            falhas.add(e);
+                        }
+                    }
+                });
+                fileSystem.mkdir(dir, ROOT_USER);
+                lista.add(th);
+                th.start();
+            }
+            for (int i = 0; i < 5; i++) {
+                fileSystem.sincronizar();
+            }
+            for (Thread th : lista) {
+                th.join();
+            }
+            assertTrue(falhas.isEmpty(), falhas.toString());
+            copia = queda(imagem, "queda.img");
+        }
+        try (FileSystemImpl fileSystem = abrir(copia, false, Duration.ZERO)) {
+            for (int t = 0; t < threads; t++) {
+                fileSystem.ls("/t" + t + "/d" + (porThread - 1), ROOT_USER, false);
+                byte[] esperado = new byte[porThread / 8];
+                for (int i = 0; i < esperado.length; i++) {
+                    esperado[i] = (byte) (i * 8 + 7);
+                }
+                assertArrayEquals(esperado, ler(fileSystem, "/t" + t + "/f7", esperado.length));
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentoDeCheckpointInterrompidoEReaplicado() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        Path copia;
+        try (FileSystemImpl fileSystem = abrir(imagem, false, Duration.ZERO)) {
+            fileSystem.mkdir("/a", ROOT_USER);
+            fileSystem.write("/a/f", ROOT_USER, false, "ab".getBytes());
+            copia = queda(imagem, "queda.img");
+        }
+        // queda depois de o checkpoint passar o diário a um novo segmento e antes de gravar a imagem
+        Path diario = copia.resolveSibling("queda.img.diario");
+        Path segmento = copia.resolveSibling("queda.img.diario.2");
+        Files.move(diario, segmento);
+        try (FileSystemImpl fileSystem = abrir(copia, false, Duration.ZERO)) {
+            assertArrayEquals("ab".getBytes(), ler(fileSystem, "/a/f", 2));
+            fileSystem.write("/a/f", ROOT_USER, true, "cd".getBytes());
+        }
+        assertTrue(Files.notExists(segmento));
+        try (FileSystemImpl fileSystem = abrir(copia, false, Duration.ZERO)) {
+            assertArrayEquals("abcd".getBytes(), ler(fileSystem, "/a/f", 4));
+        }
+    }
+
+    @Test
+    public void testOperacoesConcorrentesCompartilhamForce() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        int threads = 8;
+        int porThread = 100;
+        Path copia;
+        try (FileSystemImpl fileSystem = abrir(imagem, true, Duration.ofMillis(1))) {
+            List<Thread> lista = new ArrayList<>();
+            List<Throwable> falhas = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String dir = "/t" + t;
+                fileSystem.mkdir(dir, ROOT_USER);
+                Thread th = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < porThread; i++) {
+                            fileSystem.touch(dir + "/f" + i, ROOT_USER);
+                        }
+                    } catch (Exception e) {
+                        synchronized (falhas) {
+                            falhas.add(e);
+                        }
+                    }
+                });
+                lista.add(th);
+                th.start();
+            }
+            for (Thread th : lista) {
+                th.join();
+            }
+            assertTrue(falhas.isEmpty(), falhas.toString());
+            long forcados = fileSystem.getGravacoesDiario();
+            assertTrue(forcados < threads * porThread, "force() por operação: " + forcados);
+            copia = queda(imagem, "queda.img");
+        }
+        try (FileSystemImpl fileSystem = abrir(copia, false, Duration.ZERO)) {
+            for (int t = 0; t < threads; t++) {
+                fileSystem.ls("/t" + t + "/f" + (porThread - 1), ROOT_USER, false);
+            }
+        }
+    }
+
+    @Test
+    public void testRmMvECpNaoEsperamAlteracoesForaDasSubarvores() throws Exception {
+        // Um lote longo em /lote fica alterando a árvore enquanto rm, mv e cp atuam em outros
+        // diretórios: com diário, eles só param as próprias subárvores e terminam antes do lote
+        Path imagem = diretorio.resolve("fs.img");
+        try (FileSystemImpl fileSystem = abrir(imagem, true, Duration.ZERO)) {
+            fileSystem.mkdir("/a/x", ROOT_USER);
+            fileSystem.mkdir("/c", ROOT_USER);
+            fileSystem.mkdir("/lote", ROOT_USER);
+            List<Operacao> operacoes = new ArrayList<>();
+            // o grupo de /sinal termina antes de o de /lote começar
+            operacoes.add(Operacao.touch("/sinal", ROOT_USER));
+            for (int i = 0; i < 200_000; i++) {
+                operacoes.add(Operacao.touch("/lote/f" + i, ROOT_USER));
+            }
+            List<Throwable> falhas = new ArrayList<>();
+            Thread lote = new Thread(() -> {
+                try {
+                    fileSystem.submeter(operacoes);
+                } catch (Throwable e) {
+                    synchronized (falhas) {
+                        falhas.add(e);
+                    }
+                }
+            });
+            lote.start();
+            assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+                while (true) {
+                    try {
+                        fileSystem.ls("/sinal", ROOT_USER, false);
+                        break;
+                    } catch (CaminhoNaoEncontradoException e) {
+                        Thread.onSpinWait();
+                    }
+                }
+                fileSystem.mv("/a", "/b", ROOT_USER);
+                fileSystem.cp("/b", "/d", ROOT_USER, true);
+                fileSystem.rm("/c", ROOT_USER, true);
+                assertTrue(lote.isAlive(), "rm, mv ou cp esperou o lote");
+                lote.join();
+            }, "possível deadlock");
+            assertTrue(falhas.isEmpty(), falhas.toString());
+        }
+    }
+
+    @Test
+    public void testTouchSobDiretorioMovidoEReaplicadoNaMesmaArvore() throws Exception {
+        // touch sob um diretório que outra thread move de um lado para o outro: a reaplicação do
+        // diário deve chegar à mesma árvore, qualquer que seja a ordem dos registros
+        Path imagem = diretorio.resolve("fs.img");
+        Path copia;
+        List<String> esperado = new ArrayList<>();
+        try (FileSystemImpl fileSystem = abrir(imagem, true, Duration.ZERO)) {
+            fileSystem.mkdir("/m/x", ROOT_USER);
+            List<Throwable> falhas = new ArrayList<>();
+            Thread criadora = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    for (String dir : new String[] { "/m/x", "/m/y" }) {
+                        try {
+                            fileSystem.touch(dir + "/f" + i + dir.charAt(3), ROOT_USER);
+                        } catch (CaminhoNaoEncontradoException e) {
+                            // o diretório estava do outro lado
+                        } catch (Exception e) {
+                            synchronized (falhas) {
+                                falhas.add(e);
+                            }
+                        }
+                    }
+                }
+            });
+            criadora.start();
+            for (int i = 0; criadora.isAlive(); i++) {
+                fileSystem.mv(i % 2 == 0 ? "/m/x" : "/m/y", i % 2 == 0 ? "/m/y" : "/m/x", ROOT_USER);
+            }
+            criadora.join();
+            assertTrue(falhas.isEmpty(), falhas.toString());
+            fileSystem.listar("/", ROOT_USER, true).forEachRemaining(e -> esperado.add(e.toString()));
+            copia = queda(imagem, "queda.img");
+        }
+        try (FileSystemImpl fileSystem = abrir(copia, false, Duration.ZERO)) {
+            List<String> reaplicado = new ArrayList<>();
+            fileSystem.listar("/", ROOT_USER, true).forEachRemaining(e -> reaplicado.add(e.toString()));
+            assertEquals(esperado, reaplicado);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+import filesys.EntradaListagem;
+import filesys.FileSystemImpl;
+import filesys.IFileSystem;
+import filesys.Instantaneo;
+import filesys.MotorPermissoes;
+
+// Essa classe testa snapshot(): a visão mantém a árvore do momento em que foi criada,
+// qualquer que seja a alteração feita depois na árvore viva.
+public class InstantaneoTest {
+    private static final String ROOT_USER = "root";
+
+    private static FileSystemImpl novo(boolean concorrente) throws Exception {
+        MotorPermissoes motor = new MotorPermissoes();
+        FileSystemImpl fileSystem = new FileSystemImpl(motor, 64, 4, concorrente);
+        fileSystem.mkdir("/a/b", ROOT_USER);
+        fileSystem.write("/a/b/arquivo", ROOT_USER, false, "original".getBytes(StandardCharsets.UTF_8));
+        fileSystem.write("/a/outro", ROOT_USER, false, "outro".getBytes(StandardCharsets.UTF_8));
+        return fileSystem;
+    }
+
+    @Test
+    public void testAlteracoesPosterioresNaoAparecemNaVisao() throws Exception {
+        FileSystemImpl fileSystem = novo(false);
+        try (Instantaneo instantaneo = fileSystem.snapshot()) {
+            fileSystem.write("/a/b/arquivo", ROOT_USER, true, "+novo".getBytes(StandardCharsets.UTF_8));
+            fileSystem.mv("/a/outro", "/movido", ROOT_USER);
+            fileSystem.rm("/a/b", ROOT_USER, true);
+            fileSystem.touch("/a/criado", ROOT_USER);
+            fileSystem.chmod("/a", ROOT_USER, "maria", "rwx");
+
+            assertEquals("original", ler(instantaneo, "/a/b/arquivo"));
+            assertEquals("outro", ler(instantaneo, "/a/outro"));
+            assertEquals(List.of("/a/b", "/a/b/arquivo", "/a/outro"), caminhos(instantaneo, "/a"));
+            assertThrows(CaminhoNaoEncontradoException.class, () -> ler(instantaneo, "/movido"));
+            assertThrows(PermissaoException.class, () -> instantaneo.listar("/a", "maria", false));
+
+            assertEquals("outro", ler(fileSystem, "/movido"));
+            assertEquals(List.of("/a/criado"), caminhos(fileSystem, "/a"));
+        }
+        // fechada a visão, a árvore viva segue intacta
+        assertEquals("outro", ler(fileSystem, "/movido"));
+    }
+
+    @Test
+    public void testVisaoSomenteLeitura() throws Exception {
+        FileSystemImpl fileSystem = novo(false);
+        Instantaneo instantaneo = fileSystem.snapshot();
+        assertThrows(UnsupportedOperationException.class, () -> instantaneo.touch("/x", ROOT_USER));
+        assertThrows(UnsupportedOperationException.class,
+                () -> instantaneo.write("/a/outro", ROOT_USER, false, new byte[1]));
+        assertThrows(UnsupportedOperationException.class, () -> instantaneo.rm("/a", ROOT_USER, true));
+        assertThrows(UnsupportedOperationException.class, () -> instantaneo.mv("/a", "/b", ROOT_USER));
+        instantaneo.close();
+        assertThrows(IllegalStateException.class, () -> ler(instantaneo, "/a/outro"));
+
+        // sem visões abertas, a árvore volta a ser alterada no lugar
+        fileSystem.write("/a/outro", ROOT_USER, true, "!".getBytes(StandardCharsets.UTF_8));
+        assertEquals("outro!", ler(fileSystem, "/a/outro"));
+    }
+
+    @Test
+    public void testVisoesSucessivas() throws Exception {
+        FileSystemImpl fileSystem = novo(false);
+        List<Instantaneo> instantaneos = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            instantaneos.add(fileSystem.snapshot());
+            fileSystem.write("/a/b/arquivo", ROOT_USER, false, ("v" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("original", ler(instantaneos.get(0), "/a/b/arquivo"));
+        for (int i = 1; i < 5; i++) {
+            assertEquals("v" + (i - 1), ler(instantaneos.get(i), "/a/b/arquivo"));
+        }
+        // fechadas fora de ordem
+        instantaneos.get(2).close();
+        instantaneos.get(0).close();
+        assertEquals("v3", ler(instantaneos.get(4), "/a/b/arquivo"));
+        for (Instantaneo instantaneo : instantaneos) {
+            instantaneo.close();
+        }
+        assertEquals("v4", ler(fileSystem, "/a/b/arquivo"));
+    }
+
+    @Test
+    public void testVarreduraConcorrenteComAlteracoes() throws Exception {
+        FileSystemImpl fileSystem = new FileSystemImpl(new MotorPermissoes(), 64, 16, true);
+        for (int d = 0; d < 20; d++) {
+            fileSystem.mkdir("/d" + d, ROOT_USER);
+            for (int f = 0; f < 20; f++) {
+                fileSystem.write("/d" + d + "/f" + f, ROOT_USER, false, new byte[] { 1 });
+            }
+        }
+        AtomicBoolean parar = new AtomicBoolean();
+        AtomicInteger alteracoes = new AtomicInteger();
+        CountDownLatch iniciado = new CountDownLatch(1);
+        Thread escritora = new Thread(() -> {
+            try {
+                for (int i = 0; !parar.get(); i++) {
+                    String caminho = "/d" + (i % 20) + "/f0";
+                    fileSystem.write("/d" + (i % 20) + "/f1", ROOT_USER, true, new byte[] { 2 });
+                    fileSystem.mv(caminho, caminho + "m", ROOT_USER);
+                    fileSystem.mv(caminho + "m", caminho, ROOT_USER);
+                    alteracoes.incrementAndGet();
+                    iniciado.countDown();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        escritora.start();
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            iniciado.await();
+            for (int i = 0; i < 20; i++) {
+                try (Instantaneo instantaneo = fileSystem.snapshot()) {
+                    // os 20 diretórios e 400 arquivos, nenhum no meio de um mv, e o conteúdo não muda na visão
+                    assertEquals(420, caminhos(instantaneo, "/").size());
+                    String conteudo = ler(instantaneo, "/d0/f1");
+                    Thread.sleep(1);
+                    assertEquals(conteudo, ler(instantaneo, "/d0/f1"));
+                }
+            }
+        }, "possível deadlock");
+        parar.set(true);
+        escritora.join();
+        assertTrue(alteracoes.get() > 0);
+    }
+
+    private static String ler(IFileSystem fileSystem, String caminho) throws Exception {
+        byte[] buffer = new byte[64];
+        int n = fileSystem.read(caminho, ROOT_USER, 0, buffer, 0, buffer.length);
+        return new String(buffer, 0, Math.max(n, 0), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> caminhos(IFileSystem fileSystem, String caminho) throws Exception {
+        List<String> caminhos = new ArrayList<>();
+        Iterator<EntradaListagem> it = fileSystem.listar(caminho, ROOT_USER, true);
+        while (it.hasNext()) {
+            caminhos.add(it.next().getCaminho());
+        }
+        return caminhos;
+    }
+}
@@ -0,0 +1,77 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import exception.PermissaoException;
+import filesys.FileSystemImpl;
+import filesys.LeitorArquivo;
+
+// Essa classe testa a leitura posicional e em pedaços de arquivos maiores que o buffer
+public class LeituraTest {
+    private static final String ROOT_USER = "root";
+
+    private FileSystemImpl fileSystem;
+    private byte[] conteudo;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        fileSystem = new FileSystemImpl(64, 16);
+        conteudo = new byte[1000];
+        for (int i = 0; i < conteudo.length; i++) {
+            conteudo[i] = (byte) i;
+        }
+        fileSystem.write("/grande", ROOT_USER, false, conteudo);
+    }
+
+    @Test
+    public void testLeituraPosicional() throws Exception {
+        byte[] buffer = new byte[10];
+        assertEquals(10, fileSystem.read("/grande", ROOT_USER, 95, buffer, 0, 10));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(conteudo[95 + i], buffer[i]);
+        }
+        assertEquals(5, fileSystem.read("/grande", ROOT_USER, 995, buffer, 0, 10));
+        assertEquals(-1, fileSystem.read("/grande", ROOT_USER, 1000, buffer, 0, 10));
+    }
+
+    @Test
+    public void testLeitorComoInputStream() throws Exception {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        try (LeitorArquivo leitor = fileSystem.abrirLeitura("/grande", ROOT_USER)) {
+            int lidos;
+            while ((lidos = leitor.read(buffer)) > 0) {
+                saida.write(buffer, 0, lidos);
+            }
+        }
+        assertArrayEquals(conteudo, saida.toByteArray());
+    }
+
+    @Test
+    public void testLeitorComoCanal() throws Exception {
+        ByteBuffer destino = ByteBuffer.allocate(conteudo.length);
+        ByteBuffer pedaco = ByteBuffer.allocateDirect(33);
+        try (LeitorArquivo leitor = fileSystem.abrirLeitura("/grande", ROOT_USER)) {
+            while (leitor.read(pedaco) > 0) {
+                pedaco.flip();
+                destino.put(pedaco);
+                pedaco.clear();
+            }
+        }
+        assertArrayEquals(conteudo, destino.array());
+    }
+
+    @Test
+    public void testAbrirSemPermissao() throws Exception {
+        fileSystem.chmod("/grande", ROOT_USER, "maria", "-w-");
+        assertThrows(PermissaoException.class, () -> fileSystem.abrirLeitura("/grande", "maria"));
+    }
+}
@@ -0,0 +1,131 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import filesys.EntradaListagem;
+import filesys.FileSystemImpl;
+import filesys.PaginaListagem;
+
+// Essa classe testa a listagem sob demanda e paginada
+public class ListagemTest {
+    private static final String ROOT_USER = "root";
+
+    private FileSystemImpl fileSystem;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        fileSystem = new FileSystemImpl();
+        fileSystem.mkdir("/a/x", ROOT_USER);
+        fileSystem.write("/a/x/f", ROOT_USER, false, new byte[3]);
+        fileSystem.touch("/a/b", ROOT_USER);
+        fileSystem.mkdir("/c", ROOT_USER);
+        fileSystem.write("/d", ROOT_USER, false, new byte[10]);
+    }
+
+    private static List<String> caminhos(Iterator<EntradaListagem> it) {
+        List<String> caminhos = new ArrayList<>();
+        it.forEachRemaining(e -> caminhos.add(e.getCaminho()));
+        return caminhos;
+    }
+
+    @Test
+    public void testOrdemEMetadados() throws Exception {
+        assertEquals(List.of("/a", "/a/b", "/a/x", "/a/x/f", "/c", "/d"),
+                caminhos(fileSystem.listar("/", ROOT_USER, true)));
+        assertEquals(List.of("/a", "/c", "/d"), caminhos(fileSystem.listar("/", ROOT_USER, false)));
+
+        Iterator<EntradaListagem> it = fileSystem.listar("/d", ROOT_USER, true);
+        EntradaListagem d = it.next();
+        assertFalse(it.hasNext());
+        assertEquals("d", d.getNome());
+        assertFalse(d.isDiretorio());
+        assertEquals(10, d.getTamanho());
+        assertEquals("rwx", d.getPermissoes());
+    }
+
+    @Test
+    public void testPaginasCobremAListagem() throws Exception {
+        List<String> todas = caminhos(fileSystem.listar("/", ROOT_USER, true));
+        for (int tamanho = 1; tamanho <= todas.size() + 1; tamanho++) {
+            List<String> paginado = new ArrayList<>();
+            String token = null;
+            do {
+                PaginaListagem pagina = fileSystem.listar("/", ROOT_USER, true, tamanho, token);
+                assertTrue(pagina.getEntradas().size() <= tamanho);
+                pagina.getEntradas().forEach(e -> paginado.add(e.getCaminho()));
+                token = pagina.getContinuacao();
+            } while (token != null);
+            assertEquals(todas, paginado);
+        }
+    }
+
+    @Test
+    public void testContinuacaoAposEntradaRemovida() throws Exception {
+        PaginaListagem pagina = fileSystem.listar("/", ROOT_USER, true, 3, null);
+        assertEquals("/a/x", pagina.getContinuacao());
+        fileSystem.rm("/a/x", ROOT_USER, true);
+        pagina = fileSystem.listar("/", ROOT_USER, true, 10, pagina.getContinuacao());
+        assertEquals(List.of("/c", "/d"), caminhos(pagina.getEntradas().iterator()));
+        assertNull(pagina.getContinuacao());
+
+        assertThrows(IllegalArgumentException.class, () -> fileSystem.listar("/a", ROOT_USER, true, 10, "/c"));
+    }
+
+    @Test
+    public void testPaginasDeDiretorioLargo() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            fileSystem.touch(String.format("/c/f%03d", i), ROOT_USER);
+        }
+        PaginaListagem pagina = fileSystem.listar("/c", ROOT_USER, false, 64, null);
+        assertEquals("/c/f063", pagina.getContinuacao());
+        // criadas entre as páginas: só a que fica depois da continuação aparece
+        fileSystem.touch("/c/f000a", ROOT_USER);
+        fileSystem.touch("/c/f063a", ROOT_USER);
+        List<String> resto = new ArrayList<>();
+        String token = pagina.getContinuacao();
+        while (token != null) {
+            pagina = fileSystem.listar("/c", ROOT_USER, false, 64, token);
+            pagina.getEntradas().forEach(e -> resto.add(e.getNome()));
+            token = pagina.getContinuacao();
+        }
+        assertEquals(437, resto.size());
+        assertEquals(List.of("f063a", "f064"), resto.subList(0, 2));
+        assertEquals("f499", resto.get(resto.size() - 1));
+    }
+
+    @Test
+    public void testDiretorioSemLeituraNaoEDescido() throws Exception {
+        fileSystem.chmod("/", ROOT_USER, "maria", "r--");
+        fileSystem.chmod("/a", ROOT_USER, "maria", "r--");
+        fileSystem.chmod("/a/x", ROOT_USER, "maria", "---");
+        assertEquals(List.of("/a", "/a/b", "/a/x", "/c", "/d"),
+                caminhos(fileSystem.listar("/", "maria", true)));
+    }
+
+    @Test
+    public void testArvoreProfundaSemRecursao() throws Exception {
+        StringBuilder caminho = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            caminho.append("/p");
+            fileSystem.mkdir(caminho.toString(), ROOT_USER);
+        }
+        Iterator<EntradaListagem> it = fileSystem.listar("/p", ROOT_USER, true);
+        int total = 0;
+        while (it.hasNext()) {
+            it.next();
+            total++;
+        }
+        assertEquals(4999, total);
+    }
+}
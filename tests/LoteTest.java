@@ -0,0 +1,177 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import exception.CaminhoJaExistenteException;
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+import filesys.EntradaListagem;
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+import filesys.Operacao;
+import filesys.ResultadoOperacao;
+
+// Essa classe testa o lote de operações: cada operação tem o resultado da execução em sequência
+public class LoteTest {
+    private static final String ROOT_USER = "root";
+
+    @TempDir
+    Path diretorio;
+
+    private static Class<?> erro(ResultadoOperacao resultado) {
+        return resultado.sucesso() ? null : resultado.getErro().getClass();
+    }
+
+    private static List<String> arvore(FileSystemImpl fileSystem) throws Exception {
+        List<String> linhas = new ArrayList<>();
+        for (Iterator<EntradaListagem> it = fileSystem.listar("/", ROOT_USER, true); it.hasNext();) {
+            linhas.add(it.next().toString());
+        }
+        return linhas;
+    }
+
+    @Test
+    public void testResultadoPorOperacao() throws Exception {
+        FileSystemImpl fileSystem = new FileSystemImpl();
+        fileSystem.chmod("/", ROOT_USER, "maria", "rwx");
+        fileSystem.mkdir("/protegido", ROOT_USER);
+        fileSystem.chmod("/protegido", ROOT_USER, "maria", "r-x");
+
+        List<ResultadoOperacao> resultados = fileSystem.submeter(List.of(
+                Operacao.mkdir("/a/b", "maria"),
+                Operacao.touch("/a/b/f", "maria"),
+                Operacao.write("/a/b/f", "maria", false, "um".getBytes()),
+                Operacao.write("/a/b/f", "maria", true, " dois".getBytes()),
+                Operacao.touch("/a/b/f", "maria"),
+                Operacao.touch("/protegido/x", "maria"),
+                Operacao.touch("/nada/x", "maria"),
+                Operacao.write("/nada/x", "maria", false, new byte[1]),
+                Operacao.write("/a/b", "maria", false, new byte[1])));
+
+        assertEquals(9, resultados.size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(resultados.get(i).sucesso(), resultados.get(i).toString());
+        }
+        assertEquals(CaminhoJaExistenteException.class, erro(resultados.get(4)));
+        assertEquals(PermissaoException.class, erro(resultados.get(5)));
+        assertEquals(CaminhoNaoEncontradoException.class, erro(resultados.get(6)));
+        assertEquals(CaminhoNaoEncontradoException.class, erro(resultados.get(7)));
+        assertEquals(IllegalArgumentException.class, erro(resultados.get(8)));
+        assertThrows(PermissaoException.class, resultados.get(5)::verificar);
+        assertNull(resultados.get(0).getErro());
+
+        byte[] buffer = new byte[7];
+        fileSystem.read("/a/b/f", ROOT_USER, buffer);
+        assertArrayEquals("um dois".getBytes(), buffer);
+    }
+
+    @Test
+    public void testMkdirDoLoteCriaPaiDeGrupoAnterior() throws Exception {
+        FileSystemImpl fileSystem = new FileSystemImpl();
+        List<ResultadoOperacao> resultados = fileSystem.submeter(List.of(
+                Operacao.touch("/d/antes", ROOT_USER),
+                Operacao.mkdir("/d", ROOT_USER),
+                Operacao.touch("/d/depois", ROOT_USER)));
+
+        assertEquals(CaminhoNaoEncontradoException.class, erro(resultados.get(0)));
+        assertTrue(resultados.get(1).sucesso());
+        assertTrue(resultados.get(2).sucesso());
+    }
+
+    // A mesma operação pela API individual
+    @FunctionalInterface
+    private interface Chamada {
+        void executar(FileSystemImpl fileSystem) throws Exception;
+    }
+
+    // Lotes aleatórios sobre poucos caminhos, com dois usuários, comparados com a execução em sequência
+    @Test
+    public void testEquivaleAExecucaoEmSequencia() throws Exception {
+        String[] caminhos = { "/a", "/b", "/a/x", "/a/y", "/b/x", "/a/x/f", "/a/y/g", "/b/f", "/a/y/g/h" };
+        String[] usuarios = { ROOT_USER, "maria" };
+        Random random = new Random(42);
+        for (int rodada = 0; rodada < 200; rodada++) {
+            List<Operacao> operacoes = new ArrayList<>();
+            List<Chamada> chamadas = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String caminho = caminhos[random.nextInt(caminhos.length)];
+                String usuario = usuarios[random.nextInt(usuarios.length)];
+                switch (random.nextInt(3)) {
+                    case 0:
+                        operacoes.add(Operacao.mkdir(caminho, usuario));
+                        chamadas.add(fs -> fs.mkdir(caminho, usuario));
+                        break;
+                    case 1:
+                        operacoes.add(Operacao.touch(caminho, usuario));
+                        chamadas.add(fs -> fs.touch(caminho, usuario));
+                        break;
+                    default:
+                        boolean anexar = random.nextBoolean();
+                        byte[] dados = { (byte) i };
+                        operacoes.add(Operacao.write(caminho, usuario, anexar, dados));
+                        chamadas.add(fs -> fs.write(caminho, usuario, anexar, dados));
+                        break;
+                }
+            }
+
+            FileSystemImpl emLote = new FileSystemImpl();
+            FileSystemImpl emSequencia = new FileSystemImpl();
+            for (FileSystemImpl fileSystem : List.of(emLote, emSequencia)) {
+                fileSystem.mkdir("/b", ROOT_USER);
+                fileSystem.chmod("/b", ROOT_USER, "maria", "r-x");
+            }
+            List<ResultadoOperacao> resultados = emLote.submeter(operacoes);
+            for (int i = 0; i < operacoes.size(); i++) {
+                Class<?> esperado = null;
+                try {
+                    chamadas.get(i).executar(emSequencia);
+                } catch (Exception e) {
+                    esperado = e.getClass();
+                }
+                assertEquals(esperado, erro(resultados.get(i)), "rodada " + rodada + ", " + operacoes.get(i));
+            }
+            assertEquals(arvore(emSequencia), arvore(emLote), "rodada " + rodada);
+        }
+    }
+
+    @Test
+    public void testLoteComDiarioSobreviveAQuedaComUmForce() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        Path copia = diretorio.resolve("copia.img");
+        try (FileSystemImpl fileSystem = new FileSystemImpl(new MotorPermissoes(), 64, 16, false, imagem,
+                Duration.ZERO)) {
+            List<Operacao> operacoes = new ArrayList<>();
+            operacoes.add(Operacao.mkdir("/d", ROOT_USER));
+            for (int i = 0; i < 100; i++) {
+                operacoes.add(Operacao.write("/d/" + i, ROOT_USER, false, ("arquivo " + i).getBytes()));
+            }
+            long antes = fileSystem.getGravacoesDiario();
+            fileSystem.submeter(operacoes);
+            assertTrue(fileSystem.getGravacoesDiario() - antes < operacoes.size() / 2);
+
+            Files.copy(imagem, copia);
+            Files.copy(imagem.resolveSibling("fs.img.diario"), diretorio.resolve("copia.img.diario"));
+        }
+        try (FileSystemImpl recuperado = new FileSystemImpl(new MotorPermissoes(), 64, 16, false, copia,
+                Duration.ZERO)) {
+            byte[] buffer = new byte[10];
+            recuperado.read("/d/99", ROOT_USER, buffer);
+            assertArrayEquals("arquivo 99".getBytes(), buffer);
+        }
+    }
+}
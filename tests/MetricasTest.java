@@ -0,0 +1,125 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import exception.CaminhoJaExistenteException;
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+import filesys.FileSystem;
+import filesys.MetricasFileSystem;
+import filesys.MetricasMetodo;
+import filesys.MotorPermissoes;
+
+// Essa classe testa as métricas do proxy FileSystem: contagens, erros por tipo, bytes e JMX
+public class MetricasTest {
+    private static final String ROOT_USER = "root";
+
+    private FileSystem fileSystem;
+    private MetricasFileSystem metricas;
+
+    @BeforeEach
+    public void setUp() {
+        fileSystem = new FileSystem(new MotorPermissoes());
+        assertNull(fileSystem.getMetricas());
+        metricas = fileSystem.habilitarMetricas();
+        assertSame(metricas, fileSystem.habilitarMetricas());
+    }
+
+    @Test
+    public void testContagensErrosEBytes() throws Exception {
+        fileSystem.mkdir("/a", ROOT_USER);
+        assertThrows(CaminhoJaExistenteException.class, () -> fileSystem.mkdir("/a", ROOT_USER));
+        assertThrows(PermissaoException.class, () -> fileSystem.mkdir("/a/b", "maria"));
+        fileSystem.write("/a/f", ROOT_USER, false, new byte[100]);
+        fileSystem.write("/a/f", ROOT_USER, true, new byte[50]);
+        fileSystem.read("/a/f", ROOT_USER, new byte[200]);
+        fileSystem.read("/a/f", ROOT_USER, 100, new byte[10], 0, 10);
+        assertThrows(CaminhoNaoEncontradoException.class, () -> fileSystem.read("/x", ROOT_USER, new byte[1]));
+        assertThrows(IllegalArgumentException.class, () -> fileSystem.cp("/a", "/a/dentro", ROOT_USER, true));
+
+        Map<String, MetricasMetodo> retrato = metricas.retrato();
+        MetricasMetodo mkdir = retrato.get("mkdir");
+        assertEquals(3, mkdir.getChamadas());
+        assertEquals(1, mkdir.getErrosCaminhoJaExistente());
+        assertEquals(1, mkdir.getErrosPermissao());
+        assertEquals(2, mkdir.getErros());
+        assertEquals(150, retrato.get("write").getBytesEscritos());
+        MetricasMetodo read = retrato.get("read");
+        assertEquals(3, read.getChamadas());
+        assertEquals(160, read.getBytesLidos());
+        assertEquals(1, read.getErrosCaminhoNaoEncontrado());
+        assertEquals(1, retrato.get("cp").getOutrosErros());
+        assertEquals(0, retrato.get("mv").getChamadas());
+
+        assertTrue(mkdir.getP50Ns() > 0);
+        assertTrue(mkdir.getP50Ns() <= mkdir.getP99Ns() && mkdir.getP99Ns() <= mkdir.getP999Ns());
+        // o percentil é o limite superior da faixa, com erro relativo de até 1/64
+        assertTrue(mkdir.getP999Ns() <= mkdir.getLatenciaMaximaNs() * 65 / 64 + 1);
+
+        metricas.zerar();
+        assertEquals(0, metricas.retrato().get("mkdir").getChamadas());
+        assertEquals(0, metricas.retrato().get("mkdir").getP99Ns());
+    }
+
+    @Test
+    public void testRegistroConcorrente() throws Exception {
+        fileSystem.write("/f", ROOT_USER, false, new byte[8]);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                byte[] buffer = new byte[8];
+                for (int i = 0; i < 10_000; i++) {
+                    try {
+                        fileSystem.read("/f", ROOT_USER, buffer);
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        MetricasMetodo read = metricas.retrato().get("read");
+        assertEquals(80_000, read.getChamadas());
+        assertEquals(640_000, read.getBytesLidos());
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        fileSystem.touch("/f", ROOT_USER);
+        ObjectName nome = metricas.registrarJmx("teste");
+        try {
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            TabularData metodos = (TabularData) servidor.getAttribute(nome, "Metodos");
+            CompositeData touch = (CompositeData) metodos.get(new Object[] { "touch" }).get("value");
+            assertEquals(1L, touch.get("chamadas"));
+
+            servidor.invoke(nome, "zerar", null, null);
+            assertEquals(0, metricas.retrato().get("touch").getChamadas());
+        } finally {
+            metricas.removerJmx();
+        }
+        assertTrue(!ManagementFactory.getPlatformMBeanServer().isRegistered(nome));
+    }
+}
@@ -0,0 +1,128 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+
+// Essa classe testa rm -r, cp -r e ls -R em paralelo contra a versão sequencial
+public class ParaleloTest {
+    private static final String ROOT_USER = "root";
+
+    private ForkJoinPool pool;
+    private FileSystemImpl sequencial;
+    private FileSystemImpl paralelo;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+        sequencial = criar();
+        sequencial.configurarParalelismo(pool, 0);
+        paralelo = criar();
+        // limiar baixo para que mesmo diretórios de poucas entradas sejam divididos
+        paralelo.configurarParalelismo(pool, 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static FileSystemImpl criar() throws Exception {
+        FileSystemImpl fileSystem = new FileSystemImpl(new MotorPermissoes(), 4096, 64, true);
+        fileSystem.chmod("/", ROOT_USER, "maria", "rwx");
+        for (int d = 0; d < 20; d++) {
+            fileSystem.mkdir("/w/d" + d, ROOT_USER);
+            for (int f = 0; f < 10; f++) {
+                fileSystem.write("/w/d" + d + "/f" + f, ROOT_USER, false, new byte[100]);
+            }
+            for (int s = 0; s < 5; s++) {
+                fileSystem.mkdir("/w/d" + d + "/s" + s, ROOT_USER);
+                fileSystem.touch("/w/d" + d + "/s" + s + "/g", ROOT_USER);
+            }
+        }
+        return fileSystem;
+    }
+
+    @Test
+    public void testLsRecursivoMesmaSaidaEInterrupcao() throws Exception {
+        assertEquals(listar(sequencial, "/", ROOT_USER), listar(paralelo, "/", ROOT_USER));
+
+        for (FileSystemImpl fileSystem : new FileSystemImpl[] { sequencial, paralelo }) {
+            fileSystem.chmod("/w/d7/s2", ROOT_USER, "maria", "-w-");
+            fileSystem.chmod("/w/d15", ROOT_USER, "maria", "-w-");
+        }
+        // a listagem para no primeiro diretório sem permissão, depois de imprimir os anteriores
+        assertEquals(listar(sequencial, "/", "maria"), listar(paralelo, "/", "maria"));
+        assertTrue(listar(paralelo, "/", "maria").endsWith("PermissaoException: Usuário maria não tem permissão 'r--' em /w/d15"));
+    }
+
+    @Test
+    public void testRmRecursivoSemPermissaoNaoRemoveNada() throws Exception {
+        String antes = listar(paralelo, "/", ROOT_USER);
+        paralelo.chmod("/w/d13/s4/g", ROOT_USER, "maria", "r--");
+        assertThrows(PermissaoException.class, () -> paralelo.rm("/w", "maria", true));
+        assertEquals(antes, listar(paralelo, "/", ROOT_USER));
+
+        paralelo.rm("/w", ROOT_USER, true);
+        assertThrows(CaminhoNaoEncontradoException.class, () -> paralelo.ls("/w", ROOT_USER, false));
+        // a subárvore removida é liberada inteira, em paralelo
+        assertEquals(0, paralelo.estatisticasDados().getBytesFisicos());
+    }
+
+    @Test
+    public void testCpRecursivoSemPermissao() throws Exception {
+        paralelo.chmod("/w/d4/f9", ROOT_USER, "maria", "-w-");
+        PermissaoException erro = assertThrows(PermissaoException.class, () -> paralelo.cp("/w", "/copia", "maria", true));
+        assertEquals("Usuário maria não tem permissão 'r--' em /w/d4/f9", erro.getMessage());
+        assertThrows(CaminhoNaoEncontradoException.class, () -> paralelo.ls("/copia", ROOT_USER, false));
+
+        paralelo.chmod("/w/d4/f9", ROOT_USER, "maria", "rw-");
+        paralelo.cp("/w", "/copia", "maria", true);
+        assertEquals(listar(sequencial, "/w", ROOT_USER).replace("/w", "/copia"), listar(paralelo, "/copia", ROOT_USER));
+    }
+
+    @Test
+    public void testVerificacaoParalelaCitaPrimeiroNoSemPermissao() throws Exception {
+        for (FileSystemImpl fileSystem : new FileSystemImpl[] { sequencial, paralelo }) {
+            fileSystem.chmod("/w/d3/f2", ROOT_USER, "maria", "r--");
+            fileSystem.chmod("/w/d11/s1/g", ROOT_USER, "maria", "r--");
+            fileSystem.chmod("/w/d18/f0", ROOT_USER, "maria", "r--");
+        }
+        // em pré-ordem, com os irmãos em ordem de nome, d11 vem antes de d18 e de d3
+        PermissaoException esperado = assertThrows(PermissaoException.class, () -> sequencial.rm("/w", "maria", true));
+        assertEquals("Usuário maria não tem permissão '-w-' em /w/d11/s1/g", esperado.getMessage());
+        for (int i = 0; i < 20; i++) {
+            PermissaoException erro = assertThrows(PermissaoException.class, () -> paralelo.rm("/w", "maria", true));
+            assertEquals(esperado.getMessage(), erro.getMessage());
+        }
+    }
+
+    // Saída do ls -R, terminada pela exceção, se houver
+    private static String listar(FileSystemImpl fileSystem, String caminho, String usuario) throws Exception {
+        PrintStream original = System.out;
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(saida, true, StandardCharsets.UTF_8));
+        try {
+            fileSystem.ls(caminho, usuario, true);
+        } catch (PermissaoException e) {
+            System.out.print(e);
+        } finally {
+            System.setOut(original);
+        }
+        return saida.toString(StandardCharsets.UTF_8);
+    }
+}
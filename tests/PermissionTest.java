@@ -1,21 +1,31 @@
 package tests;
 
 import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeAll;
 
+import exception.PermissaoException;
 import filesys.FileSystemImpl;
 import filesys.IFileSystem;
+import filesys.MotorPermissoes;
 
 // Essa classe testa cenários de permissão
 public class PermissionTest {
     private static IFileSystem fileSystem;
 
     @BeforeAll
-    public static void setUp() {
-        fileSystem = new FileSystemImpl(/*args...*/);
+    public static void setUp() throws Exception {
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("maria", "/**", "rw-");
+        motor.adicionarRegra("carla", "/**", "r--");
+        motor.adicionarRegra("carla", "/publico/**", "rwx");
+        fileSystem = new FileSystemImpl(motor);
+        fileSystem.mkdir("/publico", "root");
+        fileSystem.mkdir("/privado", "root");
     }
 
     @Test
@@ -23,4 +33,54 @@ public class PermissionTest {
         // Teste de permissão
         assertTrue(true);
     }
+
+    @Test
+    public void testRegrasDoArquivoUsers() throws Exception {
+        fileSystem.touch("/privado/maria.txt", "maria");
+        assertThrows(PermissaoException.class, () -> fileSystem.touch("/privado/carla.txt", "carla"));
+        fileSystem.touch("/publico/carla.txt", "carla");
+        assertThrows(PermissaoException.class, () -> fileSystem.touch("/privado/pedro.txt", "pedro"));
+    }
+
+    @Test
+    public void testChmod() throws Exception {
+        fileSystem.mkdir("/privado/chmod", "root");
+        fileSystem.chmod("/privado/chmod", "root", "carla", "rw-");
+        fileSystem.touch("/privado/chmod/carla.txt", "carla");
+        // carla tem apenas r-- em /privado e não pode alterar suas permissões
+        assertThrows(PermissaoException.class, () -> fileSystem.chmod("/privado", "carla", "carla", "rwx"));
+    }
+
+    @Test
+    public void testMotorRegraMaisProximaPrevalece() {
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("joao", "/**", "r--");
+        motor.adicionarRegra("joao", "/home/*/**", "rw-");
+        motor.adicionarRegra("joao", "/home/root/**", "---");
+        assertEquals(MotorPermissoes.LEITURA, motor.mascara("/etc/passwd", "joao"));
+        assertEquals(MotorPermissoes.LEITURA | MotorPermissoes.ESCRITA, motor.mascara("/home/joao/a", "joao"));
+        assertEquals(0, motor.mascara("/home/root/a", "joao"));
+        assertEquals(0, motor.mascara("/etc", "tiago"));
+    }
+
+    @Test
+    public void testCuringaELiteralSobrepostos() throws Exception {
+        // mascara() e as permissões dos nós criados seguem a mesma precedência: a regra ancorada mais
+        // fundo prevalece e, na mesma profundidade, o segmento literal prevalece sobre o "*"
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("joao", "/a/b/**", "r--");
+        motor.adicionarRegra("joao", "/*/b/c/**", "rw-");
+        motor.adicionarRegra("joao", "/*/b/d/**", "rw-");
+        motor.adicionarRegra("joao", "/a/*/d/**", "r--");
+        IFileSystem sistema = new FileSystemImpl(motor);
+        sistema.mkdir("/a/b/c", "root");
+        sistema.mkdir("/a/b/d", "root");
+
+        assertEquals(MotorPermissoes.LEITURA | MotorPermissoes.ESCRITA, motor.mascara("/a/b/c/x", "joao"));
+        sistema.touch("/a/b/c/x", "joao");
+        assertEquals(MotorPermissoes.LEITURA, motor.mascara("/a/b/d/x", "joao"));
+        assertThrows(PermissaoException.class, () -> sistema.touch("/a/b/d/x", "joao"));
+        assertEquals(MotorPermissoes.LEITURA, motor.mascara("/a/b/y", "joao"));
+        assertThrows(PermissaoException.class, () -> sistema.touch("/a/b/y", "joao"));
+    }
 }
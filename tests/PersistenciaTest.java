@@ -0,0 +1,184 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+import filesys.FileSystemImpl;
+import filesys.Instantaneo;
+import filesys.MotorPermissoes;
+
+// Essa classe testa a persistência em imagem de disco entre execuções
+public class PersistenciaTest {
+    private static final String ROOT_USER = "root";
+
+    @TempDir
+    Path diretorio;
+
+    private FileSystemImpl abrir(Path imagem) throws IOException {
+        return new FileSystemImpl(new MotorPermissoes(), 64, 16, false, imagem);
+    }
+
+    private static byte[] conteudo(int tamanho, int semente) {
+        byte[] dados = new byte[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            dados[i] = (byte) (i * 31 + semente);
+        }
+        return dados;
+    }
+
+    private static byte[] ler(FileSystemImpl fileSystem, String caminho, int tamanho) throws Exception {
+        byte[] buffer = new byte[tamanho];
+        fileSystem.read(caminho, ROOT_USER, buffer);
+        return buffer;
+    }
+
+    private static List<String> listar(FileSystemImpl fileSystem) throws Exception {
+        List<String> caminhos = new ArrayList<>();
+        fileSystem.listar("/", ROOT_USER, true).forEachRemaining(e -> caminhos.add(e.toString()));
+        return caminhos;
+    }
+
+    @Test
+    public void testDadosSobrevivemAoReinicio() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        List<String> antes;
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            fileSystem.mkdir("/home/maria/docs", ROOT_USER);
+            fileSystem.write("/home/maria/docs/grande", ROOT_USER, false, conteudo(1000, 1));
+            fileSystem.write("/home/maria/vazio", ROOT_USER, false, new byte[0]);
+            fileSystem.chmod("/home/maria", ROOT_USER, "maria", "r-x");
+            fileSystem.cp("/home/maria", "/copia", ROOT_USER, true);
+            antes = listar(fileSystem);
+        }
+
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            assertEquals(antes, listar(fileSystem));
+            assertArrayEquals(conteudo(1000, 1), ler(fileSystem, "/home/maria/docs/grande", 1000));
+            assertArrayEquals(conteudo(1000, 1), ler(fileSystem, "/copia/docs/grande", 1000));
+            // as permissões também são persistidas
+            assertThrows(PermissaoException.class, () -> fileSystem.touch("/home/maria/novo", "maria"));
+            fileSystem.ls("/home/maria", "maria", false);
+        }
+    }
+
+    @Test
+    public void testAlteracoesDepoisDoReinicio() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            fileSystem.mkdir("/a", ROOT_USER);
+            fileSystem.mkdir("/b", ROOT_USER);
+            fileSystem.write("/a/f", ROOT_USER, false, conteudo(100, 2));
+            fileSystem.write("/b/g", ROOT_USER, false, conteudo(50, 3));
+        }
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            fileSystem.write("/a/f", ROOT_USER, true, conteudo(20, 4));
+            fileSystem.rm("/b", ROOT_USER, true);
+            fileSystem.mv("/a/f", "/f", ROOT_USER);
+            fileSystem.sincronizar();
+            fileSystem.write("/depois", ROOT_USER, false, conteudo(10, 5));
+        }
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            byte[] esperado = new byte[120];
+            System.arraycopy(conteudo(100, 2), 0, esperado, 0, 100);
+            System.arraycopy(conteudo(20, 4), 0, esperado, 100, 20);
+            assertArrayEquals(esperado, ler(fileSystem, "/f", 120));
+            assertArrayEquals(conteudo(10, 5), ler(fileSystem, "/depois", 10));
+            assertThrows(CaminhoNaoEncontradoException.class, () -> fileSystem.ls("/b", ROOT_USER, false));
+        }
+    }
+
+    @Test
+    public void testCheckpointNaoRegravaDadosNaoAlterados() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            for (int i = 0; i < 20; i++) {
+                fileSystem.mkdir("/d" + i, ROOT_USER);
+                fileSystem.write("/d" + i + "/arquivo", ROOT_USER, false, conteudo(10_000, i));
+            }
+        }
+        long tamanho = Files.size(imagem);
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            fileSystem.touch("/d0/novo", ROOT_USER);
+        }
+        // só a raiz, /d0 e os registros que apontam para os dados antigos foram anexados
+        assertTrue(Files.size(imagem) - tamanho < 1000, "imagem cresceu " + (Files.size(imagem) - tamanho));
+    }
+
+    @Test
+    public void testNomeMaiorQue64KiBSobreviveAoReinicio() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        // 80000 bytes em UTF-8: não cabe em um tamanho de 16 bits
+        String longo = "/" + "é".repeat(40_000);
+        List<String> antes;
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            fileSystem.mkdir(longo, ROOT_USER);
+            fileSystem.write(longo + "/f", ROOT_USER, false, conteudo(10, 6));
+            fileSystem.touch("/depois", ROOT_USER);
+            antes = listar(fileSystem);
+        }
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            assertEquals(antes, listar(fileSystem));
+            assertArrayEquals(conteudo(10, 6), ler(fileSystem, longo + "/f", 10));
+        }
+    }
+
+    @Test
+    public void testCompactacaoDescartaRegistrosSubstituidos() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        List<String> esperado;
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            fileSystem.mkdir("/d/e", ROOT_USER);
+            fileSystem.write("/d/e/g", ROOT_USER, false, conteudo(400_000, 7));
+            fileSystem.cp("/d/e", "/d/copia", ROOT_USER, true);
+            fileSystem.chmod("/d/copia/g", ROOT_USER, "maria", "rw-");
+        }
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            // a visão e /d continuam apontando para a imagem lida ao abrir
+            try (Instantaneo instantaneo = fileSystem.snapshot()) {
+                for (int i = 0; i < 16; i++) {
+                    fileSystem.write("/grande", ROOT_USER, false, conteudo(300_000, i));
+                    fileSystem.sincronizar();
+                }
+                byte[] buffer = new byte[400_000];
+                instantaneo.read("/d/copia/g", ROOT_USER, buffer);
+                assertArrayEquals(conteudo(400_000, 7), buffer);
+            }
+            // sem compactação seriam 16 x 300 KB anexados
+            assertTrue(Files.size(imagem) < 2_500_000, "imagem com " + Files.size(imagem));
+            assertArrayEquals(conteudo(400_000, 7), ler(fileSystem, "/d/e/g", 400_000));
+            fileSystem.write("/d/e/h", ROOT_USER, false, conteudo(100, 1));
+            esperado = listar(fileSystem);
+        }
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            assertEquals(esperado, listar(fileSystem));
+            assertArrayEquals(conteudo(400_000, 7), ler(fileSystem, "/d/copia/g", 400_000));
+            assertArrayEquals(conteudo(300_000, 15), ler(fileSystem, "/grande", 300_000));
+            assertArrayEquals(conteudo(100, 1), ler(fileSystem, "/d/e/h", 100));
+            fileSystem.write("/d/copia/g", "maria", true, conteudo(10, 2));
+            assertThrows(PermissaoException.class, () -> fileSystem.write("/d/e/g", "maria", true, conteudo(10, 2)));
+        }
+    }
+
+    @Test
+    public void testImagemNaoPodeSerAbertaDuasVezes() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        try (FileSystemImpl fileSystem = abrir(imagem)) {
+            assertThrows(IOException.class, () -> abrir(imagem));
+            // a tentativa recusada não afeta quem já tem a imagem aberta
+            fileSystem.mkdir("/ainda", ROOT_USER);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import exception.CaminhoJaExistenteException;
+import exception.CaminhoNaoEncontradoException;
+import filesys.ChamadaTrace;
+import filesys.EntradaListagem;
+import filesys.EscritorTrace;
+import filesys.FileSystem;
+import filesys.FileSystemImpl;
+import filesys.GeradorTrace;
+import filesys.GravadorTrace;
+import filesys.IFileSystem;
+import filesys.LeitorTrace;
+import filesys.MotorPermissoes;
+import filesys.RelatorioReproducao;
+import filesys.ReprodutorTrace;
+
+// Essa classe testa a gravação de traces (GravadorTrace, EscritorTrace e LeitorTrace), a sua
+// reprodução (ReprodutorTrace) e o gerador de traces sintéticos.
+public class TraceTest {
+    private static final String ROOT_USER = "root";
+
+    @TempDir
+    Path diretorio;
+
+    private Path gravarSessao(boolean gravarConteudo) throws Exception {
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("maria", "/**", "r--");
+        Path trace = diretorio.resolve("sessao.trace");
+        try (GravadorTrace gravador = new GravadorTrace(new FileSystemImpl(motor),
+                new EscritorTrace(Files.newOutputStream(trace)), gravarConteudo)) {
+            IFileSystem fileSystem = gravador;
+            fileSystem.mkdir("/a", ROOT_USER);
+            fileSystem.write("/a/f", ROOT_USER, false, "conteúdo".getBytes(StandardCharsets.UTF_8));
+            fileSystem.write("/a/f", ROOT_USER, true, "+".getBytes(StandardCharsets.UTF_8));
+            assertThrows(CaminhoJaExistenteException.class, () -> fileSystem.mkdir("/a", ROOT_USER));
+            fileSystem.read("/a/f", "maria", 2, new byte[16], 0, 16);
+            fileSystem.chmod("/a", ROOT_USER, "maria", "rw-");
+            fileSystem.cp("/a/f", "/a/g", ROOT_USER, false);
+            fileSystem.mv("/a/g", "/a/h", "maria");
+            fileSystem.listar("/a", "maria", true, 1, "/a/f");
+            assertThrows(CaminhoNaoEncontradoException.class, () -> fileSystem.rm("/nada", ROOT_USER, false));
+        }
+        return trace;
+    }
+
+    @Test
+    public void testGravacaoELeitura() throws Exception {
+        List<ChamadaTrace> chamadas = LeitorTrace.ler(gravarSessao(true));
+        assertEquals(10, chamadas.size());
+
+        ChamadaTrace write = chamadas.get(1);
+        assertEquals(ChamadaTrace.Tipo.WRITE, write.getTipo());
+        assertEquals("/a/f", write.getCaminho());
+        assertArrayEquals("conteúdo".getBytes(StandardCharsets.UTF_8), write.getDados());
+        assertTrue(chamadas.get(2).getOpcao());
+        assertEquals(ChamadaTrace.Resultado.CAMINHO_JA_EXISTENTE, chamadas.get(3).getResultado());
+
+        ChamadaTrace read = chamadas.get(4);
+        assertEquals("maria", read.getUsuario());
+        assertEquals(2, read.getOffset());
+        assertEquals(16, read.getTamanho());
+
+        ChamadaTrace chmod = chamadas.get(5);
+        assertEquals("maria", chmod.getArgumento());
+        assertEquals("rw-", chmod.getPermissao());
+        assertEquals("/a/h", chamadas.get(7).getArgumento());
+        ChamadaTrace listar = chamadas.get(8);
+        assertEquals("/a/f", listar.getArgumento());
+        assertEquals(1, listar.getTamanho());
+        assertEquals(ChamadaTrace.Resultado.CAMINHO_NAO_ENCONTRADO, chamadas.get(9).getResultado());
+
+        for (int i = 1; i < chamadas.size(); i++) {
+            assertTrue(chamadas.get(i).getInstante() >= chamadas.get(i - 1).getInstante());
+        }
+    }
+
+    @Test
+    public void testTraceTruncadoESemConteudo() throws Exception {
+        Path trace = gravarSessao(false);
+        List<ChamadaTrace> chamadas = LeitorTrace.ler(trace);
+        assertNull(chamadas.get(1).getDados());
+        assertEquals("conteúdo".getBytes(StandardCharsets.UTF_8).length, chamadas.get(1).getTamanho());
+
+        // uma gravação interrompida no meio do último registro
+        byte[] bytes = Files.readAllBytes(trace);
+        Path truncado = diretorio.resolve("truncado.trace");
+        Files.write(truncado, Arrays.copyOf(bytes, bytes.length - 3));
+        assertEquals(9, LeitorTrace.ler(truncado).size());
+    }
+
+    @Test
+    public void testReproducaoRefazOEstado() throws Exception {
+        List<ChamadaTrace> chamadas = LeitorTrace.ler(gravarSessao(true));
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("maria", "/**", "r--");
+        FileSystemImpl alvo = new FileSystemImpl(motor);
+        RelatorioReproducao relatorio = ReprodutorTrace.reproduzir(chamadas, alvo, 1, 0);
+        assertEquals(0, relatorio.getDivergencias());
+        assertEquals(10, relatorio.getChamadas());
+        assertEquals(2, relatorio.getMetodos().get("write").getChamadas());
+        assertEquals(1, relatorio.getMetodos().get("mkdir").getErrosCaminhoJaExistente());
+
+        byte[] buffer = new byte[32];
+        int n = alvo.read("/a/h", ROOT_USER, 0, buffer, 0, buffer.length);
+        assertEquals("conteúdo+", new String(buffer, 0, n, StandardCharsets.UTF_8));
+
+        // sem as regras de permissão, o read de maria passa a ser negado
+        relatorio = ReprodutorTrace.reproduzir(chamadas, new FileSystemImpl(), 1, 0);
+        assertTrue(relatorio.getDivergencias() > 0);
+    }
+
+    @Test
+    public void testGeradorDeterministicoEReproducaoConcorrente() throws Exception {
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("maria", "/**", "rw-");
+        motor.adicionarRegra("joao", "/**", "r--");
+        List<ChamadaTrace> chamadas = null;
+        for (int i = 0; i < 2; i++) {
+            GeradorTrace gerador = new GeradorTrace(motor, List.of(ROOT_USER, "maria", "joao"), 7);
+            gerador.configurarArvore(4, 2, 3);
+            gerador.configurarTamanho(100);
+            List<ChamadaTrace> geradas = gerador.gerar(3000);
+            if (chamadas != null) {
+                assertEquals(caminhos(chamadas), caminhos(geradas));
+            }
+            chamadas = geradas;
+        }
+        // 4 + 16 diretórios com 3 arquivos cada, e as chamadas sorteadas
+        assertEquals(20 * 4 + 3000, chamadas.size());
+
+        FileSystem alvo = new FileSystem(motor, true);
+        RelatorioReproducao relatorio = ReprodutorTrace.reproduzir(chamadas, alvo, 4, 0);
+        assertEquals(0, relatorio.getDivergencias());
+        assertTrue(relatorio.getMetodos().get("read").getBytesLidos() > 0);
+
+        // o estado final é o da referência: a mesma árvore que uma reprodução sequencial deixa
+        FileSystemImpl sequencial = new FileSystemImpl(motor);
+        ReprodutorTrace.reproduzir(chamadas, sequencial, 1, 0);
+        assertEquals(listagem(sequencial), listagem(alvo));
+    }
+
+    @Test
+    public void testMistura() throws Exception {
+        GeradorTrace gerador = new GeradorTrace(new MotorPermissoes(), List.of(ROOT_USER), 1);
+        gerador.configurarArvore(2, 1, 1);
+        gerador.configurarMistura(Map.of(ChamadaTrace.Tipo.TOUCH, 1, ChamadaTrace.Tipo.READ, 3));
+        List<ChamadaTrace> chamadas = gerador.gerar(1000);
+        long touch = chamadas.stream().filter(c -> c.getTipo() == ChamadaTrace.Tipo.TOUCH).count();
+        long read = chamadas.stream().filter(c -> c.getTipo() == ChamadaTrace.Tipo.READ).count();
+        assertEquals(1000, touch + read);
+        assertTrue(read > 2 * touch);
+        assertEquals(ChamadaTrace.Tipo.READ, ChamadaTrace.Tipo.porNome("read"));
+        assertThrows(IllegalArgumentException.class, () -> ChamadaTrace.Tipo.porNome("nada"));
+    }
+
+    private static List<String> caminhos(List<ChamadaTrace> chamadas) {
+        List<String> caminhos = new ArrayList<>();
+        for (ChamadaTrace chamada : chamadas) {
+            caminhos.add(chamada.getTipo() + " " + chamada.getCaminho() + " " + chamada.getResultado());
+        }
+        return caminhos;
+    }
+
+    private static List<String> listagem(IFileSystem fileSystem) throws Exception {
+        List<String> entradas = new ArrayList<>();
+        Iterator<EntradaListagem> it = fileSystem.listar("/", ROOT_USER, true);
+        while (it.hasNext()) {
+            EntradaListagem entrada = it.next();
+            entradas.add(entrada.getCaminho() + " " + entrada.getTamanho());
+        }
+        return entradas;
+    }
+}
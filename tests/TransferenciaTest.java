@@ -0,0 +1,130 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import exception.CaminhoNaoEncontradoException;
+import exception.PermissaoException;
+import filesys.FileSystemImpl;
+import filesys.MotorPermissoes;
+
+// Essa classe testa transferTo e transferFrom entre arquivos do sistema de arquivos e canais
+public class TransferenciaTest {
+    private static final String ROOT_USER = "root";
+
+    @TempDir
+    Path diretorio;
+
+    private static byte[] aleatorios(int tamanho, long semente) {
+        byte[] dados = new byte[tamanho];
+        new Random(semente).nextBytes(dados);
+        return dados;
+    }
+
+    private static byte[] transferirPara(FileSystemImpl fileSystem, String caminho) throws Exception {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        fileSystem.transferTo(caminho, ROOT_USER, Channels.newChannel(saida));
+        return saida.toByteArray();
+    }
+
+    @Test
+    public void testIdaEVoltaComArquivoReal() throws Exception {
+        FileSystemImpl fileSystem = new FileSystemImpl(new MotorPermissoes(), 64, 16);
+        // tamanhos que terminam no meio de um bloco, em um bloco cheio e vazio
+        for (int tamanho : new int[] { 0, 5, 16, 1000, 4096 + 3 }) {
+            byte[] dados = aleatorios(tamanho, tamanho);
+            Path real = diretorio.resolve("origem" + tamanho);
+            Files.write(real, dados);
+            try (FileChannel canal = FileChannel.open(real, StandardOpenOption.READ)) {
+                assertEquals(tamanho, fileSystem.transferFrom(canal, "/f" + tamanho, ROOT_USER));
+            }
+            Path copia = diretorio.resolve("copia" + tamanho);
+            try (FileChannel canal = FileChannel.open(copia, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                assertEquals(tamanho, fileSystem.transferTo("/f" + tamanho, ROOT_USER, canal));
+            }
+            assertArrayEquals(dados, Files.readAllBytes(copia));
+        }
+    }
+
+    @Test
+    public void testTransferFromSubstituiConteudo() throws Exception {
+        FileSystemImpl fileSystem = new FileSystemImpl(new MotorPermissoes(), 64, 16, true, true);
+        fileSystem.write("/f", ROOT_USER, false, aleatorios(100, 1));
+        byte[] novo = aleatorios(37, 2);
+        fileSystem.transferFrom(Channels.newChannel(new ByteArrayInputStream(novo)), "/f", ROOT_USER);
+        assertArrayEquals(novo, transferirPara(fileSystem, "/f"));
+
+        // o arquivo segue alterável depois de receber os blocos
+        fileSystem.write("/f", ROOT_USER, true, new byte[] { 42 });
+        byte[] esperado = new byte[38];
+        System.arraycopy(novo, 0, esperado, 0, 37);
+        esperado[37] = 42;
+        assertArrayEquals(esperado, transferirPara(fileSystem, "/f"));
+    }
+
+    @Test
+    public void testPermissoes() throws Exception {
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("maria", "/**", "r--");
+        FileSystemImpl fileSystem = new FileSystemImpl(motor, 64, 16);
+        fileSystem.write("/f", ROOT_USER, false, new byte[] { 1 });
+        assertThrows(PermissaoException.class, () -> fileSystem.transferFrom(
+                Channels.newChannel(new ByteArrayInputStream(new byte[] { 2 })), "/f", "maria"));
+        fileSystem.transferTo("/f", "maria", Channels.newChannel(new ByteArrayOutputStream()));
+        assertArrayEquals(new byte[] { 1 }, transferirPara(fileSystem, "/f"));
+    }
+
+    @Test
+    public void testTransferFromRecusadaNaoLeOCanal() throws Exception {
+        MotorPermissoes motor = new MotorPermissoes();
+        motor.adicionarRegra("maria", "/**", "r--");
+        FileSystemImpl fileSystem = new FileSystemImpl(motor, 64, 16);
+        fileSystem.write("/f", ROOT_USER, false, new byte[] { 1 });
+        ByteArrayInputStream entrada = new ByteArrayInputStream(aleatorios(1000, 3));
+        // sem permissão no arquivo, no pai de um arquivo novo e com o pai inexistente
+        assertThrows(PermissaoException.class, () -> fileSystem.transferFrom(Channels.newChannel(entrada), "/f", "maria"));
+        assertThrows(PermissaoException.class, () -> fileSystem.transferFrom(Channels.newChannel(entrada), "/g", "maria"));
+        assertThrows(CaminhoNaoEncontradoException.class,
+                () -> fileSystem.transferFrom(Channels.newChannel(entrada), "/nada/g", ROOT_USER));
+        assertEquals(1000, entrada.available());
+        assertEquals(1000, fileSystem.transferFrom(Channels.newChannel(entrada), "/g", ROOT_USER));
+    }
+
+    @Test
+    public void testTransferFromComDiarioSobreviveAQueda() throws Exception {
+        Path imagem = diretorio.resolve("fs.img");
+        // mais de um registro do diário
+        byte[] dados = aleatorios(3 * (1 << 20) + 123, 3);
+        try (FileSystemImpl fileSystem = new FileSystemImpl(new MotorPermissoes(), 64, 4096, false, imagem,
+                Duration.ZERO)) {
+            fileSystem.write("/f", ROOT_USER, false, aleatorios(10, 4));
+            fileSystem.transferFrom(Channels.newChannel(new ByteArrayInputStream(dados)), "/f", ROOT_USER);
+            // queda: cópia da imagem e do diário antes do close()
+            Files.copy(imagem, diretorio.resolve("queda.img"));
+            Files.copy(imagem.resolveSibling("fs.img.diario"), diretorio.resolve("queda.img.diario"));
+        }
+        try (FileSystemImpl reaberto = new FileSystemImpl(new MotorPermissoes(), 64, 4096, false,
+                diretorio.resolve("queda.img"), Duration.ZERO)) {
+            assertArrayEquals(dados, transferirPara(reaberto, "/f"));
+        }
+        // depois do checkpoint do close(), o conteúdo é transferido do trecho mapeado da imagem
+        try (FileSystemImpl reaberto = new FileSystemImpl(new MotorPermissoes(), 64, 4096, false, imagem,
+                Duration.ZERO)) {
+            assertArrayEquals(dados, transferirPara(reaberto, "/f"));
+        }
+    }
+}